@@ -0,0 +1,723 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lv.flancer.wmt.xml.req.*;
+import lv.flancer.wmt.xml.resp.*;
+
+/**
+ * <p>
+ * Асинхронный фасад к {@link WmService}: для каждого интерфейса WMT XML (X1 -
+ * X21) предоставляется "библиотечная" форма вызова, возвращающая
+ * {@link CompletableFuture}. Запросы выполняются в заданном исполнителе
+ * ({@link Executor}), по умолчанию - в виртуальных потоках (Java 21+) или,
+ * если они недоступны, в пуле потоков-демонов.
+ * </p>
+ * <p>
+ * Все запросы выполняются одним (потокобезопасным) экземпляром
+ * {@link WmService}: состояние каждого вызова возвращается вместе с ответом
+ * ({@link lv.flancer.wmt.xml.resp.AbstractResponse#getCallContext()}).
+ * </p>
+ * <p>
+ * Если запрос отклонен ограничителем частоты запросов сервиса
+ * ({@link RateLimiter}, например, с нулевым временем ожидания), действие
+ * повторяется по истечении указанного ограничителем времени; во время
+ * ожидания поток исполнителя не занят (см. {@link #setRateLimitTimeout(long)}
+ * ).
+ * </p>
+ * 
+ * <pre>
+ * WmService service = new WmService();
+ * service.initWmSignerKwm(&quot;123456789012&quot;, &quot;/path/to/kwm/file&quot;, &quot;KeyPassword&quot;);
+ * service.setHttpKeepAlive(true);
+ * AsyncWmService async = new AsyncWmService(service);
+ * CompletableFuture&lt;X8Response&gt; x8 = async.x8(x8Request);
+ * CompletableFuture&lt;X11Response&gt; x11 = async.x11(x11Request);
+ * CompletableFuture&lt;X19Response&gt; x19 = async.x19(x19Request);
+ * CompletableFuture.allOf(x8, x11, x19).join();
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class AsyncWmService {
+	/**
+	 * Действие, выполняемое экземпляром сервиса в асинхронном режиме.
+	 * 
+	 * @param <T>
+	 *            тип результата.
+	 */
+	public interface WmCall<T> {
+		/**
+		 * @param service
+		 *            экземпляр сервиса.
+		 * @return результат действия.
+		 * @throws Exception
+		 */
+		T call(WmService service) throws Exception;
+	}
+
+	/**
+	 * Исполнитель по умолчанию, создается при первом обращении.
+	 */
+	private static Executor defaultExecutor;
+
+	/**
+	 * Создает исполнитель по умолчанию: виртуальные потоки, если они
+	 * поддерживаются JVM, иначе - пул потоков-демонов.
+	 * 
+	 * @return
+	 */
+	private static Executor createDefaultExecutor() {
+		try {
+			Method factory = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			// виртуальные потоки не поддерживаются (Java < 21)
+		}
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger counter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread result = new Thread(task, "AsyncWmService-"
+						+ this.counter.incrementAndGet());
+				result.setDaemon(true);
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Исполнитель по умолчанию: виртуальные потоки (Java 21+) или пул
+	 * потоков-демонов. Разделяется всеми экземплярами фасада.
+	 * 
+	 * @return Исполнитель по умолчанию.
+	 */
+	public static synchronized Executor getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			defaultExecutor = createDefaultExecutor();
+		}
+		return defaultExecutor;
+	}
+
+	/**
+	 * Исполнитель запросов.
+	 */
+	private final Executor executor;
+	/**
+	 * Максимальное время (мсек.) асинхронного ожидания разрешения
+	 * ограничителя частоты запросов. По умолчанию - 60000 мсек.
+	 */
+	private volatile long rateLimitTimeout = 60000;
+	/**
+	 * Сервис, выполняющий запросы.
+	 */
+	private final WmService service;
+
+	/**
+	 * Создает фасад, выполняющий запросы в исполнителе по умолчанию
+	 * ({@link #getDefaultExecutor()}).
+	 * 
+	 * @param service
+	 *            настроенный экземпляр сервиса (подпись или сертификат Light,
+	 *            пул соединений и т.п.).
+	 */
+	public AsyncWmService(WmService service) {
+		this(service, getDefaultExecutor());
+	}
+
+	/**
+	 * @param service
+	 *            настроенный экземпляр сервиса (подпись или сертификат Light,
+	 *            пул соединений и т.п.).
+	 * @param executor
+	 *            исполнитель запросов.
+	 */
+	public AsyncWmService(WmService service, Executor executor) {
+		this.service = service;
+		this.executor = executor;
+	}
+
+	/**
+	 * Исполнитель запросов.
+	 * 
+	 * @return Исполнитель запросов.
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Максимальное время (мсек.) асинхронного ожидания разрешения
+	 * ограничителя частоты запросов. По умолчанию - 60000 мсек.
+	 * 
+	 * @return Максимальное время (мсек.) асинхронного ожидания разрешения
+	 *         ограничителя частоты запросов.
+	 */
+	public long getRateLimitTimeout() {
+		return rateLimitTimeout;
+	}
+
+	/**
+	 * Сервис, выполняющий запросы.
+	 * 
+	 * @return Сервис, выполняющий запросы.
+	 */
+	public WmService getService() {
+		return service;
+	}
+
+	/**
+	 * Выполняет произвольное действие с экземпляром сервиса в исполнителе
+	 * запросов (например, последовательность зависимых запросов или запрос в
+	 * "простой" форме).
+	 * 
+	 * @param call
+	 *            действие.
+	 * @return результат действия.
+	 */
+	public <T> CompletableFuture<T> submit(final WmCall<T> call) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		long deadline = System.currentTimeMillis() + this.rateLimitTimeout;
+		this.dispatch(call, result, deadline);
+		return result;
+	}
+
+	/**
+	 * Передает действие исполнителю. Если действие отклонено ограничителем
+	 * частоты запросов (запрос на сервер не отправлялся), оно передается
+	 * исполнителю повторно по истечении указанного ограничителем времени, но
+	 * не позднее deadline.
+	 * 
+	 * @param call
+	 * @param result
+	 * @param deadline
+	 *            время (мсек.), после которого ожидание не продолжается.
+	 */
+	private <T> void dispatch(final WmCall<T> call,
+			final CompletableFuture<T> result, final long deadline) {
+		try {
+			this.executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						result.complete(call.call(AsyncWmService.this.service));
+					} catch (RateLimitExceededException e) {
+						long wait = e.getRetryAfter();
+						if (System.currentTimeMillis() + wait > deadline) {
+							result.completeExceptionally(e);
+						} else {
+							reschedule(call, result, deadline, wait);
+						}
+					} catch (Throwable e) {
+						result.completeExceptionally(e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			result.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Откладывает повторную передачу действия исполнителю (поток исполнителя
+	 * на время ожидания не занимается).
+	 * 
+	 * @param call
+	 * @param result
+	 * @param deadline
+	 * @param wait
+	 *            время (мсек.) ожидания.
+	 */
+	private <T> void reschedule(final WmCall<T> call,
+			final CompletableFuture<T> result, final long deadline, long wait) {
+		try {
+			RateLimiter.getScheduler().schedule(new Runnable() {
+				@Override
+				public void run() {
+					dispatch(call, result, deadline);
+				}
+			}, wait, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			result.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Максимальное время (мсек.) асинхронного ожидания разрешения
+	 * ограничителя частоты запросов, отсчитываемое от передачи действия
+	 * фасаду. Если ожидание превысило бы это время, результат завершается
+	 * исключением {@link RateLimitExceededException}; 0 - не ожидать.
+	 * 
+	 * @param rateLimitTimeout
+	 *            Максимальное время (мсек.) асинхронного ожидания разрешения
+	 *            ограничителя частоты запросов.
+	 */
+	public void setRateLimitTimeout(long rateLimitTimeout) {
+		this.rateLimitTimeout = rateLimitTimeout;
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X1: Выписывание счета от одного
+	 * участника (магазина, ресурса) другому участнику (покупателю).
+	 * </p>
+	 * 
+	 * @param req
+	 *            X1Request
+	 * @return X1Response
+	 */
+	public CompletableFuture<X1Response> x1(final X1Request req) {
+		return this.submit(new WmCall<X1Response>() {
+			@Override
+			public X1Response call(WmService service) throws Exception {
+				return service.x1(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X10: Получение списка счетов на
+	 * оплату.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X10Request
+	 * @return X10Response
+	 */
+	public CompletableFuture<X10Response> x10(final X10Request req) {
+		return this.submit(new WmCall<X10Response>() {
+			@Override
+			public X10Response call(WmService service) throws Exception {
+				return service.x10(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X11: Получение сведений об аттестате
+	 * WM идентификатора и персональных данных его владельца.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X11Request
+	 * @return X11Response
+	 */
+	public CompletableFuture<X11Response> x11(final X11Request req) {
+		return this.submit(new WmCall<X11Response>() {
+			@Override
+			public X11Response call(WmService service) throws Exception {
+				return service.x11(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X13: Возврат незавершенного платежа с
+	 * протекцией.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X13Request
+	 * @return X13Response
+	 */
+	public CompletableFuture<X13Response> x13(final X13Request req) {
+		return this.submit(new WmCall<X13Response>() {
+			@Override
+			public X13Response call(WmService service) throws Exception {
+				return service.x13(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X14: Бескомиссионный возврат средств
+	 * отправителю (покупателю).
+	 * </p>
+	 * 
+	 * @param req
+	 *            X14Request
+	 * @return X14Response
+	 */
+	public CompletableFuture<X14Response> x14(final X14Request req) {
+		return this.submit(new WmCall<X14Response>() {
+			@Override
+			public X14Response call(WmService service) throws Exception {
+				return service.x14(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X15: <b>Просмотр</b> и изменение
+	 * текущих настроек управления "по доверию".
+	 * </p>
+	 * 
+	 * @param req
+	 *            X15RequestList
+	 * @param iTrust
+	 *            'true' - запрос "кому я доверяю", 'false' - запрос
+	 *            "кто мне доверяет".
+	 * @return X15ResponseList
+	 */
+	public CompletableFuture<X15ResponseList> x15List(
+			final X15RequestList req, final boolean iTrust) {
+		return this.submit(new WmCall<X15ResponseList>() {
+			@Override
+			public X15ResponseList call(WmService service) throws Exception {
+				return service.x15List(req, iTrust);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X15: Просмотр и <b>изменение</b>
+	 * текущих настроек управления "по доверию".
+	 * </p>
+	 * 
+	 * @param req
+	 *            X15RequestSave
+	 * @return X15ResponseSave
+	 */
+	public CompletableFuture<X15ResponseSave> x15Save(
+			final X15RequestSave req) {
+		return this.submit(new WmCall<X15ResponseSave>() {
+			@Override
+			public X15ResponseSave call(WmService service) throws Exception {
+				return service.x15Save(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X16: Создание кошелька.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X16Request
+	 * @return X16Response
+	 */
+	public CompletableFuture<X16Response> x16(final X16Request req) {
+		return this.submit(new WmCall<X16Response>() {
+			@Override
+			public X16Response call(WmService service) throws Exception {
+				return service.x16(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X17: Операции с арбитражными
+	 * контрактами.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X17Request
+	 * @return X17Response
+	 */
+	public CompletableFuture<X17Response> x17(final X17Request req) {
+		return this.submit(new WmCall<X17Response>() {
+			@Override
+			public X17Response call(WmService service) throws Exception {
+				return service.x17(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X18: Получение деталей операции через
+	 * WM Merchant.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X18Request
+	 * @return X18Response
+	 */
+	public CompletableFuture<X18Response> x18(final X18Request req) {
+		return this.submit(new WmCall<X18Response>() {
+			@Override
+			public X18Response call(WmService service) throws Exception {
+				return service.x18(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X19: Проверка соответствия
+	 * персональных данных владельца WM-идентификатора.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X19Request
+	 * @return X19Response
+	 */
+	public CompletableFuture<X19Response> x19(final X19Request req) {
+		return this.submit(new WmCall<X19Response>() {
+			@Override
+			public X19Response call(WmService service) throws Exception {
+				return service.x19(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X2: Перевод средств с одного кошелька
+	 * на другой.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X2Request
+	 * @return X2Response
+	 */
+	public CompletableFuture<X2Response> x2(final X2Request req) {
+		return this.submit(new WmCall<X2Response>() {
+			@Override
+			public X2Response call(WmService service) throws Exception {
+				return service.x2(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X20Confirmation: Проведение транзакции
+	 * в merchant.webmoney без ухода с сайта (ресурса, сервиса, приложения)
+	 * продавца. 2-й запрос, подтверждение оплаты.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X20ConfirmationRequest
+	 * @return X20ConfirmationResponse
+	 */
+	public CompletableFuture<X20ConfirmationResponse> x20Confirmation(
+			final X20ConfirmationRequest req) {
+		return this.submit(new WmCall<X20ConfirmationResponse>() {
+			@Override
+			public X20ConfirmationResponse call(WmService service) throws Exception {
+				return service.x20Confirmation(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X20Initiation: Проведение транзакции в
+	 * merchant.webmoney без ухода с сайта (ресурса, сервиса, приложения)
+	 * продавца. 1-й запрос, инициирование оплаты.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X20InitiationRequest
+	 * @return X20InitiationResponse
+	 */
+	public CompletableFuture<X20InitiationResponse> x20Initiation(
+			final X20InitiationRequest req) {
+		return this.submit(new WmCall<X20InitiationResponse>() {
+			@Override
+			public X20InitiationResponse call(WmService service) throws Exception {
+				return service.x20Initiation(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X21TrustConfirm: Установка по СМС
+	 * доверия на оплату в пользу продавца. 2-й запрос - подтверждение доверия у
+	 * владельца кошелька.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X21TrustConfirmRequest
+	 * @return X21TrustConfirmResponse
+	 */
+	public CompletableFuture<X21TrustConfirmResponse> X21TrustConfirm(
+			final X21TrustConfirmRequest req) {
+		return this.submit(new WmCall<X21TrustConfirmResponse>() {
+			@Override
+			public X21TrustConfirmResponse call(WmService service) throws Exception {
+				return service.X21TrustConfirm(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X21TrustRequest: Установка по СМС
+	 * доверия на оплату в пользу продавца. 1-й запрос - запрос на доверие у
+	 * владельца кошелька.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X21TrustRequest
+	 * @return X21TrustRequestResponse
+	 */
+	public CompletableFuture<X21TrustRequestResponse> X21TrustRequest(
+			final X21TrustRequest req) {
+		return this.submit(new WmCall<X21TrustRequestResponse>() {
+			@Override
+			public X21TrustRequestResponse call(WmService service) throws Exception {
+				return service.X21TrustRequest(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X3: Получение истории операций по
+	 * кошельку, проверка выполнения операции по переводу средств.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X3Request
+	 * @return X3Response
+	 */
+	public CompletableFuture<X3Response> x3(final X3Request req) {
+		return this.submit(new WmCall<X3Response>() {
+			@Override
+			public X3Response call(WmService service) throws Exception {
+				return service.x3(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X4: Получение истории выписанных
+	 * счетов по кошельку. Проверка оплаты счета.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X4Request
+	 * @return X4Response
+	 */
+	public CompletableFuture<X4Response> x4(final X4Request req) {
+		return this.submit(new WmCall<X4Response>() {
+			@Override
+			public X4Response call(WmService service) throws Exception {
+				return service.x4(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X5: Завершение операции с протекцией
+	 * сделки. Ввод кода протекции.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X5Request
+	 * @return X5Response
+	 */
+	public CompletableFuture<X5Response> x5(final X5Request req) {
+		return this.submit(new WmCall<X5Response>() {
+			@Override
+			public X5Response call(WmService service) throws Exception {
+				return service.x5(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X6: Отправка сообщения произвольному
+	 * WM-идентификатору по внутренней почте.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X6Request
+	 * @return X6Response
+	 */
+	public CompletableFuture<X6Response> x6(final X6Request req) {
+		return this.submit(new WmCall<X6Response>() {
+			@Override
+			public X6Response call(WmService service) throws Exception {
+				return service.x6(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X7: Проверка АСП клиента - владельца
+	 * WM Keeper Classic.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X7Request
+	 * @return X7Response
+	 */
+	public CompletableFuture<X7Response> x7(final X7Request req) {
+		return this.submit(new WmCall<X7Response>() {
+			@Override
+			public X7Response call(WmService service) throws Exception {
+				return service.x7(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X8: Получение информации о
+	 * принадлежности кошелька. Поиск участника системы по его идентификатору
+	 * или кошельку.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X8Request
+	 * @return X8Response
+	 */
+	public CompletableFuture<X8Response> x8(final X8Request req) {
+		return this.submit(new WmCall<X8Response>() {
+			@Override
+			public X8Response call(WmService service) throws Exception {
+				return service.x8(req);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Асинхронная библиотечная форма для X9: Получение информации о балансе на
+	 * кошельках.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X9Request
+	 * @return X9Response
+	 */
+	public CompletableFuture<X9Response> x9(final X9Request req) {
+		return this.submit(new WmCall<X9Response>() {
+			@Override
+			public X9Response call(WmService service) throws Exception {
+				return service.x9(req);
+			}
+		});
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Предохранитель (circuit breaker) для серверов WMT XML. Для каждого сервера
+ * подсчитываются ошибки ввода/вывода, следующие подряд. После
+ * {@link #getFailureThreshold()} ошибок предохранитель размыкается: в течение
+ * {@link #getOpenTimeout()} запросы к серверу не выполняются и сразу
+ * завершаются {@link CircuitOpenException}. По истечении этого времени
+ * разрешается один пробный запрос: при успехе предохранитель замыкается, при
+ * ошибке - снова размыкается.
+ * </p>
+ * <p>
+ * Экземпляр потокобезопасен и может разделяться несколькими экземплярами
+ * {@link WmService}.
+ * </p>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class CircuitBreaker {
+	/**
+	 * Состояние предохранителя сервера.
+	 */
+	private enum State {
+		CLOSED, HALF_OPEN, OPEN
+	}
+
+	/**
+	 * Состояние сервера.
+	 */
+	private static class HostState {
+		/**
+		 * Количество ошибок подряд.
+		 */
+		private int failures = 0;
+		/**
+		 * Время (мсек.) размыкания предохранителя.
+		 */
+		private long openedAt;
+		private State state = State.CLOSED;
+	}
+
+	/**
+	 * Количество ошибок подряд, после которого предохранитель размыкается. По
+	 * умолчанию - 5.
+	 */
+	private int failureThreshold = 5;
+	/**
+	 * Состояния серверов.
+	 */
+	private final Map<String, HostState> hosts = new ConcurrentHashMap<String, HostState>();
+	/**
+	 * Время (мсек.), в течение которого предохранитель остается разомкнутым.
+	 * По умолчанию - 30000 мсек.
+	 */
+	private long openTimeout = 30000;
+
+	/**
+	 * Проверяет, разрешен ли запрос к серверу. Должен вызываться перед каждой
+	 * попыткой, результат которой затем сообщается через
+	 * {@link #onSuccess(String)} или {@link #onFailure(String)}.
+	 * 
+	 * @param host
+	 *            имя сервера.
+	 * @throws CircuitOpenException
+	 *             предохранитель разомкнут или выполняется пробный запрос.
+	 */
+	public void acquire(String host) throws CircuitOpenException {
+		HostState hs = this.getHostState(host);
+		synchronized (hs) {
+			if (hs.state == State.CLOSED) {
+				return;
+			}
+			long elapsed = System.currentTimeMillis() - hs.openedAt;
+			if ((hs.state == State.OPEN) && (elapsed >= this.openTimeout)) {
+				// пробный запрос
+				hs.state = State.HALF_OPEN;
+				return;
+			}
+			throw new CircuitOpenException(host, Math.max(0, this.openTimeout
+					- elapsed));
+		}
+	}
+
+	/**
+	 * Количество ошибок подряд, после которого предохранитель размыкается. По
+	 * умолчанию - 5.
+	 * 
+	 * @return Количество ошибок подряд, после которого предохранитель
+	 *         размыкается.
+	 */
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	private HostState getHostState(String host) {
+		HostState result = this.hosts.get(host);
+		if (result == null) {
+			synchronized (this.hosts) {
+				result = this.hosts.get(host);
+				if (result == null) {
+					result = new HostState();
+					this.hosts.put(host, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Время (мсек.), в течение которого предохранитель остается разомкнутым.
+	 * По умолчанию - 30000 мсек.
+	 * 
+	 * @return Время (мсек.), в течение которого предохранитель остается
+	 *         разомкнутым.
+	 */
+	public long getOpenTimeout() {
+		return openTimeout;
+	}
+
+	/**
+	 * Проверяет, разомкнут ли предохранитель сервера.
+	 * 
+	 * @param host
+	 *            имя сервера.
+	 * @return 'true', если запросы к серверу не выполняются.
+	 */
+	public boolean isOpen(String host) {
+		HostState hs = this.getHostState(host);
+		synchronized (hs) {
+			return hs.state != State.CLOSED;
+		}
+	}
+
+	/**
+	 * Сообщает об ошибке ввода/вывода при запросе к серверу.
+	 * 
+	 * @param host
+	 *            имя сервера.
+	 */
+	public void onFailure(String host) {
+		HostState hs = this.getHostState(host);
+		synchronized (hs) {
+			hs.failures++;
+			if ((hs.state == State.HALF_OPEN)
+					|| (hs.failures >= this.failureThreshold)) {
+				hs.state = State.OPEN;
+				hs.openedAt = System.currentTimeMillis();
+			}
+		}
+	}
+
+	/**
+	 * Сообщает об успешном запросе к серверу (сервер ответил).
+	 * 
+	 * @param host
+	 *            имя сервера.
+	 */
+	public void onSuccess(String host) {
+		HostState hs = this.getHostState(host);
+		synchronized (hs) {
+			hs.failures = 0;
+			hs.state = State.CLOSED;
+		}
+	}
+
+	/**
+	 * Количество ошибок подряд, после которого предохранитель размыкается.
+	 * 
+	 * @param failureThreshold
+	 *            Количество ошибок подряд, после которого предохранитель
+	 *            размыкается.
+	 */
+	public void setFailureThreshold(int failureThreshold) {
+		this.failureThreshold = failureThreshold;
+	}
+
+	/**
+	 * Время (мсек.), в течение которого предохранитель остается разомкнутым.
+	 * 
+	 * @param openTimeout
+	 *            Время (мсек.), в течение которого предохранитель остается
+	 *            разомкнутым.
+	 */
+	public void setOpenTimeout(long openTimeout) {
+		this.openTimeout = openTimeout;
+	}
+
+}
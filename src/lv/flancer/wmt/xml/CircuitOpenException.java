@@ -0,0 +1,45 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.IOException;
+
+/**
+ * Запрос не выполнялся, т.к. предохранитель сервера разомкнут (см.
+ * {@link CircuitBreaker}): сервер недавно несколько раз подряд не отвечал.
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class CircuitOpenException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+	/**
+	 * Время (мсек.), через которое будет разрешен пробный запрос.
+	 */
+	private final long retryAfter;
+
+	/**
+	 * @param host
+	 *            имя сервера.
+	 * @param retryAfter
+	 *            время (мсек.), через которое будет разрешен пробный запрос.
+	 */
+	public CircuitOpenException(String host, long retryAfter) {
+		super("Circuit breaker for '" + host + "' is open, retry after "
+				+ retryAfter + " msec.");
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * Время (мсек.), через которое будет разрешен пробный запрос.
+	 * 
+	 * @return Время (мсек.), через которое будет разрешен пробный запрос.
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+
+}
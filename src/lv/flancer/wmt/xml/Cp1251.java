@@ -0,0 +1,188 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Табличное кодирование/декодирование windows-1251 - кодировки, в которой
+ * передаются все запросы и ответы WMT XML. Используется при формировании
+ * запросов ({@link lv.flancer.wmt.xml.req.XmlRequestWriter}), подписываемых
+ * строк ({@link lv.flancer.wmt.xml.wmsigner.SignatureTextWriter}) и при
+ * чтении ответов, так что каждый байт перекодируется ровно один раз, без
+ * CharsetEncoder/CharsetDecoder и промежуточных буферов.
+ * </p>
+ * <p>
+ * Результат совпадает с <code>String.getBytes("windows-1251")</code> и
+ * <code>new String(bytes, "windows-1251")</code>: символы, отсутствующие в
+ * windows-1251 (в т.ч. суррогатная пара целиком), кодируются как '?', байт
+ * 0x98 декодируется как U+FFFD.
+ * </p>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public final class Cp1251 {
+	/**
+	 * Поток символов, декодируемых из потока байтов windows-1251.
+	 */
+	private static class DecodingReader extends Reader {
+		/**
+		 * Буфер прочитанных байтов.
+		 */
+		private final byte[] buffer = new byte[8192];
+		/**
+		 * Исходный поток байтов.
+		 */
+		private final InputStream in;
+
+		private DecodingReader(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			int result = this.in.read(this.buffer, 0,
+					Math.min(len, this.buffer.length));
+			for (int i = 0; i < result; i++) {
+				cbuf[off + i] = DECODING[this.buffer[i] & 0xFF];
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Кодировка windows-1251.
+	 */
+	public final static Charset CHARSET = Charset.forName("windows-1251");
+	/**
+	 * Таблица декодирования байтов windows-1251.
+	 */
+	private final static char[] DECODING = new char[256];
+	/**
+	 * Таблица кодирования символов в windows-1251.
+	 */
+	private final static byte[] ENCODING = new byte[Character.MAX_VALUE + 1];
+	/**
+	 * Байт, которым заменяются символы, отсутствующие в windows-1251.
+	 */
+	public final static byte REPLACEMENT = (byte) '?';
+
+	static {
+		Arrays.fill(ENCODING, REPLACEMENT);
+		byte[] all = new byte[DECODING.length];
+		for (int i = 0; i < all.length; i++) {
+			all[i] = (byte) i;
+		}
+		String decoded = new String(all, CHARSET);
+		for (int i = 0; i < all.length; i++) {
+			char c = decoded.charAt(i);
+			DECODING[i] = c;
+			if (c != '\uFFFD') {
+				ENCODING[c] = (byte) i;
+			}
+		}
+	}
+
+	/**
+	 * Декодирует байт.
+	 * 
+	 * @param b
+	 * @return символ.
+	 */
+	public static char decode(byte b) {
+		return DECODING[b & 0xFF];
+	}
+
+	/**
+	 * Декодирует массив байтов.
+	 * 
+	 * @param data
+	 * @return строка.
+	 */
+	public static String decode(byte[] data) {
+		return decode(data, 0, data.length);
+	}
+
+	/**
+	 * Декодирует часть массива байтов.
+	 * 
+	 * @param data
+	 * @param offset
+	 *            начало части.
+	 * @param length
+	 *            длина части.
+	 * @return строка.
+	 */
+	public static String decode(byte[] data, int offset, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = DECODING[data[offset + i] & 0xFF];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Кодирует символ. Для половины суррогатной пары возвращается
+	 * {@link #REPLACEMENT}, пару целиком вызывающая сторона заменяет одним
+	 * байтом.
+	 * 
+	 * @param c
+	 * @return байт windows-1251.
+	 */
+	public static byte encode(char c) {
+		return ENCODING[c];
+	}
+
+	/**
+	 * Кодирует строку.
+	 * 
+	 * @param value
+	 * @return байты windows-1251.
+	 */
+	public static byte[] encode(String value) {
+		int length = value.length();
+		byte[] result = new byte[length];
+		int pos = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (Character.isHighSurrogate(c) && (i + 1 < length)
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				// символ вне BMP заменяется одним '?'
+				i++;
+			}
+			result[pos++] = ENCODING[c];
+		}
+		return (pos == length) ? result : Arrays.copyOf(result, pos);
+	}
+
+	/**
+	 * Создает поток символов, декодируемых из потока байтов windows-1251.
+	 * Поток не буферизует больше байтов, чем запрошено символов.
+	 * 
+	 * @param in
+	 *            поток байтов.
+	 * @return поток символов.
+	 */
+	public static Reader newReader(InputStream in) {
+		return new DecodingReader(in);
+	}
+
+	private Cp1251() {
+	}
+}
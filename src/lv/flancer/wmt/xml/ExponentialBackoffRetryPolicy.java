@@ -0,0 +1,218 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>
+ * Политика повторения запросов с экспоненциально растущей задержкой и
+ * случайным разбросом (jitter): задержка перед попыткой N равна
+ * initialDelay * multiplier^(N-1), но не больше maxDelay, и выбирается
+ * случайно в интервале [задержка / 2; задержка]. Разброс не дает клиентам,
+ * одновременно получившим ошибку, одновременно повторять запросы.
+ * </p>
+ * <p>
+ * Повторяются:
+ * </p>
+ * <ul>
+ * <li>любые запросы после ошибки соединения ({@link HttpConnectException}):
+ * запрос не был отправлен;</li>
+ * <li>идемпотентные запросы после ошибки чтения ответа;</li>
+ * <li>неидемпотентные запросы после ошибки чтения - только если
+ * установлен {@link #setRetryNonIdempotent(boolean)}.</li>
+ * </ul>
+ * <p>
+ * Общее количество повторов ограничено бюджетом ({@link RetryBudget}).
+ * </p>
+ * 
+ * <pre>
+ * ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy();
+ * policy.setMaxAttempts(4);
+ * policy.setInitialDelay(100);
+ * service.setRetryPolicy(policy);
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+	/**
+	 * Бюджет повторов, 'null' - не ограничен.
+	 */
+	private RetryBudget budget = new RetryBudget();
+	/**
+	 * Задержка (мсек.) перед первым повтором. По умолчанию - 200 мсек.
+	 */
+	private long initialDelay = 200;
+	/**
+	 * Максимальное количество попыток (включая первую). По умолчанию - 3.
+	 */
+	private int maxAttempts = 3;
+	/**
+	 * Максимальная задержка (мсек.) между попытками. По умолчанию - 10000
+	 * мсек.
+	 */
+	private long maxDelay = 10000;
+	/**
+	 * Множитель задержки. По умолчанию - 2.
+	 */
+	private double multiplier = 2;
+	/**
+	 * Повторять ли неидемпотентные запросы после ошибки чтения ответа. По
+	 * умолчанию - 'false'.
+	 */
+	private boolean retryNonIdempotent = false;
+
+	/**
+	 * Бюджет повторов, 'null' - не ограничен.
+	 * 
+	 * @return Бюджет повторов.
+	 */
+	public RetryBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Задержка (мсек.) перед первым повтором. По умолчанию - 200 мсек.
+	 * 
+	 * @return Задержка (мсек.) перед первым повтором.
+	 */
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	/**
+	 * Максимальное количество попыток (включая первую). По умолчанию - 3.
+	 * 
+	 * @return Максимальное количество попыток.
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Максимальная задержка (мсек.) между попытками. По умолчанию - 10000
+	 * мсек.
+	 * 
+	 * @return Максимальная задержка (мсек.) между попытками.
+	 */
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * Множитель задержки. По умолчанию - 2.
+	 * 
+	 * @return Множитель задержки.
+	 */
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	@Override
+	public long getRetryDelay(int attempt, IOException failure,
+			boolean idempotent) {
+		if ((attempt >= this.maxAttempts)
+				|| (failure instanceof CircuitOpenException)) {
+			return -1;
+		}
+		// запрос, который мог быть выполнен сервером, повторяется только если
+		// это безопасно
+		boolean notSent = (failure instanceof HttpConnectException);
+		if (!notSent && !idempotent && !this.retryNonIdempotent) {
+			return -1;
+		}
+		if ((this.budget != null) && !this.budget.tryWithdraw()) {
+			return -1;
+		}
+		double delay = this.initialDelay
+				* Math.pow(this.multiplier, attempt - 1);
+		long max = (long) Math.min(delay, this.maxDelay);
+		// случайный разброс в интервале [max / 2; max]
+		return (max / 2) + ThreadLocalRandom.current().nextLong(max / 2 + 1);
+	}
+
+	/**
+	 * Повторять ли неидемпотентные запросы после ошибки чтения ответа. По
+	 * умолчанию - 'false'.
+	 * 
+	 * @return 'true', если неидемпотентные запросы повторяются.
+	 */
+	public boolean isRetryNonIdempotent() {
+		return retryNonIdempotent;
+	}
+
+	@Override
+	public void onCall() {
+		if (this.budget != null) {
+			this.budget.deposit();
+		}
+	}
+
+	/**
+	 * Бюджет повторов, 'null' - не ограничен.
+	 * 
+	 * @param budget
+	 *            Бюджет повторов.
+	 */
+	public void setBudget(RetryBudget budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Задержка (мсек.) перед первым повтором.
+	 * 
+	 * @param initialDelay
+	 *            Задержка (мсек.) перед первым повтором.
+	 */
+	public void setInitialDelay(long initialDelay) {
+		this.initialDelay = initialDelay;
+	}
+
+	/**
+	 * Максимальное количество попыток (включая первую).
+	 * 
+	 * @param maxAttempts
+	 *            Максимальное количество попыток.
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Максимальная задержка (мсек.) между попытками.
+	 * 
+	 * @param maxDelay
+	 *            Максимальная задержка (мсек.) между попытками.
+	 */
+	public void setMaxDelay(long maxDelay) {
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * Множитель задержки.
+	 * 
+	 * @param multiplier
+	 *            Множитель задержки.
+	 */
+	public void setMultiplier(double multiplier) {
+		this.multiplier = multiplier;
+	}
+
+	/**
+	 * Повторять ли неидемпотентные запросы после ошибки чтения ответа.
+	 * Включение может привести к повторному выполнению операций (например,
+	 * перевода средств X2).
+	 * 
+	 * @param retryNonIdempotent
+	 *            'true' - повторять неидемпотентные запросы.
+	 */
+	public void setRetryNonIdempotent(boolean retryNonIdempotent) {
+		this.retryNonIdempotent = retryNonIdempotent;
+	}
+
+}
@@ -0,0 +1,51 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.IOException;
+
+/**
+ * Политика повторения запросов с фиксированной задержкой: любой запрос
+ * повторяется после любой ошибки ввода/вывода, пока не исчерпано количество
+ * попыток. Используется {@link WmService} по умолчанию (параметры
+ * {@link WmService#setHttpRetries(int)} и
+ * {@link WmService#setHttpRetriesSleepTime(int)}).
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class FixedDelayRetryPolicy implements RetryPolicy {
+	/**
+	 * Задержка (мсек.) между попытками.
+	 */
+	private final long delay;
+	/**
+	 * Максимальное количество попыток (включая первую).
+	 */
+	private final int maxAttempts;
+
+	/**
+	 * @param maxAttempts
+	 *            максимальное количество попыток (включая первую).
+	 * @param delay
+	 *            задержка (мсек.) между попытками.
+	 */
+	public FixedDelayRetryPolicy(int maxAttempts, long delay) {
+		this.maxAttempts = maxAttempts;
+		this.delay = delay;
+	}
+
+	@Override
+	public long getRetryDelay(int attempt, IOException failure,
+			boolean idempotent) {
+		return (attempt < this.maxAttempts) ? this.delay : -1;
+	}
+
+	@Override
+	public void onCall() {
+		// do nothing
+	}
+
+}
@@ -0,0 +1,516 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import lv.flancer.wmt.xml.dict.WmDate;
+import lv.flancer.wmt.xml.resp.AbstractResponse;
+
+/**
+ * <p>
+ * Получение истории (операций X3, счетов X4/X10) за произвольный период.
+ * Сервис WMT XML ограничивает количество записей в одном ответе, поэтому
+ * период делится на окна ({@link #getWindowLength()}), которые запрашиваются
+ * параллельно (не более {@link #getConcurrency()} запросов одновременно).
+ * Если количество записей в ответе достигло лимита ({@link #getWindowLimit()}
+ * ), то окно делится пополам и запрашивается заново, пока окно не станет
+ * меньше {@link #getMinWindowLength()}.
+ * </p>
+ * <p>
+ * Записи передаются получателю по окнам, в хронологическом порядке окон
+ * (внутри окна - в порядке ответа сервиса). Соседние окна имеют общую
+ * границу, записи на границе, попавшие в оба окна, передаются один раз
+ * (по идентификатору записи). В памяти хранятся только ответы окон,
+ * запрошенных, но еще не переданных получателю.
+ * </p>
+ * <p>
+ * Номер запроса окна назначается сервисом при отправке: когда соединение уже
+ * установлено, запрос нумеруется, подписывается и записывается в соединение
+ * под блокировкой WMID, поэтому запросы уходят на сервер в порядке номеров.
+ * Однако параллельные запросы передаются по разным соединениям и могут быть
+ * приняты сервером не в порядке отправки. Запрос окна, отклоненный сервисом
+ * из-за номера ({@link #RETVAL_REQN_ORDER}), повторяется с новым номером
+ * после паузы ({@link #getReqnRetryDelay()}, удваивается с каждым повтором),
+ * не более {@link #getReqnRetries()} раз.
+ * </p>
+ * <p>
+ * Параллельные запросы ({@link #getConcurrency()} больше 1) ускоряют
+ * получение истории, только если сервис допускает такой порядок приема
+ * запросов; если окна часто отклоняются из-за номера, следует установить
+ * {@link #setConcurrency(int)} в 1.
+ * </p>
+ * 
+ * <pre>
+ * X3Request req = new X3Request();
+ * req.setPurse(new PurseNumber(&quot;Z123456789012&quot;));
+ * req.setDateStart(new WmDate(yearAgo));
+ * req.setDateFinish(new WmDate(now));
+ * HistoryFetcher&lt;Operation&gt; history = service.x3History(req);
+ * history.setConcurrency(8);
+ * history.fetch(new Consumer&lt;Operation&gt;() {
+ * 	public void accept(Operation op) {
+ * 		export(op);
+ * 	}
+ * });
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ * @param <T>
+ *            тип записи истории.
+ */
+public abstract class HistoryFetcher<T> {
+	/**
+	 * Окно периода и запрос его записей.
+	 */
+	private static class Window<T> {
+		/**
+		 * Конец окна (мсек.).
+		 */
+		private final long finish;
+		/**
+		 * Начало окна (мсек.).
+		 */
+		private final long start;
+		/**
+		 * Запрос записей окна ('null', если еще не отправлен).
+		 */
+		private FutureTask<List<T>> task;
+
+		private Window(long start, long finish) {
+			this.start = start;
+			this.finish = finish;
+		}
+	}
+
+	/**
+	 * Логгер.
+	 */
+	private static final Logger LOG = Logger.getLogger(HistoryFetcher.class
+			.getName());
+	/**
+	 * Код ответа WMT XML: номер запроса (reqn) не больше номера предыдущего
+	 * запроса.
+	 */
+	public static final int RETVAL_REQN_ORDER = 102;
+	/**
+	 * Точность дат WMT XML (мсек.).
+	 */
+	private static final long WMT_DATE_PRECISION = 1000;
+
+	/**
+	 * Количество окон, разделенных пополам.
+	 */
+	private final AtomicLong bisectedCount = new AtomicLong();
+	/**
+	 * Максимальное количество одновременных запросов.
+	 */
+	private int concurrency = 4;
+	/**
+	 * Конец периода (мсек.).
+	 */
+	private final long dateFinish;
+	/**
+	 * Начало периода (мсек.).
+	 */
+	private final long dateStart;
+	/**
+	 * Исполнитель запросов.
+	 */
+	private Executor executor = AsyncWmService.getDefaultExecutor();
+	/**
+	 * Минимальная длина окна (мсек.), которое делится пополам.
+	 */
+	private long minWindowLength = WMT_DATE_PRECISION;
+	/**
+	 * Максимальное количество повторов запроса окна, отклоненного из-за
+	 * номера запроса.
+	 */
+	private int reqnRetries = 5;
+	/**
+	 * Пауза (мсек.) перед первым повтором запроса окна, отклоненного из-за
+	 * номера запроса.
+	 */
+	private long reqnRetryDelay = 100;
+	/**
+	 * Количество выполненных запросов.
+	 */
+	private final AtomicLong requestCount = new AtomicLong();
+	/**
+	 * Начальная длина окна (мсек.).
+	 */
+	private long windowLength = 24L * 60 * 60 * 1000;
+	/**
+	 * Количество записей в ответе, при котором окно считается заполненным до
+	 * лимита сервиса.
+	 */
+	private int windowLimit = 1000;
+
+	/**
+	 * @param dateStart
+	 *            начало периода.
+	 * @param dateFinish
+	 *            конец периода.
+	 */
+	protected HistoryFetcher(Date dateStart, Date dateFinish) {
+		this.dateStart = dateStart.getTime();
+		this.dateFinish = dateFinish.getTime();
+	}
+
+	/**
+	 * Ожидает записи окна.
+	 * 
+	 * @param window
+	 * @return записи окна.
+	 * @throws Exception
+	 *             ошибка запроса.
+	 */
+	private List<T> await(Window<T> window) throws Exception {
+		try {
+			return window.task.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw (Error) cause;
+		}
+	}
+
+	/**
+	 * Проверяет код ответа.
+	 * 
+	 * @param response
+	 * @throws RetValException
+	 *             сервис вернул код ошибки.
+	 */
+	protected void checkRetVal(AbstractResponse response)
+			throws RetValException {
+		if (response.getRetVal() != 0) {
+			throw new RetValException(response);
+		}
+	}
+
+	/**
+	 * Запрашивает записи окна.
+	 * 
+	 * @param dateStart
+	 *            начало окна.
+	 * @param dateFinish
+	 *            конец окна.
+	 * @return записи окна.
+	 * @throws Exception
+	 */
+	protected abstract List<T> fetch(WmDate dateStart, WmDate dateFinish)
+			throws Exception;
+
+	/**
+	 * Запрашивает записи окна. Запрос, отклоненный из-за порядка номеров
+	 * запросов (другой запрос с большим номером пришел на сервер раньше),
+	 * повторяется после паузы (номер назначается заново при отправке).
+	 * 
+	 * @param window
+	 * @return записи окна.
+	 * @throws Exception
+	 */
+	private List<T> fetch(Window<T> window) throws Exception {
+		WmDate start = new WmDate(new Date(window.start));
+		WmDate finish = new WmDate(new Date(window.finish));
+		for (int i = 0;; i++) {
+			this.requestCount.incrementAndGet();
+			try {
+				return this.fetch(start, finish);
+			} catch (RetValException e) {
+				if ((e.getResponse().getRetVal() != RETVAL_REQN_ORDER)
+						|| (i >= this.reqnRetries)) {
+					throw e;
+				}
+			}
+			// конкурирующие запросы успевают дойти до сервера
+			Thread.sleep(this.reqnRetryDelay << Math.min(i, 16));
+		}
+	}
+
+	/**
+	 * Запрашивает записи периода и передает их получателю. При ошибке
+	 * запроса любого окна запросы остальных окон отменяются, а исключение
+	 * передается вызывающей стороне.
+	 * 
+	 * @param consumer
+	 *            получатель записей.
+	 * @return количество переданных записей.
+	 * @throws Exception
+	 *             ошибка запроса (в т.ч. {@link RetValException}).
+	 */
+	public long fetch(Consumer<? super T> consumer) throws Exception {
+		Deque<Window<T>> windows = new ArrayDeque<Window<T>>();
+		long start = this.dateStart;
+		do {
+			long finish = Math.min(start + this.windowLength, this.dateFinish);
+			windows.add(new Window<T>(start, finish));
+			start = finish;
+		} while (start < this.dateFinish);
+		long result = 0;
+		Set<Long> previousIds = Collections.emptySet();
+		try {
+			while (!windows.isEmpty()) {
+				this.submit(windows);
+				Window<T> window = windows.removeFirst();
+				List<T> records = this.await(window);
+				boolean saturated = records.size() >= this.windowLimit;
+				long length = window.finish - window.start;
+				if (saturated && (length > this.minWindowLength)) {
+					// окно запрашивается заново двумя половинами
+					long middle = window.start
+							+ Math.max(length / 2 / WMT_DATE_PRECISION, 1)
+							* WMT_DATE_PRECISION;
+					windows.addFirst(new Window<T>(middle, window.finish));
+					windows.addFirst(new Window<T>(window.start, middle));
+					this.bisectedCount.incrementAndGet();
+					continue;
+				}
+				if (saturated) {
+					LOG.warning("History window " + new Date(window.start)
+							+ " - " + new Date(window.finish)
+							+ " reached the limit of " + this.windowLimit
+							+ " records and cannot be split further.");
+				}
+				// записи на общей границе окон могут попасть в оба окна
+				Set<Long> ids = new HashSet<Long>(records.size() * 2);
+				for (T record : records) {
+					Long id = this.getId(record);
+					ids.add(id);
+					if (!previousIds.contains(id)) {
+						consumer.accept(record);
+						result++;
+					}
+				}
+				previousIds = ids;
+			}
+		} finally {
+			for (Window<T> window : windows) {
+				if (window.task != null) {
+					window.task.cancel(true);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Количество окон, разделенных пополам из-за лимита записей в ответе.
+	 * 
+	 * @return Количество окон, разделенных пополам.
+	 */
+	public long getBisectedCount() {
+		return this.bisectedCount.get();
+	}
+
+	/**
+	 * Максимальное количество одновременных запросов. Значения больше 1
+	 * ускоряют получение истории, только если сервис допускает прием
+	 * запросов не в порядке номеров (см. {@link #RETVAL_REQN_ORDER}). По
+	 * умолчанию - 4.
+	 * 
+	 * @return Максимальное количество одновременных запросов.
+	 */
+	public int getConcurrency() {
+		return this.concurrency;
+	}
+
+	/**
+	 * Исполнитель запросов. По умолчанию -
+	 * {@link AsyncWmService#getDefaultExecutor()}.
+	 * 
+	 * @return Исполнитель запросов.
+	 */
+	public Executor getExecutor() {
+		return this.executor;
+	}
+
+	/**
+	 * Идентификатор записи.
+	 * 
+	 * @param record
+	 * @return идентификатор записи.
+	 */
+	protected abstract long getId(T record);
+
+	/**
+	 * Минимальная длина окна (мсек.), которое делится пополам. По умолчанию -
+	 * 1 сек. (точность дат WMT XML).
+	 * 
+	 * @return Минимальная длина окна (мсек.).
+	 */
+	public long getMinWindowLength() {
+		return this.minWindowLength;
+	}
+
+	/**
+	 * Максимальное количество повторов запроса окна, отклоненного из-за
+	 * номера запроса ({@link #RETVAL_REQN_ORDER}). По умолчанию - 5.
+	 * 
+	 * @return Максимальное количество повторов запроса окна.
+	 */
+	public int getReqnRetries() {
+		return this.reqnRetries;
+	}
+
+	/**
+	 * Пауза (мсек.) перед первым повтором запроса окна, отклоненного из-за
+	 * номера запроса ({@link #RETVAL_REQN_ORDER}); перед каждым следующим
+	 * повтором пауза удваивается. По умолчанию - 100 мсек.
+	 * 
+	 * @return Пауза (мсек.) перед первым повтором запроса окна.
+	 */
+	public long getReqnRetryDelay() {
+		return this.reqnRetryDelay;
+	}
+
+	/**
+	 * Количество выполненных запросов.
+	 * 
+	 * @return Количество выполненных запросов.
+	 */
+	public long getRequestCount() {
+		return this.requestCount.get();
+	}
+
+	/**
+	 * Начальная длина окна (мсек.). По умолчанию - сутки.
+	 * 
+	 * @return Начальная длина окна (мсек.).
+	 */
+	public long getWindowLength() {
+		return this.windowLength;
+	}
+
+	/**
+	 * Количество записей в ответе, при котором окно считается заполненным до
+	 * лимита сервиса и делится пополам. По умолчанию - 1000.
+	 * 
+	 * @return Количество записей в ответе, при котором окно делится пополам.
+	 */
+	public int getWindowLimit() {
+		return this.windowLimit;
+	}
+
+	/**
+	 * Максимальное количество одновременных запросов. Значения больше 1
+	 * ускоряют получение истории, только если сервис допускает прием
+	 * запросов не в порядке номеров (см. {@link #RETVAL_REQN_ORDER}).
+	 * 
+	 * @param concurrency
+	 *            Максимальное количество одновременных запросов.
+	 */
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Исполнитель запросов.
+	 * 
+	 * @param executor
+	 *            Исполнитель запросов.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Минимальная длина окна (мсек.), которое делится пополам.
+	 * 
+	 * @param minWindowLength
+	 *            Минимальная длина окна (мсек.).
+	 */
+	public void setMinWindowLength(long minWindowLength) {
+		this.minWindowLength = minWindowLength;
+	}
+
+	/**
+	 * Максимальное количество повторов запроса окна, отклоненного из-за
+	 * номера запроса ({@link #RETVAL_REQN_ORDER}).
+	 * 
+	 * @param reqnRetries
+	 *            Максимальное количество повторов запроса окна.
+	 */
+	public void setReqnRetries(int reqnRetries) {
+		this.reqnRetries = reqnRetries;
+	}
+
+	/**
+	 * Пауза (мсек.) перед первым повтором запроса окна, отклоненного из-за
+	 * номера запроса ({@link #RETVAL_REQN_ORDER}); перед каждым следующим
+	 * повтором пауза удваивается.
+	 * 
+	 * @param reqnRetryDelay
+	 *            Пауза (мсек.) перед первым повтором запроса окна.
+	 */
+	public void setReqnRetryDelay(long reqnRetryDelay) {
+		this.reqnRetryDelay = reqnRetryDelay;
+	}
+
+	/**
+	 * Начальная длина окна (мсек.).
+	 * 
+	 * @param windowLength
+	 *            Начальная длина окна (мсек.).
+	 */
+	public void setWindowLength(long windowLength) {
+		this.windowLength = windowLength;
+	}
+
+	/**
+	 * Количество записей в ответе, при котором окно считается заполненным до
+	 * лимита сервиса и делится пополам.
+	 * 
+	 * @param windowLimit
+	 *            Количество записей в ответе, при котором окно делится
+	 *            пополам.
+	 */
+	public void setWindowLimit(int windowLimit) {
+		this.windowLimit = windowLimit;
+	}
+
+	/**
+	 * Отправляет запросы первых окон, пока количество одновременных запросов
+	 * не достигнет {@link #concurrency}.
+	 * 
+	 * @param windows
+	 *            окна в хронологическом порядке.
+	 */
+	private void submit(Deque<Window<T>> windows) {
+		int running = 0;
+		for (final Window<T> window : windows) {
+			if (running >= this.concurrency) {
+				break;
+			}
+			if (window.task == null) {
+				window.task = new FutureTask<List<T>>(new Callable<List<T>>() {
+					@Override
+					public List<T> call() throws Exception {
+						return HistoryFetcher.this.fetch(window);
+					}
+				});
+				this.executor.execute(window.task);
+			}
+			running++;
+		}
+	}
+}
@@ -0,0 +1,30 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.InputStream;
+
+/**
+ * Обработчик тела HTTP-ответа, получающий его в виде потока непосредственно
+ * из соединения (см. {@link HttpRequester#doPost(String, String, HttpBodyConsumer)}).
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public interface HttpBodyConsumer {
+	/**
+	 * Обрабатывает тело ответа. Поток ограничен телом ответа и действителен
+	 * только в рамках вызова; закрывать его не обязательно.
+	 * 
+	 * @param response
+	 *            ответ, для которого уже считаны строка статуса и заголовки.
+	 * @param body
+	 *            поток тела ответа.
+	 * @throws Exception
+	 *             ошибка обработки тела ответа.
+	 */
+	public void consume(HttpResponseReader response, InputStream body)
+			throws Exception;
+}
@@ -0,0 +1,33 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+/**
+ * Источник тела HTTP-запроса, формируемого непосредственно перед отправкой -
+ * когда соединение с сервером уже установлено (см.
+ * {@link HttpRequester#doPost(String, HttpBodyProducer, HttpBodyConsumer)}).
+ * Используется, если содержимое запроса зависит от момента отправки (например,
+ * номер запроса WMT XML, который должен быть больше номеров ранее
+ * отправленных запросов).
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public interface HttpBodyProducer {
+	/**
+	 * Формирует тело запроса.
+	 * 
+	 * @return тело запроса в кодировке, объявленной в самом теле.
+	 * @throws Exception
+	 *             ошибка формирования тела запроса.
+	 */
+	public byte[] produce() throws Exception;
+
+	/**
+	 * Вызывается в потоке запроса после записи запроса в соединение, а также
+	 * при ошибке формирования или записи, если {@link #produce()} был вызван.
+	 */
+	public void sent();
+}
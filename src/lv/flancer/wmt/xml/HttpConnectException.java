@@ -0,0 +1,32 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.IOException;
+
+/**
+ * Ошибка установления соединения с сервером (в т.ч. SSL-рукопожатия или
+ * ожидания свободного соединения в пуле). Запрос при этом на сервер не
+ * отправлялся, поэтому его можно безопасно повторить независимо от типа
+ * интерфейса (см. {@link RetryPolicy}).
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class HttpConnectException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param host
+	 *            имя сервера.
+	 * @param cause
+	 *            исходная ошибка.
+	 */
+	public HttpConnectException(String host, IOException cause) {
+		super("Cannot connect to '" + host + "': " + cause.getMessage(), cause);
+	}
+
+}
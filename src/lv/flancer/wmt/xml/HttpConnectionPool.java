@@ -0,0 +1,376 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Пул постоянных (HTTP/1.1 keep-alive) соединений с серверами WMT XML. Для
+ * каждого хоста (w3s.webmoney.ru, w3s.wmtransfer.com, passport.webmoney.ru,
+ * merchant.webmoney.ru, arbitrage.webmoney.ru) хранится отдельная очередь
+ * простаивающих сокетов, которые повторно используются последующими
+ * запросами, что избавляет от установления TCP- и SSL-соединения на каждый
+ * вызов.
+ * </p>
+ * <p>
+ * Количество одновременно используемых соединений с одним хостом ограничено
+ * {@link #getMaxConnectionsPerHost()}, соединения, простаивающие дольше
+ * {@link #getIdleTimeout()}, закрываются.
+ * </p>
+ * <p>
+ * Экземпляр пула потокобезопасен и может разделяться несколькими экземплярами
+ * {@link HttpRequester} и {@link WmService}.
+ * </p>
+ * 
+ * <pre>
+ * HttpConnectionPool pool = new HttpConnectionPool();
+ * pool.setMaxConnectionsPerHost(10);
+ * WmService service = new WmService();
+ * service.setConnectionPool(pool);
+ * ...
+ * System.out.println(&quot;Reused: &quot; + pool.getReusedCount());
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class HttpConnectionPool {
+	/**
+	 * Соединения одного хоста.
+	 */
+	private static class HostEntry {
+		/**
+		 * Простаивающие соединения, последнее освобожденное - в начале
+		 * очереди.
+		 */
+		private final ConcurrentLinkedDeque<IdleConnection> idle = new ConcurrentLinkedDeque<IdleConnection>();
+		/**
+		 * Разрешения на использование соединений (ограничение количества
+		 * соединений с хостом).
+		 */
+		private final Semaphore permits;
+
+		private HostEntry(int maxConnections) {
+			this.permits = new Semaphore(maxConnections, true);
+		}
+	}
+
+	/**
+	 * Простаивающее соединение.
+	 */
+	private static class IdleConnection {
+		/**
+		 * Время (мсек.) освобождения соединения.
+		 */
+		private final long releasedAt;
+		private final Socket socket;
+
+		private IdleConnection(Socket socket, long releasedAt) {
+			this.socket = socket;
+			this.releasedAt = releasedAt;
+		}
+	}
+
+	/**
+	 * Количество созданных соединений.
+	 */
+	private final AtomicLong createdCount = new AtomicLong();
+	/**
+	 * Количество соединений, закрытых по истечении времени простоя или
+	 * оказавшихся закрытыми сервером.
+	 */
+	private final AtomicLong evictedCount = new AtomicLong();
+	/**
+	 * Соединения, сгруппированные по хостам.
+	 */
+	private final Map<String, HostEntry> hosts = new ConcurrentHashMap<String, HostEntry>();
+	/**
+	 * Время (мсек.), по истечении которого простаивающее соединение
+	 * закрывается. По умолчанию - 15000 мсек. Должно быть меньше времени
+	 * keep-alive на стороне сервера.
+	 */
+	private long idleTimeout = 15000;
+	/**
+	 * Максимальное количество одновременно используемых соединений с одним
+	 * хостом. По умолчанию - 5.
+	 */
+	private int maxConnectionsPerHost = 5;
+	/**
+	 * Количество выданных пулом соединений (новых и повторно используемых).
+	 */
+	private final AtomicLong leasedCount = new AtomicLong();
+	/**
+	 * Количество повторно использованных соединений.
+	 */
+	private final AtomicLong reusedCount = new AtomicLong();
+
+	/**
+	 * Получает разрешение на использование соединения с хостом и возвращает
+	 * простаивающее соединение, если оно есть. Если возвращен 'null', то
+	 * вызывающая сторона должна сама установить новое соединение и сообщить об
+	 * этом через {@link #connectionCreated()}. В любом случае по окончании
+	 * запроса должен быть вызван {@link #release(String, Socket, boolean)}.
+	 * 
+	 * @param key
+	 *            ключ хоста (адрес, порт, параметры SSL).
+	 * @param timeout
+	 *            время (мсек.) ожидания свободного соединения.
+	 * @return простаивающее соединение или 'null'.
+	 * @throws IOException
+	 *             если за время 'timeout' соединение не освободилось.
+	 */
+	public Socket acquire(String key, long timeout) throws IOException {
+		HostEntry entry = this.getHostEntry(key);
+		try {
+			if (!entry.permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+				throw new IOException("Connection pool for '" + key
+						+ "' is exhausted (" + this.maxConnectionsPerHost
+						+ " connections).");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for connection.");
+		}
+		this.leasedCount.incrementAndGet();
+		long now = System.currentTimeMillis();
+		IdleConnection conn;
+		while ((conn = entry.idle.pollFirst()) != null) {
+			if ((now - conn.releasedAt < this.idleTimeout)
+					&& !this.isStale(conn.socket)) {
+				this.reusedCount.incrementAndGet();
+				return conn.socket;
+			}
+			this.evictedCount.incrementAndGet();
+			this.closeQuietly(conn.socket);
+		}
+		return null;
+	}
+
+	/**
+	 * Закрывает все простаивающие соединения.
+	 */
+	public void close() {
+		for (HostEntry entry : this.hosts.values()) {
+			IdleConnection conn;
+			while ((conn = entry.idle.pollFirst()) != null) {
+				this.closeQuietly(conn.socket);
+			}
+		}
+	}
+
+	private void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// do nothing
+		}
+	}
+
+	/**
+	 * Сообщает пулу о том, что вызывающая сторона установила новое
+	 * соединение (для статистики).
+	 */
+	public void connectionCreated() {
+		this.createdCount.incrementAndGet();
+	}
+
+	/**
+	 * Закрывает соединения, простаивающие дольше {@link #getIdleTimeout()}.
+	 */
+	public void evictIdle() {
+		long now = System.currentTimeMillis();
+		for (HostEntry entry : this.hosts.values()) {
+			Iterator<IdleConnection> it = entry.idle.iterator();
+			while (it.hasNext()) {
+				IdleConnection conn = it.next();
+				if ((now - conn.releasedAt >= this.idleTimeout)
+						&& entry.idle.removeFirstOccurrence(conn)) {
+					this.evictedCount.incrementAndGet();
+					this.closeQuietly(conn.socket);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Количество созданных соединений.
+	 * 
+	 * @return Количество созданных соединений.
+	 */
+	public long getCreatedCount() {
+		return this.createdCount.get();
+	}
+
+	/**
+	 * Количество соединений, закрытых по истечении времени простоя или
+	 * оказавшихся закрытыми сервером.
+	 * 
+	 * @return Количество закрытых пулом соединений.
+	 */
+	public long getEvictedCount() {
+		return this.evictedCount.get();
+	}
+
+	private HostEntry getHostEntry(String key) {
+		HostEntry result = this.hosts.get(key);
+		if (result == null) {
+			synchronized (this.hosts) {
+				result = this.hosts.get(key);
+				if (result == null) {
+					result = new HostEntry(this.maxConnectionsPerHost);
+					this.hosts.put(key, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Количество простаивающих соединений во всех хостах.
+	 * 
+	 * @return Количество простаивающих соединений.
+	 */
+	public int getIdleCount() {
+		int result = 0;
+		for (HostEntry entry : this.hosts.values()) {
+			result += entry.idle.size();
+		}
+		return result;
+	}
+
+	/**
+	 * Время (мсек.), по истечении которого простаивающее соединение
+	 * закрывается. По умолчанию - 15000 мсек.
+	 * 
+	 * @return Время (мсек.), по истечении которого простаивающее соединение
+	 *         закрывается.
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Количество выданных пулом соединений (новых и повторно используемых).
+	 * 
+	 * @return Количество выданных пулом соединений.
+	 */
+	public long getLeasedCount() {
+		return this.leasedCount.get();
+	}
+
+	/**
+	 * Максимальное количество одновременно используемых соединений с одним
+	 * хостом. По умолчанию - 5.
+	 * 
+	 * @return Максимальное количество одновременно используемых соединений с
+	 *         одним хостом.
+	 */
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * Количество повторно использованных соединений.
+	 * 
+	 * @return Количество повторно использованных соединений.
+	 */
+	public long getReusedCount() {
+		return this.reusedCount.get();
+	}
+
+	/**
+	 * Проверяет, не закрыто ли соединение сервером за время простоя.
+	 * 
+	 * @param socket
+	 * @return 'true', если соединение больше нельзя использовать.
+	 */
+	private boolean isStale(Socket socket) {
+		boolean result = true;
+		if (!socket.isClosed() && !socket.isInputShutdown()) {
+			try {
+				int soTimeout = socket.getSoTimeout();
+				try {
+					socket.setSoTimeout(1);
+					InputStream in = socket.getInputStream();
+					// сервер не должен ничего присылать между запросами
+					in.read();
+				} catch (SocketTimeoutException e) {
+					result = false;
+				} finally {
+					socket.setSoTimeout(soTimeout);
+				}
+			} catch (IOException e) {
+				// соединение неработоспособно
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Возвращает соединение в пул после выполнения запроса.
+	 * 
+	 * @param key
+	 *            ключ хоста, использованный в
+	 *            {@link #acquire(String, long)}.
+	 * @param socket
+	 *            соединение (может быть 'null', если соединение установить не
+	 *            удалось).
+	 * @param reusable
+	 *            'true', если соединение можно использовать повторно,
+	 *            'false' - соединение закрывается.
+	 */
+	public void release(String key, Socket socket, boolean reusable) {
+		HostEntry entry = this.getHostEntry(key);
+		try {
+			if (socket != null) {
+				if (reusable && !socket.isClosed()) {
+					entry.idle.offerFirst(new IdleConnection(socket, System
+							.currentTimeMillis()));
+				} else {
+					this.closeQuietly(socket);
+				}
+			}
+		} finally {
+			entry.permits.release();
+		}
+	}
+
+	/**
+	 * Время (мсек.), по истечении которого простаивающее соединение
+	 * закрывается. По умолчанию - 15000 мсек.
+	 * 
+	 * @param idleTimeout
+	 *            Время (мсек.), по истечении которого простаивающее
+	 *            соединение закрывается.
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Максимальное количество одновременно используемых соединений с одним
+	 * хостом. По умолчанию - 5. Изменение влияет только на хосты, к которым
+	 * пул еще не обращался.
+	 * 
+	 * @param maxConnectionsPerHost
+	 *            Максимальное количество одновременно используемых соединений
+	 *            с одним хостом.
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+}
@@ -3,35 +3,34 @@
  */
 package lv.flancer.wmt.xml;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.InterruptedIOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
 import java.security.KeyManagementException;
-import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 
-import javax.net.ssl.KeyManager;
-import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.SSLSocket;
 
 /**
  * <p>
@@ -72,6 +71,17 @@ import javax.net.ssl.TrustManagerFactory;
  * System.out.println(&quot;Response:\n&quot; + response);
  * </pre>
  * 
+ * <p>
+ * Если задан пул соединений ({@link #setConnectionPool(HttpConnectionPool)}),
+ * запросы отправляются по протоколу HTTP/1.1 с постоянным (keep-alive)
+ * соединением, которое после получения ответа возвращается в пул и повторно
+ * используется следующими запросами к тому же серверу.
+ * </p>
+ * <p>
+ * Соединение может устанавливаться заранее, параллельно с подготовкой запроса
+ * вызывающей стороной (см. {@link #prepareConnection(Executor)}).
+ * </p>
+ * 
  * @author Alex Gusev <flancer64@gmail.com>
  * @version 1.0
  * 
@@ -88,26 +98,105 @@ public class HttpRequester {
 		GET, POST
 	}
 
+	private final static Charset ASCII = Charset.forName("US-ASCII");
+	/**
+	 * Окончание строки запроса и заголовок соединения без пула соединений.
+	 */
+	private final static byte[] CLOSE_VERSION = " HTTP/1.0\r\nProxy-Connection: close\r\n"
+			.getBytes(ASCII);
 	private final static String DEFAULT_CAHRSET = "utf-8";
-	private final static String DEFAULT_SECURE_RANDOM_ALGORITHM = "SHA1PRNG";
-	private final static String DEFAULT_SSL_PROTOCOL = "SSLv3";
+	/**
+	 * Заголовки User-Agent, From и Host по имени сервера. Формируются при
+	 * первом запросе к серверу.
+	 */
+	private final static Map<String, byte[]> HOST_HEADERS = new ConcurrentHashMap<String, byte[]>();
+	/**
+	 * Окончание строки запроса и заголовок соединения для пула соединений.
+	 */
+	private final static byte[] KEEP_ALIVE_VERSION = " HTTP/1.1\r\nConnection: keep-alive\r\n"
+			.getBytes(ASCII);
+	/**
+	 * Заголовки POST-запроса до значения Content-Length.
+	 */
+	private final static byte[] POST_HEADERS = "Content-Type: application/x-www-form-urlencoded\r\nContent-Length: "
+			.getBytes(ASCII);
 
+	/**
+	 * Копирует массив в буфер.
+	 * 
+	 * @param buffer
+	 * @param pos
+	 *            позиция в буфере.
+	 * @param data
+	 * @return позиция в буфере после скопированных данных.
+	 */
+	private static int put(byte[] buffer, int pos, byte[] data) {
+		System.arraycopy(data, 0, buffer, pos, data.length);
+		return pos + data.length;
+	}
+	/**
+	 * Исполнитель, в котором соединения устанавливаются заранее, создается
+	 * при первом обращении.
+	 */
+	private static ExecutorService connectExecutor;
+
+	/**
+	 * Исполнитель для предварительного установления соединений (
+	 * {@link #prepareConnection(Executor)}). Потоки исполнителя заняты только
+	 * установлением соединения и SSL-рукопожатием.
+	 * 
+	 * @return Исполнитель для предварительного установления соединений.
+	 */
+	public static synchronized ExecutorService getConnectExecutor() {
+		if (connectExecutor == null) {
+			connectExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable task) {
+					Thread result = new Thread(task, "HttpRequester-connect");
+					result.setDaemon(true);
+					return result;
+				}
+			});
+		}
+		return connectExecutor;
+	}
+
+	/**
+	 * Пул постоянных соединений. Если не задан - для каждого запроса
+	 * устанавливается новое соединение (HTTP/1.0).
+	 */
+	private HttpConnectionPool connectionPool = null;
 	/**
 	 * Адрес сервера для установления соединения.
 	 */
 	private InetAddress host;
 	/**
-	 * Менеджеры ключей для установления защищенного соединения (SSL).
+	 * Имя сервера, переданное в конструктор.
 	 */
-	private KeyManager[] keyManagers = null;
+	private String hostName;
 	/**
 	 * Порт сервера для установления соединения.
 	 */
 	private int port;
+	/**
+	 * Соединение, устанавливаемое заранее для следующего запроса (см.
+	 * {@link #prepareConnection(Executor)}).
+	 */
+	private CompletableFuture<Socket> preparedConnection = null;
+	/**
+	 * Последний полученный от сервера ответ (статус, заголовки, тело).
+	 */
+	private HttpResponseReader response;
 	/**
 	 * Запрос, отправленный на сервер, сохраняется для диагностических целей.
+	 * Формируется при первом обращении из {@link #requestData}.
 	 */
 	private String request;
+	/**
+	 * Последний отправленный запрос в том виде, в котором он передан на
+	 * сервер.
+	 */
+	private byte[] requestData;
 	/**
 	 * Кодировка, в которую перекодируются из UTF-8 символы запроса при отправке
 	 * на сервер.
@@ -124,14 +213,15 @@ public class HttpRequester {
 	 */
 	private boolean securedResuest;
 	/**
-	 * Timeout (в мсек.) для установления соединения. По умолчанию - 30000.
+	 * SSL-контекст для установления защищенного соединения. Если не задан -
+	 * используется разделяемый контекст с системными хранилищами ключей и
+	 * сертификатов ({@link SslContextCache#getDefaultContext()}).
 	 */
-	private int timeout = 30000;
+	private SSLContext sslContext = null;
 	/**
-	 * Менеджеры доверенных сертификатов для установления защищенного соединения
-	 * (SSL).
+	 * Timeout (в мсек.) для установления соединения. По умолчанию - 30000.
 	 */
-	private TrustManager[] trustManagers = null;
+	private int timeout = 30000;
 
 	/**
 	 * Создает экземпляр класса с кодировкой UTF-8 для запроса/ответа.
@@ -144,6 +234,7 @@ public class HttpRequester {
 	 */
 	public HttpRequester(String host, int port) throws UnknownHostException {
 		this.host = InetAddress.getByName(host);
+		this.hostName = host;
 		this.port = port;
 		this.requestCharset = Charset.forName(DEFAULT_CAHRSET);
 		this.responseCharset = Charset.forName(DEFAULT_CAHRSET);
@@ -151,7 +242,10 @@ public class HttpRequester {
 	}
 
 	/**
-	 * Формирует запрос в виде строки в зависимости от его типа (GET или POST).
+	 * Формирует запрос целиком (строка запроса, заголовки, пустая строка и
+	 * тело) в зависимости от типа запроса (GET или POST). Общие заголовки
+	 * берутся готовыми из {@link #HOST_HEADERS}, Content-Length - длина тела в
+	 * байтах.
 	 * 
 	 * @param requestAddress
 	 *            адрес на сервере (URL).
@@ -161,66 +255,43 @@ public class HttpRequester {
 	 *            тип запроса (GET или POST0.
 	 * @return
 	 */
-	private String composeCommonRequest(String requestAddress,
-			String requestBody, HttpRequestType requestType) {
-		String result = null;
-		// формируем строку запроса
-		this.request = "";
-		this.request += requestType + " " + requestAddress + " HTTP/1.0\r\n";
-		this.request += "Proxy-Connection: close\r\n";
-		this.request += "User-Agent: " + this.getClass().getCanonicalName()
-				+ "\r\n";
-		this.request += "From: info@flancer.lv\r\n";
-		this.request += "Host: " + this.host.getHostName() + "\r\n";
+	private byte[] composeRequest(String requestAddress, byte[] requestBody,
+			HttpRequestType requestType) {
+		byte[] address = (requestType + " " + requestAddress)
+				.getBytes(this.requestCharset);
+		byte[] version = (this.connectionPool != null) ? KEEP_ALIVE_VERSION
+				: CLOSE_VERSION;
+		byte[] headers = this.getHostHeaders();
+		int bodyLength = (requestBody != null) ? requestBody.length : 0;
+		int digits = 1;
+		for (int rest = bodyLength; rest >= 10; rest /= 10) {
+			digits++;
+		}
+		int length = address.length + version.length + headers.length + 2
+				+ bodyLength;
+		if (requestType == HttpRequestType.POST) {
+			length += POST_HEADERS.length + digits + 2;
+		}
+		byte[] result = new byte[length];
+		int pos = put(result, 0, address);
+		pos = put(result, pos, version);
+		pos = put(result, pos, headers);
 		// поля для POST-запроса
 		if (requestType == HttpRequestType.POST) {
-			this.request += "Content-Type: application/x-www-form-urlencoded\r\n";
-			this.request += "Content-Length: " + requestBody.length() + "\r\n";
-			// конец HTTP-заголовков
-			this.request += "\r\n";
-			this.request += requestBody;
-		} else {
-			// GET
-			this.request += "\r\n";
+			pos = put(result, pos, POST_HEADERS);
+			pos += digits;
+			for (int i = 1, rest = bodyLength; i <= digits; i++, rest /= 10) {
+				result[pos - i] = (byte) ('0' + rest % 10);
+			}
+			result[pos++] = '\r';
+			result[pos++] = '\n';
+		}
+		// конец HTTP-заголовков
+		result[pos++] = '\r';
+		result[pos++] = '\n';
+		if (requestBody != null) {
+			System.arraycopy(requestBody, 0, result, pos, bodyLength);
 		}
-		result = this.request;
-		return result;
-	}
-
-	/**
-	 * Формирует GET-запрос в соответствующей кодировке и возвращает его в виде
-	 * буфера.
-	 * 
-	 * @param requestAddress
-	 * @param charset
-	 * @return
-	 */
-	private ByteBuffer composeGetRequestBuffer(String requestAddress,
-			Charset requestCharset) {
-		ByteBuffer result = null;
-		// формируем строку запроса
-		String request = this.composeCommonRequest(requestAddress, null,
-				HttpRequestType.GET);
-		result = requestCharset.encode(request);
-		return result;
-	}
-
-	/**
-	 * Формирует POST-запрос в соответствующей кодировке и возвращает его в виде
-	 * буфера.
-	 * 
-	 * @param requestAddress
-	 * @param requestBody
-	 * @param requestCharset
-	 * @return
-	 */
-	private ByteBuffer composePostRequestBuffer(String requestAddress,
-			String requestBody, Charset requestCharset) {
-		ByteBuffer result = null;
-		// формируем строку запроса
-		String request = this.composeCommonRequest(requestAddress, requestBody,
-				HttpRequestType.POST);
-		result = requestCharset.encode(request);
 		return result;
 	}
 
@@ -252,8 +323,115 @@ public class HttpRequester {
 	public String doPost(String requestAddress, String requestBody)
 			throws IOException, KeyManagementException,
 			NoSuchAlgorithmException {
-		return this
-				.doRequest(requestAddress, requestBody, HttpRequestType.POST);
+		return this.doRequest(requestAddress,
+				requestBody.getBytes(this.requestCharset),
+				HttpRequestType.POST);
+	}
+
+	/**
+	 * Посылает серверу POST-запрос по адресу requestAddress и передает тело
+	 * ответа обработчику в виде потока, читаемого непосредственно из
+	 * соединения (без накопления ответа в памяти).
+	 * 
+	 * @param requestAddress
+	 * @param requestBody
+	 * @param consumer
+	 *            обработчик тела ответа.
+	 * @return строка статуса и заголовки ответа.
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 * @throws KeyManagementException
+	 * @throws Exception
+	 *             ошибка, возникшая в обработчике тела ответа.
+	 */
+	public String doPost(String requestAddress, String requestBody,
+			HttpBodyConsumer consumer) throws Exception {
+		return this.doPost(requestAddress,
+				requestBody.getBytes(this.requestCharset), consumer);
+	}
+
+	/**
+	 * Посылает серверу POST-запрос, тело которого уже закодировано вызывающей
+	 * стороной (например, XML-документ, сформированный
+	 * {@link lv.flancer.wmt.xml.req.XmlRequestWriter}), и передает тело
+	 * ответа обработчику (см. {@link #doPost(String, String, HttpBodyConsumer)}
+	 * ). Байты тела отправляются без промежуточных строк и перекодирования.
+	 * 
+	 * @param requestAddress
+	 * @param requestBody
+	 *            тело запроса в кодировке, объявленной в самом теле.
+	 * @param consumer
+	 *            обработчик тела ответа.
+	 * @return строка статуса и заголовки ответа.
+	 * @throws Exception
+	 */
+	public String doPost(String requestAddress, byte[] requestBody,
+			HttpBodyConsumer consumer) throws Exception {
+		return this.doRequest(requestAddress, requestBody, null,
+				HttpRequestType.POST, consumer);
+	}
+
+	/**
+	 * Посылает серверу POST-запрос, тело которого формируется после
+	 * установления соединения, непосредственно перед отправкой, и передает
+	 * тело ответа обработчику (см.
+	 * {@link #doPost(String, byte[], HttpBodyConsumer)}). Ожидание соединения
+	 * (в т.ч. разрешения пула) не входит в интервал между формированием и
+	 * отправкой запроса.
+	 * 
+	 * @param requestAddress
+	 * @param producer
+	 *            источник тела запроса.
+	 * @param consumer
+	 *            обработчик тела ответа.
+	 * @return строка статуса и заголовки ответа.
+	 * @throws Exception
+	 */
+	public String doPost(String requestAddress, HttpBodyProducer producer,
+			HttpBodyConsumer consumer) throws Exception {
+		return this.doRequest(requestAddress, null, producer,
+				HttpRequestType.POST, consumer);
+	}
+
+	/**
+	 * Ожидает соединение, устанавливаемое заранее.
+	 * 
+	 * @param prepared
+	 * @return установленное соединение.
+	 * @throws IOException
+	 *             соединение установить не удалось (
+	 *             {@link HttpConnectException}) или ожидание прервано.
+	 */
+	private Socket awaitConnection(CompletableFuture<Socket> prepared)
+			throws IOException {
+		try {
+			return prepared.get();
+		} catch (InterruptedException e) {
+			this.releasePreparedConnection(prepared);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for connection.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof HttpConnectException) {
+				throw (HttpConnectException) cause;
+			}
+			throw new HttpConnectException(this.hostName, new IOException(
+					cause));
+		}
+	}
+
+	/**
+	 * Отказывается от соединения, установленного заранее, если оно не было
+	 * использовано запросом: соединение возвращается в пул (или закрывается,
+	 * если пул не задан).
+	 */
+	public void cancelPreparedConnection() {
+		CompletableFuture<Socket> prepared = this.preparedConnection;
+		this.preparedConnection = null;
+		if (prepared != null) {
+			this.releasePreparedConnection(prepared);
+		}
 	}
 
 	/**
@@ -267,33 +445,119 @@ public class HttpRequester {
 	 * @throws NoSuchAlgorithmException
 	 * @throws IOException
 	 */
-	private String doRequest(String requestAddress, String requestBody,
+	private String doRequest(String requestAddress, byte[] requestBody,
 			HttpRequestType requestType) throws KeyManagementException,
 			NoSuchAlgorithmException, IOException {
+		try {
+			return this.doRequest(requestAddress, requestBody, null,
+					requestType, null);
+		} catch (IOException e) {
+			throw e;
+		} catch (KeyManagementException e) {
+			throw e;
+		} catch (NoSuchAlgorithmException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			// без обработчика тела других исключений не возникает
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Выполняет запрос в зависимости от его типа (GET или POST). Если задан
+	 * пул соединений {@link #connectionPool}, соединение берется из пула и
+	 * возвращается в него после получения ответа (если сервер не потребовал
+	 * его закрыть).
+	 * 
+	 * @param requestAddress
+	 * @param requestBody
+	 * @param producer
+	 *            источник тела запроса, формируемого после установления
+	 *            соединения; если 'null' - отправляется requestBody.
+	 * @param requestType
+	 * @param consumer
+	 *            обработчик тела ответа; если 'null' - ответ накапливается в
+	 *            памяти и возвращается в виде строки.
+	 * @return ответ сервера в виде строки (заголовки и тело) или только
+	 *         заголовки, если тело передано обработчику.
+	 * @throws Exception
+	 */
+	private String doRequest(String requestAddress, byte[] requestBody,
+			HttpBodyProducer producer, HttpRequestType requestType,
+			HttpBodyConsumer consumer) throws Exception {
 		String result = null;
-		// устанавливаем соединение
-		Socket socket = this.initSocket();
-		if (socket.isConnected()) {
-			// готовим запрос
-			ByteBuffer buff;
-			if (requestType == HttpRequestType.POST) {
-				buff = this.composePostRequestBuffer(requestAddress,
-						requestBody, this.requestCharset);
+		String key = null;
+		Socket socket = null;
+		boolean reusable = false;
+		CompletableFuture<Socket> prepared = this.preparedConnection;
+		this.preparedConnection = null;
+		if (this.connectionPool != null) {
+			key = this.getPoolKey();
+		}
+		if (prepared != null) {
+			// соединение установлено заранее (разрешение пула уже получено)
+			socket = this.awaitConnection(prepared);
+		} else if (this.connectionPool != null) {
+			try {
+				socket = this.connectionPool.acquire(key, this.timeout);
+			} catch (IOException e) {
+				throw new HttpConnectException(this.hostName, e);
+			}
+		}
+		try {
+			// устанавливаем соединение (запрос еще не отправлен, ошибка
+			// допускает повтор любого запроса)
+			if (socket == null) {
+				try {
+					socket = this.initSocket();
+				} catch (IOException e) {
+					throw new HttpConnectException(this.hostName, e);
+				}
+				if (this.connectionPool != null) {
+					this.connectionPool.connectionCreated();
+				}
+			}
+			try {
+				// тело запроса формируется, когда соединение уже установлено
+				if (producer != null) {
+					requestBody = producer.produce();
+				}
+				// готовим запрос (текст запроса для диагностики формируется
+				// только по требованию, см. getRequest())
+				byte[] data = this.composeRequest(requestAddress, requestBody,
+						requestType);
+				this.request = null;
+				this.requestData = data;
+				// заголовки и тело уходят одной записью (один TCP-сегмент или
+				// одна SSL-запись для небольших запросов)
+				OutputStream out = socket.getOutputStream();
+				out.write(data);
+				out.flush();
+			} finally {
+				if (producer != null) {
+					producer.sent();
+				}
+			}
+			// считываем ответ
+			if (consumer == null) {
+				result = this.readResponse(socket.getInputStream());
 			} else {
-				buff = this.composeGetRequestBuffer(requestAddress,
-						this.requestCharset);
+				this.response = new HttpResponseReader(socket.getInputStream());
+				this.response.readHead();
+				InputStream body = this.response.getBodyStream();
+				consumer.consume(this.response, body);
+				body.close();
+				result = this.response.getHeadText();
+			}
+			reusable = this.response.isKeepAlive();
+		} finally {
+			if (this.connectionPool != null) {
+				this.connectionPool.release(key, socket, reusable);
+			} else if (socket != null) {
+				socket.close();
 			}
-			// создаем канал для записи запроса
-			WritableByteChannel outChannel = Channels.newChannel(socket
-					.getOutputStream());
-			outChannel.write(buff);
-			// создаем канал для чтения ответа
-			ReadableByteChannel inChannel = Channels.newChannel(socket
-					.getInputStream());
-			String response = this.parseResponse(inChannel,
-					this.responseCharset);
-			socket.close();
-			result = response;
 		}
 		return result;
 	}
@@ -307,6 +571,35 @@ public class HttpRequester {
 		return host;
 	}
 
+	/**
+	 * Пул постоянных соединений. Если не задан - для каждого запроса
+	 * устанавливается новое соединение (HTTP/1.0).
+	 * 
+	 * @return Пул постоянных соединений.
+	 */
+	public HttpConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	/**
+	 * Ключ, под которым соединения с сервером хранятся в пуле. Соединения,
+	 * установленные с разными сертификатами, не смешиваются: в ключ входит
+	 * идентификатор SSL-контекста (
+	 * {@link SslContextCache#getContextId(SSLContext)}).
+	 * 
+	 * @return Ключ соединения в пуле.
+	 */
+	private String getPoolKey() {
+		String result = this.hostName + ":" + this.port;
+		if (this.securedResuest) {
+			result += "/ssl";
+			if (this.sslContext != null) {
+				result += "/" + SslContextCache.getContextId(this.sslContext);
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Порт сервера для установления соединения.
 	 * 
@@ -316,6 +609,24 @@ public class HttpRequester {
 		return port;
 	}
 
+	/**
+	 * Заголовки User-Agent, From и Host запросов к серверу. Значение Host -
+	 * имя сервера, переданное в конструктор (без обратного разрешения адреса).
+	 * 
+	 * @return
+	 */
+	private byte[] getHostHeaders() {
+		byte[] result = HOST_HEADERS.get(this.hostName);
+		if (result == null) {
+			String headers = "User-Agent: " + HttpRequester.class.getCanonicalName()
+					+ "\r\nFrom: info@flancer.lv\r\nHost: " + this.hostName
+					+ "\r\n";
+			result = headers.getBytes(ASCII);
+			HOST_HEADERS.put(this.hostName, result);
+		}
+		return result;
+	}
+
 	/**
 	 * Запрос, отправленный на сервер, сохраняется для диагностических целей.
 	 * 
@@ -323,7 +634,19 @@ public class HttpRequester {
 	 *         диагностических целей.
 	 */
 	public String getRequest() {
-		return request;
+		if ((this.request == null) && (this.requestData != null)) {
+			this.request = new String(this.requestData, this.requestCharset);
+		}
+		return this.request;
+	}
+
+	/**
+	 * Код статуса последнего полученного от сервера ответа.
+	 * 
+	 * @return Код статуса последнего ответа или 0, если ответ не был получен.
+	 */
+	public int getResponseStatusCode() {
+		return (this.response != null) ? this.response.getStatusCode() : 0;
 	}
 
 	/**
@@ -348,6 +671,16 @@ public class HttpRequester {
 		return responseCharset;
 	}
 
+	/**
+	 * SSL-контекст для установления защищенного соединения.
+	 * 
+	 * @return SSL-контекст для установления защищенного соединения или 'null',
+	 *         если используется контекст по умолчанию.
+	 */
+	public SSLContext getSslContext() {
+		return sslContext;
+	}
+
 	/**
 	 * Timeout (в мсек.) для установления соединения. По умолчанию - 30000.
 	 * 
@@ -373,17 +706,21 @@ public class HttpRequester {
 			KeyManagementException, IOException {
 		Socket result = null;
 		if (this.securedResuest) {
-			// инициируем контекст для работы SSL
-			SSLContext sslContext = SSLContext
-					.getInstance(DEFAULT_SSL_PROTOCOL);
-			SecureRandom random = SecureRandom
-					.getInstance(DEFAULT_SECURE_RANDOM_ALGORITHM);
-			sslContext.init(keyManagers, trustManagers, random);
-			// создаем SSL-сокет
-			SSLSocketFactory fac = sslContext.getSocketFactory();
-			Socket sock = fac.createSocket();
+			// разделяемый контекст хранит кэш SSL-сессий
+			SSLContext context = (this.sslContext != null) ? this.sslContext
+					: SslContextCache.getDefaultContext();
+			Socket plain = new Socket();
 			SocketAddress endpoint = new InetSocketAddress(this.host, this.port);
-			sock.connect(endpoint, this.timeout);
+			plain.connect(endpoint, this.timeout);
+			// SSL-сокет создается поверх установленного соединения с указанием
+			// имени сервера: по нему ищется сессия для возобновления (и
+			// передается SNI).
+			SSLSocket sock = (SSLSocket) context.getSocketFactory()
+					.createSocket(plain, this.hostName, this.port, true);
+			SslContextCache.enableTlsProtocols(sock);
+			// рукопожатие выполняется сразу, чтобы его ошибки относились к
+			// установлению соединения, а не к отправке запроса
+			sock.startHandshake();
 			result = sock;
 		} else {
 			// не защищенное соединение
@@ -408,7 +745,8 @@ public class HttpRequester {
 	 * системного). Собственное хранилище ключей используется при авторизации по
 	 * персональным сертификатам. Собственное хранилище доверенных сертификатов
 	 * используется в случае работы с серверами, имеющими собственную систему
-	 * Certificate Authority.
+	 * Certificate Authority. Хранилище загружается один раз, полученный
+	 * SSL-контекст разделяется между запросами ({@link SslContextCache}).
 	 * 
 	 * @param pathToStore
 	 * @param password
@@ -424,55 +762,114 @@ public class HttpRequester {
 	public void loadKeyStore(String pathToStore, String password,
 			boolean trustStoreOnly) throws KeyStoreException,
 			NoSuchAlgorithmException, CertificateException,
-			FileNotFoundException, IOException, UnrecoverableKeyException {
+			FileNotFoundException, IOException, UnrecoverableKeyException,
+			KeyManagementException {
 		if ((pathToStore != null) && (password != null)) {
-			// подгружаем файл ключей
-			KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
-			keyStore.load(new FileInputStream(pathToStore.trim()),
-					password.toCharArray());
-			// инициируем менеджеры ключей, если надо
-			if (!trustStoreOnly) {
-				KeyManagerFactory kmf = KeyManagerFactory
-						.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-				kmf.init(keyStore, password.toCharArray());
-				this.keyManagers = kmf.getKeyManagers();
-			}
-			// инициируем менеджеры сертификатов
-			TrustManagerFactory tmf = TrustManagerFactory
-					.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-			tmf.init(keyStore);
-			this.trustManagers = tmf.getTrustManagers();
+			this.sslContext = SslContextCache.getContext(pathToStore,
+					password, trustStoreOnly);
 		}
 	}
 
 	/**
-	 * Считывает из канала ответ от сервера и преобразует его в строку в
-	 * соответствующей кодировке.
+	 * Начинает установление соединения (получение соединения из пула,
+	 * TCP-соединение и SSL-рукопожатие) в исполнителе, не дожидаясь отправки
+	 * запроса. Следующий запрос использует это соединение, поэтому подготовка
+	 * запроса вызывающей стороной (подпись, формирование XML) выполняется
+	 * одновременно с установлением соединения. Если запрос не будет
+	 * отправлен, следует вызвать {@link #cancelPreparedConnection()}.
+	 * 
+	 * @param executor
+	 *            исполнитель, в котором устанавливается соединение (например,
+	 *            {@link #getConnectExecutor()}).
+	 */
+	public void prepareConnection(Executor executor) {
+		this.cancelPreparedConnection();
+		final CompletableFuture<Socket> result = new CompletableFuture<Socket>();
+		final HttpConnectionPool pool = this.connectionPool;
+		final String key = (pool != null) ? this.getPoolKey() : null;
+		final int timeout = this.timeout;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Socket socket = null;
+				boolean permit = false;
+				try {
+					if (pool != null) {
+						socket = pool.acquire(key, timeout);
+						permit = true;
+					}
+					if (socket == null) {
+						socket = HttpRequester.this.initSocket();
+						if (pool != null) {
+							pool.connectionCreated();
+						}
+					}
+					result.complete(socket);
+				} catch (Exception e) {
+					if (permit) {
+						pool.release(key, null, false);
+					}
+					result.completeExceptionally(new HttpConnectException(
+							HttpRequester.this.hostName,
+							(e instanceof IOException) ? (IOException) e
+									: new IOException(e)));
+				}
+			}
+		});
+		this.preparedConnection = result;
+	}
+
+	/**
+	 * Считывает из потока ответ от сервера (до конца тела, определяемого
+	 * заголовками ответа) и возвращает его в виде строки: заголовки и тело,
+	 * декодированное из кодировки {@link #responseCharset}.
 	 * 
-	 * @param schannel
-	 * @param charset
+	 * @param in
 	 * @return
 	 * @throws IOException
 	 */
-	private String parseResponse(ReadableByteChannel schannel, Charset charset)
-			throws IOException {
-		String result = null;
-		// буфер для получения бинарных данных из канала
-		ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
-		CharBuffer charBuffer = CharBuffer.allocate(1024);
-		// преобразуем кодировку
-		CharsetDecoder decoder = charset.newDecoder();
-		String response = "";
-		while ((schannel.read(buffer)) != -1) {
-			buffer.flip();
-			decoder.decode(buffer, charBuffer, false);
-			charBuffer.flip();
-			response += charBuffer.toString();
-			buffer.clear();
-			charBuffer.clear();
-		}
-		result = response;
-		return result;
+	private String readResponse(InputStream in) throws IOException {
+		this.response = new HttpResponseReader(in);
+		this.response.readHead();
+		this.response.readBody();
+		return this.response.getHeadText()
+				+ this.response.getBodyAsString(this.responseCharset);
+	}
+
+	/**
+	 * Возвращает в пул (или закрывает) соединение, установленное заранее,
+	 * когда (и если) оно будет установлено.
+	 * 
+	 * @param prepared
+	 */
+	private void releasePreparedConnection(CompletableFuture<Socket> prepared) {
+		final HttpConnectionPool pool = this.connectionPool;
+		final String key = (pool != null) ? this.getPoolKey() : null;
+		prepared.thenAccept(new Consumer<Socket>() {
+			@Override
+			public void accept(Socket socket) {
+				if (pool != null) {
+					pool.release(key, socket, true);
+				} else {
+					try {
+						socket.close();
+					} catch (IOException e) {
+						// do nothing
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Пул постоянных соединений. Если задан, запросы выполняются по протоколу
+	 * HTTP/1.1 с повторным использованием соединений.
+	 * 
+	 * @param connectionPool
+	 *            Пул постоянных соединений.
+	 */
+	public void setConnectionPool(HttpConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
 	}
 
 	/**
@@ -555,6 +952,18 @@ public class HttpRequester {
 		this.securedResuest = securedResuest;
 	}
 
+	/**
+	 * SSL-контекст для установления защищенного соединения. Для повторного
+	 * использования SSL-сессий контекст должен разделяться между запросами
+	 * (см. {@link SslContextCache}).
+	 * 
+	 * @param sslContext
+	 *            SSL-контекст для установления защищенного соединения.
+	 */
+	public void setSslContext(SSLContext sslContext) {
+		this.sslContext = sslContext;
+	}
+
 	/**
 	 * Timeout (в мсек.) для установления соединения. По умолчанию - 30000.
 	 * 
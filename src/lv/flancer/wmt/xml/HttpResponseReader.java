@@ -0,0 +1,642 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Считывает из потока один HTTP-ответ: строку статуса, заголовки и тело.
+ * Граница тела определяется заголовком "Content-Length" или кодированием
+ * "Transfer-Encoding: chunked"; если ни то, ни другое не указано, тело
+ * считывается до закрытия соединения сервером. Тело накапливается в
+ * расширяемом байтовом буфере и декодируется в строку один раз.
+ * </p>
+ * <p>
+ * Т.к. ответ считывается ровно до своего окончания, соединение после чтения
+ * может быть использовано повторно (см. {@link #isKeepAlive()}).
+ * </p>
+ * <p>
+ * Вместо накопления в буфере тело можно читать потоком
+ * ({@link #getBodyStream()}), например, передавая его непосредственно
+ * XML-парсеру: в этом случае объем памяти не зависит от размера ответа.
+ * </p>
+ * 
+ * <pre>
+ * HttpResponseReader resp = new HttpResponseReader(socket.getInputStream());
+ * resp.readHead();
+ * resp.readBody();
+ * if (resp.getStatusCode() == 200) {
+ * 	String body = resp.getBodyAsString(Charset.forName(&quot;windows-1251&quot;));
+ * }
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class HttpResponseReader {
+	/**
+	 * Поток тела ответа, кодированного "Transfer-Encoding: chunked".
+	 */
+	private class ChunkedBodyStream extends InputStream {
+		/**
+		 * Признак окончания тела (получен блок нулевой длины).
+		 */
+		private boolean eof = false;
+		/**
+		 * Признак того, что считан хотя бы один блок (перед следующим блоком
+		 * нужно пропустить CRLF).
+		 */
+		private boolean started = false;
+		/**
+		 * Количество непрочитанных байтов текущего блока.
+		 */
+		private long remaining = 0;
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(remaining, in.available());
+		}
+
+		@Override
+		public void close() throws IOException {
+			drain(this);
+		}
+
+		/**
+		 * Переходит к следующему блоку, если текущий прочитан полностью.
+		 * 
+		 * @return 'false', если тело закончилось.
+		 * @throws IOException
+		 */
+		private boolean nextChunk() throws IOException {
+			if (!this.eof && (this.remaining == 0)) {
+				if (this.started) {
+					// CRLF после блока
+					readLine();
+				}
+				this.started = true;
+				this.remaining = readChunkSize();
+				if (this.remaining == 0) {
+					// пропускаем завершающие заголовки (trailer)
+					while (readLine().length() > 0) {
+						continue;
+					}
+					this.eof = true;
+					bodyComplete = true;
+				}
+			}
+			return !this.eof;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!this.nextChunk()) {
+				return -1;
+			}
+			int result = in.read();
+			if (result == -1) {
+				throw new IOException("Unexpected end of HTTP response.");
+			}
+			this.remaining--;
+			return result;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!this.nextChunk()) {
+				return -1;
+			}
+			int result = in.read(b, off, (int) Math.min(len, this.remaining));
+			if (result == -1) {
+				throw new IOException("Unexpected end of HTTP response.");
+			}
+			this.remaining -= result;
+			return result;
+		}
+	}
+
+	/**
+	 * Поток тела ответа известной длины ("Content-Length").
+	 */
+	private class FixedLengthBodyStream extends InputStream {
+		/**
+		 * Количество непрочитанных байтов тела.
+		 */
+		private long remaining;
+
+		private FixedLengthBodyStream(long length) {
+			this.remaining = length;
+			if (length == 0) {
+				bodyComplete = true;
+			}
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(this.remaining, in.available());
+		}
+
+		@Override
+		public void close() throws IOException {
+			drain(this);
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (this.remaining == 0) {
+				return -1;
+			}
+			int result = in.read();
+			if (result == -1) {
+				throw new IOException("Unexpected end of HTTP response.");
+			}
+			this.consumed(1);
+			return result;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (this.remaining == 0) {
+				return -1;
+			}
+			int result = in.read(b, off, (int) Math.min(len, this.remaining));
+			if (result == -1) {
+				throw new IOException("Unexpected end of HTTP response.");
+			}
+			this.consumed(result);
+			return result;
+		}
+
+		private void consumed(int count) {
+			this.remaining -= count;
+			if (this.remaining == 0) {
+				bodyComplete = true;
+			}
+		}
+	}
+
+	/**
+	 * Поток тела ответа, ограниченного закрытием соединения сервером.
+	 */
+	private class UntilCloseBodyStream extends InputStream {
+		@Override
+		public int available() throws IOException {
+			return in.available();
+		}
+
+		@Override
+		public void close() throws IOException {
+			// соединение все равно не может быть использовано повторно
+		}
+
+		@Override
+		public int read() throws IOException {
+			return in.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return in.read(b, off, len);
+		}
+	}
+
+	/**
+	 * Начальный размер буфера для тела ответа неизвестной длины.
+	 */
+	private final static int INITIAL_BODY_CAPACITY = 4096;
+	/**
+	 * Тело ответа.
+	 */
+	private byte[] body = new byte[0];
+	/**
+	 * Признак того, что тело ответа прочитано полностью.
+	 */
+	private boolean bodyComplete = false;
+	/**
+	 * Количество байтов тела ответа в {@link #body}.
+	 */
+	private int bodyLength = 0;
+	/**
+	 * Признак кодирования тела "Transfer-Encoding: chunked".
+	 */
+	private boolean chunked;
+	/**
+	 * Длина тела из заголовка "Content-Length", -1 - длина не указана.
+	 */
+	private long contentLength = -1;
+	/**
+	 * Строка статуса и заголовки ответа в исходном виде (включая завершающую
+	 * пустую строку).
+	 */
+	private String headText;
+	/**
+	 * Заголовки ответа, имена заголовков приведены к нижнему регистру.
+	 */
+	private final Map<String, String> headers = new LinkedHashMap<String, String>();
+	/**
+	 * Поток, из которого считывается ответ.
+	 */
+	private final InputStream in;
+	/**
+	 * Признак того, что после ответа соединение остается открытым.
+	 */
+	private boolean keepAlive;
+	/**
+	 * Версия протокола из строки статуса ("HTTP/1.1").
+	 */
+	private String protocol;
+	/**
+	 * Текстовое описание кода статуса.
+	 */
+	private String reasonPhrase;
+	/**
+	 * Код статуса ответа.
+	 */
+	private int statusCode;
+
+	/**
+	 * Кодировка по имени (имя может быть заключено в кавычки).
+	 * 
+	 * @param name
+	 * @return кодировка или 'null', если она не поддерживается.
+	 */
+	static Charset forName(String name) {
+		String value = name.trim();
+		if ((value.length() > 1)
+				&& ((value.charAt(0) == '"') || (value.charAt(0) == '\''))
+				&& (value.charAt(value.length() - 1) == value.charAt(0))) {
+			value = value.substring(1, value.length() - 1);
+		}
+		try {
+			return Charset.forName(value);
+		} catch (IllegalArgumentException e) {
+			// недопустимое или неподдерживаемое имя кодировки
+			return null;
+		}
+	}
+
+	/**
+	 * @param in
+	 *            поток, из которого считывается ответ (например, входной поток
+	 *            сокета).
+	 */
+	public HttpResponseReader(InputStream in) {
+		this.in = new BufferedInputStream(in);
+	}
+
+	/**
+	 * Дочитывает (и отбрасывает) остаток тела ответа, чтобы соединение можно
+	 * было использовать повторно.
+	 * 
+	 * @param bodyStream
+	 * @throws IOException
+	 */
+	private void drain(InputStream bodyStream) throws IOException {
+		byte[] buff = new byte[1024];
+		while (bodyStream.read(buff) != -1) {
+			continue;
+		}
+	}
+
+	/**
+	 * Увеличивает буфер тела ответа так, чтобы в него поместилось еще
+	 * 'required' байтов.
+	 * 
+	 * @param required
+	 */
+	private void ensureCapacity(int required) {
+		int needed = this.bodyLength + required;
+		if (needed > this.body.length) {
+			int capacity = Math.max(this.body.length * 2, needed);
+			byte[] grown = new byte[capacity];
+			System.arraycopy(this.body, 0, grown, 0, this.bodyLength);
+			this.body = grown;
+		}
+	}
+
+	/**
+	 * Тело ответа. Значимыми являются первые {@link #getBodyLength()} байтов.
+	 * 
+	 * @return Тело ответа (внутренний буфер, без копирования).
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * Декодирует тело ответа в строку.
+	 * 
+	 * @param charset
+	 *            кодировка тела ответа.
+	 * @return тело ответа в виде строки.
+	 */
+	public String getBodyAsString(Charset charset) {
+		return new String(this.body, 0, this.bodyLength, charset);
+	}
+
+	/**
+	 * Возвращает поток для чтения тела ответа без накопления его в буфере.
+	 * Должен вызываться после {@link #readHead()} вместо {@link #readBody()}.
+	 * Поток ограничен телом ответа; его закрытие дочитывает остаток тела, но
+	 * не закрывает соединение.
+	 * 
+	 * @return поток тела ответа.
+	 */
+	public InputStream getBodyStream() {
+		InputStream result;
+		if (this.chunked) {
+			result = new ChunkedBodyStream();
+		} else if (this.contentLength >= 0) {
+			result = new FixedLengthBodyStream(this.contentLength);
+		} else {
+			// конец тела определяется закрытием соединения
+			this.keepAlive = false;
+			result = new UntilCloseBodyStream();
+		}
+		return result;
+	}
+
+	/**
+	 * Количество байтов тела ответа.
+	 * 
+	 * @return Количество байтов тела ответа.
+	 */
+	public int getBodyLength() {
+		return bodyLength;
+	}
+
+	/**
+	 * Кодировка тела из параметра "charset" заголовка "Content-Type".
+	 * 
+	 * @return Кодировка тела или 'null', если она не указана или не
+	 *         поддерживается.
+	 */
+	public Charset getContentCharset() {
+		Charset result = null;
+		String type = this.getHeader("Content-Type");
+		if (type != null) {
+			for (String param : type.split(";")) {
+				int eq = param.indexOf('=');
+				if ((eq > 0)
+						&& param.substring(0, eq).trim()
+								.equalsIgnoreCase("charset")) {
+					result = forName(param.substring(eq + 1));
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Длина тела из заголовка "Content-Length".
+	 * 
+	 * @return Длина тела или -1, если длина не указана (или тело кодировано
+	 *         "Transfer-Encoding: chunked").
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * Значение заголовка ответа.
+	 * 
+	 * @param name
+	 *            имя заголовка (регистр не учитывается).
+	 * @return значение заголовка или 'null', если заголовка нет.
+	 */
+	public String getHeader(String name) {
+		return this.headers.get(name.toLowerCase());
+	}
+
+	/**
+	 * Строка статуса и заголовки ответа в исходном виде.
+	 * 
+	 * @return Строка статуса и заголовки ответа в исходном виде.
+	 */
+	public String getHeadText() {
+		return headText;
+	}
+
+	/**
+	 * Версия протокола из строки статуса ("HTTP/1.1").
+	 * 
+	 * @return Версия протокола из строки статуса.
+	 */
+	public String getProtocol() {
+		return protocol;
+	}
+
+	/**
+	 * Текстовое описание кода статуса.
+	 * 
+	 * @return Текстовое описание кода статуса.
+	 */
+	public String getReasonPhrase() {
+		return reasonPhrase;
+	}
+
+	/**
+	 * Код статуса ответа.
+	 * 
+	 * @return Код статуса ответа.
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Признак кодирования тела "Transfer-Encoding: chunked".
+	 * 
+	 * @return 'true', если тело кодировано блоками.
+	 */
+	public boolean isChunked() {
+		return chunked;
+	}
+
+	/**
+	 * Признак того, что после чтения ответа соединение остается открытым и
+	 * может быть использовано для следующего запроса (сервер не требует
+	 * закрыть соединение, тело ответа прочитано полностью).
+	 * 
+	 * @return 'true', если соединение можно использовать повторно.
+	 */
+	public boolean isKeepAlive() {
+		return this.keepAlive && this.bodyComplete;
+	}
+
+	/**
+	 * Считывает тело ответа в буфер. Должен вызываться после
+	 * {@link #readHead()}.
+	 * 
+	 * @throws IOException
+	 */
+	public void readBody() throws IOException {
+		if (this.chunked) {
+			long chunkSize;
+			while ((chunkSize = this.readChunkSize()) > 0) {
+				this.readFully(chunkSize);
+				// CRLF после блока
+				this.readLine();
+			}
+			// пропускаем завершающие заголовки (trailer) до пустой строки
+			while (this.readLine().length() > 0) {
+				continue;
+			}
+		} else if (this.contentLength >= 0) {
+			this.readFully(this.contentLength);
+		} else {
+			this.ensureCapacity(INITIAL_BODY_CAPACITY);
+			int read;
+			while ((read = this.in.read(this.body, this.bodyLength,
+					this.body.length - this.bodyLength)) != -1) {
+				this.bodyLength += read;
+				if (this.bodyLength == this.body.length) {
+					this.ensureCapacity(INITIAL_BODY_CAPACITY);
+				}
+			}
+			// конец тела определен закрытием соединения
+			this.keepAlive = false;
+		}
+		this.bodyComplete = true;
+	}
+
+	/**
+	 * Считывает размер очередного блока тела при кодировании
+	 * "Transfer-Encoding: chunked".
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private long readChunkSize() throws IOException {
+		String line = this.readLine();
+		int ext = line.indexOf(';');
+		if (ext >= 0) {
+			line = line.substring(0, ext);
+		}
+		try {
+			return Long.parseLong(line.trim(), 16);
+		} catch (NumberFormatException e) {
+			throw new IOException("Wrong HTTP chunk size: " + line);
+		}
+	}
+
+	/**
+	 * Переносит из потока в буфер тела ровно 'length' байтов.
+	 * 
+	 * @param length
+	 * @throws IOException
+	 */
+	private void readFully(long length) throws IOException {
+		if (this.bodyLength + length > Integer.MAX_VALUE) {
+			throw new IOException("HTTP response is too large.");
+		}
+		this.ensureCapacity((int) length);
+		int remaining = (int) length;
+		while (remaining > 0) {
+			int read = this.in.read(this.body, this.bodyLength, remaining);
+			if (read == -1) {
+				throw new IOException("Unexpected end of HTTP response.");
+			}
+			this.bodyLength += read;
+			remaining -= read;
+		}
+	}
+
+	/**
+	 * Считывает строку статуса и заголовки ответа до пустой строки.
+	 * 
+	 * @throws IOException
+	 *             если соединение закрыто до получения заголовков или строка
+	 *             статуса имеет неверный формат.
+	 */
+	public void readHead() throws IOException {
+		StringBuilder head = new StringBuilder(512);
+		String statusLine = this.readLine();
+		head.append(statusLine).append("\r\n");
+		String[] parts = statusLine.split(" ", 3);
+		if ((parts.length < 2) || !parts[0].startsWith("HTTP/")) {
+			throw new IOException("Wrong HTTP status line: " + statusLine);
+		}
+		this.protocol = parts[0];
+		try {
+			this.statusCode = Integer.parseInt(parts[1]);
+		} catch (NumberFormatException e) {
+			throw new IOException("Wrong HTTP status line: " + statusLine);
+		}
+		this.reasonPhrase = (parts.length > 2) ? parts[2] : "";
+		String line;
+		while ((line = this.readLine()).length() > 0) {
+			head.append(line).append("\r\n");
+			int colon = line.indexOf(':');
+			if (colon > 0) {
+				String name = line.substring(0, colon).trim().toLowerCase();
+				String value = line.substring(colon + 1).trim();
+				this.headers.put(name, value);
+			}
+		}
+		head.append("\r\n");
+		this.headText = head.toString();
+		// анализируем заголовки, определяющие границы тела
+		String transferEncoding = this.getHeader("Transfer-Encoding");
+		this.chunked = (transferEncoding != null)
+				&& transferEncoding.toLowerCase().contains("chunked");
+		String length = this.getHeader("Content-Length");
+		if (!this.chunked && (length != null)) {
+			try {
+				this.contentLength = Long.parseLong(length);
+			} catch (NumberFormatException e) {
+				throw new IOException("Wrong Content-Length: " + length);
+			}
+		}
+		// ответы без тела
+		if ((this.statusCode / 100 == 1) || (this.statusCode == 204)
+				|| (this.statusCode == 304)) {
+			this.contentLength = 0;
+		}
+		String connection = this.getHeader("Connection");
+		if (connection != null) {
+			connection = connection.toLowerCase();
+		}
+		if ("HTTP/1.0".equals(this.protocol)) {
+			this.keepAlive = "keep-alive".equals(connection);
+		} else {
+			this.keepAlive = !"close".equals(connection);
+		}
+	}
+
+	/**
+	 * Считывает из потока строку, завершающуюся CRLF (без CRLF).
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private String readLine() throws IOException {
+		StringBuilder result = new StringBuilder();
+		int b;
+		while ((b = this.in.read()) != '\n') {
+			if (b == -1) {
+				throw new IOException("Unexpected end of HTTP response.");
+			}
+			if (b != '\r') {
+				result.append((char) (b & 0xFF));
+			}
+		}
+		return result.toString();
+	}
+
+}
@@ -0,0 +1,1288 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+/**
+ * <p>
+ * Неблокирующий вариант {@link HttpRequester}: POST-запросы к HTTP(S)-серверам
+ * выполняются через {@link SocketChannel} и {@link SSLEngine}, все соединения
+ * обслуживаются одним потоком ввода/вывода (селектором). Вызывающий поток не
+ * блокируется на время запроса и получает результат в виде
+ * {@link CompletableFuture}, поэтому несколько потоков могут одновременно
+ * выполнять сотни запросов к серверам WMT XML.
+ * </p>
+ * <p>
+ * Запросы выполняются по протоколу HTTP/1.1, после получения ответа
+ * соединение сохраняется и повторно используется следующими запросами к тому
+ * же серверу (SSL-сессии также возобновляются через кэш сессий
+ * SSL-контекста, см. {@link SslContextCache}). Действия, зависимые от
+ * результата, выполняются в {@link #getCallbackExecutor()}, а не в потоке
+ * ввода/вывода.
+ * </p>
+ * <p>
+ * Экземпляр класса потокобезопасен и должен разделяться всеми потоками
+ * приложения; по окончании работы его необходимо закрыть ({@link #close()}).
+ * </p>
+ * 
+ * <pre>
+ * NioHttpRequester nio = new NioHttpRequester();
+ * nio.setRequestCharset(&quot;windows-1251&quot;);
+ * nio.setResponseCharset(&quot;windows-1251&quot;);
+ * CompletableFuture&lt;String&gt; response = nio.doPost(&quot;w3s.webmoney.ru&quot;,
+ * 		&quot;/asp/XMLFindWMPurseNew.asp&quot;, xmlRequest);
+ * ...
+ * System.out.println(&quot;Response:\n&quot; + response.get());
+ * nio.close();
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class NioHttpRequester implements Closeable {
+	/**
+	 * Соединение с сервером. Используется только потоком ввода/вывода.
+	 */
+	private static class Connection {
+		/**
+		 * Данные ответа, полученные от сервера (расшифрованные), в режиме
+		 * записи.
+		 */
+		private ByteBuffer appIn;
+		private final SocketChannel channel;
+		/**
+		 * SSL-движок, 'null' - незащищенное соединение.
+		 */
+		private final SSLEngine engine;
+		/**
+		 * Признак закрытия соединения сервером.
+		 */
+		private boolean eof = false;
+		/**
+		 * Выполняемый запрос, 'null' - соединение простаивает.
+		 */
+		private Exchange exchange;
+		/**
+		 * Время (мсек.) освобождения соединения.
+		 */
+		private long idleSince;
+		/**
+		 * Ключ сервера, к которому установлено соединение.
+		 */
+		private final String key;
+		/**
+		 * Зашифрованные данные, полученные от сервера, в режиме записи.
+		 */
+		private ByteBuffer netIn;
+		/**
+		 * Данные для отправки на сервер в режиме чтения.
+		 */
+		private ByteBuffer netOut;
+		/**
+		 * Признак того, что соединение взято из простаивающих.
+		 */
+		private boolean reused = false;
+		private SelectionKey selectionKey;
+
+		private Connection(SocketChannel channel, SSLEngine engine, String key) {
+			this.channel = channel;
+			this.engine = engine;
+			this.key = key;
+			if (engine != null) {
+				int packetSize = engine.getSession().getPacketBufferSize();
+				this.netIn = ByteBuffer.allocate(packetSize);
+				this.netOut = ByteBuffer.allocate(packetSize);
+				this.netOut.flip();
+				this.appIn = ByteBuffer.allocate(engine.getSession()
+						.getApplicationBufferSize());
+			} else {
+				this.netOut = EMPTY_BUFFER;
+				this.appIn = ByteBuffer.allocate(BUFFER_SIZE);
+			}
+		}
+
+		private void interest(int ops) {
+			this.selectionKey.interestOps(ops);
+		}
+	}
+
+	/**
+	 * Запрос и накапливаемый ответ на него.
+	 */
+	private static class Exchange {
+		/**
+		 * Адрес сервера.
+		 */
+		private final InetSocketAddress address;
+		/**
+		 * Количество попыток отправки запроса.
+		 */
+		private int attempts = 0;
+		/**
+		 * Граница тела ответа при кодировании "Transfer-Encoding: chunked":
+		 * начало строки размера следующего блока.
+		 */
+		private int chunkPos = -1;
+		/**
+		 * Полученный ответ (заголовки и тело в исходном виде).
+		 */
+		private byte[] data = new byte[BUFFER_SIZE];
+		/**
+		 * Время (мсек.), до которого должен быть получен ответ.
+		 */
+		private final long deadline;
+		/**
+		 * Конец ответа при известной длине тела ("Content-Length"), -1 - длина
+		 * не известна.
+		 */
+		private long end = -1;
+		private final CompletableFuture<HttpResponseReader> future = new CompletableFuture<HttpResponseReader>();
+		/**
+		 * Длина заголовков ответа (включая пустую строку), -1 - заголовки еще
+		 * не получены.
+		 */
+		private int headLength = -1;
+		/**
+		 * Имя сервера (для SNI и возобновления SSL-сессий).
+		 */
+		private final String hostName;
+		/**
+		 * Ключ сервера (адрес, порт, параметры SSL).
+		 */
+		private final String key;
+		/**
+		 * Количество байтов ответа в {@link #data}.
+		 */
+		private int length = 0;
+		/**
+		 * Неотправленная часть запроса.
+		 */
+		private ByteBuffer out;
+		/**
+		 * Запрос в виде байтов.
+		 */
+		private final byte[] request;
+		/**
+		 * SSL-контекст, 'null' - незащищенное соединение.
+		 */
+		private final SSLContext sslContext;
+		/**
+		 * Признак того, что конец тела определяется закрытием соединения.
+		 */
+		private boolean untilClose = false;
+
+		private Exchange(String hostName, InetSocketAddress address,
+				SSLContext sslContext, String key, byte[] request, long timeout) {
+			this.hostName = hostName;
+			this.address = address;
+			this.sslContext = sslContext;
+			this.key = key;
+			this.request = request;
+			this.deadline = System.currentTimeMillis() + timeout;
+		}
+
+		/**
+		 * Добавляет к ответу полученные данные.
+		 * 
+		 * @param src
+		 *            буфер в режиме чтения.
+		 */
+		private void append(ByteBuffer src) {
+			int count = src.remaining();
+			if (this.length + count > this.data.length) {
+				byte[] grown = new byte[Math.max(this.data.length * 2,
+						this.length + count)];
+				System.arraycopy(this.data, 0, grown, 0, this.length);
+				this.data = grown;
+			}
+			src.get(this.data, this.length, count);
+			this.length += count;
+		}
+
+		/**
+		 * Проверяет, получен ли ответ полностью. Заголовки разбираются один
+		 * раз, блоки тела - по мере поступления.
+		 * 
+		 * @return 'true', если ответ получен полностью.
+		 * @throws IOException
+		 *             неверный формат ответа.
+		 */
+		private boolean isComplete() throws IOException {
+			if (this.headLength < 0) {
+				int pos = indexOf(this.data, 0, this.length, CRLF_CRLF);
+				if (pos < 0) {
+					return false;
+				}
+				this.headLength = pos + CRLF_CRLF.length;
+				HttpResponseReader head = new HttpResponseReader(
+						new ByteArrayInputStream(this.data, 0, this.headLength));
+				head.readHead();
+				if (head.isChunked()) {
+					this.chunkPos = this.headLength;
+				} else if (head.getContentLength() >= 0) {
+					this.end = this.headLength + head.getContentLength();
+				} else {
+					this.untilClose = true;
+				}
+			}
+			boolean result = false;
+			if (this.chunkPos >= 0) {
+				result = this.isLastChunkReceived();
+			} else if (this.end >= 0) {
+				result = (this.length >= this.end);
+			}
+			return result;
+		}
+
+		/**
+		 * Проверяет, получен ли последний (нулевой) блок тела и завершающие
+		 * заголовки при кодировании "Transfer-Encoding: chunked".
+		 * 
+		 * @return
+		 * @throws IOException
+		 */
+		private boolean isLastChunkReceived() throws IOException {
+			for (;;) {
+				int lineEnd = indexOf(this.data, this.chunkPos, this.length,
+						CRLF);
+				if (lineEnd < 0) {
+					return false;
+				}
+				String line = new String(this.data, this.chunkPos, lineEnd
+						- this.chunkPos, ASCII);
+				int ext = line.indexOf(';');
+				if (ext >= 0) {
+					line = line.substring(0, ext);
+				}
+				long size;
+				try {
+					size = Long.parseLong(line.trim(), 16);
+				} catch (NumberFormatException e) {
+					throw new IOException("Wrong HTTP chunk size: " + line);
+				}
+				if (size > 0) {
+					// данные блока и CRLF после него
+					long next = lineEnd + CRLF.length + size + CRLF.length;
+					if (next > this.length) {
+						return false;
+					}
+					this.chunkPos = (int) next;
+				} else {
+					// завершающие заголовки (trailer) до пустой строки
+					int pos = lineEnd + CRLF.length;
+					for (;;) {
+						int end = indexOf(this.data, pos, this.length, CRLF);
+						if (end < 0) {
+							return false;
+						}
+						if (end == pos) {
+							return true;
+						}
+						pos = end + CRLF.length;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Подготавливает запрос к отправке (в т.ч. повторной).
+		 */
+		private void reset() {
+			this.attempts++;
+			this.out = ByteBuffer.wrap(this.request);
+			this.length = 0;
+			this.headLength = -1;
+			this.chunkPos = -1;
+			this.end = -1;
+			this.untilClose = false;
+		}
+
+		/**
+		 * Разбирает полностью полученный ответ.
+		 * 
+		 * @return
+		 * @throws IOException
+		 */
+		private HttpResponseReader toResponse() throws IOException {
+			HttpResponseReader result = new HttpResponseReader(
+					new ByteArrayInputStream(this.data, 0, this.length));
+			result.readHead();
+			result.readBody();
+			return result;
+		}
+	}
+
+	private final static Charset ASCII = Charset.forName("US-ASCII");
+	/**
+	 * Начальный размер буферов ответа для незащищенных соединений.
+	 */
+	private final static int BUFFER_SIZE = 16384;
+	private final static byte[] CRLF = { '\r', '\n' };
+	private final static byte[] CRLF_CRLF = { '\r', '\n', '\r', '\n' };
+	private final static String DEFAULT_CAHRSET = "utf-8";
+	private final static ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+	private final static Logger LOG = Logger.getLogger(NioHttpRequester.class
+			.getName());
+	/**
+	 * Максимальное время (мсек.) ожидания селектора, определяет точность
+	 * контроля timeout'ов.
+	 */
+	private final static long SELECT_INTERVAL = 500;
+
+	/**
+	 * Ищет в массиве последовательность байтов.
+	 * 
+	 * @param data
+	 * @param from
+	 * @param to
+	 * @param pattern
+	 * @return позиция начала последовательности или -1.
+	 */
+	private static int indexOf(byte[] data, int from, int to, byte[] pattern) {
+		int last = to - pattern.length;
+		outer: for (int i = from; i <= last; i++) {
+			for (int j = 0; j < pattern.length; j++) {
+				if (data[i + j] != pattern[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Соединения, выполняющие запросы. Используется только потоком
+	 * ввода/вывода.
+	 */
+	private final Set<Connection> active = new HashSet<Connection>();
+	/**
+	 * Исполнитель действий, зависимых от результата запроса. По умолчанию -
+	 * {@link ForkJoinPool#commonPool()}.
+	 */
+	private Executor callbackExecutor = ForkJoinPool.commonPool();
+	/**
+	 * Количество установленных соединений.
+	 */
+	private final AtomicLong createdCount = new AtomicLong();
+	/**
+	 * Простаивающие соединения, сгруппированные по серверам. Используется
+	 * только потоком ввода/вывода.
+	 */
+	private final Map<String, ArrayDeque<Connection>> idle = new HashMap<String, ArrayDeque<Connection>>();
+	/**
+	 * Время (мсек.), по истечении которого простаивающее соединение
+	 * закрывается. По умолчанию - 15000 мсек.
+	 */
+	private long idleTimeout = 15000;
+	/**
+	 * Запросы, ожидающие передачи потоку ввода/вывода.
+	 */
+	private final Queue<Exchange> pending = new ConcurrentLinkedQueue<Exchange>();
+	/**
+	 * Порт серверов. По умолчанию - 443.
+	 */
+	private int port = 443;
+	/**
+	 * Кодировка, в которую перекодируются символы запроса при отправке на
+	 * сервер.
+	 */
+	private Charset requestCharset;
+	/**
+	 * Кодировка, из которой перекодируются символы ответа при получении их с
+	 * сервера.
+	 */
+	private Charset responseCharset;
+	/**
+	 * Количество повторно использованных соединений.
+	 */
+	private final AtomicLong reusedCount = new AtomicLong();
+	/**
+	 * Признак работы потока ввода/вывода.
+	 */
+	private volatile boolean running = true;
+	/**
+	 * Флаг, указывающий на необходимость использования шифрования (SSL) при
+	 * выполнении запросов. По умолчанию - 'true'.
+	 */
+	private boolean securedResuest = true;
+	private final Selector selector;
+	/**
+	 * SSL-контекст для установления защищенных соединений. Если не задан -
+	 * используется разделяемый контекст с системными хранилищами ключей и
+	 * сертификатов ({@link SslContextCache#getDefaultContext()}).
+	 */
+	private SSLContext sslContext = null;
+	/**
+	 * Поток ввода/вывода.
+	 */
+	private final Thread thread;
+	/**
+	 * Timeout (в мсек.) выполнения запроса (установление соединения, отправка
+	 * запроса и получение ответа). По умолчанию - 30000.
+	 */
+	private int timeout = 30000;
+
+	/**
+	 * Создает экземпляр класса с кодировкой UTF-8 для запроса/ответа и
+	 * запускает поток ввода/вывода.
+	 * 
+	 * @throws IOException
+	 */
+	public NioHttpRequester() throws IOException {
+		this.requestCharset = Charset.forName(DEFAULT_CAHRSET);
+		this.responseCharset = Charset.forName(DEFAULT_CAHRSET);
+		this.selector = Selector.open();
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				NioHttpRequester.this.loop();
+			}
+		}, "NioHttpRequester-" + Integer.toHexString(this.hashCode()));
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Останавливает поток ввода/вывода и закрывает все соединения. Запросы,
+	 * не получившие ответа, завершаются с ошибкой.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.running = false;
+		this.selector.wakeup();
+		if (Thread.currentThread() != this.thread) {
+			try {
+				this.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void closeQuietly(Connection conn) {
+		if (conn.selectionKey != null) {
+			conn.selectionKey.cancel();
+		}
+		try {
+			conn.channel.close();
+		} catch (IOException e) {
+			// do nothing
+		}
+	}
+
+	/**
+	 * Завершает запрос в {@link #callbackExecutor}.
+	 * 
+	 * @param ex
+	 * @param response
+	 *            ответ сервера или 'null' в случае ошибки.
+	 * @param error
+	 */
+	private void complete(final Exchange ex, final HttpResponseReader response,
+			final Throwable error) {
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				if (error != null) {
+					ex.future.completeExceptionally(error);
+				} else {
+					ex.future.complete(response);
+				}
+			}
+		};
+		Executor executor = this.callbackExecutor;
+		if (executor != null) {
+			try {
+				executor.execute(task);
+				return;
+			} catch (RejectedExecutionException e) {
+				// завершаем в текущем потоке
+			} catch (Throwable e) {
+				// запрос уже не отслеживается потоком ввода/вывода и должен
+				// быть завершен до распространения ошибки
+				task.run();
+				throw e;
+			}
+		}
+		task.run();
+	}
+
+	/**
+	 * Формирует POST-запрос в кодировке {@link #requestCharset}. Длина тела
+	 * вычисляется в байтах.
+	 * 
+	 * @param host
+	 * @param requestAddress
+	 * @param requestBody
+	 * @return
+	 */
+	private byte[] composePostRequest(String host, String requestAddress,
+			String requestBody) {
+		byte[] body = requestBody.getBytes(this.requestCharset);
+		StringBuilder head = new StringBuilder(256);
+		head.append("POST ").append(requestAddress).append(" HTTP/1.1\r\n");
+		head.append("Connection: keep-alive\r\n");
+		head.append("User-Agent: ").append(this.getClass().getCanonicalName())
+				.append("\r\n");
+		head.append("From: info@flancer.lv\r\n");
+		head.append("Host: ").append(host).append("\r\n");
+		head.append("Content-Type: application/x-www-form-urlencoded\r\n");
+		head.append("Content-Length: ").append(body.length).append("\r\n");
+		// конец HTTP-заголовков
+		head.append("\r\n");
+		byte[] headBytes = head.toString().getBytes(this.requestCharset);
+		byte[] result = new byte[headBytes.length + body.length];
+		System.arraycopy(headBytes, 0, result, 0, headBytes.length);
+		System.arraycopy(body, 0, result, headBytes.length, body.length);
+		return result;
+	}
+
+	/**
+	 * Посылает серверу POST-запрос по адресу requestAddress, переменные запроса
+	 * содержатся в requestBody, за соответствующий вид которого отвечает
+	 * вызывающая сторона.
+	 * 
+	 * @param host
+	 *            имя сервера.
+	 * @param requestAddress
+	 * @param requestBody
+	 * @return http-ответ (заголовки и тело), полученный от сервера.
+	 */
+	public CompletableFuture<String> doPost(String host, String requestAddress,
+			String requestBody) {
+		final Charset charset = this.responseCharset;
+		return this.execute(host, requestAddress, requestBody).thenApply(
+				new Function<HttpResponseReader, String>() {
+					@Override
+					public String apply(HttpResponseReader response) {
+						return response.getHeadText()
+								+ response.getBodyAsString(charset);
+					}
+				});
+	}
+
+	/**
+	 * Увеличивает буфер (в режиме записи), сохраняя его содержимое.
+	 * 
+	 * @param buffer
+	 * @param extra
+	 * @return
+	 */
+	private ByteBuffer enlarge(ByteBuffer buffer, int extra) {
+		ByteBuffer result = ByteBuffer.allocate(buffer.position() + extra);
+		buffer.flip();
+		result.put(buffer);
+		return result;
+	}
+
+	/**
+	 * Посылает серверу POST-запрос и возвращает ответ в разобранном виде
+	 * (статус, заголовки, тело в виде байтов), например, для передачи тела
+	 * XML-парсеру без промежуточного декодирования в строку.
+	 * 
+	 * @param host
+	 *            имя сервера.
+	 * @param requestAddress
+	 * @param requestBody
+	 * @return ответ сервера, прочитанный полностью.
+	 */
+	public CompletableFuture<HttpResponseReader> execute(String host,
+			String requestAddress, String requestBody) {
+		Exchange ex;
+		try {
+			SSLContext context = null;
+			String key = host + ":" + this.port;
+			if (this.securedResuest) {
+				context = (this.sslContext != null) ? this.sslContext
+						: SslContextCache.getDefaultContext();
+				key += "/ssl/" + SslContextCache.getContextId(context);
+			}
+			// адрес определяется в вызывающем потоке, чтобы не блокировать
+			// поток ввода/вывода
+			InetSocketAddress address = new InetSocketAddress(
+					InetAddress.getByName(host), this.port);
+			ex = new Exchange(host, address, context, key,
+					this.composePostRequest(host, requestAddress, requestBody),
+					this.timeout);
+		} catch (Exception e) {
+			CompletableFuture<HttpResponseReader> result = new CompletableFuture<HttpResponseReader>();
+			result.completeExceptionally(e);
+			return result;
+		}
+		this.pending.add(ex);
+		if (!this.running && this.pending.remove(ex)) {
+			ex.future.completeExceptionally(new IOException(
+					"Requester is closed."));
+		}
+		this.selector.wakeup();
+		return ex.future;
+	}
+
+	/**
+	 * Завершает запрос с ошибкой и закрывает соединение. Если соединение было
+	 * взято из простаивающих и от сервера еще ничего не получено (соединение
+	 * закрыто сервером за время простоя), запрос однократно повторяется на
+	 * новом соединении.
+	 * 
+	 * @param conn
+	 *            соединение (может быть 'null', если его не удалось
+	 *            установить).
+	 * @param ex
+	 * @param error
+	 */
+	private void fail(Connection conn, Exchange ex, Throwable error) {
+		boolean retry = false;
+		if (conn != null) {
+			conn.exchange = null;
+			this.active.remove(conn);
+			this.closeQuietly(conn);
+			retry = conn.reused && (ex.length == 0) && (ex.attempts < 2)
+					&& (error instanceof IOException)
+					&& !(error instanceof SocketTimeoutException)
+					&& this.running;
+		}
+		if (retry) {
+			this.start(ex);
+		} else {
+			this.complete(ex, null, error);
+		}
+	}
+
+	/**
+	 * Завершает запрос, получивший ответ полностью, и сохраняет соединение для
+	 * повторного использования, если сервер не потребовал его закрыть.
+	 * 
+	 * @param conn
+	 */
+	private void finish(Connection conn) {
+		Exchange ex = conn.exchange;
+		conn.exchange = null;
+		this.active.remove(conn);
+		HttpResponseReader response;
+		try {
+			response = ex.toResponse();
+		} catch (IOException e) {
+			this.closeQuietly(conn);
+			this.complete(ex, null, e);
+			return;
+		}
+		if (response.isKeepAlive() && !conn.eof && this.running) {
+			conn.idleSince = System.currentTimeMillis();
+			// закрытие соединения сервером обнаруживается по готовности к
+			// чтению
+			conn.interest(SelectionKey.OP_READ);
+			ArrayDeque<Connection> deque = this.idle.get(conn.key);
+			if (deque == null) {
+				deque = new ArrayDeque<Connection>();
+				this.idle.put(conn.key, deque);
+			}
+			deque.offerFirst(conn);
+		} else {
+			this.closeQuietly(conn);
+		}
+		this.complete(ex, response, null);
+	}
+
+	/**
+	 * Исполнитель действий, зависимых от результата запроса. По умолчанию -
+	 * {@link ForkJoinPool#commonPool()}.
+	 * 
+	 * @return Исполнитель действий, зависимых от результата запроса.
+	 */
+	public Executor getCallbackExecutor() {
+		return callbackExecutor;
+	}
+
+	/**
+	 * Количество установленных соединений.
+	 * 
+	 * @return Количество установленных соединений.
+	 */
+	public long getCreatedCount() {
+		return this.createdCount.get();
+	}
+
+	/**
+	 * Время (мсек.), по истечении которого простаивающее соединение
+	 * закрывается. По умолчанию - 15000 мсек.
+	 * 
+	 * @return Время (мсек.), по истечении которого простаивающее соединение
+	 *         закрывается.
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Порт серверов. По умолчанию - 443.
+	 * 
+	 * @return Порт серверов.
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Кодировка, в которую перекодируются символы запроса при отправке на
+	 * сервер.
+	 * 
+	 * @return Кодировка, в которую перекодируются символы запроса при отправке
+	 *         на сервер.
+	 */
+	public Charset getRequestCharset() {
+		return requestCharset;
+	}
+
+	/**
+	 * Кодировка, из которой перекодируются символы ответа при получении их с
+	 * сервера.
+	 * 
+	 * @return Кодировка, из которой перекодируются символы ответа при
+	 *         получении их с сервера.
+	 */
+	public Charset getResponseCharset() {
+		return responseCharset;
+	}
+
+	/**
+	 * Количество повторно использованных соединений.
+	 * 
+	 * @return Количество повторно использованных соединений.
+	 */
+	public long getReusedCount() {
+		return this.reusedCount.get();
+	}
+
+	/**
+	 * SSL-контекст для установления защищенных соединений.
+	 * 
+	 * @return SSL-контекст для установления защищенных соединений или 'null',
+	 *         если используется контекст по умолчанию.
+	 */
+	public SSLContext getSslContext() {
+		return sslContext;
+	}
+
+	/**
+	 * Timeout (в мсек.) выполнения запроса. По умолчанию - 30000.
+	 * 
+	 * @return Timeout (в мсек.) выполнения запроса.
+	 */
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Обрабатывает готовность соединения к вводу/выводу.
+	 * 
+	 * @param conn
+	 * @param key
+	 */
+	private void handle(Connection conn, SelectionKey key) {
+		if (!key.isValid()) {
+			return;
+		}
+		Exchange ex = conn.exchange;
+		if (ex == null) {
+			// простаивающее соединение закрыто сервером (или сервер прислал
+			// данные вне запроса) - больше не используется
+			ArrayDeque<Connection> deque = this.idle.get(conn.key);
+			if (deque != null) {
+				deque.remove(conn);
+			}
+			this.closeQuietly(conn);
+			return;
+		}
+		try {
+			if (key.isConnectable()) {
+				if (!conn.channel.finishConnect()) {
+					return;
+				}
+				if (conn.engine != null) {
+					conn.engine.beginHandshake();
+				}
+			}
+			this.pump(conn);
+		} catch (Exception e) {
+			this.fail(conn, ex, e);
+		}
+	}
+
+	/**
+	 * Флаг, указывающий на необходимость использования шифрования (SSL) при
+	 * выполнении запросов. По умолчанию - 'true'.
+	 * 
+	 * @return Флаг, указывающий на необходимость использования шифрования
+	 *         (SSL) при выполнении запросов.
+	 */
+	public boolean isSecuredResuest() {
+		return securedResuest;
+	}
+
+	/**
+	 * Цикл потока ввода/вывода. Ошибка одной итерации не останавливает поток;
+	 * если поток все же завершается аварийно (например, {@link Error}),
+	 * ожидающие и выполняемые запросы завершаются с ошибкой, а новые запросы
+	 * не принимаются.
+	 */
+	private void loop() {
+		Throwable failure = null;
+		try {
+			while (this.running) {
+				try {
+					this.selector.select(SELECT_INTERVAL);
+					Exchange ex;
+					while ((ex = this.pending.poll()) != null) {
+						this.start(ex);
+					}
+					Iterator<SelectionKey> it = this.selector.selectedKeys()
+							.iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						this.handle((Connection) key.attachment(), key);
+					}
+					this.processTimeouts();
+				} catch (IOException e) {
+					LOG.log(Level.WARNING, "Selector I/O error.", e);
+				} catch (RuntimeException e) {
+					LOG.log(Level.SEVERE, "Unexpected error in I/O thread.", e);
+				}
+			}
+		} catch (Throwable e) {
+			failure = e;
+			LOG.log(Level.SEVERE, "I/O thread terminated abnormally.", e);
+			throw e;
+		} finally {
+			this.running = false;
+			this.shutdown(failure);
+		}
+	}
+
+	/**
+	 * Открывает новое соединение для запроса.
+	 * 
+	 * @param ex
+	 * @return
+	 * @throws IOException
+	 */
+	private Connection open(Exchange ex) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		try {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			SSLEngine engine = null;
+			if (ex.sslContext != null) {
+				// имя сервера используется для возобновления SSL-сессии и SNI
+				engine = ex.sslContext.createSSLEngine(ex.hostName,
+						ex.address.getPort());
+				engine.setUseClientMode(true);
+				SslContextCache.enableTlsProtocols(engine);
+			}
+			Connection result = new Connection(channel, engine, ex.key);
+			this.createdCount.incrementAndGet();
+			if (channel.connect(ex.address)) {
+				result.selectionKey = channel.register(this.selector, 0, result);
+				if (engine != null) {
+					engine.beginHandshake();
+				}
+			} else {
+				result.selectionKey = channel.register(this.selector,
+						SelectionKey.OP_CONNECT, result);
+			}
+			return result;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Закрывает соединения с истекшим временем простоя и завершает с ошибкой
+	 * запросы с истекшим временем выполнения.
+	 */
+	private void processTimeouts() {
+		long now = System.currentTimeMillis();
+		for (Connection conn : new ArrayList<Connection>(this.active)) {
+			Exchange ex = conn.exchange;
+			if ((ex != null) && (now > ex.deadline)) {
+				this.fail(conn, ex, new SocketTimeoutException(
+						"HTTP request timed out (" + this.timeout + " msec)."));
+			}
+		}
+		for (ArrayDeque<Connection> deque : this.idle.values()) {
+			Iterator<Connection> it = deque.iterator();
+			while (it.hasNext()) {
+				Connection conn = it.next();
+				if (now - conn.idleSince >= this.idleTimeout) {
+					it.remove();
+					this.closeQuietly(conn);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Продвигает обмен данными по соединению, пока это возможно без
+	 * блокировки: SSL-рукопожатие, отправка запроса, получение ответа. Если
+	 * канал не готов, регистрирует нужную операцию в селекторе.
+	 * 
+	 * @param conn
+	 * @throws IOException
+	 */
+	private void pump(Connection conn) throws IOException {
+		Exchange ex = conn.exchange;
+		for (;;) {
+			// отправляем подготовленные данные
+			if (conn.netOut.hasRemaining()) {
+				conn.channel.write(conn.netOut);
+				if (conn.netOut.hasRemaining()) {
+					conn.interest(SelectionKey.OP_WRITE);
+					return;
+				}
+			}
+			// SSL-рукопожатие
+			if (conn.engine != null) {
+				HandshakeStatus status = conn.engine.getHandshakeStatus();
+				if (status == HandshakeStatus.NEED_TASK) {
+					// проверка сертификатов и т.п. выполняется в потоке
+					// ввода/вывода: операции непродолжительные
+					Runnable task;
+					while ((task = conn.engine.getDelegatedTask()) != null) {
+						task.run();
+					}
+					continue;
+				}
+				if (status == HandshakeStatus.NEED_WRAP) {
+					this.wrap(conn, EMPTY_BUFFER);
+					continue;
+				}
+				if (status == HandshakeStatus.NEED_UNWRAP) {
+					if (this.unwrap(conn)) {
+						continue;
+					}
+					if (conn.eof) {
+						throw new EOFException(
+								"Connection closed during SSL handshake.");
+					}
+					conn.interest(SelectionKey.OP_READ);
+					return;
+				}
+			}
+			// отправляем запрос
+			if (ex.out.hasRemaining()) {
+				if (conn.engine != null) {
+					this.wrap(conn, ex.out);
+				} else {
+					conn.netOut = ex.out;
+				}
+				continue;
+			}
+			// получаем ответ
+			boolean progress;
+			if (conn.engine != null) {
+				progress = this.unwrap(conn);
+			} else {
+				int read = conn.channel.read(conn.appIn);
+				if (read < 0) {
+					conn.eof = true;
+				}
+				progress = (read > 0);
+			}
+			if (conn.appIn.position() > 0) {
+				conn.appIn.flip();
+				ex.append(conn.appIn);
+				conn.appIn.clear();
+			}
+			if (ex.isComplete() || (conn.eof && ex.untilClose)) {
+				this.finish(conn);
+				return;
+			}
+			if (!progress) {
+				if (conn.eof) {
+					throw new EOFException("Unexpected end of HTTP response.");
+				}
+				conn.interest(SelectionKey.OP_READ);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Исполнитель действий, зависимых от результата запроса. Если 'null' -
+	 * результат устанавливается в потоке ввода/вывода, и зависимые действия
+	 * не должны выполнять длительных операций.
+	 * 
+	 * @param callbackExecutor
+	 *            Исполнитель действий, зависимых от результата запроса.
+	 */
+	public void setCallbackExecutor(Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+	}
+
+	/**
+	 * Время (мсек.), по истечении которого простаивающее соединение
+	 * закрывается. По умолчанию - 15000 мсек.
+	 * 
+	 * @param idleTimeout
+	 *            Время (мсек.), по истечении которого простаивающее
+	 *            соединение закрывается.
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Порт серверов. По умолчанию - 443.
+	 * 
+	 * @param port
+	 *            Порт серверов.
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Кодировка, в которую перекодируются символы запроса при отправке на
+	 * сервер.
+	 * 
+	 * @param charsetName
+	 *            Кодировка, в которую перекодируются символы запроса при
+	 *            отправке на сервер.
+	 */
+	public void setRequestCharset(String charsetName) {
+		this.requestCharset = Charset.forName(charsetName);
+	}
+
+	/**
+	 * Кодировка, из которой перекодируются символы ответа при получении их с
+	 * сервера.
+	 * 
+	 * @param charsetName
+	 *            Кодировка, из которой перекодируются символы ответа при
+	 *            получении их с сервера.
+	 */
+	public void setResponseCharset(String charsetName) {
+		this.responseCharset = Charset.forName(charsetName);
+	}
+
+	/**
+	 * Флаг, указывающий на необходимость использования шифрования (SSL) при
+	 * выполнении запросов. По умолчанию - 'true'.
+	 * 
+	 * @param securedResuest
+	 *            Флаг, указывающий на необходимость использования шифрования
+	 *            (SSL) при выполнении запросов.
+	 */
+	public void setSecuredResuest(boolean securedResuest) {
+		this.securedResuest = securedResuest;
+	}
+
+	/**
+	 * SSL-контекст для установления защищенных соединений. Для повторного
+	 * использования SSL-сессий контекст должен разделяться между запросами
+	 * (см. {@link SslContextCache}).
+	 * 
+	 * @param sslContext
+	 *            SSL-контекст для установления защищенных соединений.
+	 */
+	public void setSslContext(SSLContext sslContext) {
+		this.sslContext = sslContext;
+	}
+
+	/**
+	 * Timeout (в мсек.) выполнения запроса (установление соединения, отправка
+	 * запроса и получение ответа). По умолчанию - 30000.
+	 * 
+	 * @param timeout
+	 *            Timeout (в мсек.) выполнения запроса.
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Закрывает все соединения и завершает с ошибкой невыполненные запросы.
+	 * 
+	 * @param failure
+	 *            причина аварийного завершения потока ввода/вывода или 'null'
+	 *            при закрытии ({@link #close()}).
+	 */
+	private void shutdown(Throwable failure) {
+		IOException closed = (failure == null) ? new IOException(
+				"Requester is closed.") : new IOException(
+				"Requester I/O thread terminated abnormally.", failure);
+		for (Connection conn : new ArrayList<Connection>(this.active)) {
+			this.fail(conn, conn.exchange, closed);
+		}
+		for (ArrayDeque<Connection> deque : this.idle.values()) {
+			for (Connection conn : deque) {
+				this.closeQuietly(conn);
+			}
+		}
+		this.idle.clear();
+		Exchange ex;
+		while ((ex = this.pending.poll()) != null) {
+			this.complete(ex, null, closed);
+		}
+		try {
+			this.selector.close();
+		} catch (IOException e) {
+			// do nothing
+		}
+	}
+
+	/**
+	 * Начинает выполнение запроса на простаивающем или новом соединении.
+	 * 
+	 * @param ex
+	 */
+	private void start(Exchange ex) {
+		ex.reset();
+		Connection conn = null;
+		try {
+			ArrayDeque<Connection> deque = this.idle.get(ex.key);
+			if (deque != null) {
+				conn = deque.pollFirst();
+			}
+			if (conn != null) {
+				conn.reused = true;
+				this.reusedCount.incrementAndGet();
+			} else {
+				conn = this.open(ex);
+			}
+			conn.exchange = ex;
+			this.active.add(conn);
+			if (conn.channel.isConnected()) {
+				this.pump(conn);
+			}
+		} catch (Exception e) {
+			this.fail(conn, ex, e);
+		}
+	}
+
+	/**
+	 * Расшифровывает данные, полученные от сервера, дочитывая их из канала
+	 * при необходимости.
+	 * 
+	 * @param conn
+	 * @return 'true', если SSL-движок обработал данные; 'false', если данных
+	 *         в канале недостаточно (или соединение закрыто сервером, см.
+	 *         {@link Connection#eof}).
+	 * @throws IOException
+	 */
+	private boolean unwrap(Connection conn) throws IOException {
+		for (;;) {
+			conn.netIn.flip();
+			SSLEngineResult result;
+			try {
+				result = conn.engine.unwrap(conn.netIn, conn.appIn);
+			} finally {
+				conn.netIn.compact();
+			}
+			switch (result.getStatus()) {
+			case OK:
+				if ((result.bytesConsumed() > 0)
+						|| (result.bytesProduced() > 0)) {
+					return true;
+				}
+				break;
+			case BUFFER_OVERFLOW:
+				conn.appIn = this.enlarge(conn.appIn, conn.engine.getSession()
+						.getApplicationBufferSize());
+				continue;
+			case BUFFER_UNDERFLOW:
+				if (!conn.netIn.hasRemaining()) {
+					conn.netIn = this.enlarge(conn.netIn, conn.engine
+							.getSession().getPacketBufferSize());
+				}
+				break;
+			case CLOSED:
+				conn.eof = true;
+				return false;
+			}
+			int read = conn.channel.read(conn.netIn);
+			if (read < 0) {
+				conn.eof = true;
+				return false;
+			}
+			if (read == 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Шифрует данные для отправки на сервер в {@link Connection#netOut}.
+	 * 
+	 * @param conn
+	 * @param src
+	 * @throws IOException
+	 */
+	private void wrap(Connection conn, ByteBuffer src) throws IOException {
+		for (;;) {
+			conn.netOut.compact();
+			SSLEngineResult result;
+			try {
+				result = conn.engine.wrap(src, conn.netOut);
+			} finally {
+				conn.netOut.flip();
+			}
+			switch (result.getStatus()) {
+			case BUFFER_OVERFLOW:
+				if (conn.netOut.hasRemaining()) {
+					// сначала отправляются ранее подготовленные данные
+					return;
+				}
+				conn.netOut = ByteBuffer.allocate(conn.engine.getSession()
+						.getPacketBufferSize() + conn.netOut.capacity());
+				conn.netOut.flip();
+				continue;
+			case CLOSED:
+				throw new SSLException("SSL connection is closed.");
+			default:
+				return;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.IOException;
+
+/**
+ * Запрос не выполнялся, т.к. превышен лимит частоты запросов к интерфейсу WMT
+ * XML (см. {@link RateLimiter}), а ожидание освобождения лимита превысило бы
+ * допустимое время. Запрос на сервер не отправлялся, его можно повторить через
+ * {@link #getRetryAfter()} мсек.
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class RateLimitExceededException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+	/**
+	 * Время (мсек.), через которое лимит позволит выполнить запрос.
+	 */
+	private final long retryAfter;
+
+	/**
+	 * @param key
+	 *            ключ лимита (WMID и адрес интерфейса).
+	 * @param retryAfter
+	 *            время (мсек.), через которое лимит позволит выполнить
+	 *            запрос.
+	 */
+	public RateLimitExceededException(String key, long retryAfter) {
+		super("Rate limit for '" + key + "' is exceeded, retry after "
+				+ retryAfter + " msec.");
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * Время (мсек.), через которое лимит позволит выполнить запрос.
+	 * 
+	 * @return Время (мсек.), через которое лимит позволит выполнить запрос.
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+
+}
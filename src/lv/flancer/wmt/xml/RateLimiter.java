@@ -0,0 +1,358 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Ограничитель частоты запросов к WMT XML на стороне клиента. Сервис WMT
+ * ограничивает частоту запросов для каждого WMID к каждому интерфейсу,
+ * поэтому для каждой пары (WMID подписанта, адрес интерфейса, например
+ * "/asp/XMLOperations.asp") ведется отдельное "ведро маркеров" (token
+ * bucket): допускается {@link #getBurst()} запросов подряд, далее - не чаще
+ * {@link #getRate()} запросов в секунду. Для отдельных интерфейсов лимиты
+ * задаются {@link #setLimit(String, double, int)}.
+ * </p>
+ * <p>
+ * Если запрос превышает лимит, вызывающая сторона может:
+ * </p>
+ * <ul>
+ * <li>дождаться своей очереди в текущем потоке ({@link #acquire(String, String)}
+ * , не дольше {@link #getMaxWait()});</li>
+ * <li>дождаться асинхронно, без блокирования потока (
+ * {@link #acquireAsync(String, String)});</li>
+ * <li>получить отказ сразу ({@link #tryAcquire(String, String)} или
+ * {@link #setMaxWait(long)} = 0).</li>
+ * </ul>
+ * <p>
+ * Состояние каждого ведра хранится в одном {@link AtomicLong} (алгоритм GCRA:
+ * расчетное время освобождения лимита), выдача разрешения - один CAS без
+ * блокировок. Экземпляр потокобезопасен и может разделяться несколькими
+ * экземплярами {@link WmService}.
+ * </p>
+ * 
+ * <pre>
+ * RateLimiter limiter = new RateLimiter(5, 10);
+ * limiter.setLimit(&quot;/asp/XMLOperations.asp&quot;, 1, 2);
+ * limiter.setMaxWait(0); // отказ вместо ожидания
+ * service.setRateLimiter(limiter);
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class RateLimiter {
+	/**
+	 * Ведро маркеров пары (WMID, адрес интерфейса).
+	 */
+	private static class Bucket {
+		/**
+		 * Допустимое опережение расписания (нсек.): burst * interval.
+		 */
+		private final long capacity;
+		/**
+		 * Интервал (нсек.) между запросами.
+		 */
+		private final long interval;
+		/**
+		 * Расчетное время (нсек.), к которому будут израсходованы все выданные
+		 * разрешения.
+		 */
+		private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+
+		private Bucket(Limit limit) {
+			this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / limit.rate);
+			this.capacity = this.interval * limit.burst;
+		}
+
+		/**
+		 * Резервирует разрешение, если ожидание не превышает maxWait.
+		 * 
+		 * @param maxWait
+		 *            допустимое ожидание (нсек.).
+		 * @return ожидание (нсек., не меньше 0) до использования
+		 *         зарезервированного разрешения или -(ожидание + 1), если
+		 *         разрешение не зарезервировано.
+		 */
+		private long reserve(long maxWait) {
+			while (true) {
+				long now = System.nanoTime();
+				long current = this.tat.get();
+				// разрешения, не использованные вовремя, не накапливаются сверх burst
+				long start = ((current == Long.MIN_VALUE) || (current - now < 0)) ? now
+						: current;
+				long next = start + this.interval;
+				long wait = next - now - this.capacity;
+				if (wait > maxWait) {
+					return -wait - 1;
+				}
+				if (this.tat.compareAndSet(current, next)) {
+					return Math.max(0, wait);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Лимит частоты запросов.
+	 */
+	private static class Limit {
+		private final int burst;
+		private final double rate;
+
+		private Limit(double rate, int burst) {
+			if ((rate <= 0) || (burst < 1)) {
+				throw new IllegalArgumentException(
+						"Rate must be positive and burst must be at least 1.");
+			}
+			this.rate = rate;
+			this.burst = burst;
+		}
+	}
+
+	/**
+	 * Планировщик отложенных действий (асинхронное ожидание), создается при
+	 * первом обращении.
+	 */
+	private static ScheduledExecutorService scheduler;
+
+	/**
+	 * Планировщик отложенных действий, используемый для асинхронного
+	 * ожидания. Поток планировщика только завершает ожидание, действия,
+	 * зависящие от него, должны выполняться в своих исполнителях.
+	 * 
+	 * @return Планировщик отложенных действий.
+	 */
+	public static synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			scheduler = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable task) {
+							Thread result = new Thread(task,
+									"RateLimiter-scheduler");
+							result.setDaemon(true);
+							return result;
+						}
+					});
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Ведра маркеров, ключ - WMID и адрес интерфейса.
+	 */
+	private final Map<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+	/**
+	 * Лимит по умолчанию.
+	 */
+	private final Limit defaultLimit;
+	/**
+	 * Лимиты отдельных интерфейсов, ключ - адрес интерфейса.
+	 */
+	private final Map<String, Limit> limits = new ConcurrentHashMap<String, Limit>();
+	/**
+	 * Максимальное время (мсек.) ожидания разрешения. По умолчанию - 10000
+	 * мсек.
+	 */
+	private volatile long maxWait = 10000;
+
+	/**
+	 * Создает ограничитель с лимитом по умолчанию 5 запросов в секунду, не
+	 * более 10 запросов подряд.
+	 */
+	public RateLimiter() {
+		this(5, 10);
+	}
+
+	/**
+	 * @param rate
+	 *            количество запросов в секунду по умолчанию.
+	 * @param burst
+	 *            количество запросов подряд по умолчанию.
+	 */
+	public RateLimiter(double rate, int burst) {
+		this.defaultLimit = new Limit(rate, burst);
+	}
+
+	/**
+	 * Ожидает в текущем потоке разрешения на запрос к интерфейсу.
+	 * 
+	 * @param wmid
+	 *            WMID подписанта.
+	 * @param path
+	 *            адрес интерфейса.
+	 * @throws RateLimitExceededException
+	 *             ожидание превысило бы {@link #getMaxWait()}.
+	 * @throws InterruptedIOException
+	 *             ожидание прервано.
+	 */
+	public void acquire(String wmid, String path)
+			throws RateLimitExceededException, InterruptedIOException {
+		long wait = this.reserve(wmid, path,
+				TimeUnit.MILLISECONDS.toNanos(this.maxWait));
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+						"Interrupted while waiting for rate limit.");
+			}
+		}
+	}
+
+	/**
+	 * Асинхронно ожидает разрешения на запрос к интерфейсу: результат
+	 * завершается, когда запрос можно выполнять (в потоке планировщика,
+	 * {@link #getScheduler()}), или исключением
+	 * {@link RateLimitExceededException}, если ожидание превысило бы
+	 * {@link #getMaxWait()}.
+	 * 
+	 * @param wmid
+	 *            WMID подписанта.
+	 * @param path
+	 *            адрес интерфейса.
+	 * @return результат ожидания.
+	 */
+	public CompletableFuture<Void> acquireAsync(String wmid, String path) {
+		final CompletableFuture<Void> result = new CompletableFuture<Void>();
+		try {
+			long wait = this.reserve(wmid, path,
+					TimeUnit.MILLISECONDS.toNanos(this.maxWait));
+			if (wait > 0) {
+				getScheduler().schedule(new Runnable() {
+					@Override
+					public void run() {
+						result.complete(null);
+					}
+				}, wait, TimeUnit.NANOSECONDS);
+			} else {
+				result.complete(null);
+			}
+		} catch (RateLimitExceededException e) {
+			result.completeExceptionally(e);
+		} catch (RejectedExecutionException e) {
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	private Bucket getBucket(String wmid, String path) {
+		String key = wmid + path;
+		Bucket result = this.buckets.get(key);
+		if (result == null) {
+			Limit limit = this.limits.get(path);
+			Bucket created = new Bucket((limit != null) ? limit
+					: this.defaultLimit);
+			result = this.buckets.putIfAbsent(key, created);
+			if (result == null) {
+				result = created;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Количество запросов подряд по умолчанию.
+	 * 
+	 * @return Количество запросов подряд по умолчанию.
+	 */
+	public int getBurst() {
+		return this.defaultLimit.burst;
+	}
+
+	/**
+	 * Максимальное время (мсек.) ожидания разрешения. По умолчанию - 10000
+	 * мсек.
+	 * 
+	 * @return Максимальное время (мсек.) ожидания разрешения.
+	 */
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * Количество запросов в секунду по умолчанию.
+	 * 
+	 * @return Количество запросов в секунду по умолчанию.
+	 */
+	public double getRate() {
+		return this.defaultLimit.rate;
+	}
+
+	/**
+	 * Резервирует разрешение на запрос.
+	 * 
+	 * @param wmid
+	 * @param path
+	 * @param maxWait
+	 *            допустимое ожидание (нсек.).
+	 * @return ожидание (нсек.) до использования разрешения.
+	 * @throws RateLimitExceededException
+	 */
+	private long reserve(String wmid, String path, long maxWait)
+			throws RateLimitExceededException {
+		long result = this.getBucket(wmid, path).reserve(maxWait);
+		if (result < 0) {
+			long wait = -(result + 1);
+			throw new RateLimitExceededException(wmid + path,
+					Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+		}
+		return result;
+	}
+
+	/**
+	 * Задает лимит для интерфейса. Влияет только на пары (WMID, интерфейс), к
+	 * которым ограничитель еще не обращался.
+	 * 
+	 * @param path
+	 *            адрес интерфейса, например "/asp/XMLOperations.asp".
+	 * @param rate
+	 *            количество запросов в секунду.
+	 * @param burst
+	 *            количество запросов подряд.
+	 */
+	public void setLimit(String path, double rate, int burst) {
+		this.limits.put(path, new Limit(rate, burst));
+	}
+
+	/**
+	 * Максимальное время (мсек.) ожидания разрешения. Если ожидание превысило
+	 * бы это время, запрос отклоняется исключением
+	 * {@link RateLimitExceededException}; 0 - отклонять запрос без ожидания.
+	 * 
+	 * @param maxWait
+	 *            Максимальное время (мсек.) ожидания разрешения.
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Выдает разрешение на запрос к интерфейсу, только если лимит не
+	 * превышен (без ожидания).
+	 * 
+	 * @param wmid
+	 *            WMID подписанта.
+	 * @param path
+	 *            адрес интерфейса.
+	 * @return 'true', если запрос можно выполнять.
+	 */
+	public boolean tryAcquire(String wmid, String path) {
+		return this.getBucket(wmid, path).reserve(0) >= 0;
+	}
+
+}
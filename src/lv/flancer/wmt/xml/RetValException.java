@@ -0,0 +1,44 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import lv.flancer.wmt.xml.resp.AbstractResponse;
+
+/**
+ * Сервис WMT XML вернул код ошибки (retval не равен 0) там, где вызывающая
+ * сторона не может продолжить работу без результата запроса (например, при
+ * получении истории по окнам, см. {@link HistoryFetcher}).
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class RetValException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+	/**
+	 * Ответ с кодом ошибки.
+	 */
+	private final transient AbstractResponse response;
+
+	/**
+	 * @param response
+	 *            ответ с кодом ошибки.
+	 */
+	public RetValException(AbstractResponse response) {
+		super("WMT XML error " + response.getRetVal() + ": "
+				+ response.getRetDesc());
+		this.response = response;
+	}
+
+	/**
+	 * Ответ с кодом ошибки.
+	 * 
+	 * @return Ответ с кодом ошибки.
+	 */
+	public AbstractResponse getResponse() {
+		return response;
+	}
+
+}
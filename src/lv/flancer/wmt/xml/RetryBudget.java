@@ -0,0 +1,122 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Бюджет повторов: ограничивает долю повторных запросов относительно общего
+ * количества вызовов. Каждый вызов пополняет бюджет на {@link #getRatio()}
+ * повтора, каждый повтор расходует один повтор из бюджета. Бюджет не может
+ * превышать {@link #getBurst()} повторов.
+ * </p>
+ * <p>
+ * Если сервер перестает отвечать, повторы быстро исчерпывают бюджет, и
+ * дальнейшие ошибки возвращаются вызывающей стороне сразу, без повторов,
+ * которые только увеличили бы нагрузку на сервер.
+ * </p>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class RetryBudget {
+	/**
+	 * Цена одного повтора во внутренних единицах бюджета.
+	 */
+	private final static long UNIT = 1000;
+	/**
+	 * Текущий бюджет во внутренних единицах.
+	 */
+	private final AtomicLong balance;
+	/**
+	 * Максимальное количество повторов, накапливаемых в бюджете.
+	 */
+	private final int burst;
+	/**
+	 * Доля повторов на один вызов.
+	 */
+	private final double ratio;
+
+	/**
+	 * Создает бюджет, допускающий 10% повторов и не более 10 повторов подряд.
+	 */
+	public RetryBudget() {
+		this(0.1, 10);
+	}
+
+	/**
+	 * @param ratio
+	 *            доля повторов на один вызов (например, 0.1 - 10%).
+	 * @param burst
+	 *            максимальное количество повторов, накапливаемых в бюджете
+	 *            (изначально бюджет заполнен).
+	 */
+	public RetryBudget(double ratio, int burst) {
+		this.ratio = ratio;
+		this.burst = burst;
+		this.balance = new AtomicLong(burst * UNIT);
+	}
+
+	/**
+	 * Пополняет бюджет при очередном вызове.
+	 */
+	public void deposit() {
+		long amount = (long) (this.ratio * UNIT);
+		long max = this.burst * UNIT;
+		long current;
+		do {
+			current = this.balance.get();
+			if (current >= max) {
+				return;
+			}
+		} while (!this.balance.compareAndSet(current,
+				Math.min(max, current + amount)));
+	}
+
+	/**
+	 * Доступное количество повторов.
+	 * 
+	 * @return Доступное количество повторов.
+	 */
+	public double getAvailable() {
+		return (double) this.balance.get() / UNIT;
+	}
+
+	/**
+	 * Максимальное количество повторов, накапливаемых в бюджете.
+	 * 
+	 * @return Максимальное количество повторов, накапливаемых в бюджете.
+	 */
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * Доля повторов на один вызов.
+	 * 
+	 * @return Доля повторов на один вызов.
+	 */
+	public double getRatio() {
+		return ratio;
+	}
+
+	/**
+	 * Расходует из бюджета один повтор.
+	 * 
+	 * @return 'true', если повтор разрешен; 'false', если бюджет исчерпан.
+	 */
+	public boolean tryWithdraw() {
+		long current;
+		do {
+			current = this.balance.get();
+			if (current < UNIT) {
+				return false;
+			}
+		} while (!this.balance.compareAndSet(current, current - UNIT));
+		return true;
+	}
+
+}
@@ -0,0 +1,55 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * Политика повторения запросов к WMT XML при сбоях в сети. Определяет, нужно
+ * ли повторять запрос после ошибки и через какое время.
+ * </p>
+ * <p>
+ * При принятии решения учитываются:
+ * </p>
+ * <ul>
+ * <li>тип ошибки: ошибка соединения ({@link HttpConnectException}) означает,
+ * что запрос не был отправлен, прочие ошибки ввода/вывода - что запрос мог
+ * быть получен и выполнен сервером;</li>
+ * <li>тип интерфейса: повторение идемпотентных запросов (X3, X4, X8, X9 и
+ * т.п.) безопасно, повторение неидемпотентных (X1, X2, X5, X6 и т.п.) может
+ * привести к повторному выполнению операции.</li>
+ * </ul>
+ * <p>
+ * Реализации должны быть потокобезопасны.
+ * </p>
+ * 
+ * @see ExponentialBackoffRetryPolicy
+ * @see FixedDelayRetryPolicy
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public interface RetryPolicy {
+	/**
+	 * Определяет, нужно ли повторять запрос после ошибки.
+	 * 
+	 * @param attempt
+	 *            номер завершившейся ошибкой попытки (начиная с 1).
+	 * @param failure
+	 *            ошибка.
+	 * @param idempotent
+	 *            'true', если повторное выполнение запроса безопасно.
+	 * @return задержка (мсек.) перед следующей попыткой или -1, если запрос не
+	 *         повторяется.
+	 */
+	long getRetryDelay(int attempt, IOException failure, boolean idempotent);
+
+	/**
+	 * Вызывается перед первой попыткой каждого вызова (например, для
+	 * пополнения бюджета повторов).
+	 */
+	void onCall();
+}
@@ -0,0 +1,143 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * <p>
+ * Пул SAX-парсеров. Экземпляр {@link SAXParser} не потокобезопасен, поэтому
+ * каждый разбор выполняется отдельным парсером, взятым из пула и
+ * возвращаемым в него после разбора. Фабрика парсеров создается один раз.
+ * </p>
+ * <p>
+ * Пул ограничен: в нем хранится не более {@link #getMaxIdle()} свободных
+ * парсеров, парсеры, возвращаемые сверх этого количества, отбрасываются.
+ * </p>
+ * 
+ * <pre>
+ * SAXParser parser = pool.acquire();
+ * try {
+ * 	parser.parse(in, handler);
+ * } finally {
+ * 	pool.release(parser);
+ * }
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class SaxParserPool {
+	/**
+	 * Фабрика парсеров.
+	 */
+	private final SAXParserFactory factory;
+	/**
+	 * Свободные парсеры.
+	 */
+	private final Queue<SAXParser> idle = new ConcurrentLinkedQueue<SAXParser>();
+	/**
+	 * Количество свободных парсеров в пуле.
+	 */
+	private final AtomicInteger idleCount = new AtomicInteger();
+	/**
+	 * Количество созданных парсеров.
+	 */
+	private final AtomicLong createdCount = new AtomicLong();
+	/**
+	 * Максимальное количество свободных парсеров, хранимых в пуле. По
+	 * умолчанию - удвоенное количество процессоров.
+	 */
+	private int maxIdle = Runtime.getRuntime().availableProcessors() * 2;
+
+	public SaxParserPool() {
+		this.factory = SAXParserFactory.newInstance();
+	}
+
+	/**
+	 * Возвращает свободный парсер или создает новый.
+	 * 
+	 * @return SAX-парсер, используемый только вызывающим потоком до
+	 *         возвращения его в пул.
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 */
+	public SAXParser acquire() throws ParserConfigurationException,
+			SAXException {
+		SAXParser result = this.idle.poll();
+		if (result != null) {
+			this.idleCount.decrementAndGet();
+		} else {
+			synchronized (this.factory) {
+				result = this.factory.newSAXParser();
+			}
+			this.createdCount.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * Количество созданных парсеров.
+	 * 
+	 * @return Количество созданных парсеров.
+	 */
+	public long getCreatedCount() {
+		return this.createdCount.get();
+	}
+
+	/**
+	 * Количество свободных парсеров в пуле.
+	 * 
+	 * @return Количество свободных парсеров в пуле.
+	 */
+	public int getIdleCount() {
+		return this.idleCount.get();
+	}
+
+	/**
+	 * Максимальное количество свободных парсеров, хранимых в пуле. По
+	 * умолчанию - удвоенное количество процессоров.
+	 * 
+	 * @return Максимальное количество свободных парсеров, хранимых в пуле.
+	 */
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	/**
+	 * Возвращает парсер в пул после разбора документа.
+	 * 
+	 * @param parser
+	 */
+	public void release(SAXParser parser) {
+		if (this.idleCount.incrementAndGet() <= this.maxIdle) {
+			parser.reset();
+			this.idle.offer(parser);
+		} else {
+			this.idleCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Максимальное количество свободных парсеров, хранимых в пуле.
+	 * 
+	 * @param maxIdle
+	 *            Максимальное количество свободных парсеров, хранимых в
+	 *            пуле.
+	 */
+	public void setMaxIdle(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+}
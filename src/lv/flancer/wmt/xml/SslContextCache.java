@@ -0,0 +1,338 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * <p>
+ * Кэш инициализированных SSL-контекстов. Для каждой конфигурации (хранилище
+ * ключей/доверенных сертификатов) создается один контекст, который
+ * разделяется всеми запросами. Контекст хранит кэш SSL-сессий, поэтому
+ * повторные соединения с тем же сервером возобновляют сессию (abbreviated
+ * handshake) вместо полного установления защищенного соединения.
+ * </p>
+ * <p>
+ * Контексты создаются для протокола "TLS", при установлении соединения
+ * разрешаются только версии TLS, поддерживаемые JVM (SSLv3 исключается).
+ * </p>
+ * <p>
+ * Каждому контексту назначается уникальный идентификатор (
+ * {@link #getContextId(SSLContext)}), по которому пулы соединений различают
+ * соединения, установленные с разными сертификатами.
+ * </p>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class SslContextCache {
+	/**
+	 * Ключ контекста по умолчанию (системные хранилища).
+	 */
+	private final static String DEFAULT_CONTEXT_KEY = "";
+	/**
+	 * Алгоритм хэширования пароля в ключе контекста.
+	 */
+	private final static String PASSWORD_DIGEST = "SHA-256";
+	/**
+	 * Протокол, для которого создаются SSL-контексты.
+	 */
+	private final static String SSL_PROTOCOL = "TLS";
+	/**
+	 * Разрешенные версии протокола в порядке предпочтения.
+	 */
+	private final static String[] TLS_PROTOCOLS = { "TLSv1.3", "TLSv1.2",
+			"TLSv1.1", "TLSv1" };
+	/**
+	 * Количество SSL-сессий, хранимых в кэше каждого контекста.
+	 */
+	private static int sessionCacheSize = 100;
+	/**
+	 * Время (сек.) жизни SSL-сессии в кэше.
+	 */
+	private static int sessionTimeout = 3600;
+	/**
+	 * Идентификаторы контекстов (SSLContext сравнивается по ссылке, ключи не
+	 * удерживают контексты от сборки мусора).
+	 */
+	private final static Map<SSLContext, Long> contextIds = new WeakHashMap<SSLContext, Long>();
+	/**
+	 * Созданные контексты.
+	 */
+	private final static Map<String, SSLContext> contexts = new ConcurrentHashMap<String, SSLContext>();
+	/**
+	 * Последний назначенный идентификатор контекста.
+	 */
+	private final static AtomicLong lastContextId = new AtomicLong();
+
+	/**
+	 * Разрешает для сокета только версии TLS из {@link #TLS_PROTOCOLS},
+	 * поддерживаемые сокетом.
+	 * 
+	 * @param socket
+	 */
+	public static void enableTlsProtocols(SSLSocket socket) {
+		String[] enabled = selectTlsProtocols(socket.getSupportedProtocols());
+		if (enabled != null) {
+			socket.setEnabledProtocols(enabled);
+		}
+	}
+
+	/**
+	 * Разрешает для SSL-движка (неблокирующие соединения) только версии TLS
+	 * из {@link #TLS_PROTOCOLS}, поддерживаемые движком.
+	 * 
+	 * @param engine
+	 */
+	public static void enableTlsProtocols(SSLEngine engine) {
+		String[] enabled = selectTlsProtocols(engine.getSupportedProtocols());
+		if (enabled != null) {
+			engine.setEnabledProtocols(enabled);
+		}
+	}
+
+	/**
+	 * Возвращает разделяемый SSL-контекст для хранилища ключей и/или
+	 * доверенных сертификатов. Хранилище загружается только при первом
+	 * обращении.
+	 * 
+	 * @param pathToStore
+	 *            путь к хранилищу.
+	 * @param password
+	 *            пароль доступа к хранилищу.
+	 * @param trustStoreOnly
+	 *            загружаются только доверенные сертификаты.
+	 * @return инициализированный SSL-контекст.
+	 * @throws KeyStoreException
+	 * @throws NoSuchAlgorithmException
+	 * @throws CertificateException
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws UnrecoverableKeyException
+	 * @throws KeyManagementException
+	 */
+	public static SSLContext getContext(String pathToStore, String password,
+			boolean trustStoreOnly) throws KeyStoreException,
+			NoSuchAlgorithmException, CertificateException,
+			FileNotFoundException, IOException, UnrecoverableKeyException,
+			KeyManagementException {
+		String path = pathToStore.trim();
+		// пароль входит в ключ только в виде хэша; хэш должен быть стойким к
+		// коллизиям, иначе контекст можно получить с неверным паролем
+		String key = path + "|" + trustStoreOnly + "|" + digest(password);
+		SSLContext result = contexts.get(key);
+		if (result == null) {
+			synchronized (contexts) {
+				result = contexts.get(key);
+				if (result == null) {
+					// подгружаем файл ключей
+					KeyStore keyStore = KeyStore.getInstance(KeyStore
+							.getDefaultType());
+					FileInputStream in = new FileInputStream(path);
+					try {
+						keyStore.load(in, password.toCharArray());
+					} finally {
+						in.close();
+					}
+					// инициируем менеджеры ключей, если надо
+					KeyManager[] keyManagers = null;
+					if (!trustStoreOnly) {
+						KeyManagerFactory kmf = KeyManagerFactory
+								.getInstance(KeyManagerFactory
+										.getDefaultAlgorithm());
+						kmf.init(keyStore, password.toCharArray());
+						keyManagers = kmf.getKeyManagers();
+					}
+					// инициируем менеджеры сертификатов
+					TrustManagerFactory tmf = TrustManagerFactory
+							.getInstance(TrustManagerFactory
+									.getDefaultAlgorithm());
+					tmf.init(keyStore);
+					result = newContext(keyManagers, tmf.getTrustManagers());
+					contexts.put(key, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Возвращает уникальный в пределах JVM идентификатор SSL-контекста.
+	 * Идентификатор назначается при первом обращении и не меняется, пока
+	 * контекст существует; разные контексты (в т.ч. созданные вне кэша)
+	 * никогда не получают одинаковых идентификаторов.
+	 * 
+	 * @param context
+	 *            SSL-контекст.
+	 * @return идентификатор контекста.
+	 */
+	public static long getContextId(SSLContext context) {
+		synchronized (contextIds) {
+			Long result = contextIds.get(context);
+			if (result == null) {
+				result = lastContextId.incrementAndGet();
+				contextIds.put(context, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Возвращает разделяемый SSL-контекст, использующий системные хранилища
+	 * ключей и доверенных сертификатов.
+	 * 
+	 * @return инициализированный SSL-контекст.
+	 * @throws NoSuchAlgorithmException
+	 * @throws KeyManagementException
+	 */
+	public static SSLContext getDefaultContext()
+			throws NoSuchAlgorithmException, KeyManagementException {
+		SSLContext result = contexts.get(DEFAULT_CONTEXT_KEY);
+		if (result == null) {
+			synchronized (contexts) {
+				result = contexts.get(DEFAULT_CONTEXT_KEY);
+				if (result == null) {
+					result = newContext(null, null);
+					contexts.put(DEFAULT_CONTEXT_KEY, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Количество SSL-сессий, хранимых в кэше каждого контекста. По умолчанию
+	 * - 100.
+	 * 
+	 * @return Количество SSL-сессий, хранимых в кэше каждого контекста.
+	 */
+	public static int getSessionCacheSize() {
+		return sessionCacheSize;
+	}
+
+	/**
+	 * Время (сек.) жизни SSL-сессии в кэше. По умолчанию - 3600 сек.
+	 * 
+	 * @return Время (сек.) жизни SSL-сессии в кэше.
+	 */
+	public static int getSessionTimeout() {
+		return sessionTimeout;
+	}
+
+	/**
+	 * Хэш пароля для ключа контекста (в шестнадцатеричном виде).
+	 * 
+	 * @param password
+	 * @return
+	 * @throws NoSuchAlgorithmException
+	 */
+	private static String digest(String password)
+			throws NoSuchAlgorithmException {
+		byte[] hash = MessageDigest.getInstance(PASSWORD_DIGEST).digest(
+				password.getBytes(StandardCharsets.UTF_8));
+		StringBuilder result = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			result.append(Character.forDigit((b >> 4) & 0xF, 16));
+			result.append(Character.forDigit(b & 0xF, 16));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Удаляет из кэша все контексты (например, после замены файла хранилища).
+	 */
+	public static void invalidate() {
+		contexts.clear();
+	}
+
+	/**
+	 * Создает и инициализирует новый SSL-контекст с настроенным кэшем сессий.
+	 * 
+	 * @param keyManagers
+	 * @param trustManagers
+	 * @return
+	 * @throws NoSuchAlgorithmException
+	 * @throws KeyManagementException
+	 */
+	private static SSLContext newContext(KeyManager[] keyManagers,
+			TrustManager[] trustManagers) throws NoSuchAlgorithmException,
+			KeyManagementException {
+		SSLContext result = SSLContext.getInstance(SSL_PROTOCOL);
+		// источник случайных чисел - по умолчанию для платформы
+		result.init(keyManagers, trustManagers, null);
+		SSLSessionContext sessions = result.getClientSessionContext();
+		sessions.setSessionCacheSize(sessionCacheSize);
+		sessions.setSessionTimeout(sessionTimeout);
+		return result;
+	}
+
+	/**
+	 * Выбирает из поддерживаемых протоколов версии TLS из
+	 * {@link #TLS_PROTOCOLS}.
+	 * 
+	 * @param supportedProtocols
+	 * @return разрешаемые протоколы или 'null', если ни одна версия TLS не
+	 *         поддерживается.
+	 */
+	private static String[] selectTlsProtocols(String[] supportedProtocols) {
+		List<String> supported = Arrays.asList(supportedProtocols);
+		List<String> enabled = new ArrayList<String>();
+		for (String protocol : TLS_PROTOCOLS) {
+			if (supported.contains(protocol)) {
+				enabled.add(protocol);
+			}
+		}
+		return enabled.isEmpty() ? null : enabled.toArray(new String[enabled
+				.size()]);
+	}
+
+	/**
+	 * Количество SSL-сессий, хранимых в кэше каждого контекста. Влияет только
+	 * на контексты, создаваемые после вызова.
+	 * 
+	 * @param size
+	 *            Количество SSL-сессий, хранимых в кэше каждого контекста.
+	 */
+	public static void setSessionCacheSize(int size) {
+		sessionCacheSize = size;
+	}
+
+	/**
+	 * Время (сек.) жизни SSL-сессии в кэше. Влияет только на контексты,
+	 * создаваемые после вызова.
+	 * 
+	 * @param timeout
+	 *            Время (сек.) жизни SSL-сессии в кэше.
+	 */
+	public static void setSessionTimeout(int timeout) {
+		sessionTimeout = timeout;
+	}
+}
@@ -0,0 +1,275 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * <p>
+ * Разбор XML-ответов потоковым (pull) парсером {@link XMLStreamReader}. События
+ * парсера передаются тем же обработчикам ответов (
+ * {@link lv.flancer.wmt.xml.resp.sax.AbstractResponseHandler}), что и при
+ * разборе SAX-парсером, поэтому результатом разбора являются те же объекты
+ * ответов.
+ * </p>
+ * <p>
+ * В отличие от SAX-парсера:
+ * </p>
+ * <ul>
+ * <li>смежные фрагменты текста (в т.ч. сущности и CDATA) объединяются
+ * парсером, и текст элемента передается обработчику одним вызовом
+ * {@link DefaultHandler#characters(char[], int, int)} непосредственно из
+ * буфера парсера;</li>
+ * <li>атрибуты не копируются: обработчик читает их из парсера через
+ * {@link Attributes};</li>
+ * <li>имена элементов берутся из таблицы имен парсера и не создаются для
+ * каждого элемента заново.</li>
+ * </ul>
+ * <p>
+ * Экземпляр потокобезопасен: фабрика парсеров создается один раз, для каждого
+ * документа создается отдельный {@link XMLStreamReader}.
+ * </p>
+ * 
+ * <pre>
+ * StaxResponseParser parser = new StaxResponseParser();
+ * X8ResponseHandler handler = new X8ResponseHandler();
+ * parser.parse(Cp1251.newReader(in), handler);
+ * X8Response resp = handler.getResponse();
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class StaxResponseParser {
+	/**
+	 * Поток символов, запоминающий ошибку чтения: StAX-парсер сообщает о ней
+	 * как о {@link XMLStreamException}, без исходного исключения.
+	 */
+	private static class FailureRecordingReader extends FilterReader {
+		/**
+		 * Ошибка чтения исходного потока.
+		 */
+		private IOException failure;
+
+		private FailureRecordingReader(Reader in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				return super.read();
+			} catch (IOException e) {
+				this.failure = e;
+				throw e;
+			}
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			try {
+				return super.read(cbuf, off, len);
+			} catch (IOException e) {
+				this.failure = e;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Атрибуты текущего элемента, читаемые из парсера.
+	 */
+	private static class StreamAttributes implements Attributes {
+		/**
+		 * Парсер, на начальном теге элемента которого находятся атрибуты.
+		 */
+		private final XMLStreamReader reader;
+
+		private StreamAttributes(XMLStreamReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public int getIndex(String qName) {
+			for (int i = 0; i < this.reader.getAttributeCount(); i++) {
+				if (qName.equals(this.getQName(i))) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public int getIndex(String uri, String localName) {
+			for (int i = 0; i < this.reader.getAttributeCount(); i++) {
+				if (localName.equals(this.reader.getAttributeLocalName(i))
+						&& uri.equals(this.getURI(i))) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public int getLength() {
+			return this.reader.getAttributeCount();
+		}
+
+		@Override
+		public String getLocalName(int index) {
+			return this.reader.getAttributeLocalName(index);
+		}
+
+		@Override
+		public String getQName(int index) {
+			String prefix = this.reader.getAttributePrefix(index);
+			String localName = this.reader.getAttributeLocalName(index);
+			return ((prefix == null) || prefix.isEmpty()) ? localName : prefix
+					+ ":" + localName;
+		}
+
+		@Override
+		public String getType(int index) {
+			return this.reader.getAttributeType(index);
+		}
+
+		@Override
+		public String getType(String qName) {
+			int index = this.getIndex(qName);
+			return (index < 0) ? null : this.getType(index);
+		}
+
+		@Override
+		public String getType(String uri, String localName) {
+			int index = this.getIndex(uri, localName);
+			return (index < 0) ? null : this.getType(index);
+		}
+
+		@Override
+		public String getURI(int index) {
+			String result = this.reader.getAttributeNamespace(index);
+			return (result == null) ? "" : result;
+		}
+
+		@Override
+		public String getValue(int index) {
+			return this.reader.getAttributeValue(index);
+		}
+
+		@Override
+		public String getValue(String qName) {
+			int index = this.getIndex(qName);
+			return (index < 0) ? null : this.getValue(index);
+		}
+
+		@Override
+		public String getValue(String uri, String localName) {
+			int index = this.getIndex(uri, localName);
+			return (index < 0) ? null : this.getValue(index);
+		}
+	}
+
+	/**
+	 * Фабрика парсеров.
+	 */
+	private final XMLInputFactory factory;
+
+	public StaxResponseParser() {
+		this.factory = XMLInputFactory.newInstance();
+		// ответы WMT XML не используют пространства имен и DTD
+		this.factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE,
+				Boolean.FALSE);
+		this.factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		this.factory.setProperty(
+				XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		// текст элемента передается обработчику одним фрагментом
+		this.factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+	}
+
+	/**
+	 * Разбирает XML-документ, передавая события обработчику.
+	 * 
+	 * @param in
+	 *            поток символов XML-документа.
+	 * @param handler
+	 *            обработчик событий разбора.
+	 * @throws XMLStreamException
+	 *             документ не является корректным XML.
+	 * @throws SAXException
+	 *             ошибка обработчика.
+	 * @throws IOException
+	 *             ошибка чтения потока (как и при разборе SAX-парсером,
+	 *             передается без изменений, чтобы запрос мог быть повторен).
+	 */
+	public void parse(Reader in, DefaultHandler handler)
+			throws XMLStreamException, SAXException, IOException {
+		FailureRecordingReader source = new FailureRecordingReader(in);
+		try {
+			this.parse(source, handler);
+		} catch (XMLStreamException e) {
+			if (source.failure != null) {
+				throw source.failure;
+			}
+			if (e.getNestedException() instanceof IOException) {
+				throw (IOException) e.getNestedException();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Разбирает XML-документ, передавая события обработчику.
+	 * 
+	 * @param in
+	 *            поток символов XML-документа.
+	 * @param handler
+	 *            обработчик событий разбора.
+	 * @throws XMLStreamException
+	 * @throws SAXException
+	 */
+	private void parse(FailureRecordingReader in, DefaultHandler handler)
+			throws XMLStreamException, SAXException {
+		XMLStreamReader reader;
+		synchronized (this.factory) {
+			reader = this.factory.createXMLStreamReader(in);
+		}
+		try {
+			Attributes attributes = new StreamAttributes(reader);
+			handler.startDocument();
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					String name = reader.getLocalName();
+					handler.startElement("", name, name, attributes);
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					name = reader.getLocalName();
+					handler.endElement("", name, name);
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					handler.characters(reader.getTextCharacters(),
+							reader.getTextStart(), reader.getTextLength());
+					break;
+				}
+			}
+			handler.endDocument();
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,261 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml;
+
+
+/**
+ * <p>
+ * Состояние одного вызова сервиса WMT XML: тексты запроса и ответа, адрес и
+ * время выполнения запроса. Создается для каждого вызова {@link WmService} и
+ * возвращается вместе с ответом (см.
+ * {@link lv.flancer.wmt.xml.resp.AbstractResponse#getCallContext()}), поэтому
+ * один экземпляр сервиса может одновременно использоваться несколькими
+ * потоками.
+ * </p>
+ * 
+ * <pre>
+ * X9Response resp = service.x9(req);
+ * System.out.println(&quot;Request:\n&quot; + resp.getCallContext().getXmlRequest());
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class WmCallContext {
+	/**
+	 * Количество выполненных попыток отправки запроса.
+	 */
+	private int attempts;
+	/**
+	 * Время (мсек.) выполнения вызова, включая разбор ответа.
+	 */
+	private long duration;
+	/**
+	 * Имя сервера WMT XML.
+	 */
+	private String host;
+	/**
+	 * Текстовый вариант HTTP-запроса, отправленного на сервис WMT XML.
+	 */
+	private String httpRequest;
+	/**
+	 * Текстовый вариант HTTP-ответа, полученного от сервиса WMT XML (только
+	 * заголовки, если не установлен {@link WmService#isKeepResponseText()}).
+	 */
+	private String httpResponse;
+	/**
+	 * Код статуса HTTP-ответа, 0 - ответ не получен.
+	 */
+	private int httpStatusCode;
+	/**
+	 * Адрес запроса на сервере.
+	 */
+	private String requestAddress;
+	/**
+	 * XML-запрос, отправленный на сервис WMT XML. Формируется при первом
+	 * обращении из {@link #xmlRequestBytes}.
+	 */
+	private String xmlRequest;
+	/**
+	 * XML-запрос в том виде, в котором он отправлен (windows-1251).
+	 */
+	private byte[] xmlRequestBytes;
+	/**
+	 * XML-ответ, полученный от сервиса WMT XML (только если установлен
+	 * {@link WmService#isKeepResponseText()}).
+	 */
+	private String xmlResponse;
+
+	/**
+	 * Количество выполненных попыток отправки запроса.
+	 * 
+	 * @return Количество выполненных попыток отправки запроса.
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Время (мсек.) выполнения вызова, включая разбор ответа.
+	 * 
+	 * @return Время (мсек.) выполнения вызова.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Имя сервера WMT XML.
+	 * 
+	 * @return Имя сервера WMT XML.
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * Текстовый вариант HTTP-запроса, отправленного на сервис WMT XML.
+	 * 
+	 * @return Текстовый вариант HTTP-запроса.
+	 */
+	public String getHttpRequest() {
+		return httpRequest;
+	}
+
+	/**
+	 * Текстовый вариант HTTP-ответа, полученного от сервиса WMT XML (только
+	 * заголовки, если не установлен {@link WmService#isKeepResponseText()}).
+	 * 
+	 * @return Текстовый вариант HTTP-ответа.
+	 */
+	public String getHttpResponse() {
+		return httpResponse;
+	}
+
+	/**
+	 * Код статуса HTTP-ответа, 0 - ответ не получен.
+	 * 
+	 * @return Код статуса HTTP-ответа.
+	 */
+	public int getHttpStatusCode() {
+		return httpStatusCode;
+	}
+
+	/**
+	 * Адрес запроса на сервере.
+	 * 
+	 * @return Адрес запроса на сервере.
+	 */
+	public String getRequestAddress() {
+		return requestAddress;
+	}
+
+	/**
+	 * XML-запрос, отправленный на сервис WMT XML.
+	 * 
+	 * @return XML-запрос.
+	 */
+	public String getXmlRequest() {
+		if ((this.xmlRequest == null) && (this.xmlRequestBytes != null)) {
+			this.xmlRequest = Cp1251.decode(this.xmlRequestBytes);
+		}
+		return this.xmlRequest;
+	}
+
+	/**
+	 * XML-ответ, полученный от сервиса WMT XML (только если установлен
+	 * {@link WmService#isKeepResponseText()}).
+	 * 
+	 * @return XML-ответ.
+	 */
+	public String getXmlResponse() {
+		return xmlResponse;
+	}
+
+	/**
+	 * Количество выполненных попыток отправки запроса.
+	 * 
+	 * @param attempts
+	 *            Количество выполненных попыток отправки запроса.
+	 */
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	/**
+	 * Время (мсек.) выполнения вызова, включая разбор ответа.
+	 * 
+	 * @param duration
+	 *            Время (мсек.) выполнения вызова.
+	 */
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	/**
+	 * Имя сервера WMT XML.
+	 * 
+	 * @param host
+	 *            Имя сервера WMT XML.
+	 */
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	/**
+	 * Текстовый вариант HTTP-запроса, отправленного на сервис WMT XML.
+	 * 
+	 * @param httpRequest
+	 *            Текстовый вариант HTTP-запроса.
+	 */
+	public void setHttpRequest(String httpRequest) {
+		this.httpRequest = httpRequest;
+	}
+
+	/**
+	 * Текстовый вариант HTTP-ответа, полученного от сервиса WMT XML.
+	 * 
+	 * @param httpResponse
+	 *            Текстовый вариант HTTP-ответа.
+	 */
+	public void setHttpResponse(String httpResponse) {
+		this.httpResponse = httpResponse;
+	}
+
+	/**
+	 * Код статуса HTTP-ответа, 0 - ответ не получен.
+	 * 
+	 * @param httpStatusCode
+	 *            Код статуса HTTP-ответа.
+	 */
+	public void setHttpStatusCode(int httpStatusCode) {
+		this.httpStatusCode = httpStatusCode;
+	}
+
+	/**
+	 * Адрес запроса на сервере.
+	 * 
+	 * @param requestAddress
+	 *            Адрес запроса на сервере.
+	 */
+	public void setRequestAddress(String requestAddress) {
+		this.requestAddress = requestAddress;
+	}
+
+	/**
+	 * XML-запрос, отправленный на сервис WMT XML.
+	 * 
+	 * @param xmlRequest
+	 *            XML-запрос.
+	 */
+	public void setXmlRequest(String xmlRequest) {
+		this.xmlRequest = xmlRequest;
+		this.xmlRequestBytes = null;
+	}
+
+	/**
+	 * XML-запрос, отправленный на сервис WMT XML, в том виде, в котором он
+	 * отправлен (windows-1251). Строка запроса формируется только при
+	 * обращении к {@link #getXmlRequest()}.
+	 * 
+	 * @param xmlRequest
+	 *            XML-запрос.
+	 */
+	public void setXmlRequest(byte[] xmlRequest) {
+		this.xmlRequest = null;
+		this.xmlRequestBytes = xmlRequest;
+	}
+
+	/**
+	 * XML-ответ, полученный от сервиса WMT XML.
+	 * 
+	 * @param xmlResponse
+	 *            XML-ответ.
+	 */
+	public void setXmlResponse(String xmlResponse) {
+		this.xmlResponse = xmlResponse;
+	}
+
+}
@@ -1,17 +1,28 @@
 package lv.flancer.wmt.xml;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
 
 import lv.flancer.wmt.xml.dict.*;
 import lv.flancer.wmt.xml.req.*;
@@ -19,7 +30,10 @@ import lv.flancer.wmt.xml.resp.*;
 import lv.flancer.wmt.xml.resp.sax.*;
 import lv.flancer.wmt.xml.wmsigner.CannotLoadKeysException;
 import lv.flancer.wmt.xml.wmsigner.KwmCorruptedException;
+import lv.flancer.wmt.xml.wmsigner.SignatureCache;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 import lv.flancer.wmt.xml.wmsigner.WmSigner;
+import lv.flancer.wmt.xml.wmsigner.WmSignerRegistry;
 
 /**
  * <p>
@@ -42,6 +56,14 @@ import lv.flancer.wmt.xml.wmsigner.WmSigner;
  * установки только в "библиотечном" типе вызова.
  * </p>
  * <p>
+ * Экземпляр сервиса потокобезопасен: состояние каждого вызова (тексты
+ * запроса и ответа) хранится в {@link WmCallContext}, возвращаемом вместе с
+ * ответом ({@link AbstractResponse#getCallContext()}), XML-ответы разбираются
+ * потоковым парсером ({@link StaxResponseParser}) или парсерами из пула (
+ * {@link SaxParserPool}). Один экземпляр может
+ * обслуживать весь пул потоков приложения.
+ * </p>
+ * <p>
  * Пример вызова, авторизация по схеме Classiс:
  * </p>
  * 
@@ -72,10 +94,51 @@ import lv.flancer.wmt.xml.wmsigner.WmSigner;
  * 
  */
 public class WmService {
+	/**
+	 * Номера запросов одного WMID, назначаемые при отправке (см.
+	 * {@link WmService#sendNumberedHttpRequest(String, String, AbstractRequest, boolean, AbstractResponseHandler)}
+	 * ).
+	 */
+	private static class RequestNumSequence {
+		/**
+		 * Последний назначенный номер.
+		 */
+		private long last;
+		/**
+		 * Блокировка на время назначения номера, подписи и записи запроса в
+		 * соединение.
+		 */
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/**
+		 * Возвращает номер запроса ({@link RequestNumberGenerator}), больший
+		 * ранее назначенных, даже если запросы отправляются в одну
+		 * миллисекунду. Вызывается под {@link #lock}.
+		 * 
+		 * @return номер запроса.
+		 */
+		private long next() {
+			this.last = Math.max(RequestNumberGenerator.getRequestNumber(),
+					this.last + 1);
+			return this.last;
+		}
+	}
+
+	/**
+	 * Минимальное количество подписей, хранимых после пакетного подписания.
+	 */
+	private final static int BATCH_SIGNATURES_SIZE = 10000;
 	/**
 	 * Кодировка, используемая для запросов и ответов по HTTP.
 	 */
 	private final static String HTTP_CAHRSET = "windows-1251";
+	private final static Logger LOG = Logger.getLogger(WmService.class
+			.getName());
+	/**
+	 * Последовательности номеров запросов, назначаемых при отправке (ключ -
+	 * {@link #getAccountKey()}). Разделяются всеми экземплярами сервиса.
+	 */
+	private final static Map<String, RequestNumSequence> REQUEST_NUM_SEQUENCES = new ConcurrentHashMap<String, RequestNumSequence>();
 
 	private final static String WMT_HOST_ARBITRAGE = "arbitrage.webmoney.ru";
 	private final static String WMT_HOST_CLASSIC = "w3s.webmoney.ru";
@@ -83,24 +146,58 @@ public class WmService {
 	private final static String WMT_HOST_MERCHANT = "merchant.webmoney.ru";
 	private final static String WMT_HOST_PASSPORT = "passport.webmoney.ru";
 	/**
-	 * Содержит текстовый вариант HTTP-запроса, отправленного на сервис WMT XML.
+	 * Кодировка XML-документа, в котором она не указана.
+	 */
+	private final static Charset XML_DEFAULT_CHARSET = Charset
+			.forName("UTF-8");
+	/**
+	 * Максимальная длина XML-декларации, в которой ищется кодировка ответа.
+	 */
+	private final static int XML_DECLARATION_LIMIT = 256;
+	/**
+	 * Подписи запросов, вычисленные {@link #signAll(List)} до отправки.
+	 * Создается при первом пакетном подписании.
+	 */
+	private volatile SignatureCache batchSignatures = null;
+	/**
+	 * Пул постоянных (keep-alive) соединений с серверами WMT XML. Если не
+	 * задан - для каждого запроса устанавливается новое соединение.
+	 */
+	private HttpConnectionPool connectionPool = null;
+	/**
+	 * Устанавливать ли соединение с сервером одновременно с подписью запроса
+	 * (схема Classic). По умолчанию - 'true'.
 	 */
-	private String httpRequest;
+	private boolean connectWhileSigning = true;
 	/**
-	 * Содержит текстовый вариант HTTP-ответа, полученного от сервиса WMT XML.
+	 * Предохранитель, блокирующий запросы к серверам, которые несколько раз
+	 * подряд не ответили. Если не задан - не используется.
 	 */
-	private String httpResponse;
+	private CircuitBreaker circuitBreaker = null;
 	/**
 	 * Количество попыток повторения запросов к XML-сервисам, в случае
 	 * возникновения проблем в сети (IOException). По умолчанию - 1.
+	 * Используется, только если не задана {@link #retryPolicy}.
 	 */
 	private int httpRetries = 1;
 	/**
 	 * Время (мсек.) между попытками соединения с сервером WM XML, если по
 	 * каким-то причинам соединение не установилось с первого раза. По умолчанию
-	 * - 5000 мсек.;
+	 * - 5000 мсек.; Используется, только если не задана {@link #retryPolicy}.
 	 */
 	private int httpRetriesSleepTime = 5000;
+	/**
+	 * Состояние последнего вызова, выполненного текущим потоком (для
+	 * {@link #getHttpRequest()} и т.п.).
+	 */
+	private final ThreadLocal<WmCallContext> lastCallContext = new ThreadLocal<WmCallContext>();
+	/**
+	 * Сохранять ли тексты ответов ({@link #getHttpResponse()},
+	 * {@link #getXmlResponse()}) для диагностических целей. По умолчанию -
+	 * 'false': ответ разбирается непосредственно из соединения, и объем
+	 * используемой памяти не зависит от размера ответа.
+	 */
+	private boolean keepResponseText = false;
 	/**
 	 * Пароль доступа к хранилищу ключей, содержащему персональный сертификат
 	 * для аутентификации по схеме Light.
@@ -112,46 +209,245 @@ public class WmService {
 	 */
 	private String lightKeyStorePath;
 	/**
-	 * Парсер для разбора XML-ответа от WMT XML.
+	 * SSL-контекст с персональным сертификатом для аутентификации по схеме
+	 * Light. Создается при первом запросе.
+	 */
+	private volatile SSLContext lightSslContext;
+	/**
+	 * Пул парсеров для разбора XML-ответов от WMT XML.
 	 */
-	private SAXParser saxParser;
+	private SaxParserPool parserPool;
+	/**
+	 * Ограничитель частоты запросов к интерфейсам WMT XML. Если не задан -
+	 * частота запросов не ограничивается.
+	 */
+	private RateLimiter rateLimiter = null;
+	/**
+	 * Политика повторения запросов при сбоях в сети. Если не задана -
+	 * используются {@link #httpRetries} и {@link #httpRetriesSleepTime}.
+	 */
+	private RetryPolicy retryPolicy = null;
+	/**
+	 * Кэш подписей запросов, подписываемая строка которых не содержит номер
+	 * запроса (X8, X11, X17, X18). Если не задан - подпись вычисляется для
+	 * каждого запроса.
+	 */
+	private SignatureCache signatureCache = null;
+	/**
+	 * Реестр ключей подписи для нескольких WMID (см.
+	 * {@link #forSigner(Wmid)}).
+	 */
+	private WmSignerRegistry signerRegistry = null;
+	/**
+	 * Потоковый (pull) парсер XML-ответов.
+	 */
+	private StaxResponseParser staxParser;
+	/**
+	 * Разбирать ли XML-ответы потоковым (pull) парсером
+	 * {@link StaxResponseParser} вместо SAX-парсеров из пула.
+	 */
+	private boolean staxParsingEnabled = false;
+	/**
+	 * Обработчики ответов X3, используемые повторно.
+	 */
+	private ResponseHandlerPool<X3ResponseHandler> x3Handlers = new ResponseHandlerPool<X3ResponseHandler>() {
+		@Override
+		protected X3ResponseHandler create() {
+			return new X3ResponseHandler();
+		}
+	};
+	/**
+	 * Обработчики ответов X4, используемые повторно.
+	 */
+	private ResponseHandlerPool<X4ResponseHandler> x4Handlers = new ResponseHandlerPool<X4ResponseHandler>() {
+		@Override
+		protected X4ResponseHandler create() {
+			return new X4ResponseHandler();
+		}
+	};
+	/**
+	 * Обработчики ответов X9, используемые повторно.
+	 */
+	private ResponseHandlerPool<X9ResponseHandler> x9Handlers = new ResponseHandlerPool<X9ResponseHandler>() {
+		@Override
+		protected X9ResponseHandler create() {
+			return new X9ResponseHandler();
+		}
+	};
 	/**
 	 * WmSigner для генерации подписи при авторизации по схеме Classic.
 	 */
 	private WmSigner signer;
+
 	/**
-	 * Содержит XML-запрос, отправленный на сервис WMT XML.
+	 * Создает экземпляр сервиса. Экземпляр может одновременно использоваться
+	 * несколькими потоками: состояние каждого вызова хранится в
+	 * {@link WmCallContext}, возвращаемом вместе с ответом.
+	 * 
+	 * @throws Exception
 	 */
-	private String xmlRequest;
+	public WmService() throws Exception {
+		this.parserPool = new SaxParserPool();
+		this.staxParser = new StaxResponseParser();
+	}
 
 	/**
-	 * Содержит XML-ответ, полученный от сервиса WMT XML.
+	 * Создает экземпляр сервиса с настройками другого экземпляра: ключ
+	 * подписи (схема Classic), хранилище и SSL-контекст (схема Light), пул
+	 * соединений, параметры повторов. Экземпляры разделяют ключ подписи,
+	 * SSL-контекст, пул соединений и пул парсеров.
+	 * 
+	 * @param template
+	 *            экземпляр сервиса, настройки которого копируются.
+	 * @throws Exception
 	 */
-	private String xmlResponse;
+	public WmService(WmService template) throws Exception {
+		this.batchSignatures = template.batchSignatures;
+		this.circuitBreaker = template.circuitBreaker;
+		this.connectionPool = template.connectionPool;
+		this.connectWhileSigning = template.connectWhileSigning;
+		this.httpRetries = template.httpRetries;
+		this.httpRetriesSleepTime = template.httpRetriesSleepTime;
+		this.keepResponseText = template.keepResponseText;
+		this.lightKeyStorePassword = template.lightKeyStorePassword;
+		this.lightKeyStorePath = template.lightKeyStorePath;
+		this.lightSslContext = template.lightSslContext;
+		this.parserPool = template.parserPool;
+		this.rateLimiter = template.rateLimiter;
+		this.retryPolicy = template.retryPolicy;
+		this.signatureCache = template.signatureCache;
+		this.signerRegistry = template.signerRegistry;
+		this.staxParser = template.staxParser;
+		this.staxParsingEnabled = template.staxParsingEnabled;
+		this.x3Handlers = template.x3Handlers;
+		this.x4Handlers = template.x4Handlers;
+		this.x9Handlers = template.x9Handlers;
+		this.signer = template.signer;
+	}
 
-	public WmService() throws Exception {
-		SAXParserFactory spf = SAXParserFactory.newInstance();
-		this.saxParser = spf.newSAXParser();
+	/**
+	 * Создает {@link HttpRequester} для запроса к серверу WMT XML: SSL,
+	 * кодировка запросов, пул соединений и, если для аутентификации
+	 * используется схема Light, SSL-контекст с персональным сертификатом.
+	 * 
+	 * @param host
+	 *            имя хоста для запроса.
+	 * @return HttpRequester для запроса к серверу.
+	 * @throws Exception
+	 */
+	private HttpRequester createHttpRequester(String host) throws Exception {
+		HttpRequester result = new HttpRequester(host, 443);
+		// инициируем JKS, если для аутентификации используется схема Light
+		// (хранилище загружается один раз, SSL-сессии переиспользуются)
+		if ((this.lightKeyStorePath != null)
+				&& (this.lightKeyStorePassword != null)) {
+			if (this.lightSslContext == null) {
+				this.lightSslContext = SslContextCache.getContext(
+						this.lightKeyStorePath, this.lightKeyStorePassword,
+						false);
+			}
+			result.setSslContext(this.lightSslContext);
+		}
+		result.setRequestCharset(HTTP_CAHRSET);
+		result.setResponseCharset(HTTP_CAHRSET);
+		result.setSecuredResuest(true);
+		result.setConnectionPool(this.connectionPool);
+		return result;
+	}
+
+	/**
+	 * Возвращает сервис, подписывающий запросы от имени WMID из реестра
+	 * ключей ({@link #setSignerRegistry(WmSignerRegistry)}). Возвращаемый
+	 * экземпляр разделяет с текущим все настройки, пулы соединений и
+	 * парсеров, поэтому его можно создавать на каждый запрос:
+	 * 
+	 * <pre>
+	 * X11Response resp = service.forSigner(signerWmid).x11(passportWmid);
+	 * </pre>
+	 * 
+	 * @param wmid
+	 *            WMID, от имени которого подписываются запросы.
+	 * @return сервис с WmSigner'ом для WMID.
+	 * @throws Exception
+	 *             реестр ключей не задан или ключ для WMID не
+	 *             зарегистрирован ({@link CannotLoadKeysException}).
+	 */
+	public WmService forSigner(Wmid wmid) throws Exception {
+		if (this.signerRegistry == null) {
+			throw new CannotLoadKeysException();
+		}
+		WmService result = new WmService(this);
+		result.signer = this.signerRegistry.getSigner(wmid);
+		return result;
+	}
+
+	/**
+	 * Возвращает сервис, подписывающий запросы от имени WMID из реестра
+	 * ключей (см. {@link #forSigner(Wmid)}).
+	 * 
+	 * @param wmid
+	 *            WMID, от имени которого подписываются запросы.
+	 * @return сервис с WmSigner'ом для WMID.
+	 * @throws Exception
+	 */
+	public WmService forSigner(String wmid) throws Exception {
+		return this.forSigner(new Wmid(wmid));
+	}
+
+	/**
+	 * Ключ учетной записи, от имени которой выполняются запросы: WMID
+	 * подписи (схема Classic) или хранилище ключа (схема Light). Используется
+	 * для ограничения частоты запросов и нумерации запросов при отправке.
+	 * 
+	 * @return ключ учетной записи.
+	 */
+	private String getAccountKey() {
+		return (this.signer != null) ? this.signer.getWmid().toString()
+				: String.valueOf(this.lightKeyStorePath);
+	}
+
+	/**
+	 * Предохранитель, блокирующий запросы к серверам, которые несколько раз
+	 * подряд не ответили. Если не задан - не используется.
+	 * 
+	 * @return Предохранитель или 'null'.
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
 	}
 
 	/**
-	 * Содержит текстовый вариант HTTP-запроса, отправленного на сервис WMT XML.
+	 * Пул постоянных (keep-alive) соединений с серверами WMT XML.
+	 * 
+	 * @return Пул постоянных (keep-alive) соединений с серверами WMT XML или
+	 *         'null', если соединения не используются повторно.
+	 */
+	public HttpConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	/**
+	 * Содержит текстовый вариант HTTP-запроса, отправленного на сервис WMT XML
+	 * последним вызовом текущего потока (см. {@link #getLastCallContext()}).
 	 * 
 	 * @return Содержит текстовый вариант HTTP-запроса, отправленного на сервис
 	 *         WMT XML.
 	 */
 	public String getHttpRequest() {
-		return httpRequest;
+		WmCallContext ctx = this.lastCallContext.get();
+		return (ctx != null) ? ctx.getHttpRequest() : null;
 	}
 
 	/**
-	 * Содержит текстовый вариант HTTP-ответа, полученного от сервиса WMT XML.
+	 * Содержит текстовый вариант HTTP-ответа, полученного от сервиса WMT XML
+	 * последним вызовом текущего потока (см. {@link #getLastCallContext()}).
 	 * 
 	 * @return the httpResponse Содержит текстовый вариант HTTP-ответа,
 	 *         полученного от сервиса WMT XML.
 	 */
 	public String getHttpResponse() {
-		return httpResponse;
+		WmCallContext ctx = this.lastCallContext.get();
+		return (ctx != null) ? ctx.getHttpResponse() : null;
 	}
 
 	/**
@@ -178,21 +474,118 @@ public class WmService {
 	}
 
 	/**
-	 * Содержит XML-запрос, отправленный на сервис WMT XML.
+	 * Состояние последнего вызова, выполненного текущим потоком (в т.ч.
+	 * завершившегося ошибкой). Для успешных вызовов то же состояние доступно
+	 * через {@link AbstractResponse#getCallContext()}.
+	 * 
+	 * @return Состояние последнего вызова текущего потока или 'null'.
+	 */
+	public WmCallContext getLastCallContext() {
+		return this.lastCallContext.get();
+	}
+
+	/**
+	 * Пул парсеров для разбора XML-ответов от WMT XML.
+	 * 
+	 * @return Пул парсеров для разбора XML-ответов от WMT XML.
+	 */
+	public SaxParserPool getParserPool() {
+		return parserPool;
+	}
+
+	/**
+	 * Ограничитель частоты запросов к интерфейсам WMT XML. Если не задан -
+	 * частота запросов не ограничивается.
+	 * 
+	 * @return Ограничитель частоты запросов или 'null'.
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Политика повторения запросов при сбоях в сети. Если не задана -
+	 * используются {@link #getHttpRetries()} и
+	 * {@link #getHttpRetriesSleepTime()}.
+	 * 
+	 * @return Политика повторения запросов или 'null'.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Кэш подписей запросов, подписываемая строка которых не содержит номер
+	 * запроса (X8, X11, X17, X18). Если не задан - подпись вычисляется для
+	 * каждого запроса.
+	 * 
+	 * @return Кэш подписей или 'null'.
+	 */
+	public SignatureCache getSignatureCache() {
+		return signatureCache;
+	}
+
+	/**
+	 * Реестр ключей подписи для нескольких WMID (см.
+	 * {@link #forSigner(Wmid)}).
+	 * 
+	 * @return Реестр ключей подписи или 'null'.
+	 */
+	public WmSignerRegistry getSignerRegistry() {
+		return signerRegistry;
+	}
+
+	/**
+	 * Содержит XML-запрос, отправленный на сервис WMT XML последним вызовом
+	 * текущего потока (см. {@link #getLastCallContext()}).
 	 * 
 	 * @return Содержит XML-запрос, отправленный на сервис WMT XML.
 	 */
 	public String getXmlRequest() {
-		return xmlRequest;
+		WmCallContext ctx = this.lastCallContext.get();
+		return (ctx != null) ? ctx.getXmlRequest() : null;
 	}
 
 	/**
-	 * Содержит XML-ответ, полученный от сервиса WMT XML.
+	 * Содержит XML-ответ, полученный от сервиса WMT XML последним вызовом
+	 * текущего потока (см. {@link #getLastCallContext()}).
 	 * 
 	 * @return Содержит XML-ответ, полученный от сервиса WMT XML.
 	 */
 	public String getXmlResponse() {
-		return xmlResponse;
+		WmCallContext ctx = this.lastCallContext.get();
+		return (ctx != null) ? ctx.getXmlResponse() : null;
+	}
+
+	/**
+	 * Устанавливать ли соединение с сервером одновременно с подписью запроса
+	 * (схема Classic). По умолчанию - 'true'.
+	 * 
+	 * @return 'true', если соединение устанавливается одновременно с
+	 *         подписью запроса.
+	 */
+	public boolean isConnectWhileSigning() {
+		return this.connectWhileSigning;
+	}
+
+	/**
+	 * Сохранять ли тексты ответов для диагностических целей.
+	 * 
+	 * @return 'true', если тексты ответов сохраняются.
+	 */
+	public boolean isKeepResponseText() {
+		return keepResponseText;
+	}
+
+	/**
+	 * Разбирать ли XML-ответы потоковым (pull) парсером
+	 * {@link StaxResponseParser} вместо SAX-парсеров из пула. По умолчанию -
+	 * 'false'.
+	 * 
+	 * @return 'true', если XML-ответы разбираются потоковым парсером.
+	 */
+	public boolean isStaxParsingEnabled() {
+		return this.staxParsingEnabled;
 	}
 
 	/**
@@ -207,7 +600,18 @@ public class WmService {
 	private XmlRequest initSignature(XmlRequest request)
 			throws CannotLoadKeysException, IOException, KwmCorruptedException {
 		request.setSignerWmid(this.signer.getWmid());
-		String signature = this.signer.sign(request.getTextToSign());
+		SignatureTextWriter text = SignatureTextWriter.getInstance();
+		request.writeTextToSign(text);
+		String signature;
+		if (request.isSignatureReusable() && (this.signatureCache != null)) {
+			signature = this.signer.sign(text, this.signatureCache);
+		} else {
+			// подпись, вычисленная заранее в signAll(), берется из пакетного
+			// кэша (ключ - MD4 текущей строки, поэтому измененный запрос
+			// подписывается заново); новые подписи в пакетный кэш не
+			// добавляются и не вытесняют подписи пакета
+			signature = this.signer.sign(text, this.batchSignatures, false);
+		}
 		request.setSign(signature);
 		return request;
 	}
@@ -226,6 +630,7 @@ public class WmService {
 	public void initWmLightKeyStore(String keyStorePath, String keyStorePassword) {
 		this.lightKeyStorePath = keyStorePath;
 		this.lightKeyStorePassword = keyStorePassword;
+		this.lightSslContext = null;
 	}
 
 	/**
@@ -292,70 +697,390 @@ public class WmService {
 	}
 
 	/**
-	 * Выполняет непосредственную отправку HTTP-запроса на сервис WMT XML.
+	 * Создает поток символов XML-документа. Для windows-1251 используется
+	 * табличное декодирование ({@link Cp1251}).
+	 * 
+	 * @param in
+	 * @param charset
+	 *            кодировка документа.
+	 * @return
+	 */
+	private static Reader newXmlReader(InputStream in, Charset charset) {
+		if (Cp1251.CHARSET.equals(charset)) {
+			return Cp1251.newReader(in);
+		}
+		return new InputStreamReader(in, charset);
+	}
+
+	/**
+	 * Считывает из потока все байты.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+		byte[] buff = new byte[4096];
+		int read;
+		while ((read = in.read(buff)) != -1) {
+			out.write(buff, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Определяет кодировку XML-документа по атрибуту "encoding"
+	 * XML-декларации. Считанные байты возвращаются в поток.
+	 * 
+	 * @param in
+	 *            поток, начинающийся с символа '&lt;'.
+	 * @return кодировка документа (UTF-8, если кодировка не указана или не
+	 *         поддерживается).
+	 * @throws IOException
+	 */
+	private static Charset readXmlCharset(PushbackInputStream in)
+			throws IOException {
+		byte[] buff = new byte[XML_DECLARATION_LIMIT];
+		int length = 0;
+		int b;
+		while ((length < buff.length) && ((b = in.read()) != -1)) {
+			buff[length++] = (byte) b;
+			if (b == '>') {
+				break;
+			}
+		}
+		in.unread(buff, 0, length);
+		Charset result = null;
+		String decl = Cp1251.decode(buff, 0, length);
+		if (decl.startsWith("<?xml")) {
+			int pos = decl.indexOf("encoding");
+			int eq = (pos > 0) ? decl.indexOf('=', pos) : -1;
+			if (eq > 0) {
+				String rest = decl.substring(eq + 1).trim();
+				if (rest.length() > 0) {
+					int end = rest.indexOf(rest.charAt(0), 1);
+					if (end > 0) {
+						result = HttpResponseReader.forName(rest.substring(0,
+								end + 1));
+					}
+				}
+			}
+		}
+		return (result != null) ? result : XML_DEFAULT_CHARSET;
+	}
+
+	/**
+	 * Подписывает (если требуется) и отправляет запрос на сервис WMT XML (см.
+	 * {@link #sendHttpRequest(HttpRequester, String, String, HttpBodyProducer, AbstractResponseHandler, boolean)}
+	 * ). XML-документ запроса формируется непосредственно в байтах (
+	 * {@link XmlRequestWriter}). Если установлен {@link #connectWhileSigning},
+	 * соединение с сервером устанавливается одновременно с подписью и
+	 * формированием XML-запроса.
 	 * 
 	 * @param host
 	 *            имя хоста для запроса.
 	 * @param requestAddress
 	 *            адрес запроса.
-	 * @param requestBody
-	 *            тело запроса.
-	 * @return
-	 * @throws KeyManagementException
-	 * @throws NoSuchAlgorithmException
-	 * @throws IOException
-	 * @throws CertificateException
-	 * @throws KeyStoreException
-	 * @throws UnrecoverableKeyException
-	 */
-	private String sendHttpRequest(String host, String requestAddress,
-			String requestBody) throws KeyManagementException,
-			NoSuchAlgorithmException, IOException, UnrecoverableKeyException,
-			KeyStoreException, CertificateException {
-		this.httpResponse = null;
-		this.httpRequest = null;
-		this.xmlResponse = null;
-		this.xmlRequest = requestBody;
-		HttpRequester httpReq = new HttpRequester(host, 443);
-		// инициируем JKS, если для аутентификации используется схема Light
-		if ((this.lightKeyStorePath != null)
-				&& (this.lightKeyStorePassword != null)) {
-			httpReq.loadKeyStore(this.lightKeyStorePath,
-					this.lightKeyStorePassword, false);
+	 * @param request
+	 *            запрос.
+	 * @param sign
+	 *            'true', если запрос подписывается (авторизация по схеме
+	 *            Classic).
+	 * @param handler
+	 *            обработчик XML-ответа.
+	 * @param idempotent
+	 *            'true', если повторное выполнение запроса безопасно.
+	 * @throws Exception
+	 */
+	private void sendHttpRequest(String host, String requestAddress,
+			XmlRequest request, boolean sign, AbstractResponseHandler handler,
+			boolean idempotent) throws Exception {
+		HttpRequester httpReq = this.createHttpRequester(host);
+		// соединение устанавливается в отдельном потоке, пока запрос
+		// подписывается (к заблокированному серверу - не устанавливается)
+		CircuitBreaker breaker = this.circuitBreaker;
+		if (sign && this.connectWhileSigning
+				&& ((breaker == null) || !breaker.isOpen(host))) {
+			httpReq.prepareConnection(HttpRequester.getConnectExecutor());
 		}
-		httpReq.setRequestCharset(HTTP_CAHRSET);
-		httpReq.setResponseCharset(HTTP_CAHRSET);
-		httpReq.setSecuredResuest(true);
+		final byte[] requestBody;
+		try {
+			if (sign) {
+				request = this.initSignature(request);
+			}
+			// копия буфера потока хранится в WmCallContext
+			XmlRequestWriter out = XmlRequestWriter.getInstance();
+			request.writeXmlRequest(out);
+			requestBody = out.toByteArray();
+		} catch (Exception e) {
+			httpReq.cancelPreparedConnection();
+			throw e;
+		}
+		// запрос сформирован заранее и отправляется без изменений
+		HttpBodyProducer body = new HttpBodyProducer() {
+			@Override
+			public byte[] produce() {
+				return requestBody;
+			}
+
+			@Override
+			public void sent() {
+			}
+		};
+		this.sendHttpRequest(httpReq, host, requestAddress, body, handler,
+				idempotent);
+	}
+
+	/**
+	 * Отправляет запрос на сервис WMT XML (см.
+	 * {@link #sendHttpRequest(HttpRequester, String, String, HttpBodyProducer, AbstractResponseHandler, boolean)}
+	 * ), номер которого назначается при отправке: когда соединение с сервером
+	 * уже установлено, запрос нумеруется, подписывается, формируется и
+	 * записывается в соединение под блокировкой WMID ({@link #getAccountKey()}
+	 * ). Поэтому запросы одного WMID, отправляемые из разных потоков,
+	 * записываются в соединения в порядке номеров, а ожидание соединения и
+	 * ответа не задерживает другие запросы. Каждая повторная попытка
+	 * получает новый номер.
+	 * 
+	 * @param host
+	 *            имя хоста для запроса.
+	 * @param requestAddress
+	 *            адрес запроса.
+	 * @param request
+	 *            запрос (номер запроса заменяется).
+	 * @param sign
+	 *            'true', если запрос подписывается (авторизация по схеме
+	 *            Classic).
+	 * @param handler
+	 *            обработчик XML-ответа.
+	 * @throws Exception
+	 */
+	private void sendNumberedHttpRequest(String host, String requestAddress,
+			final AbstractRequest request, final boolean sign,
+			AbstractResponseHandler handler) throws Exception {
+		String key = this.getAccountKey();
+		RequestNumSequence sequence = REQUEST_NUM_SEQUENCES.get(key);
+		if (sequence == null) {
+			RequestNumSequence created = new RequestNumSequence();
+			sequence = REQUEST_NUM_SEQUENCES.putIfAbsent(key, created);
+			if (sequence == null) {
+				sequence = created;
+			}
+		}
+		final ReentrantLock lock = sequence.lock;
+		final RequestNumSequence numbers = sequence;
+		HttpBodyProducer body = new HttpBodyProducer() {
+			@Override
+			public byte[] produce() throws Exception {
+				// блокировка снимается в sent(), после записи запроса
+				lock.lock();
+				request.setRequestNum(numbers.next());
+				if (sign) {
+					WmService.this.initSignature(request);
+				}
+				XmlRequestWriter out = XmlRequestWriter.getInstance();
+				request.writeXmlRequest(out);
+				return out.toByteArray();
+			}
+
+			@Override
+			public void sent() {
+				lock.unlock();
+			}
+		};
+		this.sendHttpRequest(this.createHttpRequester(host), host,
+				requestAddress, body, handler, true);
+	}
+
+	/**
+	 * Выполняет непосредственную отправку HTTP-запроса на сервис WMT XML и
+	 * разбор XML-ответа. Тело ответа передается SAX-парсеру в виде потока
+	 * непосредственно из соединения и декодируется парсером однократно в
+	 * кодировке, указанной в XML-декларации. Текст ответа сохраняется только
+	 * если установлен {@link #keepResponseText}. При сбоях в сети запрос
+	 * повторяется в соответствии с {@link #retryPolicy}, если задан
+	 * {@link #circuitBreaker} - запросы к недоступному серверу блокируются.
+	 * Каждая попытка ожидает разрешения {@link #rateLimiter}. Состояние вызова сохраняется
+	 * в {@link WmCallContext}, который передается в разобранный ответ.
+	 * 
+	 * @param httpReq
+	 *            подготовленный {@link #createHttpRequester(String)}
+	 *            HttpRequester (соединение, установленное заранее и не
+	 *            использованное запросом, освобождается).
+	 * @param host
+	 *            имя хоста для запроса.
+	 * @param requestAddress
+	 *            адрес запроса.
+	 * @param requestBody
+	 *            источник XML-документа запроса в байтах windows-1251
+	 *            (вызывается при каждой попытке).
+	 * @param handler
+	 *            обработчик XML-ответа.
+	 * @param idempotent
+	 *            'true', если повторное выполнение запроса безопасно
+	 *            (запросы состояния), 'false' - для запросов, изменяющих
+	 *            состояние (переводы, выписка счетов и т.п.), которые после
+	 *            ошибки чтения ответа по умолчанию не повторяются.
+	 * @throws Exception
+	 */
+	private void sendHttpRequest(HttpRequester httpReq, String host,
+			String requestAddress, final HttpBodyProducer requestBody,
+			final AbstractResponseHandler handler, boolean idempotent)
+			throws Exception {
+		long started = System.currentTimeMillis();
+		// состояние вызова хранится отдельно от сервиса
+		final WmCallContext ctx = new WmCallContext();
+		ctx.setHost(host);
+		ctx.setRequestAddress(requestAddress);
+		this.lastCallContext.set(ctx);
+		// сохраняется XML-документ последней попытки
+		HttpBodyProducer body = new HttpBodyProducer() {
+			@Override
+			public byte[] produce() throws Exception {
+				byte[] result = requestBody.produce();
+				ctx.setXmlRequest(result);
+				return result;
+			}
+
+			@Override
+			public void sent() {
+				requestBody.sent();
+			}
+		};
+		final boolean keepText = this.keepResponseText;
+		final SaxParserPool parsers = this.parserPool;
+		final StaxResponseParser stax = this.staxParsingEnabled ? this.staxParser
+				: null;
+		HttpBodyConsumer consumer = new HttpBodyConsumer() {
+			@Override
+			public void consume(HttpResponseReader response, InputStream body)
+					throws Exception {
+				// кодировка ответа определяется один раз: по заголовку
+				// Content-Type или по XML-декларации
+				PushbackInputStream start = skipToXml(body);
+				Charset charset = response.getContentCharset();
+				if (charset == null) {
+					charset = readXmlCharset(start);
+				}
+				InputStream xml = start;
+				if (keepText) {
+					byte[] bytes = readAll(start);
+					String text = Cp1251.CHARSET.equals(charset) ? Cp1251
+							.decode(bytes) : new String(bytes, charset);
+					ctx.setHttpResponse(response.getHeadText() + text);
+					ctx.setXmlResponse(text);
+					xml = new ByteArrayInputStream(bytes);
+				}
+				// парсер получает уже декодированные символы
+				if (stax != null) {
+					stax.parse(newXmlReader(xml, charset), handler);
+					return;
+				}
+				SAXParser parser = parsers.acquire();
+				try {
+					parser.parse(new InputSource(newXmlReader(xml, charset)),
+							handler);
+				} finally {
+					parsers.release(parser);
+				}
+			}
+		};
+		RetryPolicy policy = (this.retryPolicy != null) ? this.retryPolicy
+				: new FixedDelayRetryPolicy(this.httpRetries,
+						this.httpRetriesSleepTime);
+		CircuitBreaker breaker = this.circuitBreaker;
+		RateLimiter limiter = this.rateLimiter;
+		String limitKey = this.getAccountKey();
+		policy.onCall();
 		// цикл повторений запросов, на случай сбоев в сети
+		String head = null;
 		int i = 0;
-		do {
-			i++;
-			try {
-				this.httpResponse = httpReq.doPost(requestAddress, requestBody);
-			} catch (IOException e) {
-				e.printStackTrace();
-				// сбрасываем соединение и "засыпаем" на некоторое время.
-				System.out.println("Connection retry #" + i + " is failed.");
-				if (i < httpRetries) {
+		try {
+			while (true) {
+				i++;
+				if (limiter != null) {
+					limiter.acquire(limitKey, requestAddress);
+				}
+				if (breaker != null) {
+					breaker.acquire(host);
+				}
+				try {
+					head = httpReq.doPost(requestAddress, body, consumer);
+					if (breaker != null) {
+						breaker.onSuccess(host);
+					}
+					break;
+				} catch (IOException e) {
+					if (breaker != null) {
+						breaker.onFailure(host);
+					}
+					// записи, уже переданные получателю, не передаются повторно
+					long delay = (handler.getDeliveredCount() > 0) ? -1 : policy
+							.getRetryDelay(i, e, idempotent);
+					if (delay < 0) {
+						throw e;
+					}
+					LOG.log(Level.WARNING, "Request to '" + host
+							+ requestAddress + "' failed (attempt #" + i
+							+ "), retrying in " + delay + " msec.", e);
 					try {
-						System.out.println("Sleeping "
-								+ this.httpRetriesSleepTime + " msec.");
-						Thread.sleep(this.httpRetriesSleepTime);
+						Thread.sleep(delay);
 					} catch (InterruptedException e1) {
-						e1.printStackTrace();
+						Thread.currentThread().interrupt();
+						InterruptedIOException ie = new InterruptedIOException(
+								"Interrupted while waiting for retry.");
+						ie.initCause(e);
+						throw ie;
+					}
+				} catch (Exception e) {
+					// сервер ответил, но ответ не разобран
+					if (breaker != null) {
+						breaker.onSuccess(host);
 					}
+					throw e;
 				}
 			}
-		} while ((this.httpResponse == null) && (i < httpRetries));
-		this.httpRequest = httpReq.getRequest();
-		// System.out.println(this.httpRequest);
-		// System.out.println(this.httpResponse);		
-                if(this.httpResponse == null)
-                    throw new IOException("No answer from host");
-                // вырезаем текст xml из http-ответа.
-		int start = this.httpResponse.indexOf("<?xml version=");
-		this.xmlResponse = this.httpResponse.substring(start);
-		return this.httpResponse;
+		} finally {
+			// соединение, установленное заранее, не было использовано
+			httpReq.cancelPreparedConnection();
+			ctx.setAttempts(i);
+			ctx.setHttpRequest(httpReq.getRequest());
+			ctx.setHttpStatusCode(httpReq.getResponseStatusCode());
+			ctx.setDuration(System.currentTimeMillis() - started);
+		}
+		if (ctx.getHttpResponse() == null) {
+			ctx.setHttpResponse(head);
+		}
+		// состояние вызова возвращается вместе с ответом
+		AbstractResponse response = handler.getResponse();
+		if (response != null) {
+			response.setCallContext(ctx);
+		}
+	}
+
+	/**
+	 * Пропускает в потоке байты, предшествующие началу XML-документа
+	 * (пробелы, BOM и т.п.), которые не допускаются SAX-парсером перед
+	 * XML-декларацией.
+	 * 
+	 * @param in
+	 * @return поток, начинающийся с символа '&lt;'.
+	 * @throws IOException
+	 */
+	private static PushbackInputStream skipToXml(InputStream in)
+			throws IOException {
+		// в поток возвращается и XML-декларация (см. readXmlCharset())
+		PushbackInputStream result = new PushbackInputStream(in,
+				XML_DECLARATION_LIMIT);
+		int b;
+		while (((b = result.read()) != -1) && (b != '<')) {
+			continue;
+		}
+		if (b != -1) {
+			result.unread(b);
+		}
+		return result;
 	}
 
 	/**
@@ -373,6 +1098,64 @@ public class WmService {
 				String.valueOf(allow));
 	}
 
+	/**
+	 * Предохранитель, блокирующий запросы к серверам, которые несколько раз
+	 * подряд не ответили. Может разделяться несколькими экземплярами сервиса.
+	 * 
+	 * @param circuitBreaker
+	 *            Предохранитель, 'null' - не использовать.
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * Устанавливать ли соединение с сервером одновременно с подписью запроса
+	 * (схема Classic). Соединение устанавливается в отдельном потоке (
+	 * {@link HttpRequester#getConnectExecutor()}), поэтому время запроса
+	 * сокращается на время подписи или установления соединения (меньшее из
+	 * них).
+	 * 
+	 * @param connectWhileSigning
+	 *            'true' - устанавливать соединение одновременно с подписью,
+	 *            'false' - после подписи (в потоке вызова).
+	 */
+	public void setConnectWhileSigning(boolean connectWhileSigning) {
+		this.connectWhileSigning = connectWhileSigning;
+	}
+
+	/**
+	 * Пул постоянных (keep-alive) соединений с серверами WMT XML. Пул может
+	 * разделяться несколькими экземплярами сервиса.
+	 * 
+	 * @param connectionPool
+	 *            Пул постоянных (keep-alive) соединений с серверами WMT XML,
+	 *            'null' - устанавливать новое соединение для каждого запроса.
+	 */
+	public void setConnectionPool(HttpConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
+	}
+
+	/**
+	 * Включает/выключает использование постоянных (HTTP/1.1 keep-alive)
+	 * соединений с серверами WMT XML. При включении создается пул соединений
+	 * с настройками по умолчанию (если пул не был задан ранее), при
+	 * выключении простаивающие соединения закрываются.
+	 * 
+	 * @param keepAlive
+	 *            'true' - использовать постоянные соединения.
+	 */
+	public void setHttpKeepAlive(boolean keepAlive) {
+		if (keepAlive) {
+			if (this.connectionPool == null) {
+				this.connectionPool = new HttpConnectionPool();
+			}
+		} else if (this.connectionPool != null) {
+			this.connectionPool.close();
+			this.connectionPool = null;
+		}
+	}
+
 	/**
 	 * Количество попыток повторения запросов к XML-сервисам, в случае
 	 * возникновения проблем в сети (IOException). По умолчанию - 1.
@@ -400,13 +1183,179 @@ public class WmService {
 	}
 
 	/**
-	 * Содержит XML-запрос, отправленный на сервис WMT XML.
+	 * Сохранять ли тексты ответов ({@link #getHttpResponse()},
+	 * {@link #getXmlResponse()}) для диагностических целей. Если 'true', ответ
+	 * перед разбором накапливается в памяти целиком.
+	 * 
+	 * @param keepResponseText
+	 *            'true' - сохранять тексты ответов.
+	 */
+	public void setKeepResponseText(boolean keepResponseText) {
+		this.keepResponseText = keepResponseText;
+	}
+
+	/**
+	 * Пул парсеров для разбора XML-ответов от WMT XML. Может разделяться
+	 * несколькими экземплярами сервиса.
+	 * 
+	 * @param parserPool
+	 *            Пул парсеров для разбора XML-ответов от WMT XML.
+	 */
+	public void setParserPool(SaxParserPool parserPool) {
+		this.parserPool = parserPool;
+	}
+
+	/**
+	 * Ограничитель частоты запросов к интерфейсам WMT XML. Лимиты ведутся для
+	 * каждой пары (WMID подписанта, адрес интерфейса); при схеме Light вместо
+	 * WMID используется путь к хранилищу ключей. Ограничитель может
+	 * разделяться несколькими экземплярами сервиса.
+	 * 
+	 * @param rateLimiter
+	 *            Ограничитель частоты запросов, 'null' - не ограничивать.
+	 */
+	public void setRateLimiter(RateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	/**
+	 * Политика повторения запросов при сбоях в сети (например,
+	 * {@link ExponentialBackoffRetryPolicy}).
+	 * 
+	 * @param retryPolicy
+	 *            Политика повторения запросов, 'null' - использовать
+	 *            {@link #setHttpRetries(int)} и
+	 *            {@link #setHttpRetriesSleepTime(int)}.
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Кэш подписей запросов, подписываемая строка которых не содержит номер
+	 * запроса (X8, X11, X17, X18). Повторяющиеся запросы этих интерфейсов
+	 * (например, проверка аттестата или владельца кошелька) используют ранее
+	 * вычисленную подпись. Кэш может разделяться несколькими экземплярами
+	 * сервиса.
+	 * 
+	 * @param signatureCache
+	 *            Кэш подписей, 'null' - вычислять подпись для каждого запроса.
+	 */
+	public void setSignatureCache(SignatureCache signatureCache) {
+		this.signatureCache = signatureCache;
+	}
+
+	/**
+	 * Реестр ключей подписи для нескольких WMID. Вместо отдельного экземпляра
+	 * сервиса на каждый WMID запросы выполняются через
+	 * {@link #forSigner(Wmid)}; ключи распаковываются при первой подписи и
+	 * хранятся в реестре ограниченное время (см.
+	 * {@link WmSignerRegistry#getMaxLoaded()}).
+	 * 
+	 * @param signerRegistry
+	 *            Реестр ключей подписи.
+	 */
+	public void setSignerRegistry(WmSignerRegistry signerRegistry) {
+		this.signerRegistry = signerRegistry;
+	}
+
+	/**
+	 * Разбирать ли XML-ответы потоковым (pull) парсером
+	 * {@link StaxResponseParser} вместо SAX-парсеров из пула. Результаты
+	 * разбора совпадают, но выигрыша StAX-разбор не дает (на ответах с
+	 * большим количеством атрибутов, например X11, он медленнее), поэтому по
+	 * умолчанию используются SAX-парсеры. Сравнение - см.
+	 * {@link lv.flancer.wmt.xml.bench.ResponseParserBenchmark}.
+	 * 
+	 * @param staxParsingEnabled
+	 *            'true', если XML-ответы разбираются потоковым парсером.
+	 */
+	public void setStaxParsingEnabled(boolean staxParsingEnabled) {
+		this.staxParsingEnabled = staxParsingEnabled;
+	}
+
+	/**
+	 * Содержит XML-запрос, отправленный на сервис WMT XML последним вызовом
+	 * текущего потока.
 	 * 
 	 * @param xmlRequest
 	 *            Содержит XML-запрос, отправленный на сервис WMT XML.
+	 * @deprecated XML-запрос формируется при вызове, см.
+	 *             {@link WmCallContext#getXmlRequest()}.
 	 */
+	@Deprecated
 	public void setXmlRequest(String xmlRequest) {
-		this.xmlRequest = xmlRequest;
+		WmCallContext ctx = this.lastCallContext.get();
+		if (ctx == null) {
+			ctx = new WmCallContext();
+			this.lastCallContext.set(ctx);
+		}
+		ctx.setXmlRequest(xmlRequest);
+	}
+
+	/**
+	 * Подписывает пакет запросов в общем пуле ForkJoin (см.
+	 * {@link #signAll(List, ForkJoinPool)}).
+	 * 
+	 * @param requests
+	 *            подписываемые запросы.
+	 * @return подписи запросов в порядке следования запросов.
+	 * @throws Exception
+	 */
+	public List<String> signAll(List<? extends XmlRequest> requests)
+			throws Exception {
+		return this.signAll(requests, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * <p>
+	 * Подписывает пакет запросов (например, массовые выплаты X2 или возвраты
+	 * X14) параллельно в пуле ForkJoin (схема Classic). Каждому запросу
+	 * устанавливаются WMID подписавшего и подпись.
+	 * </p>
+	 * <p>
+	 * Подписи сохраняются в сервисе, поэтому при последующей отправке
+	 * запросов (x2(), x14(), ...) подпись не вычисляется повторно, если
+	 * подписываемые поля запроса не изменились. Количество хранимых подписей
+	 * не меньше размера последнего пакета.
+	 * </p>
+	 * 
+	 * <pre>
+	 * service.signAll(payouts);
+	 * for (X2Request req : payouts) {
+	 * 	async.x2(req);
+	 * }
+	 * </pre>
+	 * 
+	 * @param requests
+	 *            подписываемые запросы.
+	 * @param pool
+	 *            пул, в котором вычисляются подписи.
+	 * @return подписи запросов в порядке следования запросов.
+	 * @throws Exception
+	 *             ключ подписи не задан ({@link CannotLoadKeysException}) или
+	 *             не может быть загружен.
+	 */
+	public List<String> signAll(List<? extends XmlRequest> requests,
+			ForkJoinPool pool) throws Exception {
+		if (this.signer == null) {
+			throw new CannotLoadKeysException();
+		}
+		SignatureCache cache = this.batchSignatures;
+		if (cache == null) {
+			synchronized (this) {
+				cache = this.batchSignatures;
+				if (cache == null) {
+					cache = new SignatureCache(Math.max(BATCH_SIGNATURES_SIZE,
+							requests.size()));
+					this.batchSignatures = cache;
+				}
+			}
+		}
+		if (cache.getMaxSize() < requests.size()) {
+			cache.setMaxSize(requests.size());
+		}
+		return this.signer.signAll(requests, cache, pool);
 	}
 
 	/**
@@ -466,19 +1415,16 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLInvoiceCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X1Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLInvoice.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X1ResponseHandler hdl = new X1ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, false);
 		return hdl.getResponse();
 	}
 
@@ -539,25 +1485,117 @@ public class WmService {
 	 * @throws Exception
 	 */
 	public X10Response x10(X10Request req) throws Exception {
+		return this.x10(req, false);
+	}
+
+	/**
+	 * Библиотечная форма для X10.
+	 * 
+	 * @param req
+	 *            X10Request
+	 * @param numbered
+	 *            'true', если номер запроса назначается при отправке (см.
+	 *            {@link #sendNumberedHttpRequest(String, String, AbstractRequest, boolean, AbstractResponseHandler)}
+	 *            ).
+	 * @return X10Response
+	 * @throws Exception
+	 */
+	private X10Response x10(X10Request req, boolean numbered) throws Exception {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLInInvoicesCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X10Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLInInvoices.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X10ResponseHandler hdl = new X10ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		if (numbered) {
+			this.sendNumberedHttpRequest(host, requestAddress, req,
+					this.signer != null, hdl);
+		} else {
+			this.sendHttpRequest(host, requestAddress, req,
+					this.signer != null, hdl, true);
+		}
 		return hdl.getResponse();
 	}
 
+	/**
+	 * <p>
+	 * Потоковая форма для X10: Получение списка счетов на оплату. Каждый счет
+	 * передается получателю сразу по окончании разбора элемента
+	 * &lt;ininvoice&gt;, не дожидаясь окончания ответа; список счетов ответа
+	 * остается пустым. При выключенном {@link #isKeepResponseText()} ответ
+	 * любого размера разбирается без накопления в памяти.
+	 * </p>
+	 * <p>
+	 * Если соединение прервано после передачи получателю хотя бы одного
+	 * счета, запрос не повторяется, а исключение передается вызывающей
+	 * стороне.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X10Request
+	 * @param consumer
+	 *            получатель счетов.
+	 * @return X10Response (без списка счетов)
+	 * @throws Exception
+	 */
+	public X10Response x10(X10Request req, Consumer<Invoice> consumer)
+			throws Exception {
+		// авторизация по схеме Light
+		String host = WMT_HOST_LIGHT;
+		String requestAddress = "/asp/XMLInInvoicesCert.asp";
+		// авторизация по схеме Classic (запрос подписывается при отправке)
+		if (this.signer != null) {
+			host = WMT_HOST_CLASSIC;
+			requestAddress = "/asp/XMLInInvoices.asp";
+		}
+		// обработчик ответа передает счета получателю
+		X10ResponseHandler hdl = new X10ResponseHandler(consumer);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, true);
+		return hdl.getResponse();
+	}
+
+	/**
+	 * <p>
+	 * История X10: Получение списка счетов на оплату за период запроса, не
+	 * ограниченная лимитом записей в одном ответе (см. {@link HistoryFetcher}
+	 * ). Период делится на окна, которые запрашиваются параллельно; остальные
+	 * условия запроса-шаблона применяются к каждому окну.
+	 * </p>
+	 * 
+	 * @param template
+	 *            запрос-шаблон (период - dateStart и dateFinish).
+	 * @return получение истории счетов.
+	 */
+	public HistoryFetcher<Invoice> x10History(final X10Request template) {
+		return new HistoryFetcher<Invoice>(template.getDateStart().getDate(),
+				template.getDateFinish().getDate()) {
+			@Override
+			protected List<Invoice> fetch(WmDate dateStart, WmDate dateFinish)
+					throws Exception {
+				X10Request req = new X10Request();
+				req.setWmid(template.getWmid());
+				req.setWmInvId(template.getWmInvId());
+				req.setDateStart(dateStart);
+				req.setDateFinish(dateFinish);
+				X10Response resp = WmService.this.x10(req, true);
+				this.checkRetVal(resp);
+				return resp.getInvoiceList();
+			}
+
+			@Override
+			protected long getId(Invoice record) {
+				return record.getId();
+			}
+		};
+	}
+
 	/**
 	 * <p>
 	 * Простая форма для X11: Получение сведений об аттестате WM идентификатора
@@ -603,17 +1641,11 @@ public class WmService {
 		// авторизация по обоим схемам
 		String host = WMT_HOST_PASSPORT;
 		String requestAddress = "/asp/XMLGetWMPassport.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
-		if (this.signer != null) {
-			req = (X11Request) this.initSignature(req);
-		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X11ResponseHandler hdl = new X11ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, true);
 		return hdl.getResponse();
 	}
 
@@ -651,19 +1683,16 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLRejectProtectCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X13Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLRejectProtect.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X13ResponseHandler hdl = new X13ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, false);
 		return hdl.getResponse();
 	}
 
@@ -701,19 +1730,16 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLTransMoneybackCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X14Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLTransMoneyback.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X14ResponseHandler hdl = new X14ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, false);
 		return hdl.getResponse();
 	}
 
@@ -763,22 +1789,19 @@ public class WmService {
 		} else {
 			requestAddress = "/asp/XMLTrustList2Cert.asp";
 		}
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X15RequestList) this.initSignature(req);
 			if (iTrust) {
 				requestAddress = "/asp/XMLTrustList.asp";
 			} else {
 				requestAddress = "/asp/XMLTrustList2.asp";
 			}
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X15ResponseListHandler hdl = new X15ResponseListHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, true);
 		return hdl.getResponse();
 	}
 
@@ -797,18 +1820,15 @@ public class WmService {
 		// общая авторизация
 		String host = WMT_HOST_CLASSIC;
 		String requestAddress = "/asp/XMLTrustSave2Cert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X15RequestSave) this.initSignature(req);
 			requestAddress = "/asp/XMLTrustSave2.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X15ResponseSaveHandler hdl = new X15ResponseSaveHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, false);
 		return hdl.getResponse();
 	}
 
@@ -853,19 +1873,16 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLCreatePurseCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X16Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLCreatePurse.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X16ResponseHandler hdl = new X16ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, false);
 		return hdl.getResponse();
 	}
 
@@ -935,15 +1952,10 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_ARBITRAGE;
 		String requestAddress = "/xml/X17_CreateContract.aspx";
-		// подписываем запрос
-		req = (X17Request) this.initSignature(req);
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X17ResponseHandler hdl = new X17ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req, true, hdl, false);
 		return hdl.getResponse();
 	}
 
@@ -993,17 +2005,12 @@ public class WmService {
 		String host = WMT_HOST_MERCHANT;
 		String requestAddress = "/conf/xml/XMLTransGet.asp";
 		// подписываем запрос, если авторизация по схеме Classic.
-		if ((this.signer != null)
-				&& req.getAuthType() == X18AuthType.WM_SIGNER_AUTH) {
-			req = (X18Request) this.initSignature(req);
-		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		boolean sign = (this.signer != null)
+				&& req.getAuthType() == X18AuthType.WM_SIGNER_AUTH;
+		// обработчик ответа
 		X18ResponseHandler hdl = new X18ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req, sign, hdl, true);
 		return hdl.getResponse();
 	}
 
@@ -1038,18 +2045,15 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_PASSPORT;
 		String requestAddress = "/XML/XMLCheckUserCert.aspx";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X19Request) this.initSignature(req);
 			requestAddress = "/XML/XMLCheckUser.aspx";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X19ResponseHandler hdl = new X19ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, true);
 		return hdl.getResponse();
 	}
 
@@ -1141,19 +2145,16 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLTransCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X2Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLTrans.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X2ResponseHandler hdl = new X2ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, false);
 		return hdl.getResponse();
 	}
         
@@ -1284,13 +2285,10 @@ public class WmService {
                     req.initMd5();            
                 }
 
-                // отправляем запрос в WMT
-                sendHttpRequest(host, requestAddress, req.getXmlRequest());
-                // производим разбор запроса
+                // обработчик ответа
                 X20InitiationResponseHandler hdl = new X20InitiationResponseHandler();
-                ByteArrayInputStream is = new ByteArrayInputStream(
-                                this.xmlResponse.getBytes());
-                this.saxParser.parse(is, hdl);
+                // отправляем запрос в WMT и производим разбор ответа
+                this.sendHttpRequest(host, requestAddress, req, false, hdl, false);
                 return hdl.getResponse();
         }
                 
@@ -1362,13 +2360,10 @@ public class WmService {
                     req.initMd5();            
                 }
 
-                // отправляем запрос в WMT
-                sendHttpRequest(host, requestAddress, req.getXmlRequest());
-                // производим разбор запроса
+                // обработчик ответа
                 X20ConfirmationResponseHandler hdl = new X20ConfirmationResponseHandler();
-                ByteArrayInputStream is = new ByteArrayInputStream(
-                                this.xmlResponse.getBytes());
-                this.saxParser.parse(is, hdl);
+                // отправляем запрос в WMT и производим разбор ответа
+                this.sendHttpRequest(host, requestAddress, req, false, hdl, false);
                 return hdl.getResponse();
         }
          
@@ -1475,13 +2470,10 @@ public class WmService {
                     req = (X21TrustRequest) this.initSignature(req);
                 } 
 
-                // отправляем запрос в WMT
-                sendHttpRequest(host, requestAddress, req.getXmlRequest());
-                // производим разбор запроса
+                // обработчик ответа
                 X21TrustRequestResponseHandler hdl = new X21TrustRequestResponseHandler();
-                ByteArrayInputStream is = new ByteArrayInputStream(
-                                this.xmlResponse.getBytes());
-                this.saxParser.parse(is, hdl);
+                // отправляем запрос в WMT и производим разбор ответа
+                this.sendHttpRequest(host, requestAddress, req, false, hdl, false);
                 return hdl.getResponse();
         }
         
@@ -1545,13 +2537,10 @@ public class WmService {
                     req = (X21TrustConfirmRequest) this.initSignature(req);
                 } 
 
-                // отправляем запрос в WMT
-                sendHttpRequest(host, requestAddress, req.getXmlRequest());
-                // производим разбор запроса
+                // обработчик ответа
                 X21TrustConfirmResponseHandler hdl = new X21TrustConfirmResponseHandler();
-                ByteArrayInputStream is = new ByteArrayInputStream(
-                                this.xmlResponse.getBytes());
-                this.saxParser.parse(is, hdl);
+                // отправляем запрос в WMT и производим разбор ответа
+                this.sendHttpRequest(host, requestAddress, req, false, hdl, false);
                 return hdl.getResponse();
         }
         
@@ -1631,25 +2620,126 @@ public class WmService {
 	 * @throws Exception
 	 */
 	public X3Response x3(X3Request req) throws Exception {
+		return this.x3(req, false);
+	}
+
+	/**
+	 * Библиотечная форма для X3.
+	 * 
+	 * @param req
+	 *            X3Request
+	 * @param numbered
+	 *            'true', если номер запроса назначается при отправке (см.
+	 *            {@link #sendNumberedHttpRequest(String, String, AbstractRequest, boolean, AbstractResponseHandler)}
+	 *            ).
+	 * @return X3Response
+	 * @throws Exception
+	 */
+	private X3Response x3(X3Request req, boolean numbered) throws Exception {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLOperationsCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
+		if (this.signer != null) {
+			host = WMT_HOST_CLASSIC;
+			requestAddress = "/asp/XMLOperations.asp";
+		}
+		// обработчик ответа (используется повторно)
+		X3ResponseHandler hdl = this.x3Handlers.acquire();
+		try {
+			// отправляем запрос в WMT и производим разбор ответа
+			if (numbered) {
+				this.sendNumberedHttpRequest(host, requestAddress, req,
+						this.signer != null, hdl);
+			} else {
+				this.sendHttpRequest(host, requestAddress, req,
+						this.signer != null, hdl, true);
+			}
+			return hdl.getResponse();
+		} finally {
+			this.x3Handlers.release(hdl);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Потоковая форма для X3: Получение истории операций по кошельку,
+	 * проверка выполнения операции по переводу средств. Каждая операция
+	 * передается получателю сразу по окончании разбора элемента
+	 * &lt;operation&gt;, не дожидаясь окончания ответа; список операций
+	 * ответа остается пустым. При выключенном {@link #isKeepResponseText()}
+	 * ответ любого размера разбирается без накопления в памяти.
+	 * </p>
+	 * <p>
+	 * Если соединение прервано после передачи получателю хотя бы одной
+	 * записи, запрос не повторяется, а исключение передается вызывающей
+	 * стороне.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X3Request
+	 * @param consumer
+	 *            получатель операций.
+	 * @return X3Response (без списка операций)
+	 * @throws Exception
+	 */
+	public X3Response x3(X3Request req, Consumer<Operation> consumer)
+			throws Exception {
+		// авторизация по схеме Light
+		String host = WMT_HOST_LIGHT;
+		String requestAddress = "/asp/XMLOperationsCert.asp";
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X3Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLOperations.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
-		X3ResponseHandler hdl = new X3ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// обработчик ответа передает записи получателю
+		X3ResponseHandler hdl = new X3ResponseHandler(consumer);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, true);
 		return hdl.getResponse();
 	}
 
+	/**
+	 * <p>
+	 * История X3: Получение истории операций по кошельку за период запроса,
+	 * не ограниченная лимитом записей в одном ответе (см.
+	 * {@link HistoryFetcher}). Период делится на окна, которые запрашиваются
+	 * параллельно; остальные условия запроса-шаблона применяются к каждому
+	 * окну.
+	 * </p>
+	 * 
+	 * @param template
+	 *            запрос-шаблон (период - dateStart и dateFinish).
+	 * @return получение истории операций.
+	 */
+	public HistoryFetcher<Operation> x3History(final X3Request template) {
+		return new HistoryFetcher<Operation>(template.getDateStart().getDate(),
+				template.getDateFinish().getDate()) {
+			@Override
+			protected List<Operation> fetch(WmDate dateStart, WmDate dateFinish)
+					throws Exception {
+				X3Request req = new X3Request();
+				req.setPurse(template.getPurse());
+				req.setOrderId(template.getOrderId());
+				req.setTranId(template.getTranId());
+				req.setWmInvId(template.getWmInvId());
+				req.setWmTranId(template.getWmTranId());
+				req.setDateStart(dateStart);
+				req.setDateFinish(dateFinish);
+				X3Response resp = WmService.this.x3(req, true);
+				this.checkRetVal(resp);
+				return resp.getOperationList();
+			}
+
+			@Override
+			protected long getId(Operation record) {
+				return record.getId();
+			}
+		};
+	}
+
 	/**
 	 * <p>
 	 * Минимальная форма для X4: Получение истории выписанных счетов по
@@ -1720,28 +2810,124 @@ public class WmService {
 	 * @throws Exception
 	 */
 	public X4Response x4(X4Request req) throws Exception {
+		return this.x4(req, false);
+	}
+
+	/**
+	 * Библиотечная форма для X4.
+	 * 
+	 * @param req
+	 *            X4Request
+	 * @param numbered
+	 *            'true', если номер запроса назначается при отправке (см.
+	 *            {@link #sendNumberedHttpRequest(String, String, AbstractRequest, boolean, AbstractResponseHandler)}
+	 *            ).
+	 * @return X4Response
+	 * @throws Exception
+	 */
+	private X4Response x4(X4Request req, boolean numbered) throws Exception {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLOutInvoicesCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
+		if (this.signer != null) {
+			host = WMT_HOST_CLASSIC;
+			requestAddress = "/asp/XMLOutInvoices.asp";
+		}
+		// обработчик ответа (используется повторно)
+		X4ResponseHandler hdl = this.x4Handlers.acquire();
+		try {
+			// отправляем запрос в WMT и производим разбор ответа
+			if (numbered) {
+				this.sendNumberedHttpRequest(host, requestAddress, req,
+						this.signer != null, hdl);
+			} else {
+				this.sendHttpRequest(host, requestAddress, req,
+						this.signer != null, hdl, true);
+			}
+			return hdl.getResponse();
+		} finally {
+			this.x4Handlers.release(hdl);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Потоковая форма для X4: Получение истории выписанных счетов по
+	 * кошельку. Проверка оплаты счета. Каждый счет передается получателю
+	 * сразу по окончании разбора элемента &lt;outinvoice&gt;, не дожидаясь
+	 * окончания ответа; список счетов ответа остается пустым. При выключенном
+	 * {@link #isKeepResponseText()} ответ любого размера разбирается без
+	 * накопления в памяти.
+	 * </p>
+	 * <p>
+	 * Если соединение прервано после передачи получателю хотя бы одной
+	 * записи, запрос не повторяется, а исключение передается вызывающей
+	 * стороне.
+	 * </p>
+	 * 
+	 * @param req
+	 *            X4Request
+	 * @param consumer
+	 *            получатель счетов.
+	 * @return X4Response (без списка счетов)
+	 * @throws Exception
+	 */
+	public X4Response x4(X4Request req, Consumer<Invoice> consumer)
+			throws Exception {
+		// авторизация по схеме Light
+		String host = WMT_HOST_LIGHT;
+		String requestAddress = "/asp/XMLOutInvoicesCert.asp";
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X4Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLOutInvoices.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
-		X4ResponseHandler hdl = new X4ResponseHandler();
-		// для Light и Classic версий кодировки различаются
-		String charset = (this.signer != null) ? "windows-1251" : "UTF-8";
-		hdl.setHttpCharset(charset);
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// обработчик ответа передает записи получателю
+		X4ResponseHandler hdl = new X4ResponseHandler(consumer);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, true);
 		return hdl.getResponse();
 	}
 
+	/**
+	 * <p>
+	 * История X4: Получение истории выписанных счетов по кошельку за период
+	 * запроса, не ограниченная лимитом записей в одном ответе (см.
+	 * {@link HistoryFetcher}). Период делится на окна, которые запрашиваются
+	 * параллельно; остальные условия запроса-шаблона применяются к каждому
+	 * окну.
+	 * </p>
+	 * 
+	 * @param template
+	 *            запрос-шаблон (период - dateStart и dateFinish).
+	 * @return получение истории счетов.
+	 */
+	public HistoryFetcher<Invoice> x4History(final X4Request template) {
+		return new HistoryFetcher<Invoice>(template.getDateStart().getDate(),
+				template.getDateFinish().getDate()) {
+			@Override
+			protected List<Invoice> fetch(WmDate dateStart, WmDate dateFinish)
+					throws Exception {
+				X4Request req = new X4Request();
+				req.setPurse(template.getPurse());
+				req.setOrderId(template.getOrderId());
+				req.setWmInvId(template.getWmInvId());
+				req.setDateStart(dateStart);
+				req.setDateFinish(dateFinish);
+				X4Response resp = WmService.this.x4(req, true);
+				this.checkRetVal(resp);
+				return resp.getInvoiceList();
+			}
+
+			@Override
+			protected long getId(Invoice record) {
+				return record.getId();
+			}
+		};
+	}
+
 	/**
 	 * <p>
 	 * Простая форма для X5: Завершение операции с протекцией сделки. Ввод кода
@@ -1778,19 +2964,16 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLFinishProtectCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X5Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLFinishProtect.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X5ResponseHandler hdl = new X5ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, false);
 		return hdl.getResponse();
 	}
 
@@ -1834,19 +3017,16 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLSendMsgCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X6Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLSendMsg.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X6ResponseHandler hdl = new X6ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, false);
 		return hdl.getResponse();
 	}
 
@@ -1894,19 +3074,16 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLClassicAuthCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X7Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLClassicAuth.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X7ResponseHandler hdl = new X7ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, true);
 		return hdl.getResponse();
 	}
 
@@ -1946,19 +3123,16 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLFindWMPurseCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X8Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLFindWMPurse.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
+		// обработчик ответа
 		X8ResponseHandler hdl = new X8ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
+		// отправляем запрос в WMT и производим разбор ответа
+		this.sendHttpRequest(host, requestAddress, req,
+				this.signer != null, hdl, true);
 		return hdl.getResponse();
 	}
 
@@ -1993,19 +3167,20 @@ public class WmService {
 		// авторизация по схеме Light
 		String host = WMT_HOST_LIGHT;
 		String requestAddress = "/asp/XMLPursesCert.asp";
-		// подписываем запрос, если авторизация по схеме Classic.
+		// авторизация по схеме Classic (запрос подписывается при отправке)
 		if (this.signer != null) {
-			req = (X9Request) this.initSignature(req);
 			host = WMT_HOST_CLASSIC;
 			requestAddress = "/asp/XMLPurses.asp";
 		}
-		// отправляем запрос в WMT
-		sendHttpRequest(host, requestAddress, req.getXmlRequest());
-		// производим разбор запроса
-		X9ResponseHandler hdl = new X9ResponseHandler();
-		ByteArrayInputStream is = new ByteArrayInputStream(
-				this.xmlResponse.getBytes());
-		this.saxParser.parse(is, hdl);
-		return hdl.getResponse();
+		// обработчик ответа (используется повторно)
+		X9ResponseHandler hdl = this.x9Handlers.acquire();
+		try {
+			// отправляем запрос в WMT и производим разбор ответа
+			this.sendHttpRequest(host, requestAddress, req,
+					this.signer != null, hdl, true);
+			return hdl.getResponse();
+		} finally {
+			this.x9Handlers.release(hdl);
+		}
 	}
 }
@@ -0,0 +1,92 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Callable;
+
+/**
+ * <p>
+ * Простейший замер времени выполнения и объема выделяемой памяти для
+ * сравнительных тестов производительности. Задача сначала выполняется
+ * указанное количество раз для прогрева JIT, затем замеряется.
+ * </p>
+ * <p>
+ * Объем выделяемой памяти определяется через
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}; если
+ * JVM его не поддерживает, выводится только время.
+ * </p>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+final class BenchmarkRunner {
+	/**
+	 * Накопитель результатов задач, не позволяющий JIT исключить их
+	 * вычисление.
+	 */
+	private static volatile int sink;
+
+	/**
+	 * Объем памяти (в байтах), выделенной текущим потоком, или -1, если JVM
+	 * не поддерживает замер.
+	 * 
+	 * @return
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported()
+					&& sunBean.isThreadAllocatedMemoryEnabled()) {
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread()
+						.getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Выполняет задачу и выводит среднее время и объем выделенной памяти на
+	 * одно выполнение.
+	 * 
+	 * @param name
+	 *            название задачи.
+	 * @param warmup
+	 *            количество выполнений для прогрева.
+	 * @param iterations
+	 *            количество замеряемых выполнений.
+	 * @param task
+	 *            задача; результат задачи используется, чтобы ее вычисление
+	 *            не было исключено.
+	 * @return среднее время (нсек.) одного выполнения.
+	 * @throws Exception
+	 */
+	static double run(String name, int warmup, int iterations,
+			Callable<?> task) throws Exception {
+		for (int i = 0; i < warmup; i++) {
+			sink += System.identityHashCode(task.call());
+		}
+		System.gc();
+		long bytes = getAllocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sink += System.identityHashCode(task.call());
+		}
+		long time = System.nanoTime() - start;
+		double result = (double) time / iterations;
+		String line = String.format("%-36s %12.1f us/op", name, result / 1000);
+		if (bytes >= 0) {
+			bytes = getAllocatedBytes() - bytes;
+			line += String.format(" %14d B/op", bytes / iterations);
+		}
+		System.out.println(line);
+		return result;
+	}
+
+	private BenchmarkRunner() {
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import lv.flancer.wmt.xml.Cp1251;
+
+/**
+ * <p>
+ * Сравнение табличного кодирования windows-1251 ({@link Cp1251}) с
+ * кодировщиком JDK: декодирование массива байтов, кодирование строки и
+ * чтение потока символов ({@link Cp1251#newReader(java.io.InputStream)} и
+ * {@link InputStreamReader}). Данные - синтетический текст ответа WMT XML с
+ * русскими и латинскими символами.
+ * </p>
+ * 
+ * <pre>
+ * java lv.flancer.wmt.xml.bench.Cp1251Benchmark [размер в Кб] [повторов]
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class Cp1251Benchmark {
+	/**
+	 * Размер буфера, которым читается поток символов.
+	 */
+	private final static int READ_BUFFER_SIZE = 8192;
+	private final static Charset WINDOWS_1251 = Charset
+			.forName("windows-1251");
+
+	/**
+	 * Формирует текст заданного размера из повторяющихся записей операций.
+	 * 
+	 * @param size
+	 *            размер текста в символах.
+	 * @return
+	 */
+	private static String newText(int size) {
+		StringBuilder result = new StringBuilder(size + 256);
+		for (int i = 0; result.length() < size; i++) {
+			result.append("<operation id=\"").append(1000000 + i)
+					.append("\" ts=\"").append(2000000 + i)
+					.append("\"><pursesrc>Z123456789012</pursesrc>")
+					.append("<pursedest>Z210987654321</pursedest>")
+					.append("<amount>").append(i % 1000).append(".50</amount>")
+					.append("<desc>Оплата счета № ").append(i)
+					.append(" за услуги связи &amp; хостинг</desc>")
+					.append("<corrwm>123456789012</corrwm>")
+					.append("<datecrt>20141001 12:00:00</datecrt></operation>\n");
+		}
+		result.setLength(size);
+		return result.toString();
+	}
+
+	/**
+	 * Читает поток символов полностью.
+	 * 
+	 * @param in
+	 * @param buffer
+	 * @return количество прочитанных символов.
+	 * @throws Exception
+	 */
+	private static Integer readAll(Reader in, char[] buffer) throws Exception {
+		int result = 0;
+		int count;
+		while ((count = in.read(buffer)) >= 0) {
+			result += count;
+		}
+		in.close();
+		return result;
+	}
+
+	/**
+	 * @param args
+	 *            размер текста в Кб (по умолчанию - 1024) и количество
+	 *            замеряемых повторов (по умолчанию - 50).
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int size = ((args.length > 0) ? Integer.parseInt(args[0]) : 1024) * 1024;
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+		int warmup = Math.max(iterations, 20);
+		final String text = newText(size);
+		final byte[] data = text.getBytes(WINDOWS_1251);
+		final char[] buffer = new char[READ_BUFFER_SIZE];
+		// результаты должны совпадать, иначе сравнение бессмысленно
+		if (!Cp1251.decode(data).equals(new String(data, WINDOWS_1251))
+				|| !Arrays.equals(Cp1251.encode(text), data)) {
+			throw new IllegalStateException(
+					"Cp1251 result differs from windows-1251.");
+		}
+		System.out.println("Text: " + data.length + " bytes, " + iterations
+				+ " iterations.");
+		report("decode",
+				BenchmarkRunner.run("Cp1251.decode(byte[])", warmup,
+						iterations, new Callable<Object>() {
+							@Override
+							public Object call() throws Exception {
+								return Cp1251.decode(data);
+							}
+						}),
+				BenchmarkRunner.run("new String(byte[], windows-1251)",
+						warmup, iterations, new Callable<Object>() {
+							@Override
+							public Object call() throws Exception {
+								return new String(data, WINDOWS_1251);
+							}
+						}));
+		report("encode",
+				BenchmarkRunner.run("Cp1251.encode(String)", warmup,
+						iterations, new Callable<Object>() {
+							@Override
+							public Object call() throws Exception {
+								return Cp1251.encode(text);
+							}
+						}),
+				BenchmarkRunner.run("String.getBytes(windows-1251)", warmup,
+						iterations, new Callable<Object>() {
+							@Override
+							public Object call() throws Exception {
+								return text.getBytes(WINDOWS_1251);
+							}
+						}));
+		report("reader",
+				BenchmarkRunner.run("Cp1251.newReader()", warmup, iterations,
+						new Callable<Object>() {
+							@Override
+							public Object call() throws Exception {
+								return readAll(
+										Cp1251.newReader(new ByteArrayInputStream(
+												data)), buffer);
+							}
+						}),
+				BenchmarkRunner.run("InputStreamReader(windows-1251)", warmup,
+						iterations, new Callable<Object>() {
+							@Override
+							public Object call() throws Exception {
+								return readAll(new InputStreamReader(
+										new ByteArrayInputStream(data),
+										WINDOWS_1251), buffer);
+							}
+						}));
+	}
+
+	/**
+	 * Выводит отношение времени JDK к времени {@link Cp1251}.
+	 * 
+	 * @param name
+	 * @param cp1251
+	 *            время (нсек.) {@link Cp1251}.
+	 * @param jdk
+	 *            время (нсек.) JDK.
+	 */
+	private static void report(String name, double cp1251, double jdk) {
+		System.out.println(String.format("%-36s %12.2fx", name
+				+ ": Cp1251 speedup", jdk / cp1251));
+	}
+}
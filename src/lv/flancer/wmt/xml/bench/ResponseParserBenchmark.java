@@ -0,0 +1,244 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml.bench;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.Callable;
+
+import javax.xml.parsers.SAXParser;
+
+import lv.flancer.wmt.xml.Cp1251;
+import lv.flancer.wmt.xml.SaxParserPool;
+import lv.flancer.wmt.xml.StaxResponseParser;
+import lv.flancer.wmt.xml.resp.X11Response;
+import lv.flancer.wmt.xml.resp.X3Response;
+import lv.flancer.wmt.xml.resp.sax.AbstractResponseHandler;
+import lv.flancer.wmt.xml.resp.sax.X11ResponseHandler;
+import lv.flancer.wmt.xml.resp.sax.X3ResponseHandler;
+
+import org.xml.sax.InputSource;
+
+/**
+ * <p>
+ * Сравнение разбора XML-ответов потоковым парсером (
+ * {@link StaxResponseParser}) и SAX-парсерами из пула ({@link SaxParserPool})
+ * - двух способов, которыми {@link lv.flancer.wmt.xml.WmService} разбирает
+ * ответы (см.
+ * {@link lv.flancer.wmt.xml.WmService#setStaxParsingEnabled(boolean)}).
+ * Разбираются синтетические ответы большого размера: X3 (история операций,
+ * много элементов с текстом) и X11 (аттестат, много атрибутов). Символы
+ * декодируются так же, как в сервисе ({@link Cp1251#newReader}).
+ * </p>
+ * 
+ * <pre>
+ * java lv.flancer.wmt.xml.bench.ResponseParserBenchmark [записей] [повторов]
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class ResponseParserBenchmark {
+	/**
+	 * Создает обработчик ответа.
+	 */
+	private static interface HandlerFactory {
+		AbstractResponseHandler newHandler();
+	}
+
+	/**
+	 * Список атрибутов строки X11, повторяемый в каждой строке.
+	 */
+	private final static String X11_ROW_FLAGS = " admlocked=\"0\" adres=\"1\" bankname=\"1\""
+			+ " bday=\"1\" bik=\"1\" bmonth=\"1\" bplace=\"1\" buhfio=\"1\" byear=\"1\""
+			+ " city=\"1\" country=\"1\" dirfio=\"1\" email=\"1\" fax=\"1\" fname=\"1\""
+			+ " icq=\"1\" iname=\"1\" infoopen=\"1\" inn=\"1\" inndoc=\"1\""
+			+ " jadres=\"1\" jcity=\"1\" jcountry=\"1\" jzipcode=\"1\" ks=\"1\""
+			+ " locked=\"0\" name=\"1\" okonx=\"1\" okpo=\"1\" oname=\"1\""
+			+ " osnovainfo=\"1\" pasdoc=\"1\" pbywhom=\"1\" pcity=\"1\" pcountry=\"1\""
+			+ " pdate=\"1\" phone=\"1\" phonehome=\"1\" phonemobile=\"1\" pnomer=\"1\""
+			+ " radres=\"1\" rcity=\"1\" rcountry=\"1\" recalled=\"0\""
+			+ " regnickname=\"1\" regwmid=\"1\" rs=\"1\" web=\"1\" zipcode=\"1\"";
+
+	/**
+	 * @param args
+	 *            количество записей в ответе (по умолчанию - 5000) и
+	 *            количество замеряемых повторов (по умолчанию - 50).
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int records = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+		int warmup = Math.max(iterations, 20);
+		StaxResponseParser stax = new StaxResponseParser();
+		SaxParserPool parsers = new SaxParserPool();
+		byte[] x3 = Cp1251.encode(newX3Response(records));
+		byte[] x11 = Cp1251.encode(newX11Response(records));
+		// результаты должны совпадать, иначе сравнение бессмысленно
+		X3Response x3Stax = (X3Response) parseStax(stax, x3,
+				new X3ResponseHandler());
+		X3Response x3Sax = (X3Response) parseSax(parsers, x3,
+				new X3ResponseHandler());
+		X11Response x11Stax = (X11Response) parseStax(stax, x11,
+				new X11ResponseHandler());
+		X11Response x11Sax = (X11Response) parseSax(parsers, x11,
+				new X11ResponseHandler());
+		if ((x3Stax.getOperationList().size() != records)
+				|| (x3Sax.getOperationList().size() != records)
+				|| (x11Stax.getCertInfo().getWmids().size() != records)
+				|| (x11Sax.getCertInfo().getWmids().size() != records)) {
+			throw new IllegalStateException("Responses are parsed differently.");
+		}
+		System.out.println("X3: " + x3.length + " bytes, X11: " + x11.length
+				+ " bytes, " + records + " records, " + iterations
+				+ " iterations.");
+		compare("X3", stax, parsers, x3, warmup, iterations,
+				new HandlerFactory() {
+					@Override
+					public AbstractResponseHandler newHandler() {
+						return new X3ResponseHandler();
+					}
+				});
+		compare("X11", stax, parsers, x11, warmup, iterations,
+				new HandlerFactory() {
+					@Override
+					public AbstractResponseHandler newHandler() {
+						return new X11ResponseHandler();
+					}
+				});
+	}
+
+	/**
+	 * Замеряет разбор ответа обоими способами и выводит отношение времени
+	 * SAX-разбора к времени StAX-разбора.
+	 * 
+	 * @param name
+	 * @param stax
+	 * @param parsers
+	 * @param xml
+	 * @param warmup
+	 * @param iterations
+	 * @param handlers
+	 * @throws Exception
+	 */
+	private static void compare(String name, final StaxResponseParser stax,
+			final SaxParserPool parsers, final byte[] xml, int warmup,
+			int iterations, final HandlerFactory handlers) throws Exception {
+		double staxTime = BenchmarkRunner.run(name + ": StAX", warmup,
+				iterations, new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						return parseStax(stax, xml, handlers.newHandler());
+					}
+				});
+		double saxTime = BenchmarkRunner.run(name + ": SAX pool", warmup,
+				iterations, new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						return parseSax(parsers, xml, handlers.newHandler());
+					}
+				});
+		System.out.println(String.format("%-36s %12.2fx", name
+				+ ": StAX speedup", saxTime / staxTime));
+	}
+
+	/**
+	 * Формирует ответ X3 с заданным количеством операций.
+	 * 
+	 * @param count
+	 * @return
+	 */
+	private static String newX3Response(int count) {
+		StringBuilder result = new StringBuilder(count * 512);
+		result.append("<?xml version=\"1.0\" encoding=\"windows-1251\"?>\n");
+		result.append("<w3s.response><reqn>1</reqn><retval>0</retval>");
+		result.append("<retdesc></retdesc><operations cnt=\"").append(count)
+				.append("\">\n");
+		for (int i = 0; i < count; i++) {
+			result.append("<operation id=\"").append(1000000 + i)
+					.append("\" ts=\"").append(2000000 + i).append("\">")
+					.append("<pursesrc>Z123456789012</pursesrc>")
+					.append("<pursedest>Z210987654321</pursedest>")
+					.append("<amount>").append(i % 1000).append(".50</amount>")
+					.append("<comiss>0.01</comiss><opertype>0</opertype>")
+					.append("<wminvid>0</wminvid><orderid>").append(i)
+					.append("</orderid><tranid>").append(i)
+					.append("</tranid><period>0</period>")
+					.append("<desc>Оплата счета № ").append(i)
+					.append(" за услуги связи &amp; хостинг</desc>")
+					.append("<datecrt>20141001 12:00:00</datecrt>")
+					.append("<dateupd>20141001 12:00:00</dateupd>")
+					.append("<corrwm>123456789012</corrwm>")
+					.append("<rest>100.00</rest></operation>\n");
+		}
+		result.append("</operations></w3s.response>");
+		return result.toString();
+	}
+
+	/**
+	 * Формирует ответ X11 с заданным количеством строк в списке WMID.
+	 * 
+	 * @param count
+	 * @return
+	 */
+	private static String newX11Response(int count) {
+		StringBuilder result = new StringBuilder(count * 768);
+		result.append("<?xml version=\"1.0\" encoding=\"windows-1251\"?>\n");
+		result.append("<response retval=\"0\"><retdesc></retdesc>");
+		result.append("<certinfo wmid=\"123456789012\"><attestat>");
+		result.append("<row tid=\"110\" cid=\"3\" datediff=\"5\" regcid=\"4\"")
+				.append(" datecrt=\"2009-01-01T10:00:00.000\"")
+				.append(X11_ROW_FLAGS).append("/></attestat>\n<wmids>");
+		for (int i = 0; i < count; i++) {
+			result.append("<row wmid=\"").append(100000000000L + i)
+					.append("\" nickname=\"Пользователь ").append(i)
+					.append("\" info=\"Магазин &amp; сервис\"")
+					.append(" datereg=\"2008-01-01T10:00:00.000\"")
+					.append(X11_ROW_FLAGS).append("/>\n");
+		}
+		result.append("</wmids><userinfo><value><row ctype=\"1\" jstatus=\"2\"")
+				.append(X11_ROW_FLAGS).append("/></value></userinfo>");
+		result.append("<directory><ctype id=\"1\">Частное лицо</ctype>")
+				.append("<jstatus id=\"2\">Резидент</jstatus>")
+				.append("<tid id=\"110\">Формальный</tid></directory>");
+		result.append("</certinfo></response>");
+		return result.toString();
+	}
+
+	/**
+	 * Разбирает ответ SAX-парсером из пула (как в сервисе).
+	 * 
+	 * @param parsers
+	 * @param xml
+	 * @param handler
+	 * @return
+	 * @throws Exception
+	 */
+	private static Object parseSax(SaxParserPool parsers, byte[] xml,
+			AbstractResponseHandler handler) throws Exception {
+		SAXParser parser = parsers.acquire();
+		try {
+			parser.parse(new InputSource(Cp1251
+					.newReader(new ByteArrayInputStream(xml))), handler);
+		} finally {
+			parsers.release(parser);
+		}
+		return handler.getResponse();
+	}
+
+	/**
+	 * Разбирает ответ потоковым парсером (как в сервисе).
+	 * 
+	 * @param stax
+	 * @param xml
+	 * @param handler
+	 * @return
+	 * @throws Exception
+	 */
+	private static Object parseStax(StaxResponseParser stax, byte[] xml,
+			AbstractResponseHandler handler) throws Exception {
+		stax.parse(Cp1251.newReader(new ByteArrayInputStream(xml)), handler);
+		return handler.getResponse();
+	}
+}
@@ -7,6 +7,7 @@ import java.util.Date;
 
 import lv.flancer.wmt.xml.dict.WmDate;
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X10: Получение списка счетов на оплату.
@@ -85,37 +86,6 @@ public class X10Request extends AbstractRequest {
 		return wmInvId;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<getininvoices>";
-		result += "<wmid>" + this.wmid + "</wmid>";
-		result += "<wminvid>" + this.wmInvId + "</wminvid>";
-		result += "<datestart>" + this.dateStart.getWmtDate() + "</datestart>";
-		result += "<datefinish>" + this.dateFinish.getWmtDate()
-				+ "</datefinish>";
-		result += "</getininvoices>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Максимальное время и дата создания счета.
 	 * 
@@ -216,4 +186,42 @@ public class X10Request extends AbstractRequest {
 		this.wmInvId = Long.parseLong(wmInvId);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.wmid);
+		out.append(this.wmInvId);
+		out.append(this.dateStart.getWmtDate());
+		out.append(this.dateFinish.getWmtDate());
+		out.append(this.requestNum);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("getininvoices");
+		out.element("wmid", this.wmid);
+		out.element("wminvid", this.wmInvId);
+		out.element("datestart", this.dateStart.getWmtDate());
+		out.element("datefinish", this.dateFinish.getWmtDate());
+		out.end("getininvoices");
+		out.end("w3s.request");
+	}
 }
@@ -4,6 +4,7 @@
 package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X11: Получение сведений об аттестате WM идентификатора и
@@ -115,35 +116,6 @@ public class X11Request extends AbstractRequest {
 		return result;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<request>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		result += "<passportwmid>" + this.passportWmid + "</passportwmid>";
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<params>";
-		result += "<dict>" + this.dict + "</dict>";
-		result += "<info>" + this.info + "</info>";
-		result += "<mode>" + this.mode + "</mode>";
-		result += "</params>";
-		result += "</request>";
-		return result;
-	}
-
 	/**
 	 * Отображение "опорного словаря". В структуре возвращаемых данных некоторые
 	 * значения заменяются специальным кодом (Например, тип аттестата
@@ -225,4 +197,50 @@ public class X11Request extends AbstractRequest {
 		this.passportWmid = passportWmid;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see lv.flancer.wmt.xml.req.XmlRequest#isSignatureReusable()
+	 */
+	@Override
+	public boolean isSignatureReusable() {
+		// номер запроса не подписывается
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		if (this.signerWmid != null)
+			out.append(this.signerWmid);
+		out.append(this.passportWmid);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("request");
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.element("passportwmid", this.passportWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("params");
+		out.element("dict", this.dict);
+		out.element("info", this.info);
+		out.element("mode", this.mode);
+		out.end("params");
+		out.end("request");
+	}
 }
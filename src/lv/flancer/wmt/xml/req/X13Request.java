@@ -3,6 +3,8 @@
  */
 package lv.flancer.wmt.xml.req;
 
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
+
 /**
  * Интерфейс X13: Возврат незавершенного платежа с протекцией.
  * 
@@ -48,33 +50,6 @@ public class X13Request extends AbstractRequest {
 		return wmTranId;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<rejectprotect>";
-		result += "<wmtranid>" + this.wmTranId + "</wmtranid>";
-		result += "</rejectprotect>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Номер транзакции (целое положительное число) по внутреннему учету
 	 * WebMoney Transfer (wmtranid), при этом тип этой транзакции должен быть с
@@ -91,4 +66,36 @@ public class X13Request extends AbstractRequest {
 		this.wmTranId = wmTranId;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.wmTranId);
+		out.append(this.requestNum);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("rejectprotect");
+		out.element("wmtranid", this.wmTranId);
+		out.end("rejectprotect");
+		out.end("w3s.request");
+	}
 }
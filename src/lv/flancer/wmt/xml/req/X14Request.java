@@ -4,6 +4,7 @@
 package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.WmAmount;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X14: Бескомиссионный возврат средств отправителю (покупателю).
@@ -75,34 +76,6 @@ public class X14Request extends AbstractRequest {
 		return result;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<trans>";
-		result += "<inwmtranid>" + this.inWmTranId + "</inwmtranid>";
-		result += "<amount>" + this.amount.getWmFormated() + "</amount>";
-		result += "</trans>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Указывается сумма транзакции, данное значение передается исключительно в
 	 * целях самопроверки и должно быть равно сумме передаваемой в теге
@@ -156,4 +129,38 @@ public class X14Request extends AbstractRequest {
 		this.inWmTranId = inWmTranId;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.requestNum);
+		out.append(this.inWmTranId);
+		out.append(this.amount.getWmFormated());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("trans");
+		out.element("inwmtranid", this.inWmTranId);
+		out.element("amount", this.amount.getWmFormated());
+		out.end("trans");
+		out.end("w3s.request");
+	}
 }
@@ -4,6 +4,7 @@
 package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X15: Просмотр и изменение текущих настроек управления "по доверию".
@@ -46,27 +47,6 @@ public class X15RequestList extends AbstractRequest {
 		return wmid;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null)
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		if (this.sign != null)
-			result += "<sign>" + this.sign + "</sign>";
-		result += "<gettrustlist>";
-		result += "<wmid>" + this.wmid + "</wmid>";
-		result += "</gettrustlist>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * ВМ-идентификатор, по которому необходимо получить список доверия,
 	 * возвращенный запросом список будет эквивалентен списку, который может
@@ -95,4 +75,38 @@ public class X15RequestList extends AbstractRequest {
 		this.wmid = wmid;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.wmid);
+		out.append(this.requestNum);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		if (this.signerWmid != null)
+			out.element("wmid", this.signerWmid);
+		if (this.sign != null)
+			out.element("sign", this.sign);
+		out.start("gettrustlist");
+		out.element("wmid", this.wmid);
+		out.end("gettrustlist");
+		out.end("w3s.request");
+	}
 }
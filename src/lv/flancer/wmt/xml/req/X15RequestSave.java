@@ -6,6 +6,7 @@ package lv.flancer.wmt.xml.req;
 import lv.flancer.wmt.xml.dict.PurseNumber;
 import lv.flancer.wmt.xml.dict.WmAmount;
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * @author Alex Gusev <flancer64@gmail.com>
@@ -156,39 +157,6 @@ public class X15RequestSave extends AbstractRequest {
 		return weekLimit;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null)
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		if (this.sign != null)
-			result += "<sign>" + this.sign + "</sign>";
-		// trust
-		char inv = (this.hasInvRight) ? '1' : '0';
-		char trans = (this.hasTransRight) ? '1' : '0';
-		char purse = (this.hasPurseRight) ? '1' : '0';
-		char transHist = (this.hasTransHistRight) ? '1' : '0';
-		result += "<trust inv=\"" + inv + "\" trans=\"" + trans + "\" purse=\""
-				+ purse + "\" transhist=\"" + transHist + "\">";
-		result += "<masterwmid>" + this.masterWmid + "</masterwmid>";
-		result += "<slavewmid>" + this.slaveWmid + "</slavewmid>";
-		result += "<purse>" + this.purse + "</purse>";
-		result += "<limit>" + this.limit + "</limit>";
-		result += "<daylimit>" + this.dayLimit + "</daylimit>";
-		result += "<weeklimit>" + this.weekLimit + "</weeklimit>";
-		result += "<monthlimit>" + this.monthLimit + "</monthlimit>";
-		result += "</trust>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Разрешена или нет ВМ-идентификатору 'masterwmid' выписка счетов на
 	 * доверяемый кошелек 'purse'.
@@ -490,4 +458,54 @@ public class X15RequestSave extends AbstractRequest {
 		this.weekLimit = weekLimit;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		if (this.signerWmid != null)
+			out.append(this.signerWmid);
+		out.append(this.purse);
+		out.append(this.masterWmid);
+		out.append(this.requestNum);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		if (this.signerWmid != null)
+			out.element("wmid", this.signerWmid);
+		if (this.sign != null)
+			out.element("sign", this.sign);
+		// trust
+		char inv = (this.hasInvRight) ? '1' : '0';
+		char trans = (this.hasTransRight) ? '1' : '0';
+		char purse = (this.hasPurseRight) ? '1' : '0';
+		char transHist = (this.hasTransHistRight) ? '1' : '0';
+		out.open("trust").attribute("inv", inv).attribute("trans", trans)
+				.attribute("purse", purse).attribute("transhist", transHist)
+				.close();
+		out.element("masterwmid", this.masterWmid);
+		out.element("slavewmid", this.slaveWmid);
+		out.element("purse", this.purse);
+		out.element("limit", this.limit);
+		out.element("daylimit", this.dayLimit);
+		out.element("weeklimit", this.weekLimit);
+		out.element("monthlimit", this.monthLimit);
+		out.end("trust");
+		out.end("w3s.request");
+	}
 }
@@ -4,6 +4,7 @@
 package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X16: Создание кошелька.
@@ -86,35 +87,6 @@ public class X16Request extends AbstractRequest {
 		return wmid;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<createpurse>";
-		result += "<wmid>" + this.wmid + "</wmid>";
-		result += "<pursetype>" + this.purseType + "</pursetype>";
-		result += "<desc>" + this.desc + "</desc>";
-		result += "</createpurse>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Текстовое название кошелька, которое будет отображаться в интерфейсе
 	 * Webmoney Keeper Classic или Light.
@@ -177,4 +149,39 @@ public class X16Request extends AbstractRequest {
 		this.wmid = wmid;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.wmid);
+		out.append(this.purseType);
+		out.append(this.requestNum);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("createpurse");
+		out.element("wmid", this.wmid);
+		out.element("pursetype", this.purseType);
+		out.element("desc", this.desc);
+		out.end("createpurse");
+		out.end("w3s.request");
+	}
 }
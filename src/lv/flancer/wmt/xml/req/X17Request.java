@@ -6,6 +6,7 @@ package lv.flancer.wmt.xml.req;
 import java.util.List;
 
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X17: Операции с арбитражными контрактами.
@@ -94,32 +95,6 @@ public class X17Request extends AbstractRequest {
 		return result;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<contract.request>";
-		result += "<sign_wmid>" + this.signerWmid + "</sign_wmid>";
-		result += "<name>" + this.name + "</name>";
-		result += "<ctype>" + this.ctype + "</ctype>";
-		result += "<text>" + this.text + "</text>";
-		result += "<sign>" + this.sign + "</sign>";
-		// accesslist
-		if (this.accessList != null) {
-			result += "<accesslist>";
-			for (Wmid one : this.accessList) {
-				result += "<wmid>" + one + "</wmid>";
-			}
-			result += "</accesslist>";
-		}
-		result += "</contract.request>";
-		return result;
-	}
-
 	/**
 	 * Список WMID пользователей, которым разрешается акцептовывать данный
 	 * контракт. Для контрактов с ограниченным доступом contract.request\ctype=2
@@ -166,4 +141,56 @@ public class X17Request extends AbstractRequest {
 	public void setText(String text) {
 		this.text = text;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see lv.flancer.wmt.xml.req.XmlRequest#isSignatureReusable()
+	 */
+	@Override
+	public boolean isSignatureReusable() {
+		// номер запроса не подписывается
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.signerWmid);
+		out.append(this.name.length());
+		out.append(this.ctype);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("contract.request");
+		out.element("sign_wmid", this.signerWmid);
+		out.element("name", this.name);
+		out.element("ctype", this.ctype);
+		out.element("text", this.text);
+		out.element("sign", this.sign);
+		// accesslist
+		if (this.accessList != null) {
+			out.start("accesslist");
+			for (Wmid one : this.accessList) {
+				out.element("wmid", one);
+			}
+			out.end("accesslist");
+		}
+		out.end("contract.request");
+	}
 }
@@ -9,6 +9,7 @@ import java.security.NoSuchAlgorithmException;
 import lv.flancer.wmt.xml.dict.PurseNumber;
 import lv.flancer.wmt.xml.dict.Wmid;
 import lv.flancer.wmt.xml.dict.X18AuthType;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X18: Получение деталей операции через WM Merchant.
@@ -129,43 +130,6 @@ public class X18Request extends AbstractRequest {
 		return wmid;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<merchant.request>";
-		if (this.authType == X18AuthType.WM_SIGNER_AUTH) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-			result += "<lmi_payee_purse>" + this.lmiPayeePurse
-					+ "</lmi_payee_purse>";
-			result += "<lmi_payment_no>" + this.lmiPaymentNo
-					+ "</lmi_payment_no>";
-			result += "<sign>" + this.sign + "</sign>";
-			result += "<md5 />";
-			result += "<secret_key />";
-		} else {
-			result += "<wmid>" + this.wmid + "</wmid>";
-			result += "<lmi_payee_purse>" + this.lmiPayeePurse
-					+ "</lmi_payee_purse>";
-			result += "<lmi_payment_no>" + this.lmiPaymentNo
-					+ "</lmi_payment_no>";
-			result += "<sign />";
-			if (this.authType == X18AuthType.MD5_AUTH) {
-				result += "<md5>" + this.getMd5Signature() + "</md5>";
-				result += "<secret_key />";
-			} else if (this.authType == X18AuthType.SECRET_KEY_AUTH) {
-				result += "<md5 />";
-				result += "<secret_key>" + this.secretKey + "</secret_key>";
-			}
-		}
-		result += "</merchant.request>";
-		return result;
-	}
-
 	/**
 	 * Тип аутентификации при запросе.
 	 * 
@@ -248,4 +212,62 @@ public class X18Request extends AbstractRequest {
 		this.wmid = wmid;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see lv.flancer.wmt.xml.req.XmlRequest#isSignatureReusable()
+	 */
+	@Override
+	public boolean isSignatureReusable() {
+		// номер запроса не подписывается
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.wmid);
+		out.append(this.lmiPayeePurse);
+		out.append(this.lmiPaymentNo);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("merchant.request");
+		if (this.authType == X18AuthType.WM_SIGNER_AUTH) {
+			out.element("wmid", this.signerWmid);
+			out.element("lmi_payee_purse", this.lmiPayeePurse);
+			out.element("lmi_payment_no", this.lmiPaymentNo);
+			out.element("sign", this.sign);
+			out.empty("md5");
+			out.empty("secret_key");
+		} else {
+			out.element("wmid", this.wmid);
+			out.element("lmi_payee_purse", this.lmiPayeePurse);
+			out.element("lmi_payment_no", this.lmiPaymentNo);
+			out.empty("sign");
+			if (this.authType == X18AuthType.MD5_AUTH) {
+				out.element("md5", this.getMd5Signature());
+				out.empty("secret_key");
+			} else if (this.authType == X18AuthType.SECRET_KEY_AUTH) {
+				out.empty("md5");
+				out.element("secret_key", this.secretKey);
+			}
+		}
+		out.end("merchant.request");
+	}
 }
@@ -5,6 +5,7 @@ package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.X19Operation;
 import lv.flancer.wmt.xml.dict.X19UserInfo;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X19: Проверка соответствия персональных данных владельца
@@ -71,66 +72,6 @@ public class X19Request extends AbstractRequest {
 		return userInfo;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<passport.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.lang != null)
-			result += "<lang>" + this.lang + "</lang>";
-		if (this.signerWmid != null)
-			result += "<signerwmid>" + this.signerWmid + "</signerwmid>";
-		if (this.sign != null)
-			result += "<sign>" + this.sign + "</sign>";
-		// operation
-		result += "<operation>";
-		result += "<type>" + this.operation.getType().name().toLowerCase()
-				+ "</type>";
-		result += "<direction>"
-				+ this.operation.getDirection().name().toLowerCase()
-				+ "</direction>";
-		result += "<pursetype>" + this.operation.getPurseType()
-				+ "</pursetype>";
-		result += "<amount>" + this.operation.getAmount().getWmFormated()
-				+ "</amount>";
-		result += "</operation>";
-		// userinfo
-		result += "<userinfo>";
-		if (this.userInfo.getWmid() != null)
-			result += "<wmid>" + this.userInfo.getWmid() + "</wmid>";
-		if (this.userInfo.getPnomer() != null)
-			result += "<pnomer>" + this.userInfo.getPnomer() + "</pnomer>";
-		if (this.userInfo.getFname() != null)
-			result += "<fname>" + this.userInfo.getFname() + "</fname>";
-		if (this.userInfo.getIname() != null)
-			result += "<iname>" + this.userInfo.getIname() + "</iname>";
-		if (this.userInfo.getBankName() != null)
-			result += "<bank_name>" + this.userInfo.getBankName()
-					+ "</bank_name>";
-		if (this.userInfo.getBankAccount() != null)
-			result += "<bank_account>" + this.userInfo.getBankAccount()
-					+ "</bank_account>";
-		if (this.userInfo.getCardNumber() != null)
-			result += "<card_number>" + this.userInfo.getCardNumber()
-					+ "</card_number>";
-		if (this.userInfo.getEmoneyName() != null)
-			result += "<emoney_name>" + this.userInfo.getEmoneyName()
-					+ "</emoney_name>";
-		if (this.userInfo.getEmoneyId() != null)
-			result += "<emoney_id>" + this.userInfo.getEmoneyId()
-					+ "</emoney_id>";
-		if (this.userInfo.getPhone() != null)
-			result += "<phone>" + this.userInfo.getPhone() + "</phone>";
-		result += "</userinfo>";
-		result += "</passport.request>";
-		return result;
-	}
-
 	/**
 	 * Язык запроса. Необязательный параметр: ru – русский язык (значение по
 	 * умолчанию), en – английский язык.
@@ -162,4 +103,69 @@ public class X19Request extends AbstractRequest {
 		this.userInfo = userInfo;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.requestNum);
+		out.append(this.operation.getType().name().toLowerCase());
+		out.append(this.userInfo.getWmid());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("passport.request");
+		out.element("reqn", this.requestNum);
+		if (this.lang != null)
+			out.element("lang", this.lang);
+		if (this.signerWmid != null)
+			out.element("signerwmid", this.signerWmid);
+		if (this.sign != null)
+			out.element("sign", this.sign);
+		// operation
+		out.start("operation");
+		out.element("type", this.operation.getType().name().toLowerCase());
+		out.element("direction", this.operation.getDirection().name()
+				.toLowerCase());
+		out.element("pursetype", this.operation.getPurseType());
+		out.element("amount", this.operation.getAmount().getWmFormated());
+		out.end("operation");
+		// userinfo
+		out.start("userinfo");
+		if (this.userInfo.getWmid() != null)
+			out.element("wmid", this.userInfo.getWmid());
+		if (this.userInfo.getPnomer() != null)
+			out.element("pnomer", this.userInfo.getPnomer());
+		if (this.userInfo.getFname() != null)
+			out.element("fname", this.userInfo.getFname());
+		if (this.userInfo.getIname() != null)
+			out.element("iname", this.userInfo.getIname());
+		if (this.userInfo.getBankName() != null)
+			out.element("bank_name", this.userInfo.getBankName());
+		if (this.userInfo.getBankAccount() != null)
+			out.element("bank_account", this.userInfo.getBankAccount());
+		if (this.userInfo.getCardNumber() != null)
+			out.element("card_number", this.userInfo.getCardNumber());
+		if (this.userInfo.getEmoneyName() != null)
+			out.element("emoney_name", this.userInfo.getEmoneyName());
+		if (this.userInfo.getEmoneyId() != null)
+			out.element("emoney_id", this.userInfo.getEmoneyId());
+		if (this.userInfo.getPhone() != null)
+			out.element("phone", this.userInfo.getPhone());
+		out.end("userinfo");
+		out.end("passport.request");
+	}
 }
@@ -6,6 +6,7 @@ package lv.flancer.wmt.xml.req;
 import lv.flancer.wmt.xml.dict.PurseNumber;
 import lv.flancer.wmt.xml.dict.WmAmount;
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X1: Выписывание счета от одного участника (магазина, ресурса)
@@ -146,40 +147,6 @@ public class X1Request extends AbstractRequest {
 		return result;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<invoice>";
-		result += "<orderid>" + this.getOrderId() + "</orderid>";
-		result += "<customerwmid>" + this.getCustomerWmid() + "</customerwmid>";
-		result += "<storepurse>" + this.getStorePurse() + "</storepurse>";
-		result += "<amount>" + this.getAmount().getWmFormated() + "</amount>";
-		result += "<desc>" + this.getDesc() + "</desc>";
-		result += "<address>" + this.getAddress() + "</address>";
-		result += "<period>" + this.getPeriod() + "</period>";
-		result += "<expiration>" + this.getExpiration() + "</expiration>";
-		result += "</invoice>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Адрес доставки товара.
 	 * 
@@ -332,4 +299,50 @@ public class X1Request extends AbstractRequest {
 		this.storePurse = new PurseNumber(storePurse);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.orderId);
+		out.append(this.customerWmid);
+		out.append(this.storePurse);
+		out.append(this.amount.getWmFormated());
+		out.append(this.desc);
+		out.append(this.address);
+		out.append(this.period);
+		out.append(this.expiration);
+		out.append(this.requestNum);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("invoice");
+		out.element("orderid", this.getOrderId());
+		out.element("customerwmid", this.getCustomerWmid());
+		out.element("storepurse", this.getStorePurse());
+		out.element("amount", this.getAmount().getWmFormated());
+		out.element("desc", this.getDesc());
+		out.element("address", this.getAddress());
+		out.element("period", this.getPeriod());
+		out.element("expiration", this.getExpiration());
+		out.end("invoice");
+		out.end("w3s.request");
+	}
 }
@@ -7,6 +7,7 @@ package lv.flancer.wmt.xml.req;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import lv.flancer.wmt.xml.dict.*;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X20: Проведение транзакции в merchant.webmoney без ухода с сайта
@@ -117,33 +118,6 @@ public class X20ConfirmationRequest implements XmlRequest {
         return result;           
     }
 
-    /*
-    * (non-Javadoc)
-    * 
-    * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-    */
-    @Override
-    public String getXmlRequest() {  
-        String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-        result += "<merchant.request>";        
-        result += "<wmid>" + this.signerWmid + "</wmid>";
-        result += "<lmi_payee_purse>" + this.payeePurse + "</lmi_payee_purse>";         
-        result += "<lmi_clientnumber_code>" + this.clientNumberCode + "</lmi_clientnumber_code>";          
-        result += "<lmi_wminvoiceid>" + this.requestNum + "</lmi_wminvoiceid>";      
-                
-        if (this.sign != null) {
-                result += "<sign>" + this.sign + "</sign>";
-                result += "<md5 />";
-		result += "<secret_key />";
-        } else {
-                result += "<sign />";
-                result += "<md5>" + (this.md5 != null ? this.md5 : this.getMd5Signature()) + "</md5>";
-                result += "<secret_key />";
-        }            
-        result += "</merchant.request>";        
-        return result;     
-    }
-
     /**
      * Подпись запроса.
      *
@@ -345,4 +319,47 @@ public class X20ConfirmationRequest implements XmlRequest {
         this.lang = lang;
     }
     
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+     * .SignatureTextWriter)
+     */
+    @Override
+    public void writeTextToSign(SignatureTextWriter out) {
+        out.append(this.signerWmid);
+        out.append(this.payeePurse);
+        out.append(this.requestNum);
+        out.append(this.clientNumberCode);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+     * .XmlRequestWriter)
+     */
+    @Override
+    public void writeXmlRequest(XmlRequestWriter out) {
+        out.prolog();
+        out.start("merchant.request");
+        out.element("wmid", this.signerWmid);
+        out.element("lmi_payee_purse", this.payeePurse);
+        out.element("lmi_clientnumber_code", this.clientNumberCode);
+        out.element("lmi_wminvoiceid", this.requestNum);
+
+        if (this.sign != null) {
+                out.element("sign", this.sign);
+                out.empty("md5");
+		out.empty("secret_key");
+        } else {
+                out.empty("sign");
+                out.element("md5", this.md5 != null ? this.md5 : this.getMd5Signature());
+                out.empty("secret_key");
+        }            
+        out.end("merchant.request");
+    }
 }
@@ -10,6 +10,7 @@ import lv.flancer.wmt.xml.dict.WmAmount;
 import lv.flancer.wmt.xml.dict.Wmid;
 import lv.flancer.wmt.xml.dict.X20ClientNumberType;
 import lv.flancer.wmt.xml.dict.X20SmsType;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X20: Проведение транзакции в merchant.webmoney без ухода с сайта
@@ -138,39 +139,6 @@ public class X20InitiationRequest implements XmlRequest {
         return result;        
     }
 
-    /*
-    * (non-Javadoc)
-    * 
-    * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-    */
-    @Override
-    public String getXmlRequest() { 
-        String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-        result += "<merchant.request>";        
-        result += "<wmid>" + this.signerWmid + "</wmid>";
-        result += "<lmi_payee_purse>" + this.payeePurse + "</lmi_payee_purse>";        
-        result += "<lmi_payment_no>" + this.lmiPaymentNo + "</lmi_payment_no>";        
-        result += "<lmi_payment_amount>" + this.getAmount().getWmFormated() + "</lmi_payment_amount>";        
-        result += "<lmi_payment_desc>" + this.desc + "</lmi_payment_desc>";        
-        result += "<lmi_clientnumber>" + this.clientNumber + "</lmi_clientnumber>";        
-        result += "<lmi_clientnumber_type>" + this.clientNumberType.ordinal() + "</lmi_clientnumber_type>";                
-        result += "<lmi_sms_type>" + X20SmsType.getValue(this.smsType) + "</lmi_sms_type>";
-        result += "<lang>" + this.lang + "</lang>";
-                
-        if (this.sign != null) {
-                result += "<sign>" + this.sign + "</sign>";
-                result += "<md5 />";
-		result += "<secret_key />";
-        } else {
-                result += "<sign />";
-                result += "<md5>" + (this.md5 != null ? this.md5 : this.getMd5Signature()) + "</md5>";
-                result += "<secret_key />";
-        }                 
-        result += "</merchant.request>";
-        
-        return result;       
-    }
-    
     /**
     * md5-хэш для подписываемой строки.
     * 
@@ -451,4 +419,53 @@ public class X20InitiationRequest implements XmlRequest {
         this.lang = lang;
     }
     
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+     * .SignatureTextWriter)
+     */
+    @Override
+    public void writeTextToSign(SignatureTextWriter out) {
+        out.append(this.signerWmid);
+        out.append(this.payeePurse);
+        out.append(this.lmiPaymentNo);
+        out.append(this.clientNumber);
+        out.append(this.clientNumberType.ordinal());
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+     * .XmlRequestWriter)
+     */
+    @Override
+    public void writeXmlRequest(XmlRequestWriter out) {
+        out.prolog();
+        out.start("merchant.request");
+        out.element("wmid", this.signerWmid);
+        out.element("lmi_payee_purse", this.payeePurse);
+        out.element("lmi_payment_no", this.lmiPaymentNo);
+        out.element("lmi_payment_amount", this.getAmount().getWmFormated());
+        out.element("lmi_payment_desc", this.desc);
+        out.element("lmi_clientnumber", this.clientNumber);
+        out.element("lmi_clientnumber_type", this.clientNumberType.ordinal());
+        out.element("lmi_sms_type", X20SmsType.getValue(this.smsType));
+        out.element("lang", this.lang);
+
+        if (this.sign != null) {
+                out.element("sign", this.sign);
+                out.empty("md5");
+		out.empty("secret_key");
+        } else {
+                out.empty("sign");
+                out.element("md5", this.md5 != null ? this.md5 : this.getMd5Signature());
+                out.empty("secret_key");
+        }                 
+        out.end("merchant.request");
+    }
 }
@@ -1,6 +1,7 @@
 package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X21: Установка по СМС доверия на оплату в пользу продавца.
@@ -63,26 +64,6 @@ public class X21TrustConfirmRequest implements XmlRequest {
         return result;
     }
 
-    /*
-    * (non-Javadoc)
-    * 
-    * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-    */
-    @Override
-    public String getXmlRequest() {
-        
-        String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-        result += "<merchant.request>";        
-        result += "<wmid>" + this.signerWmid + "</wmid>";
-        result += "<lmi_purseid>" + Long.toString(this.purseID) + "</lmi_purseid>";
-        result += "<lmi_clientnumber_code>" + this.clientNumberCode + "</lmi_clientnumber_code>"; 
-        result += "<sign>" + this.sign + "</sign>"; 
-        result += "<lang>" + this.lang + "</lang>";         
-        result += "</merchant.request>";
-        
-        return result;          
-    }
-
     @Override
     public void setSign(String signature) {
         this.sign = signature;
@@ -125,4 +106,37 @@ public class X21TrustConfirmRequest implements XmlRequest {
         this.purseID = purseID;
     }
     
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+     * .SignatureTextWriter)
+     */
+    @Override
+    public void writeTextToSign(SignatureTextWriter out) {
+        out.append(this.signerWmid);
+        out.append(Long.toString(this.purseID));
+        out.append(this.clientNumberCode);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+     * .XmlRequestWriter)
+     */
+    @Override
+    public void writeXmlRequest(XmlRequestWriter out) {
+        out.prolog();
+        out.start("merchant.request");
+        out.element("wmid", this.signerWmid);
+        out.element("lmi_purseid", this.purseID);
+        out.element("lmi_clientnumber_code", this.clientNumberCode);
+        out.element("sign", this.sign);
+        out.element("lang", this.lang);
+        out.end("merchant.request");
+    }
 }
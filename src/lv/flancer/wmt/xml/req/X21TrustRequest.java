@@ -1,6 +1,7 @@
 package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.*;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X21: Установка по СМС доверия на оплату в пользу продавца.
@@ -121,31 +122,6 @@ public class X21TrustRequest implements XmlRequest {
         return result;
     }
 
-    /*
-    * (non-Javadoc)
-    * 
-    * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-    */
-    @Override
-    public String getXmlRequest() {
-                       
-        String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-        result += "<merchant.request>";        
-        result += "<wmid>" + this.signerWmid + "</wmid>";
-        result += "<lmi_payee_purse>" + this.payeePurse + "</lmi_payee_purse>";        
-        result += "<lmi_day_limit>" + this.dayLimit + "</lmi_day_limit>";        
-        result += "<lmi_week_limit>" + this.weekLimit + "</lmi_week_limit>";        
-        result += "<lmi_month_limit>" + this.monthLimit + "</lmi_month_limit>";        
-        result += "<lmi_clientnumber>" + this.clientNumber + "</lmi_clientnumber>";        
-        result += "<lmi_clientnumber_type>" + X21ClientNumberType.getValue(this.clientNumberType) + "</lmi_clientnumber_type>";                
-        result += "<lmi_sms_type>" + X21SmsType.getValue(this.smsType) + "</lmi_sms_type>";
-        result += "<lang>" + this.lang + "</lang>";
-        result += "<sign>" + this.sign + "</sign>";                
-        result += "</merchant.request>";
-        
-        return result;         
-    }
-
     @Override
     public void setSign(String signature) {
         this.sign = signature;
@@ -240,4 +216,44 @@ public class X21TrustRequest implements XmlRequest {
         this.weekLimit = new WmAmount(weekLimit);
     }
     
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+     * .SignatureTextWriter)
+     */
+    @Override
+    public void writeTextToSign(SignatureTextWriter out) {
+        out.append(this.signerWmid);
+        out.append(this.payeePurse);
+        out.append(this.clientNumber);
+        out.append(X21ClientNumberType.getValue(this.clientNumberType));
+        out.append(X21SmsType.getValue(this.smsType));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+     * .XmlRequestWriter)
+     */
+    @Override
+    public void writeXmlRequest(XmlRequestWriter out) {
+        out.prolog();
+        out.start("merchant.request");
+        out.element("wmid", this.signerWmid);
+        out.element("lmi_payee_purse", this.payeePurse);
+        out.element("lmi_day_limit", this.dayLimit);
+        out.element("lmi_week_limit", this.weekLimit);
+        out.element("lmi_month_limit", this.monthLimit);
+        out.element("lmi_clientnumber", this.clientNumber);
+        out.element("lmi_clientnumber_type", X21ClientNumberType.getValue(this.clientNumberType));
+        out.element("lmi_sms_type", X21SmsType.getValue(this.smsType));
+        out.element("lang", this.lang);
+        out.element("sign", this.sign);
+        out.end("merchant.request");
+    }
 }
@@ -5,6 +5,7 @@ package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.PurseNumber;
 import lv.flancer.wmt.xml.dict.WmAmount;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X2: Перевод средств с одного кошелька на другой.
@@ -151,40 +152,6 @@ public class X2Request extends AbstractRequest {
 		return wmInvId;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<trans>";
-		result += "<tranid>" + this.getTranId() + "</tranid>";
-		result += "<pursesrc>" + this.getPurseSrc() + "</pursesrc>";
-		result += "<pursedest>" + this.getPurseDest() + "</pursedest>";
-		result += "<amount>" + this.getAmount().getWmFormated() + "</amount>";
-		result += "<period>" + this.getPeriod() + "</period>";
-		result += "<pcode>" + this.getPcode() + "</pcode>";
-		result += "<desc>" + this.getDesc() + "</desc>";
-		result += "<wminvid>" + this.getWmInvId() + "</wminvid>";
-		result += "</trans>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Учитывать разрешение получателя. Если 'false' – перевод будет выполняться
 	 * без учета, разрешает ли получатель перевод; 'true' – перевод будет
@@ -355,4 +322,50 @@ public class X2Request extends AbstractRequest {
 		this.wmInvId = Integer.parseInt(wmInvId);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.requestNum);
+		out.append(this.tranId);
+		out.append(this.purseSrc);
+		out.append(this.purseDest);
+		out.append(this.amount.getWmFormated());
+		out.append(this.period);
+		out.append(this.pCode);
+		out.append(this.desc);
+		out.append(this.wmInvId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("trans");
+		out.element("tranid", this.getTranId());
+		out.element("pursesrc", this.getPurseSrc());
+		out.element("pursedest", this.getPurseDest());
+		out.element("amount", this.getAmount().getWmFormated());
+		out.element("period", this.getPeriod());
+		out.element("pcode", this.getPcode());
+		out.element("desc", this.getDesc());
+		out.element("wminvid", this.getWmInvId());
+		out.end("trans");
+		out.end("w3s.request");
+	}
 }
@@ -5,6 +5,7 @@ package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.PurseNumber;
 import lv.flancer.wmt.xml.dict.WmDate;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X3: Получение истории операций по кошельку. Проверка выполнения
@@ -122,35 +123,6 @@ public class X3Request extends AbstractRequest {
 		return wmTranId;
 	}
 
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<getoperations>";
-		result += "<purse>" + this.purse + "</purse>";
-		result += "<wmtranid>" + this.wmTranId + "</wmtranid>";
-		result += "<tranid>" + this.tranId + "</tranid>";
-		result += "<wminvid>" + this.wmInvId + "</wminvid>";
-		result += "<orderid>" + this.orderId + "</orderid>";
-		result += "<datestart>" + this.dateStart.getWmtDate() + "</datestart>";
-		result += "<datefinish>" + this.dateFinish.getWmtDate()
-				+ "</datefinish>";
-		result += "</getoperations>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Максимальное время и дата выполнения операции (ГГГГММДД ЧЧ:ММ:СС).
 	 * 
@@ -228,4 +200,42 @@ public class X3Request extends AbstractRequest {
 		this.wmTranId = wmTranId;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.purse);
+		out.append(this.requestNum);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("getoperations");
+		out.element("purse", this.purse);
+		out.element("wmtranid", this.wmTranId);
+		out.element("tranid", this.tranId);
+		out.element("wminvid", this.wmInvId);
+		out.element("orderid", this.orderId);
+		out.element("datestart", this.dateStart.getWmtDate());
+		out.element("datefinish", this.dateFinish.getWmtDate());
+		out.end("getoperations");
+		out.end("w3s.request");
+	}
 }
@@ -7,6 +7,7 @@ import java.util.Date;
 
 import lv.flancer.wmt.xml.dict.PurseNumber;
 import lv.flancer.wmt.xml.dict.WmDate;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X4: Получение истории выписанных счетов по кошельку. Проверка
@@ -96,38 +97,6 @@ public class X4Request extends AbstractRequest {
 		return wmInvId;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<getoutinvoices>";
-		result += "<purse>" + this.purse + "</purse>";
-		result += "<wminvid>" + this.wmInvId + "</wminvid>";
-		result += "<orderid>" + this.orderId + "</orderid>";
-		result += "<datestart>" + this.dateStart.getWmtDate() + "</datestart>";
-		result += "<datefinish>" + this.dateFinish.getWmtDate()
-				+ "</datefinish>";
-		result += "</getoutinvoices>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Максимальное время и дата создания счета (ГГГГММДД ЧЧ:ММ:СС).
 	 * 
@@ -248,4 +217,40 @@ public class X4Request extends AbstractRequest {
 		this.wmInvId = Long.parseLong(wmInvId);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.purse);
+		out.append(this.requestNum);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("getoutinvoices");
+		out.element("purse", this.purse);
+		out.element("wminvid", this.wmInvId);
+		out.element("orderid", this.orderId);
+		out.element("datestart", this.dateStart.getWmtDate());
+		out.element("datefinish", this.dateFinish.getWmtDate());
+		out.end("getoutinvoices");
+		out.end("w3s.request");
+	}
 }
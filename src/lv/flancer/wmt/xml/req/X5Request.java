@@ -3,6 +3,8 @@
  */
 package lv.flancer.wmt.xml.req;
 
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
+
 /**
  * Интерфейс X5: Завершение операции с протекцией сделки. Ввод кода протекции.
  * 
@@ -55,34 +57,6 @@ public class X5Request extends AbstractRequest {
 		return wmTranId;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<finishprotect>";
-		result += "<wmtranid>" + this.wmTranId + "</wmtranid>";
-		result += "<pcode>" + this.pCode + "</pcode>";
-		result += "</finishprotect>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Код протекции сделки. Произвольная строка от 0 до 255 символов, пробелы в
 	 * начале или конце не допускаются.
@@ -114,4 +88,38 @@ public class X5Request extends AbstractRequest {
 		this.wmTranId = wmTranid;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.wmTranId);
+		out.append(this.pCode);
+		out.append(this.requestNum);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("finishprotect");
+		out.element("wmtranid", this.wmTranId);
+		out.element("pcode", this.pCode);
+		out.end("finishprotect");
+		out.end("w3s.request");
+	}
 }
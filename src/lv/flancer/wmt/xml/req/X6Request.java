@@ -4,6 +4,7 @@
 package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X6: Отправка сообщения произвольному WM-идентификатору по
@@ -69,38 +70,6 @@ public class X6Request extends AbstractRequest {
 		return result;
 	}
 
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<message>";
-		result += "<receiverwmid>" + this.receiverWmid + "</receiverwmid>";
-		if (this.msgSubj != null) {
-			result += "<msgsubj>" + this.msgSubj + "</msgsubj>";
-		} else {
-			result += "<msgsubj />";
-		}
-		if (this.msgText != null) {
-			result += "<msgtext>" + this.msgText + "</msgtext>";
-		} else {
-			result += "<msgtext />";
-		}
-		result += "</message>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Тема сообщения. Произвольная строка от 1 до 255 символов. Пробелы в
 	 * начале или конце и переводы строк не допускаются.
@@ -132,4 +101,41 @@ public class X6Request extends AbstractRequest {
 	public void setReceiverWmid(Wmid receiverWmid) {
 		this.receiverWmid = receiverWmid;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.receiverWmid);
+		out.append(requestNum);
+		out.append(this.msgText);
+		out.append(this.msgSubj);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("message");
+		out.element("receiverwmid", this.receiverWmid);
+		out.elementOrEmpty("msgsubj", this.msgSubj);
+		out.elementOrEmpty("msgtext", this.msgText);
+		out.end("message");
+		out.end("w3s.request");
+	}
 }
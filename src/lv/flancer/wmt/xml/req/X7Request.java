@@ -4,6 +4,7 @@
 package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X7: Проверка АСП клиента - владельца WM Keeper Classic.
@@ -70,34 +71,6 @@ public class X7Request extends AbstractRequest {
 		return result;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<testsign>";
-		result += "<wmid>" + this.testSignWmid.toString() + "</wmid>";
-		result += "<plan>" + this.testSignPlan + "</plan>";
-		result += "<sign>" + this.testSignSign + "</sign>";
-		result += "</testsign>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Строка, которую должен был подписать клиент.
 	 * 
@@ -132,4 +105,39 @@ public class X7Request extends AbstractRequest {
 		this.testSignWmid = testSignWmid;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.signerWmid.toString());
+		out.append(this.testSignWmid.toString());
+		out.append(this.testSignPlan);
+		out.append(this.testSignSign);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("testsign");
+		out.element("wmid", this.testSignWmid.toString());
+		out.element("plan", this.testSignPlan);
+		out.element("sign", this.testSignSign);
+		out.end("testsign");
+		out.end("w3s.request");
+	}
 }
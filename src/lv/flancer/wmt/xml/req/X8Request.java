@@ -5,6 +5,7 @@ package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.PurseNumber;
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс X8: Получение информации о принадлежности кошелька. Поиск участника
@@ -55,34 +56,6 @@ public class X8Request extends AbstractRequest {
 		return wmid;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see lv.flancer.wmt.xml.req.XmlRequest#getXmlRequest()
-	 */
-	@Override
-	public String getXmlRequest() {
-		String result = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
-		result += "<w3s.request>";
-		result += "<reqn>" + this.requestNum + "</reqn>";
-		if (this.signerWmid != null) {
-			result += "<wmid>" + this.signerWmid + "</wmid>";
-		} else {
-			result += "<wmid />";
-		}
-		if (this.sign != null) {
-			result += "<sign>" + this.sign + "</sign>";
-		} else {
-			result += "<sign />";
-		}
-		result += "<testwmpurse>";
-		result += "<wmid>" + this.getWmid() + "</wmid>";
-		result += "<purse>" + this.getPurse() + "</purse>";
-		result += "</testwmpurse>";
-		result += "</w3s.request>";
-		return result;
-	}
-
 	/**
 	 * Номер проверяемого кошелька.
 	 * 
@@ -123,4 +96,48 @@ public class X8Request extends AbstractRequest {
 		this.wmid = wmid;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see lv.flancer.wmt.xml.req.XmlRequest#isSignatureReusable()
+	 */
+	@Override
+	public boolean isSignatureReusable() {
+		// номер запроса не подписывается
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(lv.flancer.wmt.xml.wmsigner
+	 * .SignatureTextWriter)
+	 */
+	@Override
+	public void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.wmid);
+		out.append(this.purse);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * lv.flancer.wmt.xml.req.XmlRequest#writeXmlRequest(lv.flancer.wmt.xml.req
+	 * .XmlRequestWriter)
+	 */
+	@Override
+	public void writeXmlRequest(XmlRequestWriter out) {
+		out.prolog();
+		out.start("w3s.request");
+		out.element("reqn", this.requestNum);
+		out.elementOrEmpty("wmid", this.signerWmid);
+		out.elementOrEmpty("sign", this.sign);
+		out.start("testwmpurse");
+		out.element("wmid", this.getWmid());
+		out.element("purse", this.getPurse());
+		out.end("testwmpurse");
+		out.end("w3s.request");
+	}
 }
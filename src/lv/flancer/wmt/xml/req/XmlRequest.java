@@ -4,6 +4,7 @@
 package lv.flancer.wmt.xml.req;
 
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.wmsigner.SignatureTextWriter;
 
 /**
  * Интерфейс типового запроса к WMT XML.
@@ -22,13 +23,41 @@ public interface XmlRequest {
 	 */
 	public String getTextToSign();
 
+	/**
+	 * Записывает поля строки, которая должна быть подписана при идентификации
+	 * по схеме Classic, непосредственно в MD4-хэш (без формирования строки).
+	 * Результат должен совпадать с записью {@link #getTextToSign()}.
+	 * 
+	 * @param out
+	 *            приемник подписываемой строки.
+	 */
+	public default void writeTextToSign(SignatureTextWriter out) {
+		out.append(this.getTextToSign());
+	}
+
 	/**
 	 * Возвращает XML-документ, в виде которого запрос передается в WMT XML.
+	 * Документ формируется {@link #writeXmlRequest(XmlRequestWriter)}.
 	 * 
 	 * @return Возвращает XML-документ, в виде которого запрос передается в WMT
 	 *         XML.
 	 */
-	public String getXmlRequest();
+	public default String getXmlRequest() {
+		XmlRequestWriter out = new XmlRequestWriter();
+		this.writeXmlRequest(out);
+		return out.toString();
+	}
+
+	/**
+	 * Подписываемая строка не содержит номер запроса, поэтому подпись
+	 * одинаковых запросов может использоваться повторно (см.
+	 * {@link lv.flancer.wmt.xml.wmsigner.SignatureCache}).
+	 * 
+	 * @return 'true', если подпись запроса можно брать из кэша подписей.
+	 */
+	public default boolean isSignatureReusable() {
+		return false;
+	}
 
 	/**
 	 * Устанавливает для запроса подпись, созданную при помощи WmSigner'а
@@ -47,4 +76,13 @@ public interface XmlRequest {
 	 *            WMID подписавшего запрос.
 	 */
 	public void setSignerWmid(Wmid signerWmid);
+
+	/**
+	 * Записывает XML-документ, в виде которого запрос передается в WMT XML,
+	 * непосредственно в байтах windows-1251 (без формирования строки).
+	 * 
+	 * @param out
+	 *            приемник XML-документа.
+	 */
+	public void writeXmlRequest(XmlRequestWriter out);
 }
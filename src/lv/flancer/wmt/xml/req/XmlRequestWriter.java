@@ -0,0 +1,433 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml.req;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import lv.flancer.wmt.xml.Cp1251;
+
+/**
+ * <p>
+ * Формирует XML-документ запроса к WMT XML непосредственно в байтах
+ * windows-1251 ({@link Cp1251}). Запрос записывает элементы последовательно (
+ * {@link XmlRequest#writeXmlRequest(XmlRequestWriter)}), символы кодируются по
+ * таблице и записываются в буфер, который используется повторно; ни строка
+ * документа, ни промежуточные строки элементов не создаются.
+ * </p>
+ * <p>
+ * Значения элементов и атрибутов экранируются (&amp;, &lt;, &gt;, кавычки),
+ * поэтому в запросы (например, в описание счета или перевода) они передаются
+ * в исходном, неэкранированном виде. Прежние построители запросов значения не
+ * экранировали: текст, экранированный вызывающей стороной, теперь будет
+ * экранирован повторно ("&amp;amp;").
+ * Значения 'null' записываются так же, как при конкатенации строк ("null").
+ * Символы, отсутствующие в windows-1251, заменяются на '?'.
+ * </p>
+ * <p>
+ * Экземпляр не потокобезопасен, для каждого потока используется собственный
+ * экземпляр ({@link #getInstance()}).
+ * </p>
+ * 
+ * <pre>
+ * XmlRequestWriter out = XmlRequestWriter.getInstance();
+ * req.writeXmlRequest(out);
+ * out.writeTo(socket.getOutputStream());
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class XmlRequestWriter {
+	/**
+	 * Начальный размер буфера.
+	 */
+	private final static int DEFAULT_CAPACITY = 1024;
+	/**
+	 * Экземпляры потоков.
+	 */
+	private final static ThreadLocal<XmlRequestWriter> INSTANCES = new ThreadLocal<XmlRequestWriter>() {
+		@Override
+		protected XmlRequestWriter initialValue() {
+			return new XmlRequestWriter();
+		}
+	};
+	/**
+	 * Размер буфера, сверх которого буфер экземпляра потока не сохраняется
+	 * (см. {@link #getInstance()}).
+	 */
+	private final static int MAX_RETAINED_CAPACITY = 64 * 1024;
+	/**
+	 * XML-декларация документа запроса.
+	 */
+	private final static String PROLOG = "<?xml version=\"1.0\"  encoding=\"windows-1251\"?>";
+
+	/**
+	 * Возвращает экземпляр текущего потока, подготовленный для записи нового
+	 * документа. Буфер экземпляра действителен до следующего вызова в том же
+	 * потоке.
+	 * 
+	 * @return экземпляр текущего потока.
+	 */
+	public static XmlRequestWriter getInstance() {
+		XmlRequestWriter result = INSTANCES.get();
+		if (result.buffer.length > MAX_RETAINED_CAPACITY) {
+			// разовый большой запрос не удерживает память потока
+			result.buffer = new byte[DEFAULT_CAPACITY];
+		}
+		result.reset();
+		return result;
+	}
+
+	/**
+	 * Буфер записанного документа.
+	 */
+	private byte[] buffer;
+	/**
+	 * Буфер для десятичного представления чисел.
+	 */
+	private final byte[] digits = new byte[20];
+	/**
+	 * Количество записанных байтов.
+	 */
+	private int size;
+
+	/**
+	 * Создает экземпляр с буфером начального размера.
+	 */
+	public XmlRequestWriter() {
+		this.buffer = new byte[DEFAULT_CAPACITY];
+	}
+
+	/**
+	 * Записывает строку без экранирования (разметку).
+	 * 
+	 * @param markup
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter append(String markup) {
+		this.encode(markup, false);
+		return this;
+	}
+
+	/**
+	 * Записывает атрибут открывающего тега, начатого {@link #open(String)}.
+	 * 
+	 * @param name
+	 *            имя атрибута.
+	 * @param value
+	 *            значение атрибута.
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter attribute(String name, Object value) {
+		this.write((byte) ' ');
+		this.encode(name, false);
+		this.write((byte) '=');
+		this.write((byte) '"');
+		this.encode(String.valueOf(value), true);
+		this.write((byte) '"');
+		return this;
+	}
+
+	/**
+	 * Завершает открывающий тег, начатый {@link #open(String)}.
+	 * 
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter close() {
+		this.write((byte) '>');
+		return this;
+	}
+
+	/**
+	 * Записывает элемент &lt;name&gt;value&lt;/name&gt; с односимвольным
+	 * значением.
+	 * 
+	 * @param name
+	 *            имя элемента.
+	 * @param value
+	 *            значение элемента.
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter element(String name, char value) {
+		this.start(name);
+		this.encode(value, true);
+		return this.end(name);
+	}
+
+	/**
+	 * Записывает элемент &lt;name&gt;value&lt;/name&gt;.
+	 * 
+	 * @param name
+	 *            имя элемента.
+	 * @param value
+	 *            значение элемента.
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter element(String name, long value) {
+		return this.start(name).text(value).end(name);
+	}
+
+	/**
+	 * Записывает элемент &lt;name&gt;value&lt;/name&gt;.
+	 * 
+	 * @param name
+	 *            имя элемента.
+	 * @param value
+	 *            значение элемента ('null' для null).
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter element(String name, Object value) {
+		return this.start(name).text(value).end(name);
+	}
+
+	/**
+	 * Записывает элемент &lt;name&gt;value&lt;/name&gt; или пустой элемент
+	 * &lt;name /&gt;, если значение не задано.
+	 * 
+	 * @param name
+	 *            имя элемента.
+	 * @param value
+	 *            значение элемента.
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter elementOrEmpty(String name, Object value) {
+		if (value != null) {
+			return this.element(name, value);
+		}
+		return this.empty(name);
+	}
+
+	/**
+	 * Записывает пустой элемент &lt;name /&gt;.
+	 * 
+	 * @param name
+	 *            имя элемента.
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter empty(String name) {
+		this.write((byte) '<');
+		this.encode(name, false);
+		this.write((byte) ' ');
+		this.write((byte) '/');
+		this.write((byte) '>');
+		return this;
+	}
+
+	/**
+	 * Кодирует символ в буфер.
+	 * 
+	 * @param c
+	 * @param escape
+	 *            экранировать специальные символы XML.
+	 */
+	private void encode(char c, boolean escape) {
+		if (escape) {
+			switch (c) {
+			case '&':
+				this.encode("&amp;", false);
+				return;
+			case '<':
+				this.encode("&lt;", false);
+				return;
+			case '>':
+				this.encode("&gt;", false);
+				return;
+			case '"':
+				this.encode("&quot;", false);
+				return;
+			}
+		}
+		this.write(Cp1251.encode(c));
+	}
+
+	/**
+	 * Кодирует строку в буфер.
+	 * 
+	 * @param value
+	 * @param escape
+	 *            экранировать специальные символы XML.
+	 */
+	private void encode(String value, boolean escape) {
+		int length = value.length();
+		this.ensureCapacity(length);
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (Character.isHighSurrogate(c) && (i + 1 < length)
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				// символ вне BMP заменяется одним '?'
+				i++;
+			}
+			this.encode(c, escape);
+		}
+	}
+
+	/**
+	 * Записывает закрывающий тег &lt;/name&gt;.
+	 * 
+	 * @param name
+	 *            имя элемента.
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter end(String name) {
+		this.write((byte) '<');
+		this.write((byte) '/');
+		this.encode(name, false);
+		this.write((byte) '>');
+		return this;
+	}
+
+	/**
+	 * Увеличивает буфер, если в нем нет места для указанного количества
+	 * байтов.
+	 * 
+	 * @param length
+	 */
+	private void ensureCapacity(int length) {
+		if (this.size + length > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(
+					this.buffer.length * 2, this.size + length));
+		}
+	}
+
+	/**
+	 * Буфер записанного документа (первые {@link #size()} байтов).
+	 * 
+	 * @return Буфер записанного документа.
+	 */
+	public byte[] getBuffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Начинает открывающий тег &lt;name (для записи атрибутов
+	 * {@link #attribute(String, Object)}); тег завершается {@link #close()}.
+	 * 
+	 * @param name
+	 *            имя элемента.
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter open(String name) {
+		this.write((byte) '<');
+		this.encode(name, false);
+		return this;
+	}
+
+	/**
+	 * Записывает XML-декларацию документа запроса.
+	 * 
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter prolog() {
+		this.encode(PROLOG, false);
+		return this;
+	}
+
+	/**
+	 * Сбрасывает записанные данные.
+	 */
+	public void reset() {
+		this.size = 0;
+	}
+
+	/**
+	 * Количество записанных байтов.
+	 * 
+	 * @return Количество записанных байтов.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Записывает открывающий тег &lt;name&gt;.
+	 * 
+	 * @param name
+	 *            имя элемента.
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter start(String name) {
+		this.write((byte) '<');
+		this.encode(name, false);
+		this.write((byte) '>');
+		return this;
+	}
+
+	/**
+	 * Записывает десятичное представление числа.
+	 * 
+	 * @param value
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter text(long value) {
+		int i = this.digits.length;
+		// отрицательные значения обрабатываются без смены знака (MIN_VALUE)
+		long rest = (value < 0) ? value : -value;
+		do {
+			this.digits[--i] = (byte) ('0' - (rest % 10));
+			rest /= 10;
+		} while (rest != 0);
+		if (value < 0) {
+			this.digits[--i] = '-';
+		}
+		this.ensureCapacity(this.digits.length - i);
+		System.arraycopy(this.digits, i, this.buffer, this.size,
+				this.digits.length - i);
+		this.size += this.digits.length - i;
+		return this;
+	}
+
+	/**
+	 * Записывает экранированное строковое представление объекта ('null' для
+	 * null).
+	 * 
+	 * @param value
+	 * @return этот экземпляр.
+	 */
+	public XmlRequestWriter text(Object value) {
+		this.encode(String.valueOf(value), true);
+		return this;
+	}
+
+	/**
+	 * Копия записанного документа.
+	 * 
+	 * @return Копия записанного документа.
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(this.buffer, this.size);
+	}
+
+	/**
+	 * Записанный документ в виде строки.
+	 */
+	@Override
+	public String toString() {
+		return Cp1251.decode(this.buffer, 0, this.size);
+	}
+
+	/**
+	 * Записывает байт в буфер.
+	 * 
+	 * @param b
+	 */
+	private void write(byte b) {
+		if (this.size == this.buffer.length) {
+			this.ensureCapacity(1);
+		}
+		this.buffer[this.size++] = b;
+	}
+
+	/**
+	 * Записывает документ в поток.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(this.buffer, 0, this.size);
+	}
+}
@@ -1,5 +1,7 @@
 package lv.flancer.wmt.xml.resp;
 
+import lv.flancer.wmt.xml.WmCallContext;
+
 /**
  * Абстрактный ответ, содержащий общие для всех ответов поля.
  * 
@@ -9,6 +11,11 @@ package lv.flancer.wmt.xml.resp;
  */
 public abstract class AbstractResponse {
 
+	/**
+	 * Состояние вызова, в результате которого получен ответ (тексты запроса и
+	 * ответа и т.п.).
+	 */
+	private WmCallContext callContext;
 	/**
 	 * Расшифровка кода выполнения запроса.
 	 */
@@ -26,6 +33,16 @@ public abstract class AbstractResponse {
 		super();
 	}
 
+	/**
+	 * Состояние вызова, в результате которого получен ответ (тексты запроса и
+	 * ответа и т.п.).
+	 * 
+	 * @return Состояние вызова или 'null', если ответ создан вне сервиса.
+	 */
+	public WmCallContext getCallContext() {
+		return callContext;
+	}
+
 	/**
 	 * Расшифровка кода выполнения запроса.
 	 * 
@@ -44,6 +61,17 @@ public abstract class AbstractResponse {
 		return retVal;
 	}
 
+	/**
+	 * Состояние вызова, в результате которого получен ответ (тексты запроса и
+	 * ответа и т.п.).
+	 * 
+	 * @param callContext
+	 *            Состояние вызова.
+	 */
+	public void setCallContext(WmCallContext callContext) {
+		this.callContext = callContext;
+	}
+
 	/**
 	 * Расшифровка кода выполнения запроса.
 	 * 
@@ -104,4 +132,4 @@ public abstract class AbstractResponse {
 		this.requestNum = Long.parseLong(requestNum);
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
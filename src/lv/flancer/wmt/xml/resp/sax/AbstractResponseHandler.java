@@ -1,6 +1,6 @@
 package lv.flancer.wmt.xml.resp.sax;
 
-import java.io.UnsupportedEncodingException;
+import java.util.function.Consumer;
 
 import lv.flancer.wmt.xml.resp.AbstractResponse;
 
@@ -17,79 +17,144 @@ import org.xml.sax.helpers.DefaultHandler;
  */
 public abstract class AbstractResponseHandler extends DefaultHandler {
 	/**
-	 * Кодировка, используемая для ответов.
+	 * Максимальная начальная емкость списков, задаваемая по атрибуту "cnt".
 	 */
-	private String httpCharset = "windows-1251";
+	private final static int MAX_INITIAL_CAPACITY = 4096;
+	/**
+	 * Начальная емкость списков, если атрибут "cnt" не задан.
+	 */
+	private final static int DEFAULT_INITIAL_CAPACITY = 10;
+
+	/**
+	 * Возвращает начальную емкость списка элементов по значению атрибута
+	 * "cnt" (количество элементов в ответе), чтобы список не перераспределялся
+	 * при заполнении.
+	 * 
+	 * @param cnt
+	 *            значение атрибута "cnt" (может быть 'null').
+	 * @return начальная емкость списка.
+	 */
+	protected static int initialCapacity(String cnt) {
+		int result = DEFAULT_INITIAL_CAPACITY;
+		if (cnt != null) {
+			try {
+				result = Math.min(Math.max(Integer.parseInt(cnt.trim()), 0),
+						MAX_INITIAL_CAPACITY);
+			} catch (NumberFormatException e) {
+				// do nothing
+			}
+		}
+		return result;
+	}
 
+	/**
+	 * Количество записей ответа, переданных получателю по мере разбора (см.
+	 * {@link #deliver(Consumer, Object)}).
+	 */
+	private int deliveredCount;
 	/**
 	 * Флаг, указывающий, что происходит разбор html-encoded элемента.
 	 */
 	protected boolean isHtmlEncodedBeingParsed = false;
 
 	/**
-	 * Значение текущего разобранного элемента xml-документа.
+	 * Значение текущего разобранного элемента xml-документа. Формируется из
+	 * {@link #text} при первом обращении ({@link #getParsedValue()}).
 	 */
-	protected String parsedValue;
+	private String parsedValue;
+	/**
+	 * Текст текущего элемента: последний фрагмент текста или, для
+	 * html-encoded элемента, все фрагменты от начала элемента.
+	 */
+	private final StringBuilder text = new StringBuilder();
 
 	public AbstractResponseHandler() {
 		super();
 	}
+
+	/**
+	 * Накапливает текст элемента. Строка значения не создается до обращения
+	 * к {@link #getParsedValue()}.
+	 */
 	@Override
 	public void characters(char[] ch, int start, int length)
 			throws SAXException {
-		if (this.isHtmlEncodedBeingParsed) {
-			this.parsedValue += new String(ch, start, length);
-		} else {
-			this.parsedValue = (new String(ch, start, length)).trim();
+		if (!this.isHtmlEncodedBeingParsed) {
+			this.text.setLength(0);
 		}
+		this.text.append(ch, start, length);
+		this.parsedValue = null;
 	}
 
 	/**
-	 * Преобразует строки из кодировки {@link #httpCharset} в UTF-8. По
-	 * неведомым мне причинам описание и адрес в ответе X4 передаются как
-	 * "![CDATA[...]]"
+	 * Передает разобранную запись ответа получателю, не дожидаясь окончания
+	 * разбора. Записи, переданные получателю, не могут быть отозваны, поэтому
+	 * ответ, разбор которого прерван после передачи записей, не запрашивается
+	 * повторно (см. {@link #getDeliveredCount()}).
 	 * 
-	 * @param encoded
-	 * @return
+	 * @param consumer
+	 *            получатель записей.
+	 * @param record
+	 *            разобранная запись.
 	 */
-	protected String decodeCharset(String encoded) {
-		String result = "";
-		try {
-			result = new String(encoded.getBytes(httpCharset));
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		} catch (NullPointerException e) {
-			// do nothing
-		}
-		return result;
+	protected <T> void deliver(Consumer<? super T> consumer, T record) {
+		this.deliveredCount++;
+		consumer.accept(record);
 	}
 
 	@Override
 	public void endElement(String uri, String localName, String qName)
 			throws SAXException {
+		switch (qName) {
 		// разбор подмножества элемента "w3s.response"
-		if (qName.equals("reqn")) {
-			this.getResponse().setRequestNum(this.parsedValue);
+		case "reqn":
+			this.getResponse().setRequestNum(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("retval")) {
-			this.getResponse().setRetVal(this.parsedValue);
+		case "retval":
+			this.getResponse().setRetVal(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("retdesc")) {
-			this.getResponse().setRetDesc(this.parsedValue);
+		case "retdesc":
+			this.getResponse().setRetDesc(this.getParsedValue());
 			this.isHtmlEncodedBeingParsed = false;
 			return;
 		}
 	}
 
 	/**
-	 * Кодировка, используемая для ответов.
+	 * Количество записей ответа, переданных получателю по мере разбора.
 	 * 
-	 * @return Кодировка, используемая для ответов.
+	 * @return Количество записей ответа, переданных получателю.
 	 */
-	public String getHttpCharset() {
-		return httpCharset;
+	public int getDeliveredCount() {
+		return this.deliveredCount;
+	}
+
+	/**
+	 * Значение текущего разобранного элемента xml-документа (для html-encoded
+	 * элемента - весь текст элемента, для остальных - последний фрагмент
+	 * текста без начальных и конечных пробелов).
+	 * 
+	 * @return Значение текущего разобранного элемента xml-документа.
+	 */
+	protected String getParsedValue() {
+		if (this.parsedValue == null) {
+			if (this.isHtmlEncodedBeingParsed) {
+				this.parsedValue = this.text.toString();
+			} else {
+				int begin = 0;
+				int end = this.text.length();
+				while ((begin < end) && (this.text.charAt(begin) <= ' ')) {
+					begin++;
+				}
+				while ((end > begin) && (this.text.charAt(end - 1) <= ' ')) {
+					end--;
+				}
+				// пробелы между элементами не создают новых строк
+				this.parsedValue = (begin < end) ? this.text.substring(begin,
+						end) : "";
+			}
+		}
+		return this.parsedValue;
 	}
 
 	/**
@@ -100,13 +165,33 @@ public abstract class AbstractResponseHandler extends DefaultHandler {
 	public abstract AbstractResponse getResponse();
 
 	/**
-	 * Кодировка, используемая для ответов.
-	 * 
-	 * @param httpCharset
-	 *            Кодировка, используемая для ответов.
+	 * Сбрасывает состояние разбора, чтобы обработчик можно было использовать
+	 * для разбора следующего ответа (см. {@link ResponseHandlerPool}).
+	 * Наследники, хранящие состояние разбора, должны переопределять метод,
+	 * вызывая реализацию базового класса.
+	 */
+	public void reset() {
+		this.deliveredCount = 0;
+		this.isHtmlEncodedBeingParsed = false;
+		this.parsedValue = null;
+		this.text.setLength(0);
+	}
+
+	/**
+	 * Начинает разбор html-encoded элемента: текст элемента накапливается
+	 * до его окончания, после чего наследник сбрасывает
+	 * {@link #isHtmlEncodedBeingParsed}.
 	 */
-	public void setHttpCharset(String httpCharset) {
-		this.httpCharset = httpCharset;
+	protected void startHtmlEncoded() {
+		this.isHtmlEncodedBeingParsed = true;
+		this.parsedValue = "";
+		this.text.setLength(0);
+	}
+
+	@Override
+	public void startDocument() throws SAXException {
+		// обработчик может использоваться повторно
+		this.reset();
 	}
 
 	@Override
@@ -114,9 +199,8 @@ public abstract class AbstractResponseHandler extends DefaultHandler {
 			Attributes attributes) throws SAXException {
 		// начало разбора HTML encoded деталей платежа
 		if (qName.equals("retdesc")) {
-			this.isHtmlEncodedBeingParsed = true;
-			this.parsedValue = "";
+			this.startHtmlEncoded();
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml.resp.sax;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Ограниченный пул обработчиков ответов одного типа. Обработчик берется из
+ * пула на время разбора одного ответа и возвращается в него после того, как
+ * разобранный ответ получен вызывающей стороной ({@link #release}
+ * сбрасывает состояние обработчика, см.
+ * {@link AbstractResponseHandler#reset()}). В пуле хранится не более
+ * {@link #getMaxIdle()} свободных обработчиков, лишние отбрасываются.
+ * </p>
+ * 
+ * <pre>
+ * ResponseHandlerPool&lt;X3ResponseHandler&gt; pool = new ResponseHandlerPool&lt;X3ResponseHandler&gt;() {
+ * 	protected X3ResponseHandler create() {
+ * 		return new X3ResponseHandler();
+ * 	}
+ * };
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ * @param <H>
+ *            тип обработчика.
+ */
+public abstract class ResponseHandlerPool<H extends AbstractResponseHandler> {
+	/**
+	 * Количество свободных обработчиков в пуле.
+	 */
+	private final AtomicInteger idleCount = new AtomicInteger();
+	/**
+	 * Свободные обработчики.
+	 */
+	private final Queue<H> idle = new ConcurrentLinkedQueue<H>();
+	/**
+	 * Максимальное количество свободных обработчиков, хранимых в пуле. По
+	 * умолчанию - удвоенное количество процессоров.
+	 */
+	private int maxIdle = Runtime.getRuntime().availableProcessors() * 2;
+
+	/**
+	 * Возвращает свободный обработчик или создает новый.
+	 * 
+	 * @return обработчик, используемый только вызывающим потоком до
+	 *         возвращения его в пул.
+	 */
+	public H acquire() {
+		H result = this.idle.poll();
+		if (result != null) {
+			this.idleCount.decrementAndGet();
+		} else {
+			result = this.create();
+		}
+		return result;
+	}
+
+	/**
+	 * Создает новый обработчик.
+	 * 
+	 * @return
+	 */
+	protected abstract H create();
+
+	/**
+	 * Максимальное количество свободных обработчиков, хранимых в пуле. По
+	 * умолчанию - удвоенное количество процессоров.
+	 * 
+	 * @return Максимальное количество свободных обработчиков, хранимых в
+	 *         пуле.
+	 */
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	/**
+	 * Сбрасывает состояние обработчика и возвращает его в пул (если пул не
+	 * заполнен). Ответ, разобранный обработчиком, должен быть получен до
+	 * вызова.
+	 * 
+	 * @param handler
+	 */
+	public void release(H handler) {
+		handler.reset();
+		if (this.idleCount.incrementAndGet() <= this.maxIdle) {
+			this.idle.offer(handler);
+		} else {
+			this.idleCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Максимальное количество свободных обработчиков, хранимых в пуле.
+	 * 
+	 * @param maxIdle
+	 *            Максимальное количество свободных обработчиков, хранимых в
+	 *            пуле.
+	 */
+	public void setMaxIdle(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+}
@@ -5,6 +5,7 @@ package lv.flancer.wmt.xml.resp.sax;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import lv.flancer.wmt.xml.dict.Invoice;
 import lv.flancer.wmt.xml.dict.InvoiceState;
@@ -22,6 +23,11 @@ import org.xml.sax.SAXException;
  */
 public class X10ResponseHandler extends AbstractResponseHandler {
 
+	/**
+	 * Получатель счетов, которому они передаются по мере разбора. Если не
+	 * задан - счета собираются в список ответа.
+	 */
+	private final Consumer<Invoice> consumer;
 	/**
 	 * Отдельный счет.
 	 */
@@ -40,6 +46,19 @@ public class X10ResponseHandler extends AbstractResponseHandler {
 	 */
 	private X10Response response;
 
+	public X10ResponseHandler() {
+		this(null);
+	}
+
+	/**
+	 * @param consumer
+	 *            получатель счетов: каждый элемент передается получателю сразу
+	 *            по окончании разбора, список ответа остается пустым.
+	 */
+	public X10ResponseHandler(Consumer<Invoice> consumer) {
+		this.consumer = consumer;
+	}
+
 	@Override
 	public void endElement(String uri, String localName, String qName)
 			throws SAXException {
@@ -66,63 +85,57 @@ public class X10ResponseHandler extends AbstractResponseHandler {
 	 * @param name
 	 */
 	private void endElementInvoice(String name) {
+		switch (name) {
 		// закончили разбор подмножества элемента
 		// "w3s.response/ininvoices/ininvoice"
-		if (name.equals("ininvoice")) {
+		case "ininvoice":
 			this.isInvoiceElementBeingParsed = false;
-			this.invoiceList.add(this.invoice);
+			if (this.consumer != null) {
+				this.deliver(this.consumer, this.invoice);
+			} else {
+				this.invoiceList.add(this.invoice);
+			}
 			return;
-		}
 		// разбор подмножества элемента
 		// "w3s.response/ininvoices/ininvoice"
-		if (name.equals("orderid")) {
-			this.invoice.setOrderId(this.parsedValue);
+		case "orderid":
+			this.invoice.setOrderId(this.getParsedValue());
 			return;
-		}
-		if (name.equals("storewmid")) {
-			this.invoice.setStoreWmid(this.parsedValue);
+		case "storewmid":
+			this.invoice.setStoreWmid(this.getParsedValue());
 			return;
-		}
-		if (name.equals("storepurse")) {
-			this.invoice.setStorePurse(this.parsedValue);
+		case "storepurse":
+			this.invoice.setStorePurse(this.getParsedValue());
 			return;
-		}
-		if (name.equals("amount")) {
-			this.invoice.setAmount(this.parsedValue);
+		case "amount":
+			this.invoice.setAmount(this.getParsedValue());
 			return;
-		}
-		if (name.equals("desc")) {
-			this.invoice.setDesc(this.parsedValue);
+		case "desc":
+			this.invoice.setDesc(this.getParsedValue());
 			this.isHtmlEncodedBeingParsed = false;
 			return;
-		}
-		if (name.equals("address")) {
-			this.invoice.setAddress(this.parsedValue);
+		case "address":
+			this.invoice.setAddress(this.getParsedValue());
 			this.isHtmlEncodedBeingParsed = false;
 			return;
-		}
-		if (name.equals("period")) {
-			this.invoice.setPeriod(this.parsedValue);
+		case "period":
+			this.invoice.setPeriod(this.getParsedValue());
 			return;
-		}
-		if (name.equals("expiration")) {
-			this.invoice.setExpiration(this.parsedValue);
+		case "expiration":
+			this.invoice.setExpiration(this.getParsedValue());
 			return;
-		}
-		if (name.equals("state")) {
-			this.invoice.setState(InvoiceState.getByValue(this.parsedValue));
+		case "state":
+			this.invoice.setState(InvoiceState
+					.getByValue(this.getParsedValue()));
 			return;
-		}
-		if (name.equals("datecrt")) {
-			this.invoice.setDateCrt(this.parsedValue);
+		case "datecrt":
+			this.invoice.setDateCrt(this.getParsedValue());
 			return;
-		}
-		if (name.equals("dateupd")) {
-			this.invoice.setDateUpd(this.parsedValue);
+		case "dateupd":
+			this.invoice.setDateUpd(this.getParsedValue());
 			return;
-		}
-		if (name.equals("wmtranid")) {
-			this.invoice.setWmTranid(this.parsedValue);
+		case "wmtranid":
+			this.invoice.setWmTranid(this.getParsedValue());
 			return;
 		}
 	}
@@ -142,30 +155,33 @@ public class X10ResponseHandler extends AbstractResponseHandler {
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
+		switch (qName) {
 		// создаем новый экземпляр ответа
-		if (qName.equals("w3s.response")) {
+		case "w3s.response":
 			this.response = new X10Response();
-		}
+			break;
 		// создаем список операций
-		if (qName.equals("ininvoices")) {
+		case "ininvoices":
 			this.response.setCount(attributes.getValue("cnt"));
-			this.invoiceList = new ArrayList<Invoice>();
-		}
+			// при передаче получателю список остается пустым
+			this.invoiceList = new ArrayList<Invoice>(
+					(this.consumer != null) ? 0 : initialCapacity(attributes
+							.getValue("cnt")));
+			break;
 		// начало разбора отдельного счета
-		if (qName.equals("ininvoice")) {
+		case "ininvoice":
 			this.isInvoiceElementBeingParsed = true;
 			this.invoice = new Invoice();
 			this.invoice.setId(attributes.getValue("id"));
 			this.invoice.setTs(attributes.getValue("ts"));
-		}
+			break;
 		// начало разбора HTML encoded деталей платежа
-		if (qName.equals("desc")) {
-			this.isHtmlEncodedBeingParsed = true;
-			this.parsedValue = "";
-		}
-		if (qName.equals("address")) {
-			this.isHtmlEncodedBeingParsed = true;
-			this.parsedValue = "";
+		case "desc":
+			this.startHtmlEncoded();
+			break;
+		case "address":
+			this.startHtmlEncoded();
+			break;
 		}
 	}
 
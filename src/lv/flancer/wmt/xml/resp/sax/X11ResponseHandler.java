@@ -82,49 +82,44 @@ public class X11ResponseHandler extends AbstractResponseHandler {
 			throws SAXException {
 		// разбор общих для большинства запросов элементов
 		super.endElement(uri, localName, qName);
+		switch (qName) {
 		// /response/fullaccess
-		if (qName.equals("fullaccess")) {
-			this.response.setFullaccess(this.parsedValue);
+		case "fullaccess":
+			this.response.setFullaccess(this.getParsedValue());
 			return;
-		}
 		// /response/certinfo/directory/[ctype | jstatus | tid]
-		if (qName.equals("ctype") || qName.equals("jstatus")
-				|| qName.equals("tid")) {
-			this.directoryRow.setValue(this.decodeCharset(this.parsedValue));
+		case "ctype":
+		case "jstatus":
+		case "tid":
+			this.directoryRow.setValue(this.getParsedValue());
 			this.directory.add(this.directoryRow);
 			return;
-		}
 		// /response/certinfo/directory
-		if (qName.equals("directory")) {
+		case "directory":
 			this.certInfo.setDirectory(this.directory);
 			return;
-		}
 		// /response/certinfo/attestat
-		if (qName.equals("attestat")) {
+		case "attestat":
 			this.isAttestatElementBeingParsed = false;
 			this.certInfo.setAttestats(this.attestats);
 			return;
-		}
 		// /response/certinfo/wmids
-		if (qName.equals("wmids")) {
+		case "wmids":
 			this.isWmidsElementBeingParsed = false;
 			this.certInfo.setWmids(this.wmids);
 			return;
-		}
 		// /response/certinfo/userinfo/value
-		if (qName.equals("value")) {
+		case "value":
 			this.isValueElementBeingParsed = false;
 			this.certInfo.setUserInfoValues(this.userInfoValues);
 			return;
-		}
 		// /response/certinfo/userinfo/check-lock
-		if (qName.equals("check-lock")) {
+		case "check-lock":
 			this.isCheckLockElementBeingParsed = false;
 			this.certInfo.setUserInfoChecks(this.userInfoChecks);
 			return;
-		}
 		// /response/certinfo
-		if (qName.equals("certinfo")) {
+		case "certinfo":
 			this.response.setCertInfo(this.certInfo);
 			return;
 		}
@@ -150,103 +145,55 @@ public class X11ResponseHandler extends AbstractResponseHandler {
 	private void parseUserInfo(String qName, Attributes attributes) {
 		this.userInfoRow = new X11UserInfoRow();
 
-		this.userInfoRow.setCtype(this.decodeCharset(attributes
-				.getValue("ctype")));
-		this.userInfoRow.setJstatus(this.decodeCharset(attributes
-				.getValue("jstatus")));
-		this.userInfoRow.setOsnovainfo(this.decodeCharset(attributes
-				.getValue("osnovainfo")));
-		this.userInfoRow.setLocked(this.decodeCharset(attributes
-				.getValue("locked")));
-		this.userInfoRow.setNickname(this.decodeCharset(attributes
-				.getValue("nickname")));
-		this.userInfoRow.setInfoopen(this.decodeCharset(attributes
-				.getValue("infoopen")));
-		this.userInfoRow
-				.setCity(this.decodeCharset(attributes.getValue("city")));
-		this.userInfoRow.setCountry(this.decodeCharset(attributes
-				.getValue("country")));
-		this.userInfoRow.setZipcode(this.decodeCharset(attributes
-				.getValue("zipcode")));
-		this.userInfoRow.setAdres(this.decodeCharset(attributes
-				.getValue("adres")));
-		this.userInfoRow.setFname(this.decodeCharset(attributes
-				.getValue("fname")));
-		this.userInfoRow.setIname(this.decodeCharset(attributes
-				.getValue("iname")));
-		this.userInfoRow.setOname(this.decodeCharset(attributes
-				.getValue("oname")));
-		this.userInfoRow.setPnomer(this.decodeCharset(attributes
-				.getValue("pnomer")));
-		this.userInfoRow.setPdate(this.decodeCharset(attributes
-				.getValue("pdate")));
-		this.userInfoRow.setPcountry(this.decodeCharset(attributes
-				.getValue("pcountry")));
-		this.userInfoRow.setPcity(this.decodeCharset(attributes
-				.getValue("pcity")));
-		this.userInfoRow.setPbywhom(this.decodeCharset(attributes
-				.getValue("pbywhom")));
-		this.userInfoRow.setRcountry(this.decodeCharset(attributes
-				.getValue("rcountry")));
-		this.userInfoRow.setRcity(this.decodeCharset(attributes
-				.getValue("rcity")));
-		this.userInfoRow.setRadres(this.decodeCharset(attributes
-				.getValue("radres")));
-		this.userInfoRow.setBplace(this.decodeCharset(attributes
-				.getValue("bplace")));
-		this.userInfoRow
-				.setBday(this.decodeCharset(attributes.getValue("bday")));
-		this.userInfoRow.setBmonth(this.decodeCharset(attributes
-				.getValue("bmonth")));
-		this.userInfoRow.setByear(this.decodeCharset(attributes
-				.getValue("byear")));
-		this.userInfoRow
-				.setName(this.decodeCharset(attributes.getValue("name")));
-		this.userInfoRow.setDirfio(this.decodeCharset(attributes
-				.getValue("dirfio")));
-		this.userInfoRow.setBuhfio(this.decodeCharset(attributes
-				.getValue("buhfio")));
-		this.userInfoRow.setInn(this.decodeCharset(attributes.getValue("inn")));
-		this.userInfoRow.setOkpo(this.decodeCharset(attributes
-				.getValue("okpo")));
-		this.userInfoRow.setOkonx(this.decodeCharset(attributes
-				.getValue("okonx")));
-		this.userInfoRow.setJadres(this.decodeCharset(attributes
-				.getValue("jadres")));
-		this.userInfoRow.setJcountry(this.decodeCharset(attributes
-				.getValue("jcountry")));
-		this.userInfoRow.setJcity(this.decodeCharset(attributes
-				.getValue("jcity")));
-		this.userInfoRow.setJzipcode(this.decodeCharset(attributes
-				.getValue("jzipcode")));
-		this.userInfoRow.setBankname(this.decodeCharset(attributes
-				.getValue("bankname")));
-		this.userInfoRow
-				.setBik(this.decodeCharset(attributes.getValue("bik")));
-		this.userInfoRow
-				.setKs(this.decodeCharset(attributes.getValue("ks")));
-		this.userInfoRow
-				.setRs(this.decodeCharset(attributes.getValue("rs")));
-		this.userInfoRow.setPhonehome(this.decodeCharset(attributes
-				.getValue("phonehome")));
-		this.userInfoRow.setPhonemobile(this.decodeCharset(attributes
-				.getValue("phonemobile")));
-		this.userInfoRow
-				.setIcq(this.decodeCharset(attributes.getValue("icq")));
-		this.userInfoRow
-				.setFax(this.decodeCharset(attributes.getValue("fax")));
-		this.userInfoRow.setEmail(this.decodeCharset(attributes
-				.getValue("email")));
-		this.userInfoRow
-				.setWeb(this.decodeCharset(attributes.getValue("web")));
-		this.userInfoRow.setPhone(this.decodeCharset(attributes
-				.getValue("phone")));
-		this.userInfoRow.setCap_owner(this.decodeCharset(attributes
-				.getValue("cap_owner")));
-		this.userInfoRow.setPasdoc(this.decodeCharset(attributes
-				.getValue("pasdoc")));
-		this.userInfoRow.setInndoc(this.decodeCharset(attributes
-				.getValue("inndoc")));
+		this.userInfoRow.setCtype(attributes.getValue("ctype"));
+		this.userInfoRow.setJstatus(attributes.getValue("jstatus"));
+		this.userInfoRow.setOsnovainfo(attributes.getValue("osnovainfo"));
+		this.userInfoRow.setLocked(attributes.getValue("locked"));
+		this.userInfoRow.setNickname(attributes.getValue("nickname"));
+		this.userInfoRow.setInfoopen(attributes.getValue("infoopen"));
+		this.userInfoRow.setCity(attributes.getValue("city"));
+		this.userInfoRow.setCountry(attributes.getValue("country"));
+		this.userInfoRow.setZipcode(attributes.getValue("zipcode"));
+		this.userInfoRow.setAdres(attributes.getValue("adres"));
+		this.userInfoRow.setFname(attributes.getValue("fname"));
+		this.userInfoRow.setIname(attributes.getValue("iname"));
+		this.userInfoRow.setOname(attributes.getValue("oname"));
+		this.userInfoRow.setPnomer(attributes.getValue("pnomer"));
+		this.userInfoRow.setPdate(attributes.getValue("pdate"));
+		this.userInfoRow.setPcountry(attributes.getValue("pcountry"));
+		this.userInfoRow.setPcity(attributes.getValue("pcity"));
+		this.userInfoRow.setPbywhom(attributes.getValue("pbywhom"));
+		this.userInfoRow.setRcountry(attributes.getValue("rcountry"));
+		this.userInfoRow.setRcity(attributes.getValue("rcity"));
+		this.userInfoRow.setRadres(attributes.getValue("radres"));
+		this.userInfoRow.setBplace(attributes.getValue("bplace"));
+		this.userInfoRow.setBday(attributes.getValue("bday"));
+		this.userInfoRow.setBmonth(attributes.getValue("bmonth"));
+		this.userInfoRow.setByear(attributes.getValue("byear"));
+		this.userInfoRow.setName(attributes.getValue("name"));
+		this.userInfoRow.setDirfio(attributes.getValue("dirfio"));
+		this.userInfoRow.setBuhfio(attributes.getValue("buhfio"));
+		this.userInfoRow.setInn(attributes.getValue("inn"));
+		this.userInfoRow.setOkpo(attributes.getValue("okpo"));
+		this.userInfoRow.setOkonx(attributes.getValue("okonx"));
+		this.userInfoRow.setJadres(attributes.getValue("jadres"));
+		this.userInfoRow.setJcountry(attributes.getValue("jcountry"));
+		this.userInfoRow.setJcity(attributes.getValue("jcity"));
+		this.userInfoRow.setJzipcode(attributes.getValue("jzipcode"));
+		this.userInfoRow.setBankname(attributes.getValue("bankname"));
+		this.userInfoRow.setBik(attributes.getValue("bik"));
+		this.userInfoRow.setKs(attributes.getValue("ks"));
+		this.userInfoRow.setRs(attributes.getValue("rs"));
+		this.userInfoRow.setPhonehome(attributes.getValue("phonehome"));
+		this.userInfoRow.setPhonemobile(attributes.getValue("phonemobile"));
+		this.userInfoRow.setIcq(attributes.getValue("icq"));
+		this.userInfoRow.setFax(attributes.getValue("fax"));
+		this.userInfoRow.setEmail(attributes.getValue("email"));
+		this.userInfoRow.setWeb(attributes.getValue("web"));
+		this.userInfoRow.setPhone(attributes.getValue("phone"));
+		this.userInfoRow.setCap_owner(attributes.getValue("cap_owner"));
+		this.userInfoRow.setPasdoc(attributes.getValue("pasdoc"));
+		this.userInfoRow.setInndoc(attributes.getValue("inndoc"));
 	}
 
 	@Override
@@ -254,60 +201,60 @@ public class X11ResponseHandler extends AbstractResponseHandler {
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
+		switch (qName) {
 		// /response
-		if (qName.equals("response")) {
+		case "response":
 			this.response = new X11Response();
 			this.response.setRetVal(attributes.getValue("retval"));
-		}
+			break;
 		// /response/certinfo
-		if (qName.equals("certinfo")) {
+		case "certinfo":
 			this.certInfo = new X11CertInfo();
 			this.certInfo.setWmid(attributes.getValue("wmid"));
-
-		}
+			break;
 		// /response/certinfo/directory
-		if (qName.equals("directory")) {
+		case "directory":
 			this.directory = new ArrayList<X11DirectoryRow>();
-		}
+			break;
 		// /response/certinfo/directory/[ctype | jstatus | tid]
-		if (qName.equals("ctype")) {
+		case "ctype":
 			this.directoryRow = new X11DirectoryRow();
 			this.directoryRow.setType("ctype");
 			this.directoryRow.setId(attributes.getValue("id"));
-		}
-		if (qName.equals("jstatus")) {
+			break;
+		case "jstatus":
 			this.directoryRow = new X11DirectoryRow();
 			this.directoryRow.setType("jstatus");
 			this.directoryRow.setId(attributes.getValue("id"));
-		}
-		if (qName.equals("tid")) {
+			break;
+		case "tid":
 			this.directoryRow = new X11DirectoryRow();
 			this.directoryRow.setType("tid");
 			this.directoryRow.setId(attributes.getValue("id"));
-		}
+			break;
 		// /response/certinfo/attestat
-		if (qName.equals("attestat")) {
+		case "attestat":
 			this.isAttestatElementBeingParsed = true;
 			this.attestats = new ArrayList<X11AttestatRow>();
-		}
+			break;
 		// /response/certinfo/wmids
-		if (qName.equals("wmids")) {
+		case "wmids":
 			this.isWmidsElementBeingParsed = true;
 			this.wmids = new ArrayList<X11WmidsRow>();
-		}
+			break;
 		// /response/certinfo/userinfo/value
-		if (qName.equals("value")) {
+		case "value":
 			this.isValueElementBeingParsed = true;
 			this.userInfoValues = new ArrayList<X11UserInfoRow>();
-		}
+			break;
 		// /response/certinfo/userinfo/check-lock
-		if (qName.equals("check-lock")) {
+		case "check-lock":
 			this.isCheckLockElementBeingParsed = true;
 			this.userInfoChecks = new ArrayList<X11UserInfoRow>();
-		}
+			break;
 		// разбор элемента 'row', который может принадлежать [attestat | wmids |
 		// value | check-lock]
-		if (qName.equals("row")) {
+		case "row":
 			if (this.isAttestatElementBeingParsed) {
 				this.attestatRow = new X11AttestatRow();
 				this.attestatRow.setCid(attributes.getValue("cid"));
@@ -318,8 +265,8 @@ public class X11ResponseHandler extends AbstractResponseHandler {
 				this.attestatRow.setRecalled(attributes.getValue("recalled"));
 				this.attestatRow.setDateCrt(attributes.getValue("datecrt"));
 				this.attestatRow.setDatediff(attributes.getValue("datediff"));
-				this.attestatRow.setRegNickname(this.decodeCharset(attributes
-						.getValue("regnickname")));
+				this.attestatRow.setRegNickname(attributes
+						.getValue("regnickname"));
 				this.attestatRow.setRegwmid(attributes.getValue("regwmid"));
 				this.attestats.add(this.attestatRow);
 				return;
@@ -327,10 +274,8 @@ public class X11ResponseHandler extends AbstractResponseHandler {
 			if (this.isWmidsElementBeingParsed) {
 				this.wmidsRow = new X11WmidsRow();
 				this.wmidsRow.setWmid(attributes.getValue("wmid"));
-				this.wmidsRow.setInfo(this.decodeCharset(attributes
-						.getValue("info")));
-				this.wmidsRow.setNickname(this.decodeCharset(attributes
-						.getValue("nickname")));
+				this.wmidsRow.setInfo(attributes.getValue("info"));
+				this.wmidsRow.setNickname(attributes.getValue("nickname"));
 				this.wmidsRow.setDateReg(attributes.getValue("datereg"));
 				this.wmids.add(this.wmidsRow);
 				return;
@@ -347,6 +292,7 @@ public class X11ResponseHandler extends AbstractResponseHandler {
 				this.userInfoChecks.add(this.userInfoRow);
 				return;
 			}
+			break;
 		}
 	}
 }
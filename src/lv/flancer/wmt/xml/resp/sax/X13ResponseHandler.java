@@ -27,14 +27,14 @@ public class X13ResponseHandler extends AbstractResponseHandler {
 			throws SAXException {
 		// разбор общих элементов в "w3s.response"
 		super.endElement(uri, localName, qName);
+		switch (qName) {
 		// разбор подмножества элемента "w3s.response/operation"
-		if (qName.equals("opertype")) {
+		case "opertype":
 			this.response.setOperType(OperationType
-					.getByValue(this.parsedValue));
+					.getByValue(this.getParsedValue()));
 			return;
-		}
-		if (qName.equals("dateupd")) {
-			this.response.setDateUpd(this.parsedValue);
+		case "dateupd":
+			this.response.setDateUpd(this.getParsedValue());
 			return;
 		}
 	}
@@ -55,14 +55,16 @@ public class X13ResponseHandler extends AbstractResponseHandler {
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
+		switch (qName) {
 		// создаем новый экземпляр ответа
-		if (qName.equals("w3s.response")) {
+		case "w3s.response":
 			this.response = new X13Response();
-		}
+			break;
 		// задаем Id операции
-		if (qName.equals("operation")) {
+		case "operation":
 			this.response.setId(attributes.getValue("id"));
 			this.response.setTs(attributes.getValue("ts"));
+			break;
 		}
 	}
 }
@@ -34,54 +34,44 @@ public class X15ResponseListHandler extends AbstractResponseHandler {
 			throws SAXException {
 		// разбор общих элементов
 		super.endElement(uri, localName, qName);
+		switch (qName) {
 		// разбор элементов конкретного ответа
-		if (qName.equals("trustlist")) {
+		case "trustlist":
 			this.response.setTrustList(this.trustList);
 			return;
-		}
-		if (qName.equals("trust")) {
+		case "trust":
 			this.trustList.add(this.trust);
 			return;
-		}
 		// разбор элементов 'trust'
-		if (qName.equals("master")) {
-			this.trust.setMaster(this.parsedValue);
+		case "master":
+			this.trust.setMaster(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("purse")) {
-			this.trust.setPurse(this.parsedValue);
+		case "purse":
+			this.trust.setPurse(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("daylimit")) {
-			this.trust.setDayLimit(this.parsedValue);
+		case "daylimit":
+			this.trust.setDayLimit(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("dlimit")) {
-			this.trust.setDlimit(this.parsedValue);
+		case "dlimit":
+			this.trust.setDlimit(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("wlimit")) {
-			this.trust.setWlimit(this.parsedValue);
+		case "wlimit":
+			this.trust.setWlimit(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("mlimit")) {
-			this.trust.setMlimit(this.parsedValue);
+		case "mlimit":
+			this.trust.setMlimit(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("dsum")) {
-			this.trust.setDsum(this.parsedValue);
+		case "dsum":
+			this.trust.setDsum(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("wsum")) {
-			this.trust.setWsum(this.parsedValue);
+		case "wsum":
+			this.trust.setWsum(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("msum")) {
-			this.trust.setMsum(this.parsedValue);
+		case "msum":
+			this.trust.setMsum(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("lastsumdate")) {
-			this.trust.setLastSumDate(this.parsedValue);
+		case "lastsumdate":
+			this.trust.setLastSumDate(this.getParsedValue());
 			return;
 		}
 	}
@@ -101,21 +91,24 @@ public class X15ResponseListHandler extends AbstractResponseHandler {
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
+		switch (qName) {
 		// создаем новый экземпляр ответа
-		if (qName.equals("w3s.response")) {
+		case "w3s.response":
 			this.response = new X15ResponseList();
-		}
-		if (qName.equals("trustlist")) {
-			this.trustList = new ArrayList<Trust>();
+			break;
+		case "trustlist":
+			this.trustList = new ArrayList<Trust>(
+					initialCapacity(attributes.getValue("cnt")));
 			this.response.setCount(attributes.getValue("cnt"));
-		}
-		if (qName.equals("trust")) {
+			break;
+		case "trust":
 			this.trust = new Trust();
 			this.trust.setId(attributes.getValue("id"));
 			this.trust.setHasInvRight(attributes.getValue("inv"));
 			this.trust.setHasTransRight(attributes.getValue("trans"));
 			this.trust.setHasPurseRight(attributes.getValue("purse"));
 			this.trust.setHasTransHistRight(attributes.getValue("transhist"));
+			break;
 		}
 	}
 
@@ -28,11 +28,11 @@ public class X15ResponseSaveHandler extends AbstractResponseHandler {
 		super.endElement(uri, localName, qName);
 		// разбор элементов конкретного ответа
 				if (qName.equals("master")) {
-					this.response.setMaster(this.parsedValue);
+					this.response.setMaster(this.getParsedValue());
 			return;
 		}
 		if (qName.equals("purse")) {
-			this.response.setPurse(this.parsedValue);
+			this.response.setPurse(this.getParsedValue());
 			return;
 		}
 	}
@@ -52,17 +52,19 @@ public class X15ResponseSaveHandler extends AbstractResponseHandler {
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
+		switch (qName) {
 		// создаем новый экземпляр ответа
-		if (qName.equals("w3s.response")) {
+		case "w3s.response":
 			this.response = new X15ResponseSave();
-		}
-		if (qName.equals("trust")) {
+			break;
+		case "trust":
 			this.response.setId(attributes.getValue("id"));
 			this.response.setHasInvRight(attributes.getValue("inv"));
 			this.response.setHasTransRight(attributes.getValue("trans"));
 			this.response.setHasPurseRight(attributes.getValue("purse"));
 			this.response
 					.setHasTransHistRight(attributes.getValue("transhist"));
+			break;
 		}
 	}
 }
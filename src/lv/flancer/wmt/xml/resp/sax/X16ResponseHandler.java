@@ -27,17 +27,16 @@ public class X16ResponseHandler extends AbstractResponseHandler {
 			throws SAXException {
 		// разбор общих элементов в "w3s.response"
 		super.endElement(uri, localName, qName);
+		switch (qName) {
 		// разбор подмножества элемента "w3s.response/operation"
-		if (qName.equals("pursename")) {
-			this.response.setPurseName(this.parsedValue);
+		case "pursename":
+			this.response.setPurseName(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("amount")) {
-			this.response.setAmount(this.parsedValue);
+		case "amount":
+			this.response.setAmount(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("desc")) {
-			this.response.setDesc(this.parsedValue);
+		case "desc":
+			this.response.setDesc(this.getParsedValue());
 			this.isHtmlEncodedBeingParsed = false;
 			return;
 		}
@@ -58,18 +57,19 @@ public class X16ResponseHandler extends AbstractResponseHandler {
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
+		switch (qName) {
 		// создаем новый экземпляр ответа
-		if (qName.equals("w3s.response")) {
+		case "w3s.response":
 			this.response = new X16Response();
-		}
+			break;
 		// задаем Id операции
-		if (qName.equals("purse ")) {
+		case "purse ":
 			this.response.setId(attributes.getValue("id"));
-		}
+			break;
 		// начало разбора HTML encoded деталей платежа
-		if (qName.equals("desc")) {
-			this.isHtmlEncodedBeingParsed = true;
-			this.parsedValue = "";
+		case "desc":
+			this.startHtmlEncoded();
+			break;
 		}
 	}
 }
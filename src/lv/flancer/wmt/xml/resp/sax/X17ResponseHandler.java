@@ -38,7 +38,7 @@ public class X17ResponseHandler extends AbstractResponseHandler {
 		super.endElement(uri, localName, qName);
 		// разбор подмножества элемента "passport.response"
 		if (qName.equals("contractid")) {
-			this.response.setContractId(this.parsedValue);
+			this.response.setContractId(this.getParsedValue());
 			return;
 		}
 	}
@@ -26,61 +26,49 @@ public class X18ResponseHandler extends AbstractResponseHandler {
 			throws SAXException {
 		// разбор общих для большинства запросов элементов
 		super.endElement(uri, localName, qName);
+		switch (qName) {
 		// разбор подмножества элемента "merchant.response/operation"
-		if (qName.equals("amount")) {
-			this.response.setAmount(this.parsedValue);
+		case "amount":
+			this.response.setAmount(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("operdate")) {
-			this.response.setOperDate(this.parsedValue);
+		case "operdate":
+			this.response.setOperDate(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("purpose")) {
-			this.response.setPurpose(this.parsedValue);
+		case "purpose":
+			this.response.setPurpose(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("pursefrom")) {
-			this.response.setPurseFrom(this.parsedValue);
+		case "pursefrom":
+			this.response.setPurseFrom(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("wmidfrom")) {
-			this.response.setWmidFrom(this.parsedValue);
+		case "wmidfrom":
+			this.response.setWmidFrom(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("capitallerflag")) {
-			this.response.setCapitallerFlag(this.parsedValue.equals("1"));
+		case "capitallerflag":
+			this.response.setCapitallerFlag(this.getParsedValue().equals("1"));
 			return;
-		}
-		if (qName.equals("enumflag")) {
-			this.response.setEnumFlag(this.parsedValue.equals("1"));
+		case "enumflag":
+			this.response.setEnumFlag(this.getParsedValue().equals("1"));
 			return;
-		}
-		if (qName.equals("IPAddress")) {
-			this.response.setIpAddress(this.parsedValue);
+		case "IPAddress":
+			this.response.setIpAddress(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("telepat_phone")) {
-			this.response.setTelepatPhone(this.parsedValue);
+		case "telepat_phone":
+			this.response.setTelepatPhone(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("paymer_number	")) {
-			this.response.setPaymerNumber(this.parsedValue);
+		case "paymer_number	":
+			this.response.setPaymerNumber(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("paymer_email")) {
-			this.response.setPaymerEmail(this.parsedValue);
+		case "paymer_email":
+			this.response.setPaymerEmail(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("cashier_number")) {
-			this.response.setCashierNumber(this.parsedValue);
+		case "cashier_number":
+			this.response.setCashierNumber(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("cashier_date")) {
-			this.response.setCashierDate(this.parsedValue);
+		case "cashier_date":
+			this.response.setCashierDate(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("cashier_amount")) {
-			this.response.setCashierAmount(this.parsedValue);
+		case "cashier_amount":
+			this.response.setCashierAmount(this.getParsedValue());
 			return;
 		}
 	}
@@ -100,17 +88,18 @@ public class X18ResponseHandler extends AbstractResponseHandler {
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
-		if (qName.equals("merchant.response")) {
+		switch (qName) {
+		case "merchant.response":
 			this.response = new X18Response();
-		}
-		if (qName.equals("operation")) {
+			break;
+		case "operation":
 			this.response.setWmTransId(attributes.getValue("wmtransid"));
 			this.response.setWmInvoiceId(attributes.getValue("wminvoiceid"));
-		}
+			break;
 		// начало разбора HTML encoded деталей платежа
-		if (qName.equals("purpose")) {
-			this.isHtmlEncodedBeingParsed = true;
-			this.parsedValue = "";
+		case "purpose":
+			this.startHtmlEncoded();
+			break;
 		}
 	}
 
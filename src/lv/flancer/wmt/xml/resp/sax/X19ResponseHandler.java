@@ -27,17 +27,16 @@ public class X19ResponseHandler extends AbstractResponseHandler {
 			throws SAXException {
 		// разбор общих элементов
 		super.endElement(uri, localName, qName);
+		switch (qName) {
 		// разбор подмножества элемента "passport.response"
-		if (qName.equals("retid")) {
-			this.response.setRetId(this.parsedValue);
+		case "retid":
+			this.response.setRetId(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("iname")) {
-			this.response.setiName(decodeCharset(this.parsedValue));
+		case "iname":
+			this.response.setiName(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("oname")) {
-			this.response.setoName(decodeCharset(this.parsedValue));
+		case "oname":
+			this.response.setoName(this.getParsedValue());
 			return;
 		}
 	}
@@ -27,51 +27,42 @@ public class X1ResponseHandler extends AbstractResponseHandler {
 			throws SAXException {
 		// разбор общих элементов в "w3s.response"
 		super.endElement(uri, localName, qName);
+		switch (qName) {
 		// разбор подмножества элемента "w3s.response/invoice"
-		if (qName.equals("orderid")) {
-			this.response.setOrderId(this.parsedValue);
+		case "orderid":
+			this.response.setOrderId(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("customerwmid")) {
-			this.response.setCustomerWmid(this.parsedValue);
+		case "customerwmid":
+			this.response.setCustomerWmid(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("storepurse")) {
-			this.response.setStorePurse(this.parsedValue);
+		case "storepurse":
+			this.response.setStorePurse(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("amount")) {
-			this.response.setAmount(this.parsedValue);
+		case "amount":
+			this.response.setAmount(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("desc")) {
-			this.response.setDesc(this.parsedValue);
+		case "desc":
+			this.response.setDesc(this.getParsedValue());
 			this.isHtmlEncodedBeingParsed = false;
 			return;
-		}
-		if (qName.equals("address")) {
-			this.response.setAddress(this.parsedValue);
+		case "address":
+			this.response.setAddress(this.getParsedValue());
 			this.isHtmlEncodedBeingParsed = false;
 			return;
-		}
-		if (qName.equals("period")) {
-			this.response.setPeriod(this.parsedValue);
+		case "period":
+			this.response.setPeriod(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("expiration")) {
-			this.response.setExpiration(this.parsedValue);
+		case "expiration":
+			this.response.setExpiration(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("state")) {
-			this.response.setState(this.parsedValue);
+		case "state":
+			this.response.setState(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("datecrt")) {
-			this.response.setDateCrt(this.parsedValue);
+		case "datecrt":
+			this.response.setDateCrt(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("dateupd")) {
-			this.response.setDateUpd(this.parsedValue);
+		case "dateupd":
+			this.response.setDateUpd(this.getParsedValue());
 			return;
 		}
 	}
@@ -99,13 +90,13 @@ public class X1ResponseHandler extends AbstractResponseHandler {
 			this.response.setId(attributes.getValue("id"));
 			this.response.setTs(attributes.getValue("ts"));
 		} // начало разбора HTML encoded деталей платежа
-		if (qName.equals("desc")) {
-			this.isHtmlEncodedBeingParsed = true;
-			this.parsedValue = "";
-		}
-		if (qName.equals("address")) {
-			this.isHtmlEncodedBeingParsed = true;
-			this.parsedValue = "";
+		switch (qName) {
+		case "desc":
+			this.startHtmlEncoded();
+			break;
+		case "address":
+			this.startHtmlEncoded();
+			break;
 		}
 	}
 
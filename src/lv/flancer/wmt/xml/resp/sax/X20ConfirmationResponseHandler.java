@@ -39,19 +39,20 @@ public class X20ConfirmationResponseHandler extends AbstractResponseHandler {
             Attributes attributes) throws SAXException {
         // обработка общих элементов
         super.startElement(uri, localName, qName, attributes);
-        // создаем новый экземпляр ответа
-        if (qName.equals("merchant.response")) {
-            this.response = new X20ConfirmationResponse();
-        }
-        // задаем Id операции
-        if (qName.equals("operation")) {
-            this.response.setWmTransId(attributes.getValue("wmtransid"));
-            this.response.setRequestNum(attributes.getValue("wminvoiceid"));
-        }
-        // начало разбора HTML encoded деталей платежа
-        if (qName.equals("userdesc")) {
-            this.isHtmlEncodedBeingParsed = true;
-            this.parsedValue = "";
+        switch (qName) {
+            // создаем новый экземпляр ответа
+            case "merchant.response":
+                this.response = new X20ConfirmationResponse();
+                break;
+            // задаем Id операции
+            case "operation":
+                this.response.setWmTransId(attributes.getValue("wmtransid"));
+                this.response.setRequestNum(attributes.getValue("wminvoiceid"));
+                break;
+            // начало разбора HTML encoded деталей платежа
+            case "userdesc":
+                this.startHtmlEncoded();
+                break;
         }
     }
 
@@ -60,31 +61,28 @@ public class X20ConfirmationResponseHandler extends AbstractResponseHandler {
             throws SAXException {
         // разбор общих элементов в "w3s.response"
         super.endElement(uri, localName, qName);
-        if (qName.equals("userdesc")) {
-            this.response.setUserDesc(this.parsedValue);
-            this.isHtmlEncodedBeingParsed = false;
-            return;
-        }                
-        // разбор подмножества элемента "merchant.response/operation"
-        if (qName.equals("amount")) {
-            this.response.setAmount(this.parsedValue);
-            return;
+        switch (qName) {
+            case "userdesc":
+                this.response.setUserDesc(this.getParsedValue());
+                this.isHtmlEncodedBeingParsed = false;
+                return;
+            // разбор подмножества элемента "merchant.response/operation"
+            case "amount":
+                this.response.setAmount(this.getParsedValue());
+                return;
+            case "operdate":
+                this.response.setOperDate(this.getParsedValue());
+                return;
+            //        if (qName.equals("purpose")) {
+            //            this.response.setPurpose(this.getParsedValue());
+            //            return;
+            //        }
+            case "pursefrom":
+                this.response.setPurseFrom(this.getParsedValue());
+                return;
+            case "wmidfrom":
+                this.response.setWmidFrom(this.getParsedValue());
+                return;
         }
-        if (qName.equals("operdate")) {
-            this.response.setOperDate(this.parsedValue);
-            return;
-        }        
-//        if (qName.equals("purpose")) {
-//            this.response.setPurpose(this.parsedValue);
-//            return;
-//        }
-        if (qName.equals("pursefrom")) {
-            this.response.setPurseFrom(this.parsedValue);
-            return;
-        }         
-        if (qName.equals("wmidfrom")) {
-            this.response.setWmidFrom(this.parsedValue);
-            return;
-        }         
     }        
 }
@@ -37,18 +37,19 @@ public class X20InitiationResponseHandler extends AbstractResponseHandler {
             Attributes attributes) throws SAXException {
         // обработка общих элементов
         super.startElement(uri, localName, qName, attributes);
-        // создаем новый экземпляр ответа
-        if (qName.equals("merchant.response")) {
-            this.response = new X20InitiationResponse();
-        }
-        // задаем Id операции
-        if (qName.equals("operation")) {
-            this.response.setRequestNum(attributes.getValue("wminvoiceid"));
-        }
-        // начало разбора HTML encoded деталей платежа
-        if (qName.equals("userdesc")) {
-            this.isHtmlEncodedBeingParsed = true;
-            this.parsedValue = "";
+        switch (qName) {
+            // создаем новый экземпляр ответа
+            case "merchant.response":
+                this.response = new X20InitiationResponse();
+                break;
+            // задаем Id операции
+            case "operation":
+                this.response.setRequestNum(attributes.getValue("wminvoiceid"));
+                break;
+            // начало разбора HTML encoded деталей платежа
+            case "userdesc":
+                this.startHtmlEncoded();
+                break;
         }
     }
 
@@ -58,15 +59,15 @@ public class X20InitiationResponseHandler extends AbstractResponseHandler {
         // разбор общих элементов в "w3s.response"
         super.endElement(uri, localName, qName);
 
-        if (qName.equals("userdesc")) {
-            this.response.setUserDesc(this.parsedValue);
-            this.isHtmlEncodedBeingParsed = false;
-            return;
-        }
-        // разбор подмножества элемента "merchant.response/operation"
-        if (qName.equals("realsmstype")) {
-            this.response.setSmsType(X20SmsType.getByValue(this.parsedValue));
-            return;
+        switch (qName) {
+            case "userdesc":
+                this.response.setUserDesc(this.getParsedValue());
+                this.isHtmlEncodedBeingParsed = false;
+                return;
+            // разбор подмножества элемента "merchant.response/operation"
+            case "realsmstype":
+                this.response.setSmsType(X20SmsType.getByValue(this.getParsedValue()));
+                return;
         }
     }
 }
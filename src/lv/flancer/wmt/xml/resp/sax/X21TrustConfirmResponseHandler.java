@@ -28,19 +28,19 @@ public class X21TrustConfirmResponseHandler extends AbstractResponseHandler {
                 
         // обработка общих элементов
         super.startElement(uri, localName, qName, attributes);
-        // создаем новый экземпляр ответа
-        if (qName.equals("merchant.response")) {
-            this.response = new X21TrustConfirmResponse();
-        }
-        // задаем Id операции
-        if (qName.equals("trust")) {
-            this.response.setTrustID(attributes.getValue("id"));            
-        }
-        
-        // начало разбора HTML encoded деталей платежа
-        if (qName.equals("userdesc")) {
-            this.isHtmlEncodedBeingParsed = true;
-            this.parsedValue = "";
+        switch (qName) {
+            // создаем новый экземпляр ответа
+            case "merchant.response":
+                this.response = new X21TrustConfirmResponse();
+                break;
+            // задаем Id операции
+            case "trust":
+                this.response.setTrustID(attributes.getValue("id"));            
+                break;
+            // начало разбора HTML encoded деталей платежа
+            case "userdesc":
+                this.startHtmlEncoded();
+                break;
         }
     }
     
@@ -50,25 +50,20 @@ public class X21TrustConfirmResponseHandler extends AbstractResponseHandler {
                
         // разбор общих элементов в "w3s.response"
         super.endElement(uri, localName, qName);
-        if (qName.equals("userdesc")) {
-            this.response.setUserDesc(this.parsedValue);
-            this.isHtmlEncodedBeingParsed = false;
-            return;
-        }     
-                
-        if (qName.equals("slavepurse")) {
-            this.response.setSlavePurse(this.parsedValue);
-            return;
-        }        
-                    
-        if (qName.equals("slavewmid")) {
-            this.response.setSlaveWmid(this.parsedValue);
-            return;
-        }
-        
-        if (qName.equals("masterwmid")) {
-            this.response.setMasterwmid(this.parsedValue);
-            return;
+        switch (qName) {
+            case "userdesc":
+                this.response.setUserDesc(this.getParsedValue());
+                this.isHtmlEncodedBeingParsed = false;
+                return;
+            case "slavepurse":
+                this.response.setSlavePurse(this.getParsedValue());
+                return;
+            case "slavewmid":
+                this.response.setSlaveWmid(this.getParsedValue());
+                return;
+            case "masterwmid":
+                this.response.setMasterwmid(this.getParsedValue());
+                return;
         }
     }
         
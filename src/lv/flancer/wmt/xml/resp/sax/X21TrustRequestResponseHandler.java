@@ -31,19 +31,18 @@ public class X21TrustRequestResponseHandler extends AbstractResponseHandler {
                
         // обработка общих элементов
         super.startElement(uri, localName, qName, attributes);
-        // создаем новый экземпляр ответа
-        if (qName.equals("merchant.response")) {
-            this.response = new X21TrustRequestResponse();
-        }
-        
-        if (qName.equals("trust")) {            
-            this.response.setPurseID(attributes.getValue("purseid"));            
-        }
-        
-        // начало разбора HTML encoded деталей платежа
-        if (qName.equals("userdesc")) {
-            this.isHtmlEncodedBeingParsed = true;
-            this.parsedValue = "";
+        switch (qName) {
+            // создаем новый экземпляр ответа
+            case "merchant.response":
+                this.response = new X21TrustRequestResponse();
+                break;
+            case "trust":
+                this.response.setPurseID(attributes.getValue("purseid"));            
+                break;
+            // начало разбора HTML encoded деталей платежа
+            case "userdesc":
+                this.startHtmlEncoded();
+                break;
         }
         
     }
@@ -54,27 +53,21 @@ public class X21TrustRequestResponseHandler extends AbstractResponseHandler {
                
         // разбор общих элементов в "w3s.response"
         super.endElement(uri, localName, qName);
-        if (qName.equals("userdesc")) {
-            this.response.setUserDesc(this.parsedValue);
-            this.isHtmlEncodedBeingParsed = false;
-            return;
-        }     
-                
-        if (qName.equals("realsmstype")) {
-            this.response.setSmsType(X21SmsType.getByValue(this.parsedValue));
-            return;
+        switch (qName) {
+            case "userdesc":
+                this.response.setUserDesc(this.getParsedValue());
+                this.isHtmlEncodedBeingParsed = false;
+                return;
+            case "realsmstype":
+                this.response.setSmsType(X21SmsType.getByValue(this.getParsedValue()));
+                return;
+            case "slavepurse":
+                this.response.setSlavePurse(this.getParsedValue());
+                return;
+            case "slavewmid":
+                this.response.setSlaveWmid(this.getParsedValue());
+                return;
         }
-        
-        if (qName.equals("slavepurse")) {
-            this.response.setSlavePurse(this.parsedValue);
-            return;
-        }        
-    
-                
-        if (qName.equals("slavewmid")) {
-            this.response.setSlaveWmid(this.parsedValue);
-            return;
-        }          
     }    
     
 }
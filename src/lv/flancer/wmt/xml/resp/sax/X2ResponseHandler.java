@@ -27,55 +27,45 @@ public class X2ResponseHandler extends AbstractResponseHandler {
 			throws SAXException {
 		// разбор общих элементов в "w3s.response"
 		super.endElement(uri, localName, qName);
+		switch (qName) {
 		// разбор подмножества элемента "w3s.response/operation"
-		if (qName.equals("tranid")) {
-			this.response.setTranId(this.parsedValue);
+		case "tranid":
+			this.response.setTranId(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("pursesrc")) {
-			this.response.setPurseSrc(this.parsedValue);
+		case "pursesrc":
+			this.response.setPurseSrc(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("pursedest")) {
-			this.response.setPurseDest(this.parsedValue);
+		case "pursedest":
+			this.response.setPurseDest(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("amount")) {
-			this.response.setAmount(this.parsedValue);
+		case "amount":
+			this.response.setAmount(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("comiss")) {
-			this.response.setComiss(this.parsedValue);
+		case "comiss":
+			this.response.setComiss(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("opertype")) {
+		case "opertype":
 			this.response.setOperType(OperationType
-					.getByValue(this.parsedValue));
+					.getByValue(this.getParsedValue()));
 			return;
-		}
-		if (qName.equals("period")) {
-			this.response.setPeriod(this.parsedValue);
+		case "period":
+			this.response.setPeriod(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("wminvid")) {
-			this.response.setWmInvId(this.parsedValue);
+		case "wminvid":
+			this.response.setWmInvId(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("orderid")) {
-			this.response.setOrderId(this.parsedValue);
+		case "orderid":
+			this.response.setOrderId(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("desc")) {
-			this.response.setDesc(this.parsedValue);
+		case "desc":
+			this.response.setDesc(this.getParsedValue());
 			this.isHtmlEncodedBeingParsed = false;
 			return;
-		}
-		if (qName.equals("datecrt")) {
-			this.response.setDateCrt(this.parsedValue);
+		case "datecrt":
+			this.response.setDateCrt(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("dateupd")) {
-			this.response.setDateUpd(this.parsedValue);
+		case "dateupd":
+			this.response.setDateUpd(this.getParsedValue());
 			return;
 		}
 	}
@@ -94,21 +84,22 @@ public class X2ResponseHandler extends AbstractResponseHandler {
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
+		switch (qName) {
 		// создаем новый экземпляр ответа
-		if (qName.equals("w3s.response")) {
+		case "w3s.response":
 			this.response = new X2Response();
-		}
+			break;
 		// задаем Id операции
-		if (qName.equals("operation")) {
+		case "operation":
 			this.response.setId(attributes.getValue("id"));
 			//this.response.setTs(attributes.getValue("ts"));
 			//аттрибут ts может отсутствовать
 			this.response.setTs((attributes.getValue("ts") == null) ? "0" : attributes.getValue("ts"));
-		}
+			break;
 		// начало разбора HTML encoded деталей платежа
-		if (qName.equals("desc")) {	
-			this.isHtmlEncodedBeingParsed = true;
-			this.parsedValue = "";
+		case "desc":
+			this.startHtmlEncoded();
+			break;
 		}
 	}
 
@@ -5,6 +5,7 @@ package lv.flancer.wmt.xml.resp.sax;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import lv.flancer.wmt.xml.dict.Operation;
 import lv.flancer.wmt.xml.dict.OperationType;
@@ -22,6 +23,11 @@ import org.xml.sax.SAXException;
  * 
  */
 public class X3ResponseHandler extends AbstractResponseHandler {
+	/**
+	 * Получатель операций, которому они передаются по мере разбора. Если не
+	 * задан - операции собираются в список ответа.
+	 */
+	private final Consumer<Operation> consumer;
 	/**
 	 * Флаг, показывающий, что происходит разбор элементов, относящихся к
 	 * "w3s.response/operations/operation".
@@ -40,6 +46,19 @@ public class X3ResponseHandler extends AbstractResponseHandler {
 	 */
 	private X3Response response;
 
+	public X3ResponseHandler() {
+		this(null);
+	}
+
+	/**
+	 * @param consumer
+	 *            получатель операций: каждый элемент передается получателю сразу
+	 *            по окончании разбора, список ответа остается пустым.
+	 */
+	public X3ResponseHandler(Consumer<Operation> consumer) {
+		this.consumer = consumer;
+	}
+
 	@Override
 	public void endElement(String uri, String localName, String qName)
 			throws SAXException {
@@ -65,71 +84,62 @@ public class X3ResponseHandler extends AbstractResponseHandler {
 	 * @param name
 	 */
 	private void endElementOperation(String name) {
+		switch (name) {
 		// закончили разбор подмножества элемента
 		// "w3s.response/operations/operation"
-		if (name.equals("operation")) {
+		case "operation":
 			this.isOperationElementBeingParsed = false;
-			this.operationList.add(this.operation);
+			if (this.consumer != null) {
+				this.deliver(this.consumer, this.operation);
+			} else {
+				this.operationList.add(this.operation);
+			}
 			return;
-		}
 		// разбор подмножества элемента
 		// "w3s.response/operations/operation"
-		if (name.equals("pursesrc")) {
-			this.operation.setPurseSrc(this.parsedValue);
+		case "pursesrc":
+			this.operation.setPurseSrc(this.getParsedValue());
 			return;
-		}
-		if (name.equals("pursedest")) {
-			this.operation.setPurseDest(this.parsedValue);
+		case "pursedest":
+			this.operation.setPurseDest(this.getParsedValue());
 			return;
-		}
-		if (name.equals("amount")) {
-			this.operation.setAmount(this.parsedValue);
+		case "amount":
+			this.operation.setAmount(this.getParsedValue());
 			return;
-		}
-		if (name.equals("comiss")) {
-			this.operation.setComiss(this.parsedValue);
+		case "comiss":
+			this.operation.setComiss(this.getParsedValue());
 			return;
-		}
-		if (name.equals("opertype")) {
+		case "opertype":
 			this.operation.setOperType(OperationType
-					.getByValue(this.parsedValue));
+					.getByValue(this.getParsedValue()));
 			return;
-		}
-		if (name.equals("tranid")) {
-			this.operation.setTranId(this.parsedValue);
+		case "tranid":
+			this.operation.setTranId(this.getParsedValue());
 			return;
-		}
-		if (name.equals("wminvid")) {
-			this.operation.setWmInvId(this.parsedValue);
+		case "wminvid":
+			this.operation.setWmInvId(this.getParsedValue());
 			return;
-		}
-		if (name.equals("orderid")) {
-			this.operation.setOrderId(this.parsedValue);
+		case "orderid":
+			this.operation.setOrderId(this.getParsedValue());
 			return;
-		}
-		if (name.equals("period")) {
-			this.operation.setPeriod(this.parsedValue);
+		case "period":
+			this.operation.setPeriod(this.getParsedValue());
 			return;
-		}
-		if (name.equals("desc")) {
-			this.operation.setDesc(this.parsedValue);
+		case "desc":
+			this.operation.setDesc(this.getParsedValue());
 			this.isHtmlEncodedBeingParsed = false;
 			return;
-		}
-		if (name.equals("datecrt")) {
-			this.operation.setDateCrt(this.parsedValue);
+		case "datecrt":
+			this.operation.setDateCrt(this.getParsedValue());
 			return;
-		}
-		if (name.equals("dateupd")) {
-			this.operation.setDateUpd(this.parsedValue);
+		case "dateupd":
+			this.operation.setDateUpd(this.getParsedValue());
 			return;
-		}
-		if (name.equals("corrwm")) {
-			this.operation.setCorrWm(this.parsedValue);
+		case "corrwm":
+			this.operation.setCorrWm(this.getParsedValue());
 			return;
-		}
-		if (name.equals("rest")) {
-			this.operation.setRest(this.parsedValue);
+		case "rest":
+			this.operation.setRest(this.getParsedValue());
 			return;
 		}
 	}
@@ -143,32 +153,44 @@ public class X3ResponseHandler extends AbstractResponseHandler {
 		return response;
 	}
 
+	@Override
+	public void reset() {
+		super.reset();
+		this.isOperationElementBeingParsed = false;
+		this.operation = null;
+		this.operationList = null;
+		this.response = null;
+	}
+
 	@Override
 	public void startElement(String uri, String localName, String qName,
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
+		switch (qName) {
 		// создаем новый экземпляр ответа
-		if (qName.equals("w3s.response")) {
+		case "w3s.response":
 			this.response = new X3Response();
-		}
+			break;
 		// создаем список операций
-		if (qName.equals("operations")) {
+		case "operations":
 			this.response.setCount(attributes.getValue("cnt"));
-			this.operationList = new ArrayList<Operation>();
-		}
+			// при передаче получателю список остается пустым
+			this.operationList = new ArrayList<Operation>(
+					(this.consumer != null) ? 0 : initialCapacity(attributes
+							.getValue("cnt")));
+			break;
 		// начало разбора отдельной операции
-		if (qName.equals("operation")) {
+		case "operation":
 			this.isOperationElementBeingParsed = true;
 			this.operation = new Operation();
 			this.operation.setId(attributes.getValue("id"));
 			this.operation.setTs(attributes.getValue("ts"));
-
-		}
+			break;
 		// начало разбора HTML encoded деталей платежа
-		if (qName.equals("desc")) {
-			this.isHtmlEncodedBeingParsed = true;
-			this.parsedValue = "";
+		case "desc":
+			this.startHtmlEncoded();
+			break;
 		}
 	}
 
@@ -37,14 +37,14 @@ public class X5ResponseHandler extends AbstractResponseHandler {
 			throws SAXException {
 		// разбор общих для большинства запросов элементов
 		super.endElement(uri, localName, qName);
+		switch (qName) {
 		// разбор подмножества элемента "w3s.response/operation"
-		if (qName.equals("opertype")) {
+		case "opertype":
 			this.response.setOperType(OperationType
-					.getByValue(this.parsedValue));
+					.getByValue(this.getParsedValue()));
 			return;
-		}
-		if (qName.equals("dateupd")) {
-			this.response.setDateUpd(this.parsedValue);
+		case "dateupd":
+			this.response.setDateUpd(this.getParsedValue());
 			return;
 		}
 	}
@@ -54,14 +54,16 @@ public class X5ResponseHandler extends AbstractResponseHandler {
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
+		switch (qName) {
 		// создаем новый экземпляр ответа
-		if (qName.equals("w3s.response")) {
+		case "w3s.response":
 			this.response = new X5Response();
-		}
+			break;
 		// создаем список операций
-		if (qName.equals("operation")) {
+		case "operation":
 			this.response.setId(attributes.getValue("id"));
 			this.response.setTs(attributes.getValue("ts"));
+			break;
 		}
 	}
 
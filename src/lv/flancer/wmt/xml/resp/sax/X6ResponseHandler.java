@@ -27,21 +27,19 @@ public class X6ResponseHandler extends AbstractResponseHandler {
 			throws SAXException {
 		// разбор общих для большинства запросов элементов
 		super.endElement(uri, localName, qName);
+		switch (qName) {
 		// разбор подмножества элемента "w3s.response/message"
-		if (qName.equals("receiverwmid")) {
-			this.response.setReceiverWmid(this.parsedValue);
+		case "receiverwmid":
+			this.response.setReceiverWmid(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("msgsubj")) {
-			this.response.setMsgSubj(this.parsedValue);
+		case "msgsubj":
+			this.response.setMsgSubj(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("msgtext")) {
-			this.response.setMsgText(this.parsedValue);
+		case "msgtext":
+			this.response.setMsgText(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("datecrt")) {
-			this.response.setDateCrt(this.parsedValue);
+		case "datecrt":
+			this.response.setDateCrt(this.getParsedValue());
 			return;
 		}
 	}
@@ -60,13 +58,15 @@ public class X6ResponseHandler extends AbstractResponseHandler {
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
+		switch (qName) {
 		// создаем новый экземпляр ответа
-		if (qName.equals("w3s.response")) {
+		case "w3s.response":
 			this.response = new X6Response();
-		}
+			break;
 		// задаем Id сообщения
-		if (qName.equals("message")) {
+		case "message":
 			this.response.setId(attributes.getValue("id"));
+			break;
 		}
 	}
 }
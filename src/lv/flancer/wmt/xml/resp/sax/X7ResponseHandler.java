@@ -28,7 +28,7 @@ public class X7ResponseHandler extends AbstractResponseHandler {
 		super.endElement(uri, localName, qName);
 		// разбор подмножества элемента "w3s.response/testsign"
 		if (qName.equals("res")) {
-			this.response.setRes(this.parsedValue.equals("yes"));
+			this.response.setRes(this.getParsedValue().equals("yes"));
 			return;
 		}
 	}
@@ -28,13 +28,13 @@ public class X8ResponseHandler extends AbstractResponseHandler {
 			throws SAXException {
 		// разбор общих для большинства запросов элементов
 		super.endElement(uri, localName, qName);
+		switch (qName) {
 		// разбор подмножества элемента "w3s.response/testwmpurse"
-		if (qName.equals("wmid")) {
-			this.response.setWmid(this.parsedValue);
+		case "wmid":
+			this.response.setWmid(this.getParsedValue());
 			return;
-		}
-		if (qName.equals("purse")) {
-			this.response.setPurse(this.parsedValue);
+		case "purse":
+			this.response.setPurse(this.getParsedValue());
 			return;
 		}
 	}
@@ -63,37 +63,32 @@ public class X9ResponseHandler extends AbstractResponseHandler {
 	 * @param name
 	 */
 	private void endElementPurse(String name) {
+		switch (name) {
 		// закончили разбор подмножества элемента
 		// "w3s.response/purses/purse"
-		if (name.equals("purse")) {
+		case "purse":
 			this.isPurseElementBeingParsed = false;
 			this.pursesList.add(this.purse);
 			return;
-		}
 		// разбор подмножества элемента
 		// "w3s.response/purses/purse"
-		if (name.equals("pursename")) {
-			this.purse.setNumber(this.parsedValue);
+		case "pursename":
+			this.purse.setNumber(this.getParsedValue());
 			return;
-		}
-		if (name.equals("amount")) {
-			this.purse.setAmount(this.parsedValue);
+		case "amount":
+			this.purse.setAmount(this.getParsedValue());
 			return;
-		}
-		if (name.equals("desc")) {
-			this.purse.setDesc(this.parsedValue);
+		case "desc":
+			this.purse.setDesc(this.getParsedValue());
 			return;
-		}
-		if (name.equals("outsideopen")) {
-			this.purse.setOutsideOpen(this.parsedValue);
+		case "outsideopen":
+			this.purse.setOutsideOpen(this.getParsedValue());
 			return;
-		}
-		if (name.equals("lastintr")) {
-			this.purse.setLastInTr(this.parsedValue);
+		case "lastintr":
+			this.purse.setLastInTr(this.getParsedValue());
 			return;
-		}
-		if (name.equals("lastouttr")) {
-			this.purse.setLastOutTr(this.parsedValue);
+		case "lastouttr":
+			this.purse.setLastOutTr(this.getParsedValue());
 			return;
 		}
 	}
@@ -107,25 +102,37 @@ public class X9ResponseHandler extends AbstractResponseHandler {
 		return response;
 	}
 
+	@Override
+	public void reset() {
+		super.reset();
+		this.isPurseElementBeingParsed = false;
+		this.purse = null;
+		this.pursesList = null;
+		this.response = null;
+	}
+
 	@Override
 	public void startElement(String uri, String localName, String qName,
 			Attributes attributes) throws SAXException {
 		// обработка общих элементов
 		super.startElement(uri, localName, qName, attributes);
+		switch (qName) {
 		// создаем новый экземпляр ответа
-		if (qName.equals("w3s.response")) {
+		case "w3s.response":
 			this.response = new X9Response();
-		}
+			break;
 		// создаем список кошельков
-		if (qName.equals("purses")) {
+		case "purses":
 			this.response.setCount(attributes.getValue("cnt"));
-			this.pursesList = new ArrayList<WmPurse>();
-		}
+			this.pursesList = new ArrayList<WmPurse>(
+					initialCapacity(attributes.getValue("cnt")));
+			break;
 		// начало разбора отдельного кошелька
-		if (qName.equals("purse")) {
+		case "purse":
 			this.isPurseElementBeingParsed = true;
 			this.purse = new WmPurse();
 			this.purse.setId(attributes.getValue("id"));
+			break;
 		}
 	}
 
@@ -26,6 +26,10 @@ public class KwmExtractor {
 	 * Пароль доступа к ключу.
 	 */
 	private String keyPassword;
+	/**
+	 * Содержимое kwm-файла (например, из {@link KwmVault}).
+	 */
+	private byte[] kwm;
 	/**
 	 * Данные, извлеченные из kwm-файла.
 	 */
@@ -81,6 +85,9 @@ public class KwmExtractor {
 		if (this.base64Kwm != null) {
 			// распаковываем ключ из base64-строки
 			buff = this.readBase64();
+		} else if (this.kwm != null) {
+			// содержимое kwm-файла уже считано
+			buff = this.kwm;
 		} else {
 			// считываем содержимое kwm-файла
 			buff = this.readKwmFile();
@@ -113,6 +120,15 @@ public class KwmExtractor {
 		return keyPassword;
 	}
 
+	/**
+	 * Содержимое kwm-файла (например, из {@link KwmVault}).
+	 * 
+	 * @return Содержимое kwm-файла.
+	 */
+	public byte[] getKwm() {
+		return kwm;
+	}
+
 	/**
 	 * Данные, извлеченные из kwm-файла.
 	 * 
@@ -227,6 +243,17 @@ public class KwmExtractor {
 		this.keyPassword = keyPassword;
 	}
 
+	/**
+	 * Содержимое kwm-файла (например, из {@link KwmVault}). Используется
+	 * вместо kwm-файла, если не задана base64-строка.
+	 * 
+	 * @param kwm
+	 *            Содержимое kwm-файла.
+	 */
+	public void setKwm(byte[] kwm) {
+		this.kwm = kwm;
+	}
+
 	/**
 	 * Данные, извлеченные из kwm-файла.
 	 * 
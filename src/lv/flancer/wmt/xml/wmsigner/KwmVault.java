@@ -0,0 +1,242 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml.wmsigner;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import lv.flancer.wmt.xml.dict.Wmid;
+
+/**
+ * <p>
+ * Хранилище kwm-ключей множества WMID в одном файле. Файл отображается в
+ * память ({@link FileChannel#map}), поэтому открытие хранилища не зависит от
+ * количества ключей, а ключ WMID находится двоичным поиском по индексу без
+ * обращения к файловой системе.
+ * </p>
+ * <p>
+ * Ключи хранятся в том же виде, что и в kwm-файлах (защищены WMID и паролем
+ * доступа), и распаковываются {@link KwmExtractor}'ом при первой подписи.
+ * Хранилище создается {@link KwmVaultBuilder}'ом.
+ * </p>
+ * <p>
+ * Формат файла (порядок байтов - big-endian):
+ * </p>
+ * 
+ * <pre>
+ * заголовок: 'WMKV' (4 байта), версия (int), количество ключей (int)
+ * индекс:    WMID (long), смещение ключа (int), длина ключа (int) - по
+ *            возрастанию WMID
+ * данные:    содержимое kwm-файлов
+ * </pre>
+ * <p>
+ * Экземпляр потокобезопасен.
+ * </p>
+ * 
+ * <pre>
+ * KwmVault vault = new KwmVault(&quot;/path/to/keys.vault&quot;);
+ * WmSignerRegistry registry = new WmSignerRegistry();
+ * registry.registerVault(vault, &quot;KeyPassword&quot;);
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class KwmVault {
+	/**
+	 * Длина заголовка файла.
+	 */
+	static final int HEADER_LENGTH = 12;
+	/**
+	 * Длина записи индекса.
+	 */
+	static final int INDEX_ENTRY_LENGTH = 16;
+	/**
+	 * Сигнатура файла хранилища ('WMKV').
+	 */
+	static final int MAGIC = 0x574D4B56;
+	/**
+	 * Версия формата файла.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Числовое значение WMID (ключ индекса).
+	 * 
+	 * @param wmid
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             WMID не является 12-значным числом.
+	 */
+	static long toIndexKey(Wmid wmid) {
+		String value = wmid.getValue();
+		if ((value == null) || (value.length() != 12)) {
+			throw new IllegalArgumentException("Invalid WMID: " + value);
+		}
+		long result = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if ((ch < '0') || (ch > '9')) {
+				throw new IllegalArgumentException("Invalid WMID: " + value);
+			}
+			result = result * 10 + (ch - '0');
+		}
+		return result;
+	}
+
+	/**
+	 * Отображенное в память содержимое файла.
+	 */
+	private final ByteBuffer buffer;
+	/**
+	 * Количество ключей в хранилище.
+	 */
+	private final int count;
+	/**
+	 * Путь к файлу хранилища.
+	 */
+	private final String fileName;
+
+	/**
+	 * Открывает файл хранилища и отображает его в память.
+	 * 
+	 * @param fileName
+	 *            путь к файлу хранилища.
+	 * @throws IOException
+	 *             файл не удалось прочитать или он не является хранилищем
+	 *             ключей.
+	 */
+	public KwmVault(String fileName) throws IOException {
+		this.fileName = fileName;
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			// отображение остается доступным после закрытия канала
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			file.close();
+		}
+		if ((this.buffer.capacity() < HEADER_LENGTH)
+				|| (this.buffer.getInt(0) != MAGIC)) {
+			throw new IOException("'" + fileName + "' is not a key vault.");
+		}
+		if (this.buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported key vault version "
+					+ this.buffer.getInt(4) + " in '" + fileName + "'.");
+		}
+		this.count = this.buffer.getInt(8);
+		if ((this.count < 0)
+				|| ((long) this.count * INDEX_ENTRY_LENGTH + HEADER_LENGTH > this.buffer
+						.capacity())) {
+			throw new IOException("Key vault '" + fileName + "' is truncated.");
+		}
+	}
+
+	/**
+	 * Проверяет, содержит ли хранилище ключ WMID.
+	 * 
+	 * @param wmid
+	 * @return 'true', если ключ есть в хранилище.
+	 */
+	public boolean contains(Wmid wmid) {
+		return this.find(wmid) >= 0;
+	}
+
+	/**
+	 * Ищет WMID в индексе.
+	 * 
+	 * @param wmid
+	 * @return смещение записи индекса или -1, если WMID нет в хранилище.
+	 */
+	private int find(Wmid wmid) {
+		long key;
+		try {
+			key = toIndexKey(wmid);
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+		int low = 0;
+		int high = this.count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int entry = HEADER_LENGTH + mid * INDEX_ENTRY_LENGTH;
+			long value = this.buffer.getLong(entry);
+			if (value < key) {
+				low = mid + 1;
+			} else if (value > key) {
+				high = mid - 1;
+			} else {
+				return entry;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Путь к файлу хранилища.
+	 * 
+	 * @return Путь к файлу хранилища.
+	 */
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	/**
+	 * WMID всех ключей хранилища (по возрастанию).
+	 * 
+	 * @return WMID всех ключей хранилища.
+	 */
+	public List<Wmid> getWmids() {
+		List<Wmid> result = new ArrayList<Wmid>(this.count);
+		for (int i = 0; i < this.count; i++) {
+			long value = this.buffer.getLong(HEADER_LENGTH + i
+					* INDEX_ENTRY_LENGTH);
+			result.add(new Wmid(String.format("%012d", value)));
+		}
+		return result;
+	}
+
+	/**
+	 * Возвращает содержимое kwm-файла WMID.
+	 * 
+	 * @param wmid
+	 * @return содержимое kwm-файла или 'null', если ключа нет в хранилище.
+	 * @throws IOException
+	 *             запись индекса указывает за пределы файла.
+	 */
+	public byte[] read(Wmid wmid) throws IOException {
+		byte[] result = null;
+		int entry = this.find(wmid);
+		if (entry >= 0) {
+			int offset = this.buffer.getInt(entry + 8);
+			int length = this.buffer.getInt(entry + 12);
+			if ((offset < 0) || (length < 0)
+					|| ((long) offset + length > this.buffer.capacity())) {
+				throw new IOException("Key vault '" + this.fileName
+						+ "' is corrupted (WMID " + wmid + ").");
+			}
+			result = new byte[length];
+			// позиция отображения разделяется потоками, читаем через копию
+			ByteBuffer dup = this.buffer.duplicate();
+			dup.position(offset);
+			dup.get(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Количество ключей в хранилище.
+	 * 
+	 * @return Количество ключей в хранилище.
+	 */
+	public int size() {
+		return this.count;
+	}
+}
@@ -0,0 +1,226 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml.wmsigner;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.bind.DatatypeConverter;
+
+import lv.flancer.wmt.xml.dict.Wmid;
+
+/**
+ * <p>
+ * Создает файл хранилища kwm-ключей ({@link KwmVault}) из существующих
+ * kwm-файлов или base64-строк. Ключи переносятся в хранилище без изменений
+ * (защищенными WMID и паролем доступа).
+ * </p>
+ * 
+ * <pre>
+ * KwmVaultBuilder builder = new KwmVaultBuilder();
+ * builder.addKwmDirectory(&quot;/path/to/kwm/files&quot;);
+ * builder.addKwmFile(&quot;123456789012&quot;, &quot;/other/path/keys.kwm&quot;);
+ * builder.build(&quot;/path/to/keys.vault&quot;);
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class KwmVaultBuilder {
+	/**
+	 * Расширение kwm-файлов.
+	 */
+	private static final String KWM_EXTENSION = ".kwm";
+	/**
+	 * Максимальный размер kwm-файла.
+	 */
+	private static final int MAX_KWM_LENGTH = 4096;
+
+	/**
+	 * Содержимое kwm-файлов по возрастанию WMID.
+	 */
+	private final Map<Long, byte[]> keys = new TreeMap<Long, byte[]>();
+
+	/**
+	 * Добавляет ключ, кодированный в base64.
+	 * 
+	 * @param wmid
+	 *            WMID ключа.
+	 * @param base64Key
+	 *            ключ подписи, кодированный в base64.
+	 * @return текущий builder.
+	 */
+	public KwmVaultBuilder addBase64(Wmid wmid, String base64Key) {
+		return this.addKwm(wmid, DatatypeConverter.parseBase64Binary(base64Key));
+	}
+
+	/**
+	 * Добавляет содержимое kwm-файла. Ранее добавленный ключ этого WMID
+	 * заменяется.
+	 * 
+	 * @param wmid
+	 *            WMID ключа.
+	 * @param kwm
+	 *            содержимое kwm-файла.
+	 * @return текущий builder.
+	 * @throws IllegalArgumentException
+	 *             WMID не является 12-значным числом.
+	 */
+	public KwmVaultBuilder addKwm(Wmid wmid, byte[] kwm) {
+		this.keys.put(KwmVault.toIndexKey(wmid), kwm.clone());
+		return this;
+	}
+
+	/**
+	 * Добавляет все файлы каталога с именами вида "123456789012.kwm" (WMID и
+	 * расширение .kwm). Остальные файлы пропускаются.
+	 * 
+	 * @param dirName
+	 *            путь к каталогу с kwm-файлами.
+	 * @return количество добавленных ключей.
+	 * @throws IOException
+	 */
+	public int addKwmDirectory(String dirName) throws IOException {
+		int result = 0;
+		File[] files = new File(dirName).listFiles();
+		if (files == null) {
+			throw new IOException("'" + dirName + "' is not a directory.");
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isFile() && name.endsWith(KWM_EXTENSION)) {
+				Wmid wmid = new Wmid(name.substring(0, name.length()
+						- KWM_EXTENSION.length()));
+				try {
+					KwmVault.toIndexKey(wmid);
+				} catch (IllegalArgumentException e) {
+					// имя файла не является WMID
+					continue;
+				}
+				this.addKwm(wmid, this.readKwmFile(file));
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Добавляет kwm-файл.
+	 * 
+	 * @param wmid
+	 *            WMID ключа.
+	 * @param kwmFileName
+	 *            полный путь к kwm-файлу с ключом.
+	 * @return текущий builder.
+	 * @throws IOException
+	 */
+	public KwmVaultBuilder addKwmFile(String wmid, String kwmFileName)
+			throws IOException {
+		return this.addKwmFile(new Wmid(wmid), kwmFileName);
+	}
+
+	/**
+	 * Добавляет kwm-файл.
+	 * 
+	 * @param wmid
+	 *            WMID ключа.
+	 * @param kwmFileName
+	 *            полный путь к kwm-файлу с ключом.
+	 * @return текущий builder.
+	 * @throws IOException
+	 */
+	public KwmVaultBuilder addKwmFile(Wmid wmid, String kwmFileName)
+			throws IOException {
+		return this.addKwm(wmid, this.readKwmFile(new File(kwmFileName)));
+	}
+
+	/**
+	 * Записывает хранилище в файл. Файл сначала записывается во временный
+	 * файл рядом с целевым и затем переименовывается, поэтому открытые
+	 * процессами хранилища не повреждаются.
+	 * 
+	 * @param fileName
+	 *            путь к файлу хранилища.
+	 * @throws IOException
+	 */
+	public void build(String fileName) throws IOException {
+		File target = new File(fileName).getAbsoluteFile();
+		File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(temp)));
+		try {
+			out.writeInt(KwmVault.MAGIC);
+			out.writeInt(KwmVault.VERSION);
+			out.writeInt(this.keys.size());
+			long offset = KwmVault.HEADER_LENGTH + (long) this.keys.size()
+					* KwmVault.INDEX_ENTRY_LENGTH;
+			for (Map.Entry<Long, byte[]> entry : this.keys.entrySet()) {
+				int length = entry.getValue().length;
+				out.writeLong(entry.getKey());
+				out.writeInt((int) offset);
+				out.writeInt(length);
+				offset += length;
+				if (offset > Integer.MAX_VALUE) {
+					throw new IOException("Key vault is too large.");
+				}
+			}
+			for (byte[] kwm : this.keys.values()) {
+				out.write(kwm);
+			}
+		} finally {
+			out.close();
+		}
+		// на некоторых платформах существующий файл не заменяется
+		if (!temp.renameTo(target)
+				&& !(target.delete() && temp.renameTo(target))) {
+			throw new IOException("Cannot rename '" + temp + "' to '" + target
+					+ "'.");
+		}
+	}
+
+	/**
+	 * Считывает содержимое kwm-файла.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private byte[] readKwmFile(File file) throws IOException {
+		long length = file.length();
+		if ((length <= 0) || (length > MAX_KWM_LENGTH)) {
+			throw new IOException("'" + file + "' is not a kwm file.");
+		}
+		byte[] result = new byte[(int) length];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int pos = 0;
+			while (pos < result.length) {
+				int read = in.read(result, pos, result.length - pos);
+				if (read < 0) {
+					throw new IOException("Unexpected end of '" + file + "'.");
+				}
+				pos += read;
+			}
+		} finally {
+			in.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Количество добавленных ключей.
+	 * 
+	 * @return Количество добавленных ключей.
+	 */
+	public int size() {
+		return this.keys.size();
+	}
+}
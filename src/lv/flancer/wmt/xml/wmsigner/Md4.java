@@ -26,6 +26,11 @@ public class Md4 extends MessageDigest {
 	 */
 	private static final int BLOCK_LENGTH = 64; // = 512 / 8;
 
+	/**
+	 * The size in bytes of the resulting hash value.
+	 */
+	static final int DIGEST_LENGTH = 16;
+
 	/**
 	 * 512 bits input buffer = 16 x 32-bit words holds until reaches 512 bits.
 	 */
@@ -58,31 +63,64 @@ public class Md4 extends MessageDigest {
 	 * @return the array of bytes for the resulting hash value.
 	 */
 	public byte[] engineDigest() {
-		// pad output to 56 mod 64; as RFC1320 puts it: congruent to 448 mod 512
-		int bufferNdx = (int) (count % BLOCK_LENGTH);
-		int padLen = (bufferNdx < 56) ? (56 - bufferNdx) : (120 - bufferNdx);
+		byte[] result = new byte[DIGEST_LENGTH];
+		engineDigest(result, 0, DIGEST_LENGTH);
+		return result;
+	}
+
+	/**
+	 * Completes the hash computation and stores the hash value into the given
+	 * buffer without allocating temporary arrays. At the return of this
+	 * engineDigest, the MD engine is reset.
+	 * 
+	 * @param out
+	 *            output buffer.
+	 * @param offset
+	 *            start of the hash value in output buffer.
+	 * @param len
+	 *            space available in output buffer (at least 16 bytes).
+	 * @return the length of the hash value (16).
+	 */
+	public int engineDigest(byte[] out, int offset, int len) {
+		if (len < DIGEST_LENGTH || offset < 0
+				|| (long) offset + DIGEST_LENGTH > out.length)
+			throw new ArrayIndexOutOfBoundsException();
 
+		// pad output to 56 mod 64; as RFC1320 puts it: congruent to 448 mod 512
 		// padding is alwas binary 1 followed by binary 0s
-		byte[] tail = new byte[padLen + 8];
-		tail[0] = (byte) 0x80;
+		long bits = count * 8;
+		int bufferNdx = (int) (count % BLOCK_LENGTH);
+		buffer[bufferNdx++] = (byte) 0x80;
+		if (bufferNdx > 56) {
+			for (int i = bufferNdx; i < BLOCK_LENGTH; i++)
+				buffer[i] = 0;
+			transform(buffer, 0);
+			bufferNdx = 0;
+		}
+		for (int i = bufferNdx; i < 56; i++)
+			buffer[i] = 0;
 
 		// append length before final transform:
-		// save number of bits, casting the long to an array of 8 bytes
-		// save low-order byte first.
+		// save number of bits, low-order byte first.
 		for (int i = 0; i < 8; i++)
-			tail[padLen + i] = (byte) ((count * 8) >>> (8 * i));
+			buffer[56 + i] = (byte) (bits >>> (8 * i));
+		transform(buffer, 0);
 
-		engineUpdate(tail, 0, tail.length);
-
-		byte[] result = new byte[16];
 		// cast this MD4's context (array of 4 ints) into an array of 16 bytes.
 		for (int i = 0; i < 4; i++)
 			for (int j = 0; j < 4; j++)
-				result[i * 4 + j] = (byte) (context[i] >>> (8 * j));
+				out[offset + i * 4 + j] = (byte) (context[i] >>> (8 * j));
 
 		// reset the engine
 		engineReset();
-		return result;
+		return DIGEST_LENGTH;
+	}
+
+	/**
+	 * @return the length of the hash value in bytes (16).
+	 */
+	protected int engineGetDigestLength() {
+		return DIGEST_LENGTH;
 	}
 
 	/**
@@ -139,9 +177,13 @@ public class Md4 extends MessageDigest {
 		int partLen = BLOCK_LENGTH - bufferNdx;
 		int i = 0;
 		if (len >= partLen) {
-			System.arraycopy(input, offset, buffer, bufferNdx, partLen);
-
-			transform(buffer, 0);
+			if (bufferNdx == 0) {
+				// nothing buffered: whole blocks are transformed in place
+				partLen = 0;
+			} else {
+				System.arraycopy(input, offset, buffer, bufferNdx, partLen);
+				transform(buffer, 0);
+			}
 
 			for (i = partLen; i + BLOCK_LENGTH - 1 < len; i += BLOCK_LENGTH)
 				transform(input, offset + i);
@@ -152,6 +194,22 @@ public class Md4 extends MessageDigest {
 			System.arraycopy(input, offset + i, buffer, bufferNdx, len - i);
 	}
 
+	/**
+	 * Continues an MD4 message digest with a whole 512-bit block given as 16
+	 * little-endian 32-bit words. Callers that assemble input word by word
+	 * (see {@link SignatureTextWriter}) skip the byte buffer entirely. Must be
+	 * called only on a block boundary, i.e. when no bytes are buffered.
+	 * 
+	 * @param words
+	 *            16 words of the input block.
+	 */
+	void engineUpdate(int[] words) {
+		if (count % BLOCK_LENGTH != 0)
+			throw new IllegalStateException("Not on a block boundary.");
+		count += BLOCK_LENGTH;
+		transform(words);
+	}
+
 	// own methods
 	// ...........................................................................
 
@@ -192,6 +250,18 @@ public class Md4 extends MessageDigest {
 					| (block[offset++] & 0xFF) << 16
 					| (block[offset++] & 0xFF) << 24;
 
+		transform(X);
+	}
+
+	/**
+	 * MD4 basic transformation.
+	 * <p>
+	 * Transforms context based on 512 bits given as 16 32-bit words.
+	 * 
+	 * @param X
+	 *            input block words.
+	 */
+	private void transform(int[] X) {
 		int A = context[0];
 		int B = context[1];
 		int C = context[2];
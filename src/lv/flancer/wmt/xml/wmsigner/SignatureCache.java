@@ -0,0 +1,225 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml.wmsigner;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lv.flancer.wmt.xml.dict.Wmid;
+
+/**
+ * <p>
+ * Ограниченный по размеру кэш подписей (вытесняются давно не использованные
+ * подписи). Ключом является WMID подписывающего и MD4-хэш подписываемой
+ * строки.
+ * </p>
+ * <p>
+ * Кэш имеет смысл только для интерфейсов, подписываемая строка которых не
+ * содержит номер запроса (X8, X11, X17, X18): одинаковые запросы таких
+ * интерфейсов подписываются одинаковой строкой, и ранее полученная подпись
+ * остается действительной. Какие запросы можно подписывать через кэш,
+ * определяет
+ * {@link lv.flancer.wmt.xml.req.XmlRequest#isSignatureReusable()}.
+ * </p>
+ * <p>
+ * Экземпляр потокобезопасен и может разделяться несколькими экземплярами
+ * {@link WmSigner}.
+ * </p>
+ * 
+ * <pre>
+ * WmService service = new WmService();
+ * service.setSignatureCache(new SignatureCache(1000));
+ * ...
+ * System.out.println(&quot;Hits: &quot; + service.getSignatureCache().getHitCount());
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class SignatureCache {
+	/**
+	 * Ключ подписи в кэше.
+	 */
+	private static class Key {
+		/**
+		 * MD4-хэш подписываемой строки.
+		 */
+		private final byte[] digest;
+		private final int hash;
+		/**
+		 * WMID подписывающего.
+		 */
+		private final String wmid;
+
+		private Key(Wmid wmid, byte[] digest, int offset) {
+			this.wmid = String.valueOf(wmid);
+			this.digest = Arrays.copyOfRange(digest, offset, offset
+					+ Md4.DIGEST_LENGTH);
+			this.hash = 31 * this.wmid.hashCode() + Arrays.hashCode(this.digest);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return (this.hash == other.hash) && this.wmid.equals(other.wmid)
+					&& Arrays.equals(this.digest, other.digest);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	/**
+	 * Количество подписей, найденных в кэше.
+	 */
+	private final AtomicLong hitCount = new AtomicLong();
+	/**
+	 * Максимальное количество хранимых подписей.
+	 */
+	private volatile int maxSize;
+	/**
+	 * Количество подписей, отсутствовавших в кэше.
+	 */
+	private final AtomicLong missCount = new AtomicLong();
+	/**
+	 * Подписи в порядке использования (последняя использованная - в конце).
+	 */
+	private final Map<Key, String> signatures;
+
+	/**
+	 * Кэш на 1000 подписей.
+	 */
+	public SignatureCache() {
+		this(1000);
+	}
+
+	/**
+	 * @param maxSize
+	 *            Максимальное количество хранимых подписей.
+	 */
+	public SignatureCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.signatures = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+				return this.size() > SignatureCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Удаляет из кэша все подписи.
+	 */
+	public void clear() {
+		synchronized (this.signatures) {
+			this.signatures.clear();
+		}
+	}
+
+	/**
+	 * Возвращает ранее сохраненную подпись строки.
+	 * 
+	 * @param wmid
+	 *            WMID подписывающего.
+	 * @param digest
+	 *            буфер, содержащий MD4-хэш подписываемой строки.
+	 * @param offset
+	 *            смещение хэша в буфере.
+	 * @return подпись или 'null', если ее нет в кэше.
+	 */
+	String get(Wmid wmid, byte[] digest, int offset) {
+		Key key = new Key(wmid, digest, offset);
+		String result;
+		synchronized (this.signatures) {
+			result = this.signatures.get(key);
+		}
+		if (result != null) {
+			this.hitCount.incrementAndGet();
+		} else {
+			this.missCount.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * Количество подписей, найденных в кэше.
+	 * 
+	 * @return Количество подписей, найденных в кэше.
+	 */
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+
+	/**
+	 * Максимальное количество хранимых подписей. По умолчанию - 1000.
+	 * 
+	 * @return Максимальное количество хранимых подписей.
+	 */
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * Количество подписей, отсутствовавших в кэше.
+	 * 
+	 * @return Количество подписей, отсутствовавших в кэше.
+	 */
+	public long getMissCount() {
+		return this.missCount.get();
+	}
+
+	/**
+	 * Сохраняет подпись строки.
+	 * 
+	 * @param wmid
+	 *            WMID подписывающего.
+	 * @param digest
+	 *            буфер, содержащий MD4-хэш подписанной строки.
+	 * @param offset
+	 *            смещение хэша в буфере.
+	 * @param signature
+	 *            подпись.
+	 */
+	void put(Wmid wmid, byte[] digest, int offset, String signature) {
+		Key key = new Key(wmid, digest, offset);
+		synchronized (this.signatures) {
+			this.signatures.put(key, signature);
+		}
+	}
+
+	/**
+	 * Максимальное количество хранимых подписей. Лишние подписи вытесняются
+	 * при следующем сохранении.
+	 * 
+	 * @param maxSize
+	 *            Максимальное количество хранимых подписей.
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Количество хранимых подписей.
+	 * 
+	 * @return Количество хранимых подписей.
+	 */
+	public int size() {
+		synchronized (this.signatures) {
+			return this.signatures.size();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml.wmsigner;
+
+import java.math.BigInteger;
+
+/**
+ * <p>
+ * Вычислитель подписи, привязанный к одному ключу (показателю степени и
+ * модулю из {@link KwmData}). Создается один раз при загрузке ключа: ключ
+ * проверяется и все зависящие от него величины подготавливаются заранее, при
+ * подписи каждого блока используется только готовое состояние.
+ * </p>
+ * <p>
+ * Возведение в степень по модулю выполняется
+ * {@link BigInteger#modPow(BigInteger, BigInteger)}: для нечетного модуля JDK
+ * использует умножение Монтгомери со скользящим окном, а HotSpot заменяет его
+ * внутренние циклы машинными реализациями (intrinsics), которые в несколько
+ * раз быстрее умножения Монтгомери на Java.
+ * </p>
+ * <p>
+ * Экземпляр неизменяем и может использоваться несколькими потоками
+ * одновременно.
+ * </p>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ */
+public class SignatureEngine {
+	/**
+	 * Длина подписываемого блока (длина, MD4-хэш и случайные байты).
+	 */
+	public final static int BLOCK_LENGTH = 58;
+	/**
+	 * Буфер текущего потока для блока в порядке от старшего байта к младшему.
+	 */
+	private final static ThreadLocal<byte[]> REVERSED = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[BLOCK_LENGTH];
+		}
+	};
+	/**
+	 * Показатель степени.
+	 */
+	private final BigInteger exponent;
+	/**
+	 * Модуль.
+	 */
+	private final BigInteger modulus;
+
+	/**
+	 * Проверяет ключ и подготавливает вычислитель.
+	 * 
+	 * @param kwmData
+	 *            распакованный ключ.
+	 * @throws KwmCorruptedException
+	 *             ключ непригоден для подписи: модуль четный или не больше
+	 *             подписываемого блока, показатель степени не положителен.
+	 */
+	public SignatureEngine(KwmData kwmData) throws KwmCorruptedException {
+		this.exponent = kwmData.getExponentAsBigInt();
+		this.modulus = kwmData.getModulusAsBigInt();
+		// блок всегда меньше модуля, приведение основания не требуется
+		if ((this.exponent == null) || (this.modulus == null)
+				|| (this.exponent.signum() <= 0) || !this.modulus.testBit(0)
+				|| (this.modulus.bitLength() <= BLOCK_LENGTH * 8)) {
+			throw new KwmCorruptedException();
+		}
+	}
+
+	/**
+	 * Показатель степени.
+	 * 
+	 * @return Показатель степени.
+	 */
+	public BigInteger getExponent() {
+		return exponent;
+	}
+
+	/**
+	 * Модуль.
+	 * 
+	 * @return Модуль.
+	 */
+	public BigInteger getModulus() {
+		return modulus;
+	}
+
+	/**
+	 * Возводит блок в степень по модулю ключа.
+	 * 
+	 * @param block
+	 *            блок длиной {@link #BLOCK_LENGTH} байтов, от младшего байта к
+	 *            старшему (little-endian).
+	 * @return подпись блока.
+	 */
+	public BigInteger sign(byte[] block) {
+		byte[] reversed = REVERSED.get();
+		for (int i = 0; i < BLOCK_LENGTH; i++) {
+			reversed[i] = block[BLOCK_LENGTH - 1 - i];
+		}
+		// последний случайный байт, ставший первым, может содержать знаковый
+		// бит, прямо указываем, что число положительное (буфер копируется)
+		return new BigInteger(1, reversed).modPow(this.exponent, this.modulus);
+	}
+
+}
@@ -0,0 +1,208 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml.wmsigner;
+
+import lv.flancer.wmt.xml.Cp1251;
+
+/**
+ * <p>
+ * Потоковое формирование MD4-хэша подписываемой строки. Запрос записывает
+ * подписываемые поля (номер запроса, кошельки, суммы, описание и т.п.)
+ * последовательно, символы сразу кодируются в windows-1251 и упаковываются в
+ * 32-битные слова блока MD4; ни полная подписываемая строка, ни ее байтовое
+ * представление не создаются.
+ * </p>
+ * <p>
+ * Результат совпадает с MD4-хэшем от
+ * <code>getTextToSign().getBytes("Cp1251")</code>: значения записываются так
+ * же, как при конкатенации строк (в т.ч. 'null'), символы, отсутствующие в
+ * windows-1251, заменяются на '?'.
+ * </p>
+ * <p>
+ * Экземпляр не потокобезопасен, для каждого потока используется собственный
+ * экземпляр ({@link #getInstance()}).
+ * </p>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ */
+public class SignatureTextWriter {
+	/**
+	 * Длина блока MD4 в байтах.
+	 */
+	private final static int BLOCK_LENGTH = 64;
+	/**
+	 * Экземпляры потоков.
+	 */
+	private final static ThreadLocal<SignatureTextWriter> INSTANCES = new ThreadLocal<SignatureTextWriter>() {
+		@Override
+		protected SignatureTextWriter initialValue() {
+			return new SignatureTextWriter();
+		}
+	};
+
+	/**
+	 * Возвращает экземпляр текущего потока, подготовленный для записи новой
+	 * строки.
+	 * 
+	 * @return экземпляр текущего потока.
+	 */
+	public static SignatureTextWriter getInstance() {
+		SignatureTextWriter result = INSTANCES.get();
+		result.reset();
+		return result;
+	}
+
+	/**
+	 * Буфер для десятичного представления чисел.
+	 */
+	private final char[] digits = new char[20];
+	/**
+	 * Алгоритм хэширования.
+	 */
+	private final Md4 md4 = new Md4();
+	/**
+	 * Последний записанный символ - старшая половина суррогатной пары,
+	 * ожидающая младшую.
+	 */
+	private boolean pendingHighSurrogate;
+	/**
+	 * Количество байтов в текущем блоке.
+	 */
+	private int pos;
+	/**
+	 * Буфер для неполного последнего блока.
+	 */
+	private final byte[] tail = new byte[BLOCK_LENGTH];
+	/**
+	 * Текущий блок в виде 16 слов (little-endian).
+	 */
+	private final int[] words = new int[BLOCK_LENGTH / 4];
+
+	/**
+	 * Записывает символ.
+	 * 
+	 * @param c
+	 * @return этот экземпляр.
+	 */
+	public SignatureTextWriter append(char c) {
+		if (this.pendingHighSurrogate) {
+			this.pendingHighSurrogate = false;
+			// пара (символ вне BMP) или одиночная половина заменяются одним
+			// '?'
+			this.write(Cp1251.REPLACEMENT);
+			if (Character.isLowSurrogate(c)) {
+				return this;
+			}
+		}
+		if (Character.isHighSurrogate(c)) {
+			this.pendingHighSurrogate = true;
+		} else {
+			this.write(Cp1251.encode(c));
+		}
+		return this;
+	}
+
+	/**
+	 * Записывает десятичное представление числа.
+	 * 
+	 * @param value
+	 * @return этот экземпляр.
+	 */
+	public SignatureTextWriter append(long value) {
+		int i = this.digits.length;
+		// отрицательные значения обрабатываются без смены знака (MIN_VALUE)
+		long rest = (value < 0) ? value : -value;
+		do {
+			this.digits[--i] = (char) ('0' - (rest % 10));
+			rest /= 10;
+		} while (rest != 0);
+		if (value < 0) {
+			this.digits[--i] = '-';
+		}
+		for (; i < this.digits.length; i++) {
+			this.append(this.digits[i]);
+		}
+		return this;
+	}
+
+	/**
+	 * Записывает строковое представление объекта ('null' для null).
+	 * 
+	 * @param value
+	 * @return этот экземпляр.
+	 */
+	public SignatureTextWriter append(Object value) {
+		return this.append(String.valueOf(value));
+	}
+
+	/**
+	 * Записывает строку ('null' для null).
+	 * 
+	 * @param value
+	 * @return этот экземпляр.
+	 */
+	public SignatureTextWriter append(String value) {
+		if (value == null) {
+			value = "null";
+		}
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			this.append(value.charAt(i));
+		}
+		return this;
+	}
+
+	/**
+	 * Завершает вычисление хэша записанной строки и записывает его (16
+	 * байтов) в буфер. После вызова экземпляр готов к записи новой строки.
+	 * 
+	 * @param out
+	 *            буфер.
+	 * @param offset
+	 *            смещение хэша в буфере.
+	 */
+	public void digest(byte[] out, int offset) {
+		if (this.pendingHighSurrogate) {
+			this.pendingHighSurrogate = false;
+			this.write(Cp1251.REPLACEMENT);
+		}
+		for (int i = 0; i < this.pos; i++) {
+			this.tail[i] = (byte) (this.words[i >>> 2] >>> ((i & 3) << 3));
+		}
+		this.md4.engineUpdate(this.tail, 0, this.pos);
+		this.md4.engineDigest(out, offset, out.length - offset);
+		this.clearBlock();
+	}
+
+	private void clearBlock() {
+		for (int i = 0; i < this.words.length; i++) {
+			this.words[i] = 0;
+		}
+		this.pos = 0;
+	}
+
+	/**
+	 * Сбрасывает записанные данные.
+	 */
+	public void reset() {
+		this.md4.engineReset();
+		this.pendingHighSurrogate = false;
+		this.clearBlock();
+	}
+
+	/**
+	 * Записывает закодированный байт в текущий блок.
+	 * 
+	 * @param b
+	 */
+	private void write(byte b) {
+		this.words[this.pos >>> 2] |= (b & 0xFF) << ((this.pos & 3) << 3);
+		if (++this.pos == BLOCK_LENGTH) {
+			this.md4.engineUpdate(this.words);
+			this.clearBlock();
+		}
+	}
+
+}
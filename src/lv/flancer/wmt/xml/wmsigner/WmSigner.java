@@ -4,12 +4,16 @@
 package lv.flancer.wmt.xml.wmsigner;
 
 import java.io.IOException;
-import java.math.BigInteger;
-import java.util.Random;
-
-import javax.xml.bind.DatatypeConverter;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import lv.flancer.wmt.xml.dict.Wmid;
+import lv.flancer.wmt.xml.req.XmlRequest;
 
 /**
  * <p>
@@ -59,25 +63,145 @@ import lv.flancer.wmt.xml.dict.Wmid;
  * ключом, в качестве источника kwm-ключа берется строка с base64-кодированным
  * ключом.
  * </p>
+ * <p>
+ * После загрузки ключа экземпляр может использоваться для подписи несколькими
+ * потоками одновременно: каждый поток использует собственные рабочие буферы и
+ * собственный генератор случайных чисел.
+ * </p>
  * 
  * @author Alex Gusev <flancer64@gmail.com>
  * @version 1.0
  */
 public class WmSigner {
+	/**
+	 * Подпись части пакета запросов (см. {@link WmSigner#signAll(List)}).
+	 * Части делятся пополам, пока в них больше одного запроса.
+	 */
+	private class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final SignatureCache cache;
+		/**
+		 * Индекс первого запроса части.
+		 */
+		private final int from;
+		private final List<? extends XmlRequest> requests;
+		/**
+		 * Подписи всех запросов пакета.
+		 */
+		private final String[] signatures;
+		/**
+		 * Индекс, следующий за последним запросом части.
+		 */
+		private final int to;
+
+		private BatchTask(List<? extends XmlRequest> requests,
+				String[] signatures, SignatureCache cache, int from, int to) {
+			this.requests = requests;
+			this.signatures = signatures;
+			this.cache = cache;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > 1) {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new BatchTask(this.requests, this.signatures,
+						this.cache, this.from, mid), new BatchTask(
+						this.requests, this.signatures, this.cache, mid,
+						this.to));
+			} else if (this.to > this.from) {
+				XmlRequest request = this.requests.get(this.from);
+				request.setSignerWmid(WmSigner.this.wmid);
+				SignatureTextWriter text = SignatureTextWriter.getInstance();
+				request.writeTextToSign(text);
+				String signature = WmSigner.this.signLoaded(text, this.cache,
+						true);
+				request.setSign(signature);
+				this.signatures[this.from] = signature;
+			}
+		}
+	}
+
+	/**
+	 * Рабочие буферы и генератор случайных чисел одного потока.
+	 */
+	private static class Scratch {
+		/**
+		 * Буфер для размещения в нем основания степени.
+		 */
+		private final byte[] base = new byte[BASE_BUFFER_LENGTH];
+		/**
+		 * Буфер для 16-ричного представления подписи.
+		 */
+		private char[] hex = new char[SIGNATURE_HEX_LENGTH];
+		/**
+		 * Генератор случайных чисел потока. Инициализируется значением из
+		 * {@link WmSigner#SEED_SOURCE}, далее не обращается к общим ресурсам.
+		 */
+		private final SecureRandom random;
+		/**
+		 * Буфер для случайных байтов.
+		 */
+		private final byte[] rnd = new byte[RANDOM_BUFFER_LENGTH];
+
+		private Scratch() {
+			SecureRandom result;
+			try {
+				result = SecureRandom.getInstance("SHA1PRNG");
+			} catch (NoSuchAlgorithmException e) {
+				result = new SecureRandom();
+			}
+			// начальное значение, заданное до первого использования,
+			// заменяет самоинициализацию генератора
+			byte[] seed = new byte[32];
+			SEED_SOURCE.nextBytes(seed);
+			result.setSeed(seed);
+			this.random = result;
+		}
+	}
+
 	/**
 	 * Длина буфера для массива байтов, служащего основанием при возведении в
 	 * степень.
 	 */
-	private static final int BASE_BUFFER_LENGTH = 58;
+	private static final int BASE_BUFFER_LENGTH = SignatureEngine.BLOCK_LENGTH;
 	/**
 	 * Длина буфера для массива случайных байтов, дополняющего основание при
 	 * возведении в степень.
 	 */
 	private static final int RANDOM_BUFFER_LENGTH = 40;
+	/**
+	 * Минимальная длина подписи в 16-ричных символах.
+	 */
+	private static final int SIGNATURE_HEX_LENGTH = 132;
+	/**
+	 * 16-ричные символы.
+	 */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	/**
+	 * Источник начальных значений для генераторов случайных чисел потоков.
+	 */
+	private static final SecureRandom SEED_SOURCE = new SecureRandom();
+	/**
+	 * Рабочие буферы текущего потока.
+	 */
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
 	/**
 	 * Base64-кодированный kwm-ключ.
 	 */
 	private String base64Key;
+	/**
+	 * Вычислитель подписи, подготовленный для загруженного ключа.
+	 */
+	private volatile SignatureEngine engine;
 	/**
 	 * Пароль доступа к kwm-ключу.
 	 */
@@ -90,48 +214,40 @@ public class WmSigner {
 	 * Путь к kwm-файлу, содержащему ключ подписи.
 	 */
 	private String kwmFileName;
+	/**
+	 * Хранилище kwm-ключей, содержащее ключ подписи.
+	 */
+	private KwmVault kwmVault;
 	/**
 	 * WMID ключа, которым подписывается запрос.
 	 */
 	private Wmid wmid;
 
 	/**
-	 * Непосредственная генерация подписи для массива байтов.
+	 * Непосредственная генерация подписи для строки, MD4-хэш которой уже
+	 * записан в основание степени.
 	 * 
-	 * @param textToSign
+	 * @param scratch
+	 *            рабочие буферы текущего потока.
 	 * @return
 	 */
-	private byte[] generateSignature(byte[] textToSign) {
+	private byte[] generateSignature(Scratch scratch) {
 		byte[] result = null;
-		// буфер для размещения в нем основания степени
-		byte[] baseBuff = new byte[BASE_BUFFER_LENGTH];
-		// создаем MD4-хэш для входного массива байтов.
-		byte[] md4 = Utils.calcMd4(textToSign);
+		// буфер для размещения в нем основания степени (MD4-хэш строки уже
+		// записан с третьего байта)
+		byte[] baseBuff = scratch.base;
 		// 40 случайных байтов
-		byte[] rnd = new byte[RANDOM_BUFFER_LENGTH];
-		Random random = new Random();
-		random.nextBytes(rnd);
+		byte[] rnd = scratch.rnd;
+		scratch.random.nextBytes(rnd);
 		System.arraycopy(rnd, 0, baseBuff, 18, RANDOM_BUFFER_LENGTH);
 		// заполняем основание степени данными: добавляем 2 байта с длиной (она
 		// всегда равна 16 + RANDOM_BUFFER_LENGTH = 56) и добавляем md4-хэш и
 		// случайные байты.
 		baseBuff[0] = 0x38;
 		baseBuff[1] = 0x00;
-		System.arraycopy(md4, 0, baseBuff, 2, 16);
-		// инициализируем целочисленные переменные для вычисления возведения
-		// 'base' в степень 'exponent' по модулю 'modulus'
-		byte[] baseRev = new byte[baseBuff.length];
-		for (int i = 0; i < baseBuff.length; i++) {
-			baseRev[i] = baseBuff[baseBuff.length - 1 - i];
-		}
-		// т.к. последний случайный байт, ставший теперь первым может содержать
-		// знаковый бит, прямо указываем, что число положительное
-		BigInteger base = new BigInteger(1, baseRev);
-		BigInteger exponent = this.kwmData.getExponentAsBigInt();
-		BigInteger modulus = this.kwmData.getModulusAsBigInt();
-		// непосредственное возведение в степень
-		BigInteger signature = base.modPow(exponent, modulus);
-		result = signature.toByteArray();
+		// непосредственное возведение в степень ключом, подготовленным при
+		// загрузке
+		result = this.engine.sign(baseBuff).toByteArray();
 		return result;
 	}
 
@@ -162,6 +278,15 @@ public class WmSigner {
 		return kwmFileName;
 	}
 
+	/**
+	 * Хранилище kwm-ключей, содержащее ключ подписи.
+	 * 
+	 * @return Хранилище kwm-ключей, содержащее ключ подписи.
+	 */
+	public KwmVault getKwmVault() {
+		return kwmVault;
+	}
+
 	/**
 	 * WMID ключа, которым подписывается запрос.
 	 * 
@@ -173,7 +298,8 @@ public class WmSigner {
 
 	/**
 	 * Анализируем атрибуты WmSigner'а и подгружаем kwm-ключи {@link #kwmData},
-	 * если они до этого не были подгружены.
+	 * если они до этого не были подгружены, и подготавливаем для них
+	 * вычислитель подписи {@link #engine}.
 	 * 
 	 * @throws CannotLoadKeysException
 	 *             В процессе загрузки и распаковки ключей из внешнего источника
@@ -182,8 +308,8 @@ public class WmSigner {
 	 *             ключ не прошел проверку на целостность.
 	 * @throws IOException
 	 */
-	private void loadKeys() throws CannotLoadKeysException, IOException,
-			KwmCorruptedException {
+	private synchronized void loadKeys() throws CannotLoadKeysException,
+			IOException, KwmCorruptedException {
 		// если ключи не подгружены
 		if (this.kwmData == null) {
 			KwmExtractor extractor = new KwmExtractor();
@@ -195,6 +321,13 @@ public class WmSigner {
 				// Ключ в виде base64-кодированной строки имеет преимущество
 				// перед kwm-файлом
 				extractor.setBase64Kwm(this.base64Key);
+			} else if (this.kwmVault != null) {
+				// ключ из хранилища kwm-ключей
+				byte[] kwm = this.kwmVault.read(this.wmid);
+				if (kwm == null) {
+					throw new CannotLoadKeysException();
+				}
+				extractor.setKwm(kwm);
 			} else {
 				// загружаем ключ из файла
 				if (this.kwmFileName != null) {
@@ -207,6 +340,9 @@ public class WmSigner {
 			// выполняем загрузку ключей
 			this.kwmData = extractor.extract();
 		}
+		if (this.engine == null) {
+			this.engine = new SignatureEngine(this.kwmData);
+		}
 	}
 
 	/**
@@ -239,6 +375,17 @@ public class WmSigner {
 		this.kwmFileName = kwmFileName;
 	}
 
+	/**
+	 * Хранилище kwm-ключей, содержащее ключ подписи. Используется вместо
+	 * kwm-файла, если не задан base64-кодированный ключ.
+	 * 
+	 * @param kwmVault
+	 *            Хранилище kwm-ключей, содержащее ключ подписи.
+	 */
+	public void setKwmVault(KwmVault kwmVault) {
+		this.kwmVault = kwmVault;
+	}
+
 	/**
 	 * WMID ключа, которым подписывается запрос.
 	 * 
@@ -264,18 +411,35 @@ public class WmSigner {
 	 * PHP-реализации DKameleon (http://dkameleon.com) за что ему отдельное
 	 * спасибо.
 	 * 
-	 * @param swapped
+	 * 16-ричное представление подписи (дополненное слева нулями до
+	 * {@link #SIGNATURE_HEX_LENGTH} символов) разбивается на группы по 4
+	 * символа (2 байта), которые записываются в обратном порядке. Неполная
+	 * последняя группа отбрасывается.
+	 * 
+	 * @param signature
+	 * @param scratch
+	 *            рабочие буферы текущего потока.
 	 * @return
 	 */
-	private String shortUnswap(String swapped) {
-		String result = "";
-		while (swapped.length() < 132) {
-			swapped = "00" + swapped;
+	private String shortUnswap(byte[] signature, Scratch scratch) {
+		int padded = Math.max(signature.length, SIGNATURE_HEX_LENGTH / 2);
+		int shift = padded - signature.length;
+		int groups = padded / 2;
+		int length = groups * 4;
+		if (scratch.hex.length < length) {
+			scratch.hex = new char[length];
 		}
-		for (int i = 0; i < (swapped.length() / 4); i++) {
-			result = swapped.substring(i * 4, i * 4 + 4) + result;
+		char[] out = scratch.hex;
+		for (int g = 0; g < groups; g++) {
+			int pos = (groups - 1 - g) * 4;
+			for (int b = 0; b < 2; b++) {
+				int index = g * 2 + b - shift;
+				int value = (index >= 0) ? signature[index] & 0xFF : 0;
+				out[pos++] = HEX[value >>> 4];
+				out[pos++] = HEX[value & 0x0F];
+			}
 		}
-		return result;
+		return new String(out, 0, length);
 	}
 
 	/**
@@ -294,18 +458,218 @@ public class WmSigner {
 	 */
 	public String sign(String textToSign) throws CannotLoadKeysException,
 			IOException, KwmCorruptedException {
+		// строка переводится в последовательность символов в кодировке Cp-1251
+		// (иначе на кириллице генерируется неправильная подпись).
+		return this.sign(SignatureTextWriter.getInstance().append(textToSign));
+	}
+
+	/**
+	 * Подписывает строку, записанную в {@link SignatureTextWriter} (см.
+	 * {@link lv.flancer.wmt.xml.req.XmlRequest#writeTextToSign(SignatureTextWriter)}
+	 * ), и возвращает подпись в виде строки 16-ричных символов. После вызова
+	 * writer готов к записи новой строки.
+	 * 
+	 * @param text
+	 *            подписываемая строка, записанная в MD4.
+	 * @return подпись в виде последовательности 16-ричных символов.
+	 * @throws CannotLoadKeysException
+	 *             в процессе загрузки и распаковки ключей из внешнего источника
+	 *             (строки или файла) произошла ошибка.
+	 * @throws KwmCorruptedException
+	 *             ключ не прошел проверку на целостность.
+	 * @throws IOException
+	 */
+	public String sign(SignatureTextWriter text)
+			throws CannotLoadKeysException, IOException,
+			KwmCorruptedException {
+		return this.sign(text, null);
+	}
+
+	/**
+	 * Подписывает строку, записанную в {@link SignatureTextWriter}, используя
+	 * кэш подписей: если строка с тем же MD4-хэшем уже подписывалась этим
+	 * WMID, то возвращается сохраненная подпись. Кэш следует использовать
+	 * только для строк, не содержащих номер запроса (см.
+	 * {@link lv.flancer.wmt.xml.req.XmlRequest#isSignatureReusable()}).
+	 * 
+	 * @param text
+	 *            подписываемая строка, записанная в MD4.
+	 * @param cache
+	 *            кэш подписей ('null' - подпись вычисляется всегда).
+	 * @return подпись в виде последовательности 16-ричных символов.
+	 * @throws CannotLoadKeysException
+	 *             в процессе загрузки и распаковки ключей из внешнего источника
+	 *             (строки или файла) произошла ошибка.
+	 * @throws KwmCorruptedException
+	 *             ключ не прошел проверку на целостность.
+	 * @throws IOException
+	 */
+	public String sign(SignatureTextWriter text, SignatureCache cache)
+			throws CannotLoadKeysException, IOException,
+			KwmCorruptedException {
+		return this.sign(text, cache, true);
+	}
+
+	/**
+	 * Подписывает строку, записанную в {@link SignatureTextWriter}: если
+	 * строка с тем же MD4-хэшем уже подписывалась этим WMID и подпись есть в
+	 * кэше, то возвращается сохраненная подпись. Вычисленная подпись
+	 * сохраняется в кэше, только если установлен 'store': кэш подписей,
+	 * вычисленных заранее (например, пакетом
+	 * {@link #signAll(List, SignatureCache, ForkJoinPool)}), не должен
+	 * заполняться подписями, которые не будут использованы повторно.
+	 * 
+	 * @param text
+	 *            подписываемая строка, записанная в MD4.
+	 * @param cache
+	 *            кэш подписей ('null' - подпись вычисляется всегда).
+	 * @param store
+	 *            сохранять ли вычисленную подпись в кэше.
+	 * @return подпись в виде последовательности 16-ричных символов.
+	 * @throws CannotLoadKeysException
+	 *             в процессе загрузки и распаковки ключей из внешнего источника
+	 *             (строки или файла) произошла ошибка.
+	 * @throws KwmCorruptedException
+	 *             ключ не прошел проверку на целостность.
+	 * @throws IOException
+	 */
+	public String sign(SignatureTextWriter text, SignatureCache cache,
+			boolean store) throws CannotLoadKeysException, IOException,
+			KwmCorruptedException {
+		// подгружаем ключи для подписи (после загрузки - без синхронизации)
+		if (this.engine == null) {
+			this.loadKeys();
+		}
+		return this.signLoaded(text, cache, store);
+	}
+
+	/**
+	 * Подписывает пакет запросов параллельно в общем пуле ForkJoin (см.
+	 * {@link #signAll(List, SignatureCache, ForkJoinPool)}).
+	 * 
+	 * @param requests
+	 *            подписываемые запросы.
+	 * @return подписи запросов в порядке следования запросов.
+	 * @throws CannotLoadKeysException
+	 *             в процессе загрузки и распаковки ключей из внешнего источника
+	 *             (строки или файла) произошла ошибка.
+	 * @throws KwmCorruptedException
+	 *             ключ не прошел проверку на целостность.
+	 * @throws IOException
+	 */
+	public List<String> signAll(List<? extends XmlRequest> requests)
+			throws CannotLoadKeysException, IOException,
+			KwmCorruptedException {
+		return this.signAll(requests, null, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Подписывает пакет запросов (например, массовые выплаты X2 или возвраты
+	 * X14) параллельно в пуле ForkJoin. Каждому запросу устанавливаются WMID
+	 * подписавшего и подпись, как при подписи в
+	 * {@link lv.flancer.wmt.xml.WmService}. Вызывающий поток участвует в
+	 * подписи и ожидает ее окончания.
+	 * 
+	 * @param requests
+	 *            подписываемые запросы.
+	 * @param cache
+	 *            кэш, в котором ищутся и сохраняются подписи всех запросов
+	 *            пакета ('null' - подпись вычисляется всегда).
+	 * @param pool
+	 *            пул, в котором вычисляются подписи.
+	 * @return подписи запросов в порядке следования запросов.
+	 * @throws CannotLoadKeysException
+	 *             в процессе загрузки и распаковки ключей из внешнего источника
+	 *             (строки или файла) произошла ошибка.
+	 * @throws KwmCorruptedException
+	 *             ключ не прошел проверку на целостность.
+	 * @throws IOException
+	 */
+	public List<String> signAll(List<? extends XmlRequest> requests,
+			SignatureCache cache, ForkJoinPool pool)
+			throws CannotLoadKeysException, IOException,
+			KwmCorruptedException {
+		// ключи загружаются до разделения пакета
+		if (this.engine == null) {
+			this.loadKeys();
+		}
+		String[] result = new String[requests.size()];
+		pool.invoke(new BatchTask(requests, result, cache, 0, result.length));
+		return Arrays.asList(result);
+	}
+
+	/**
+	 * Подписывает пакет запросов в пуле ForkJoin, не занимая вызывающий поток
+	 * (например, поток ввода-вывода). Подпись следующего пакета может
+	 * выполняться, пока запросы предыдущего отправляются через
+	 * {@link lv.flancer.wmt.xml.AsyncWmService}.
+	 * 
+	 * @param requests
+	 *            подписываемые запросы.
+	 * @param cache
+	 *            кэш, в котором ищутся и сохраняются подписи всех запросов
+	 *            пакета ('null' - подпись вычисляется всегда).
+	 * @param pool
+	 *            пул, в котором загружаются ключи и вычисляются подписи.
+	 * @return подписи запросов в порядке следования запросов; при ошибке
+	 *         загрузки ключей завершается исключением
+	 *         {@link CannotLoadKeysException}, {@link KwmCorruptedException}
+	 *         или {@link IOException}.
+	 */
+	public CompletableFuture<List<String>> signAllAsync(
+			final List<? extends XmlRequest> requests,
+			final SignatureCache cache, final ForkJoinPool pool) {
+		final CompletableFuture<List<String>> result = new CompletableFuture<List<String>>();
+		pool.execute(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				try {
+					if (WmSigner.this.engine == null) {
+						WmSigner.this.loadKeys();
+					}
+					String[] signatures = new String[requests.size()];
+					new BatchTask(requests, signatures, cache, 0,
+							signatures.length).invoke();
+					result.complete(Arrays.asList(signatures));
+				} catch (Throwable e) {
+					result.completeExceptionally(e);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Подписывает строку ключом, который уже загружен.
+	 * 
+	 * @param text
+	 *            подписываемая строка, записанная в MD4.
+	 * @param cache
+	 *            кэш подписей ('null' - подпись вычисляется всегда).
+	 * @param store
+	 *            сохранять ли вычисленную подпись в кэше.
+	 * @return подпись в виде последовательности 16-ричных символов.
+	 */
+	private String signLoaded(SignatureTextWriter text, SignatureCache cache,
+			boolean store) {
 		String result = null;
-		// подгружаем ключи для подписи
-		this.loadKeys();
-		// генерируем подпись, переводя полученную строку в последовательность
-		// символов в кодировке Cp-1251 (иначе на кириллице генерируется
-		// неправильная подпись).
-		byte[] signature = this
-				.generateSignature(textToSign.getBytes("Cp1251"));
-		String swapped = DatatypeConverter.printHexBinary(signature)
-				.toLowerCase();
-		// рекомбинируем байты чтобы получилось что-то другое
-		result = this.shortUnswap(swapped);
+		Scratch scratch = SCRATCH.get();
+		// MD4-хэш строки записывается непосредственно в основание степени
+		text.digest(scratch.base, 2);
+		if (cache != null) {
+			result = cache.get(this.wmid, scratch.base, 2);
+		}
+		if (result == null) {
+			byte[] signature = this.generateSignature(scratch);
+			// рекомбинируем байты чтобы получилось что-то другое
+			result = this.shortUnswap(signature, scratch);
+			if ((cache != null) && store) {
+				// основание степени содержит хэш до следующей подписи потока
+				cache.put(this.wmid, scratch.base, 2, result);
+			}
+		}
 		return result;
 	}
 }
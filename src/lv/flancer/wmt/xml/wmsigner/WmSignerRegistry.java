@@ -0,0 +1,339 @@
+/**
+ * 
+ */
+package lv.flancer.wmt.xml.wmsigner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lv.flancer.wmt.xml.dict.Wmid;
+
+/**
+ * <p>
+ * Реестр ключей подписи для нескольких WMID. При регистрации запоминается
+ * только источник ключа (kwm-файл или base64-строка) и пароль, ключ
+ * распаковывается при первой подписи от имени WMID.
+ * </p>
+ * <p>
+ * Количество одновременно хранимых распакованных ключей ограничено
+ * {@link #getMaxLoaded()}: при превышении вытесняется ключ WMID, который
+ * дольше всех не использовался, и при следующем обращении к этому WMID ключ
+ * распаковывается заново.
+ * </p>
+ * <p>
+ * Экземпляр потокобезопасен и может разделяться несколькими экземплярами
+ * {@link lv.flancer.wmt.xml.WmService}.
+ * </p>
+ * 
+ * <pre>
+ * WmSignerRegistry registry = new WmSignerRegistry();
+ * registry.registerKwm(&quot;123456789012&quot;, &quot;/path/to/123456789012.kwm&quot;, &quot;KeyPassword&quot;);
+ * registry.registerBase64(&quot;210987654321&quot;, &quot;gQA...bg=&quot;, &quot;KeyPassword&quot;);
+ * WmService service = new WmService();
+ * service.setSignerRegistry(registry);
+ * ...
+ * X8Response resp = service.forSigner(&quot;123456789012&quot;).x8(wmid, purse);
+ * </pre>
+ * 
+ * @author Alex Gusev <flancer64@gmail.com>
+ * @version 1.0
+ * 
+ */
+public class WmSignerRegistry {
+	/**
+	 * Источник ключа зарегистрированного WMID.
+	 */
+	private static class Registration {
+		/**
+		 * Base64-кодированный kwm-ключ.
+		 */
+		private final String base64Key;
+		/**
+		 * Пароль доступа к kwm-ключу.
+		 */
+		private final String keyPassword;
+		/**
+		 * Путь к kwm-файлу, содержащему ключ подписи.
+		 */
+		private final String kwmFileName;
+		/**
+		 * Хранилище kwm-ключей, содержащее ключ подписи.
+		 */
+		private final KwmVault kwmVault;
+
+		private Registration(String kwmFileName, String base64Key,
+				KwmVault kwmVault, String keyPassword) {
+			this.kwmFileName = kwmFileName;
+			this.base64Key = base64Key;
+			this.kwmVault = kwmVault;
+			this.keyPassword = keyPassword;
+		}
+	}
+
+	/**
+	 * Количество ключей, вытесненных из реестра.
+	 */
+	private final AtomicLong evictedCount = new AtomicLong();
+	/**
+	 * Количество созданных WmSigner'ов (каждый распаковывает ключ при первой
+	 * подписи).
+	 */
+	private final AtomicLong loadedCount = new AtomicLong();
+	/**
+	 * WmSigner'ы в порядке использования (последний использованный - в
+	 * конце).
+	 */
+	private final Map<Wmid, WmSigner> signers;
+	/**
+	 * Максимальное количество хранимых распакованных ключей.
+	 */
+	private volatile int maxLoaded;
+	/**
+	 * Зарегистрированные источники ключей.
+	 */
+	private final Map<Wmid, Registration> registrations = new ConcurrentHashMap<Wmid, Registration>();
+
+	/**
+	 * Реестр, хранящий до 100 распакованных ключей.
+	 */
+	public WmSignerRegistry() {
+		this(100);
+	}
+
+	/**
+	 * @param maxLoaded
+	 *            Максимальное количество хранимых распакованных ключей.
+	 */
+	public WmSignerRegistry(int maxLoaded) {
+		this.maxLoaded = maxLoaded;
+		this.signers = new LinkedHashMap<Wmid, WmSigner>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Wmid, WmSigner> eldest) {
+				boolean result = this.size() > WmSignerRegistry.this.maxLoaded;
+				if (result) {
+					WmSignerRegistry.this.evictedCount.incrementAndGet();
+				}
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Проверяет, зарегистрирован ли ключ для WMID.
+	 * 
+	 * @param wmid
+	 * @return 'true', если ключ зарегистрирован.
+	 */
+	public boolean contains(Wmid wmid) {
+		return this.registrations.containsKey(wmid);
+	}
+
+	/**
+	 * Количество ключей, вытесненных из реестра.
+	 * 
+	 * @return Количество ключей, вытесненных из реестра.
+	 */
+	public long getEvictedCount() {
+		return this.evictedCount.get();
+	}
+
+	/**
+	 * Количество созданных WmSigner'ов (каждый распаковывает ключ при первой
+	 * подписи).
+	 * 
+	 * @return Количество созданных WmSigner'ов.
+	 */
+	public long getLoadedCount() {
+		return this.loadedCount.get();
+	}
+
+	/**
+	 * Максимальное количество хранимых распакованных ключей. По умолчанию -
+	 * 100.
+	 * 
+	 * @return Максимальное количество хранимых распакованных ключей.
+	 */
+	public int getMaxLoaded() {
+		return this.maxLoaded;
+	}
+
+	/**
+	 * Возвращает WmSigner для WMID. Если WmSigner'а нет среди хранимых, то он
+	 * создается по зарегистрированному источнику ключа (ключ распаковывается
+	 * при первой подписи).
+	 * 
+	 * @param wmid
+	 *            WMID, от имени которого подписываются запросы.
+	 * @return WmSigner для WMID.
+	 * @throws CannotLoadKeysException
+	 *             ключ для WMID не зарегистрирован.
+	 */
+	public WmSigner getSigner(Wmid wmid) throws CannotLoadKeysException {
+		WmSigner result;
+		synchronized (this.signers) {
+			result = this.signers.get(wmid);
+		}
+		if (result == null) {
+			Registration reg = this.registrations.get(wmid);
+			if (reg == null) {
+				throw new CannotLoadKeysException();
+			}
+			WmSigner signer = new WmSigner();
+			signer.setWmid(wmid);
+			signer.setKeyPassword(reg.keyPassword);
+			signer.setBase64Key(reg.base64Key);
+			signer.setKwmFileName(reg.kwmFileName);
+			signer.setKwmVault(reg.kwmVault);
+			synchronized (this.signers) {
+				// другой поток мог создать WmSigner одновременно с текущим
+				result = this.signers.get(wmid);
+				if (result == null) {
+					this.signers.put(wmid, signer);
+					this.loadedCount.incrementAndGet();
+					result = signer;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Регистрирует ключ WMID, кодированный в base64. Ранее распакованный ключ
+	 * этого WMID удаляется из реестра.
+	 * 
+	 * @param wmid
+	 *            WMID, от имени которого подписываются запросы.
+	 * @param base64Key
+	 *            ключ подписи, кодированный в base64.
+	 * @param password
+	 *            пароль доступа к ключу.
+	 */
+	public void registerBase64(String wmid, String base64Key, String password) {
+		this.registerBase64(new Wmid(wmid), base64Key, password);
+	}
+
+	/**
+	 * Регистрирует ключ WMID, кодированный в base64. Ранее распакованный ключ
+	 * этого WMID удаляется из реестра.
+	 * 
+	 * @param wmid
+	 *            WMID, от имени которого подписываются запросы.
+	 * @param base64Key
+	 *            ключ подписи, кодированный в base64.
+	 * @param password
+	 *            пароль доступа к ключу.
+	 */
+	public void registerBase64(Wmid wmid, String base64Key, String password) {
+		this.register(wmid, new Registration(null, base64Key, null, password));
+	}
+
+	/**
+	 * Регистрирует kwm-файл с ключом WMID. Файл читается при первой подписи от
+	 * имени WMID. Ранее распакованный ключ этого WMID удаляется из реестра.
+	 * 
+	 * @param wmid
+	 *            WMID, от имени которого подписываются запросы.
+	 * @param kwmFileName
+	 *            полный путь к kwm-файлу с ключом.
+	 * @param password
+	 *            пароль доступа к ключу.
+	 */
+	public void registerKwm(String wmid, String kwmFileName, String password) {
+		this.registerKwm(new Wmid(wmid), kwmFileName, password);
+	}
+
+	/**
+	 * Регистрирует kwm-файл с ключом WMID. Файл читается при первой подписи от
+	 * имени WMID. Ранее распакованный ключ этого WMID удаляется из реестра.
+	 * 
+	 * @param wmid
+	 *            WMID, от имени которого подписываются запросы.
+	 * @param kwmFileName
+	 *            полный путь к kwm-файлу с ключом.
+	 * @param password
+	 *            пароль доступа к ключу.
+	 */
+	public void registerKwm(Wmid wmid, String kwmFileName, String password) {
+		this.register(wmid, new Registration(kwmFileName, null, null, password));
+	}
+
+	/**
+	 * Регистрирует все ключи хранилища с общим паролем доступа. Ключи
+	 * считываются из хранилища при первой подписи от имени WMID.
+	 * 
+	 * @param vault
+	 *            хранилище kwm-ключей.
+	 * @param password
+	 *            пароль доступа к ключам.
+	 * @return количество зарегистрированных ключей.
+	 */
+	public int registerVault(KwmVault vault, String password) {
+		int result = 0;
+		for (Wmid wmid : vault.getWmids()) {
+			this.registerVault(wmid, vault, password);
+			result++;
+		}
+		return result;
+	}
+
+	/**
+	 * Регистрирует ключ WMID из хранилища. Ключ считывается из хранилища при
+	 * первой подписи от имени WMID. Ранее распакованный ключ этого WMID
+	 * удаляется из реестра.
+	 * 
+	 * @param wmid
+	 *            WMID, от имени которого подписываются запросы.
+	 * @param vault
+	 *            хранилище kwm-ключей.
+	 * @param password
+	 *            пароль доступа к ключу.
+	 */
+	public void registerVault(Wmid wmid, KwmVault vault, String password) {
+		this.register(wmid, new Registration(null, null, vault, password));
+	}
+
+	private void register(Wmid wmid, Registration reg) {
+		this.registrations.put(wmid, reg);
+		synchronized (this.signers) {
+			this.signers.remove(wmid);
+		}
+	}
+
+	/**
+	 * Максимальное количество хранимых распакованных ключей. Лишние ключи
+	 * вытесняются при следующей загрузке.
+	 * 
+	 * @param maxLoaded
+	 *            Максимальное количество хранимых распакованных ключей.
+	 */
+	public void setMaxLoaded(int maxLoaded) {
+		this.maxLoaded = maxLoaded;
+	}
+
+	/**
+	 * Количество хранимых WmSigner'ов.
+	 * 
+	 * @return Количество хранимых WmSigner'ов.
+	 */
+	public int size() {
+		synchronized (this.signers) {
+			return this.signers.size();
+		}
+	}
+
+	/**
+	 * Удаляет ключ WMID из реестра.
+	 * 
+	 * @param wmid
+	 */
+	public void unregister(Wmid wmid) {
+		this.registrations.remove(wmid);
+		synchronized (this.signers) {
+			this.signers.remove(wmid);
+		}
+	}
+}